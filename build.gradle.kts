@@ -38,7 +38,9 @@ protobuf.protoc {
 
 /* Testing */
 tasks.test {
-    useJUnitPlatform()
+    useJUnitPlatform {
+        excludeTags("benchmark")
+    }
     testLogging {
         events = setOf(
             TestLogEvent.FAILED,
@@ -48,6 +50,19 @@ tasks.test {
     }
 }
 
+// Benchmarks print their measurements and are left out of the unit tests, run them with ./gradlew benchmark
+tasks.register<Test>("benchmark") {
+    group = "verification"
+    testClassesDirs = sourceSets.test.get().output.classesDirs
+    classpath = sourceSets.test.get().runtimeClasspath
+    useJUnitPlatform {
+        includeTags("benchmark")
+    }
+    testLogging {
+        showStandardStreams = true
+    }
+}
+
 /* Test Reporting */
 jacoco.toolVersion = libs.versions.jacoco.get()
 tasks.jacocoTestReport {
@@ -8,7 +8,6 @@ import in.dragonbra.javasteam.types.SteamID;
 import in.dragonbra.javasteam.util.log.LogManager;
 import in.dragonbra.javasteam.util.log.Logger;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 
 /**
@@ -123,8 +122,8 @@ public class AClientMsgProtobuf extends MsgBase<MsgHdrProtoBuf> {
 
     @Override
     public void deserialize(byte[] data) {
-        try(var bais = new ByteArrayInputStream(data)) {
-            getHeader().deserialize(bais);
+        try {
+            PacketClientMsgProtobuf.readHeader(getHeader(), data);
         } catch (IOException e) {
             logger.debug(e);
         }
@@ -1,15 +1,14 @@
 package in.dragonbra.javasteam.base;
 
 import com.google.protobuf.AbstractMessage;
+import com.google.protobuf.CodedInputStream;
 import com.google.protobuf.GeneratedMessage;
 import in.dragonbra.javasteam.enums.EMsg;
 import in.dragonbra.javasteam.generated.MsgHdrProtoBuf;
 import in.dragonbra.javasteam.util.log.LogManager;
 import in.dragonbra.javasteam.util.log.Logger;
-import in.dragonbra.javasteam.util.stream.BinaryReader;
 import in.dragonbra.javasteam.util.stream.SeekOrigin;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
@@ -40,7 +39,12 @@ public class ClientMsgProtobuf<BodyType extends GeneratedMessage.Builder<BodyTyp
         if (!msg.isProto()) {
             logger.debug("ClientMsgProtobuf<" + clazz.getSimpleName() + "> used for non-proto message!");
         }
-        deserialize(msg.getData());
+
+        if (msg instanceof PacketClientMsgProtobuf) {
+            deserialize((PacketClientMsgProtobuf) msg);
+        } else {
+            deserialize(msg.getData());
+        }
     }
 
     /**
@@ -147,30 +151,50 @@ public class ClientMsgProtobuf<BodyType extends GeneratedMessage.Builder<BodyTyp
         return new byte[0];
     }
 
-    @SuppressWarnings("unchecked")
     @Override
     public void deserialize(byte[] data) {
         if (data == null) {
             throw new IllegalArgumentException("data is null");
         }
-        BinaryReader ms = new BinaryReader(new ByteArrayInputStream(data));
 
         try {
-            getHeader().deserialize(ms);
-            final Method m = clazz.getMethod("newBuilder");
-            body = (BodyType) m.invoke(null);
-            body.mergeFrom(ms);
-            payload.write(data, ms.getPosition(), ms.available());
-            payload.seek(0, SeekOrigin.BEGIN);
-        } catch (IOException | IllegalAccessException | NoSuchMethodException | InvocationTargetException e) {
+            int bodyOffset = PacketClientMsgProtobuf.readHeader(getHeader(), data);
+            deserializeBody(data, bodyOffset);
+        } catch (IOException e) {
             logger.debug(e);
         }
+    }
+
+    /**
+     * Reuses the header the packet message has already parsed, only the body is parsed from the packet data.
+     */
+    private void deserialize(PacketClientMsgProtobuf msg) {
+        MsgHdrProtoBuf packetHeader = msg.getHeader();
+
+        getHeader().setMsg(packetHeader.getMsg());
+        getHeader().setHeaderLength(packetHeader.getHeaderLength());
+        // the packet can be handed to several handlers, each message gets a header of its own
+        getHeader().setProto(packetHeader.getProto().clone());
 
-        // TODO can be MemoryStream?
         try {
-            ms.close();
+            deserializeBody(msg.getData(), msg.getBodyOffset());
         } catch (IOException e) {
             logger.debug(e);
         }
     }
+
+    @SuppressWarnings("unchecked")
+    private void deserializeBody(byte[] data, int offset) throws IOException {
+        try {
+            final Method m = clazz.getMethod("newBuilder");
+            body = (BodyType) m.invoke(null);
+        } catch (IllegalAccessException | NoSuchMethodException | InvocationTargetException e) {
+            logger.debug(e);
+            return;
+        }
+
+        // the body runs until the end of the message, parse it in place instead of copying it into a stream
+        body.mergeFrom(CodedInputStream.newInstance(data, offset, data.length - offset));
+        payload.seek(0, SeekOrigin.BEGIN);
+    }
 }
@@ -2,8 +2,11 @@ package in.dragonbra.javasteam.base;
 
 import in.dragonbra.javasteam.enums.EMsg;
 import in.dragonbra.javasteam.generated.MsgHdrProtoBuf;
+import in.dragonbra.javasteam.protobufs.steamclient.SteammessagesBase.CMsgProtoBufHeader;
+import in.dragonbra.javasteam.util.MsgUtil;
+import in.dragonbra.javasteam.util.stream.BinaryReader;
 
-import java.io.ByteArrayInputStream;
+import java.io.EOFException;
 import java.io.IOException;
 
 /**
@@ -17,6 +20,8 @@ public class PacketClientMsgProtobuf implements IPacketMsg {
 
     private final MsgHdrProtoBuf header;
 
+    private final int bodyOffset;
+
     /**
      * Initializes a new instance of the {@link PacketClientMsgProtobuf} class.
      *
@@ -29,10 +34,33 @@ public class PacketClientMsgProtobuf implements IPacketMsg {
         this.payload = data;
 
         header = new MsgHdrProtoBuf();
+        bodyOffset = readHeader(header, data);
+    }
+
+    /**
+     * Parses a protobuf header straight from the message data, the header is read from the array without copying it.
+     *
+     * @param header the header to fill.
+     * @param data   the message data.
+     * @return the offset of the message body in the data.
+     * @throws IOException if the data is too short or the header can't be parsed.
+     */
+    static int readHeader(MsgHdrProtoBuf header, byte[] data) throws IOException {
+        if (data.length < 8) {
+            throw new EOFException();
+        }
+
+        int headerLength = BinaryReader.getInt(data, 4);
 
-        try (var stream = new ByteArrayInputStream(data)) {
-            header.deserialize(stream);
+        if (headerLength < 0 || headerLength > data.length - 8) {
+            throw new EOFException();
         }
+
+        header.setMsg(MsgUtil.getMsg(BinaryReader.getInt(data, 0)));
+        header.setHeaderLength(headerLength);
+        header.setProto(CMsgProtoBufHeader.newBuilder().mergeFrom(data, 8, headerLength));
+
+        return 8 + headerLength;
     }
 
     /**
@@ -44,6 +72,15 @@ public class PacketClientMsgProtobuf implements IPacketMsg {
         return header;
     }
 
+    /**
+     * Gets the offset of the message body in the data, right after the header.
+     *
+     * @return The body offset.
+     */
+    public int getBodyOffset() {
+        return bodyOffset;
+    }
+
     @Override
     public boolean isProto() {
         return true;
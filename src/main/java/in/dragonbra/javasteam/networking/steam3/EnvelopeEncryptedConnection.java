@@ -12,6 +12,7 @@ import in.dragonbra.javasteam.steam.CMClient;
 import in.dragonbra.javasteam.util.KeyDictionary;
 import in.dragonbra.javasteam.util.crypto.CryptoHelper;
 import in.dragonbra.javasteam.util.crypto.RSACrypto;
+import in.dragonbra.javasteam.util.crypto.SymmetricCiphers;
 import in.dragonbra.javasteam.util.event.EventArgs;
 import in.dragonbra.javasteam.util.event.EventHandler;
 import in.dragonbra.javasteam.util.log.LogManager;
@@ -20,6 +21,7 @@ import in.dragonbra.javasteam.util.log.Logger;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.util.Arrays;
 
 /**
  * @author lngtr
@@ -31,9 +33,13 @@ public class EnvelopeEncryptedConnection extends Connection {
 
     private final Connection inner;
     private final EUniverse universe;
+    private final SymmetricCiphers.Provider cipherProvider;
     private EncryptionState state;
     private INetFilterEncryption encryption;
 
+    // the inner connection delivers one packet at a time, they are decrypted into this buffer
+    private byte[] incomingBuffer = new byte[0];
+
     @SuppressWarnings("FieldCanBeLocal")
     private final EventHandler<EventArgs> onConnected = new EventHandler<>() {
         @Override
@@ -58,7 +64,7 @@ public class EnvelopeEncryptedConnection extends Connection {
         @Override
         public void handleEvent(Object sender, NetMsgEventArgs e) {
             if (state == EncryptionState.ENCRYPTED) {
-                byte[] plaintextData = encryption.processIncoming(e.getData());
+                byte[] plaintextData = decrypt(e.getData());
                 netMsgReceived.handleEvent(EnvelopeEncryptedConnection.this, e.withData(plaintextData));
                 return;
             }
@@ -82,11 +88,16 @@ public class EnvelopeEncryptedConnection extends Connection {
     };
 
     public EnvelopeEncryptedConnection(Connection inner, EUniverse universe) {
+        this(inner, universe, SymmetricCiphers.Provider.DEFAULT);
+    }
+
+    public EnvelopeEncryptedConnection(Connection inner, EUniverse universe, SymmetricCiphers.Provider cipherProvider) {
         if (inner == null) {
             throw new IllegalArgumentException("inner connection is null");
         }
         this.inner = inner;
         this.universe = universe;
+        this.cipherProvider = cipherProvider;
 
         inner.getNetMsgReceived().addEventHandler(onNetMsgReceived);
         inner.getConnected().addEventHandler(onConnected);
@@ -150,9 +161,9 @@ public class EnvelopeEncryptedConnection extends Connection {
         }
 
         if (randomChallenge != null) {
-            encryption = new NetFilterEncryptionWithHMAC(tempSessionKey);
+            encryption = new NetFilterEncryptionWithHMAC(tempSessionKey, cipherProvider);
         } else {
-            encryption = new NetFilterEncryption(tempSessionKey);
+            encryption = new NetFilterEncryption(tempSessionKey, cipherProvider);
         }
 
         state = EncryptionState.CHALLENGED;
@@ -204,12 +215,37 @@ public class EnvelopeEncryptedConnection extends Connection {
     @Override
     public void send(byte[] data) {
         if (state == EncryptionState.ENCRYPTED) {
-            data = encryption.processOutgoing(data);
+            data = encrypt(data);
         }
 
         inner.send(data);
     }
 
+    /**
+     * Decrypts a packet into the reused incoming buffer, and copies only the plaintext out of it, as the receivers
+     * keep what they are handed.
+     */
+    private byte[] decrypt(byte[] packet) {
+        // the plaintext is never longer than the packet
+        if (incomingBuffer.length < packet.length) {
+            incomingBuffer = new byte[packet.length];
+        }
+
+        int length = encryption.processIncoming(packet, 0, packet.length, incomingBuffer, 0);
+        return Arrays.copyOf(incomingBuffer, length);
+    }
+
+    /**
+     * Encrypts a packet straight into an array of its final size. The array can't be reused, the inner connection
+     * keeps it until it is written.
+     */
+    private byte[] encrypt(byte[] data) {
+        byte[] packet = new byte[encryption.getOutgoingSize(data.length)];
+        int length = encryption.processOutgoing(data, 0, data.length, packet, 0);
+
+        return length == packet.length ? packet : Arrays.copyOf(packet, length);
+    }
+
     @Override
     public InetAddress getLocalIP() {
         return inner.getLocalIP();
@@ -7,4 +7,48 @@ package in.dragonbra.javasteam.networking.steam3;
 public interface INetFilterEncryption {
     byte[] processIncoming(byte[] data);
     byte[] processOutgoing(byte[] data);
+
+    /**
+     * Decrypts a packet into a caller supplied buffer.
+     *
+     * @param data         the encrypted packet.
+     * @param offset       the offset of the packet in the data.
+     * @param length       the length of the packet.
+     * @param output       the buffer to write the plaintext to, with room for at least {@code length} bytes.
+     * @param outputOffset the offset in the output to write to.
+     * @return the length of the plaintext.
+     */
+    default int processIncoming(byte[] data, int offset, int length, byte[] output, int outputOffset) {
+        byte[] packet = new byte[length];
+        System.arraycopy(data, offset, packet, 0, length);
+
+        byte[] plaintext = processIncoming(packet);
+        System.arraycopy(plaintext, 0, output, outputOffset, plaintext.length);
+        return plaintext.length;
+    }
+
+    /**
+     * Encrypts a packet into a caller supplied buffer.
+     *
+     * @param data         the plaintext.
+     * @param offset       the offset of the plaintext in the data.
+     * @param length       the length of the plaintext.
+     * @param output       the buffer to write the packet to, with room for {@link #getOutgoingSize(int)} bytes.
+     * @param outputOffset the offset in the output to write to.
+     * @return the length of the encrypted packet.
+     */
+    default int processOutgoing(byte[] data, int offset, int length, byte[] output, int outputOffset) {
+        byte[] plaintext = new byte[length];
+        System.arraycopy(data, offset, plaintext, 0, length);
+
+        byte[] packet = processOutgoing(plaintext);
+        System.arraycopy(packet, 0, output, outputOffset, packet.length);
+        return packet.length;
+    }
+
+    /**
+     * @param length the length of a plaintext.
+     * @return the length of the plaintext once it's encrypted.
+     */
+    int getOutgoingSize(int length);
 }
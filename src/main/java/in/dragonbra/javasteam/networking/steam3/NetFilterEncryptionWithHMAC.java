@@ -1,7 +1,8 @@
 package in.dragonbra.javasteam.networking.steam3;
 
 import in.dragonbra.javasteam.util.crypto.CryptoException;
-import in.dragonbra.javasteam.util.crypto.CryptoHelper;
+import in.dragonbra.javasteam.util.crypto.SessionCipher;
+import in.dragonbra.javasteam.util.crypto.SymmetricCiphers;
 import in.dragonbra.javasteam.util.log.LogManager;
 import in.dragonbra.javasteam.util.log.Logger;
 
@@ -13,22 +14,31 @@ public class NetFilterEncryptionWithHMAC implements INetFilterEncryption {
 
     private static final Logger logger = LogManager.getLogger(NetFilterEncryptionWithHMAC.class);
 
-    private final byte[] sessionKey;
-    private final byte[] hmacSecret;
+    private final SessionCipher cipher;
 
     public NetFilterEncryptionWithHMAC(byte[] sessionKey) {
+        this(sessionKey, SymmetricCiphers.Provider.DEFAULT);
+    }
+
+    public NetFilterEncryptionWithHMAC(byte[] sessionKey, SymmetricCiphers.Provider provider) {
         if (sessionKey.length != 32) {
             logger.debug("AES session key was not 32 bytes!");
         }
-        this.sessionKey = sessionKey;
-        this.hmacSecret = new byte[16];
+
+        byte[] hmacSecret = new byte[16];
         System.arraycopy(sessionKey, 0, hmacSecret, 0, hmacSecret.length);
+
+        try {
+            cipher = new SessionCipher(sessionKey, hmacSecret, provider);
+        } catch (CryptoException e) {
+            throw new IllegalStateException("Unable to create session cipher", e);
+        }
     }
 
     @Override
     public byte[] processIncoming(byte[] data) {
         try {
-            return CryptoHelper.symmetricDecryptHMACIV(data, sessionKey, hmacSecret);
+            return cipher.decrypt(data);
         } catch (CryptoException e) {
             throw new IllegalStateException("Unable to decrypt incoming packet", e);
         }
@@ -37,9 +47,32 @@ public class NetFilterEncryptionWithHMAC implements INetFilterEncryption {
     @Override
     public byte[] processOutgoing(byte[] data) {
         try {
-            return CryptoHelper.symmetricEncryptWithHMACIV(data, sessionKey, hmacSecret);
+            return cipher.encrypt(data);
+        } catch (CryptoException e) {
+            throw new IllegalStateException("Unable to encrypt outgoing packet", e);
+        }
+    }
+
+    @Override
+    public int processIncoming(byte[] data, int offset, int length, byte[] output, int outputOffset) {
+        try {
+            return cipher.decrypt(data, offset, length, output, outputOffset);
+        } catch (CryptoException e) {
+            throw new IllegalStateException("Unable to decrypt incoming packet", e);
+        }
+    }
+
+    @Override
+    public int processOutgoing(byte[] data, int offset, int length, byte[] output, int outputOffset) {
+        try {
+            return cipher.encrypt(data, offset, length, output, outputOffset);
         } catch (CryptoException e) {
             throw new IllegalStateException("Unable to encrypt outgoing packet", e);
         }
     }
+
+    @Override
+    public int getOutgoingSize(int length) {
+        return SessionCipher.getEncryptedSize(length);
+    }
 }
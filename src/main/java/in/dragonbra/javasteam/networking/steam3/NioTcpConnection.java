@@ -0,0 +1,314 @@
+package in.dragonbra.javasteam.networking.steam3;
+
+import in.dragonbra.javasteam.util.NetHelpers;
+import in.dragonbra.javasteam.util.log.LogManager;
+import in.dragonbra.javasteam.util.log.Logger;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A TCP connection that uses a non-blocking {@link SocketChannel} serviced by a shared {@link SelectorLoop}.
+ * Unlike {@link TcpConnection} it does not need a thread of its own, and packets are dispatched as soon as a whole
+ * frame has arrived instead of being polled for.
+ */
+public class NioTcpConnection extends Connection implements SelectorLoop.Handler {
+
+    private static final Logger logger = LogManager.getLogger(NioTcpConnection.class);
+
+    private static final int MAGIC = 0x31305456; // "VT01"
+
+    private static final int HEADER_SIZE = 8;
+
+    private static final int INITIAL_BUFFER_SIZE = 0x10000;
+
+    // larger frames are taken as a broken stream, the connection is dropped instead of buffering them
+    static final int MAX_PACKET_SIZE = 64 * 1024 * 1024;
+
+    private final SelectorLoop loop;
+
+    private final Queue<ByteBuffer> outgoing = new ConcurrentLinkedQueue<>();
+
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+
+    // everything below is owned by the loop thread
+
+    private SocketChannel channel;
+
+    private SelectionKey key;
+
+    private SelectorLoop.TimedTask connectTimeout;
+
+    private ByteBuffer readBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+    private final List<ByteBuffer> pendingWrites = new ArrayList<>();
+
+    private volatile InetSocketAddress currentEndPoint;
+
+    private volatile boolean connected;
+
+    public NioTcpConnection() {
+        this(SelectorLoopGroup.getDefault());
+    }
+
+    public NioTcpConnection(SelectorLoopGroup group) {
+        if (group == null) {
+            throw new IllegalArgumentException("group is null");
+        }
+
+        loop = group.next();
+    }
+
+    @Override
+    public void connect(InetSocketAddress endPoint, int timeout) {
+        currentEndPoint = endPoint;
+
+        loop.execute(() -> {
+            logger.debug("Connecting to " + endPoint + "...");
+
+            try {
+                channel = SocketChannel.open();
+                channel.configureBlocking(false);
+
+                if (channel.connect(endPoint)) {
+                    key = loop.register(channel, SelectionKey.OP_READ, this);
+                    connectionCompleted();
+                } else {
+                    key = loop.register(channel, SelectionKey.OP_CONNECT, this);
+                    connectTimeout = loop.schedule(() -> {
+                        if (!connected && channel != null) {
+                            logger.debug("Timed out while connecting to " + endPoint);
+                            release(false);
+                        }
+                    }, timeout);
+                }
+            } catch (IOException e) {
+                logger.debug("Socket exception while completing connection request to " + endPoint, e);
+                release(false);
+            }
+        });
+    }
+
+    @Override
+    public void disconnect(boolean userInitiated) {
+        loop.execute(() -> {
+            if (channel != null) {
+                release(userInitiated);
+            }
+        });
+    }
+
+    @Override
+    public void send(byte[] data) {
+        if (!connected) {
+            logger.debug("Attempting to send client data when not connected.");
+            return;
+        }
+
+        ByteBuffer frame = ByteBuffer.allocate(HEADER_SIZE + data.length).order(ByteOrder.LITTLE_ENDIAN);
+        frame.putInt(data.length);
+        frame.putInt(MAGIC);
+        frame.put(data);
+        frame.flip();
+
+        outgoing.add(frame);
+
+        if (flushScheduled.compareAndSet(false, true)) {
+            loop.execute(this::flush);
+        }
+    }
+
+    @Override
+    public InetAddress getLocalIP() {
+        SocketChannel ch = channel;
+        if (ch == null) {
+            return null;
+        }
+
+        try {
+            return NetHelpers.getLocalIP(ch.socket());
+        } catch (Exception e) {
+            logger.debug("Socket exception trying to read bound IP: ", e);
+            return null;
+        }
+    }
+
+    @Override
+    public InetSocketAddress getCurrentEndPoint() {
+        return currentEndPoint;
+    }
+
+    @Override
+    public ProtocolTypes getProtocolTypes() {
+        return ProtocolTypes.TCP;
+    }
+
+    @Override
+    public void handleSelect(SelectionKey key) {
+        try {
+            if (key.isConnectable()) {
+                channel.finishConnect();
+                key.interestOps(SelectionKey.OP_READ);
+                connectionCompleted();
+            }
+
+            if (key.isValid() && key.isReadable()) {
+                handleRead();
+            }
+
+            if (key.isValid() && key.isWritable()) {
+                flush();
+            }
+        } catch (IOException e) {
+            logger.debug("Socket exception occurred on " + currentEndPoint, e);
+            release(false);
+        }
+    }
+
+    private void connectionCompleted() throws IOException {
+        if (connectTimeout != null) {
+            connectTimeout.cancel();
+            connectTimeout = null;
+        }
+
+        currentEndPoint = (InetSocketAddress) channel.getRemoteAddress();
+        connected = true;
+
+        logger.debug("Connected to " + currentEndPoint);
+
+        onConnected();
+    }
+
+    private void handleRead() throws IOException {
+        int read = channel.read(readBuffer);
+
+        if (read < 0) {
+            throw new IOException("Connection closed by remote host");
+        }
+
+        readBuffer.flip();
+
+        while (readBuffer.remaining() >= HEADER_SIZE) {
+            int start = readBuffer.position();
+            int packetLen = readBuffer.getInt(start);
+            int packetMagic = readBuffer.getInt(start + 4);
+
+            if (packetMagic != MAGIC) {
+                throw new IOException("Got a packet with invalid magic!");
+            }
+
+            if (packetLen < 0) {
+                throw new IOException("Got a packet with negative length!");
+            }
+
+            if (packetLen > MAX_PACKET_SIZE) {
+                throw new IOException("Got a packet of " + packetLen + " bytes, larger than " + MAX_PACKET_SIZE);
+            }
+
+            long frameSize = (long) HEADER_SIZE + packetLen;
+
+            if (readBuffer.remaining() < frameSize) {
+                ensureCapacity((int) frameSize);
+                break;
+            }
+
+            byte[] packData = new byte[packetLen];
+            readBuffer.position(start + HEADER_SIZE);
+            readBuffer.get(packData);
+
+            onNetMsgReceived(new NetMsgEventArgs(packData, currentEndPoint));
+
+            // a handler may have disconnected us
+            if (channel == null) {
+                return;
+            }
+        }
+
+        readBuffer.compact();
+    }
+
+    /**
+     * Grows the read buffer so a whole frame of the given size fits, at most {@link #MAX_PACKET_SIZE} plus the
+     * header. The buffer is expected to be in read mode.
+     */
+    private void ensureCapacity(int frameSize) {
+        if (readBuffer.capacity() >= frameSize) {
+            return;
+        }
+
+        long capacity = Math.min(Long.highestOneBit(frameSize - 1L) << 1, (long) HEADER_SIZE + MAX_PACKET_SIZE);
+        ByteBuffer grown = ByteBuffer.allocate((int) capacity).order(ByteOrder.LITTLE_ENDIAN);
+        grown.put(readBuffer);
+        grown.flip();
+        readBuffer = grown;
+    }
+
+    private void flush() {
+        flushScheduled.set(false);
+
+        if (channel == null || key == null || !key.isValid()) {
+            outgoing.clear();
+            return;
+        }
+
+        ByteBuffer buffer;
+        while ((buffer = outgoing.poll()) != null) {
+            pendingWrites.add(buffer);
+        }
+
+        try {
+            if (!pendingWrites.isEmpty()) {
+                channel.write(pendingWrites.toArray(new ByteBuffer[0]));
+                pendingWrites.removeIf(b -> !b.hasRemaining());
+            }
+        } catch (IOException e) {
+            logger.debug("Socket exception while writing data.", e);
+            release(false);
+            return;
+        }
+
+        int ops = key.interestOps();
+        if (pendingWrites.isEmpty()) {
+            key.interestOps(ops & ~SelectionKey.OP_WRITE);
+        } else {
+            key.interestOps(ops | SelectionKey.OP_WRITE);
+        }
+    }
+
+    private void release(boolean userRequestedDisconnect) {
+        if (connectTimeout != null) {
+            connectTimeout.cancel();
+            connectTimeout = null;
+        }
+
+        if (key != null) {
+            key.cancel();
+            key = null;
+        }
+
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+            channel = null;
+        }
+
+        connected = false;
+        outgoing.clear();
+        pendingWrites.clear();
+        readBuffer.clear();
+
+        onDisconnected(userRequestedDisconnect);
+    }
+}
@@ -0,0 +1,881 @@
+package in.dragonbra.javasteam.networking.steam3;
+
+import in.dragonbra.javasteam.enums.EUdpPacketType;
+import in.dragonbra.javasteam.generated.ChallengeData;
+import in.dragonbra.javasteam.generated.ConnectData;
+import in.dragonbra.javasteam.generated.UdpHeader;
+import in.dragonbra.javasteam.util.NetHelpers;
+import in.dragonbra.javasteam.util.log.LogManager;
+import in.dragonbra.javasteam.util.log.Logger;
+import in.dragonbra.javasteam.util.stream.MemoryStream;
+import in.dragonbra.javasteam.util.stream.SeekOrigin;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A UDP connection that uses a non-blocking {@link DatagramChannel} serviced by a shared {@link SelectorLoop}.
+ * <p>
+ * Unlike {@link UdpConnection}, which waits for an ack after every three packets and resends after a fixed three
+ * seconds, it keeps a window of packets in flight and resends after a timeout estimated from the measured round trip
+ * time. Acks are cumulative, so only the oldest unacked packet is resent, when the timeout passes or when the peer
+ * acked the same packet three times. An ack that only covers part of what was in flight at the resend points at the
+ * next lost packet, which is resent right away.
+ */
+public class NioUdpConnection extends Connection implements SelectorLoop.Handler {
+
+    private static final Logger logger = LogManager.getLogger(NioUdpConnection.class);
+
+    /**
+     * The number of packets that are in flight without an ack by default.
+     */
+    public static final int DEFAULT_WINDOW_SIZE = 32;
+
+    /**
+     * Milliseconds to wait for a packet before considering the connection dead.
+     */
+    private static final long TIMEOUT_DELAY = 60000L;
+
+    private static final long INITIAL_RESEND_NANOS = 1_000_000_000L;
+
+    private static final long MIN_RESEND_NANOS = 200_000_000L;
+
+    private static final long MAX_RESEND_NANOS = 10_000_000_000L;
+
+    /**
+     * Number of acks for the same packet that tell the packet after it was lost.
+     */
+    private static final int DUPLICATE_ACK_COUNT = 3;
+
+    /**
+     * How far ahead of the next message to dispatch packets are kept, later ones are dropped and resent by the peer.
+     */
+    private static final int MAX_RECEIVE_AHEAD = 4096;
+
+    /**
+     * Maximum number of datagrams read at once, so other connections of the loop get their turn.
+     */
+    private static final int MAX_READS = 64;
+
+    private static final int MAX_DATAGRAM_SIZE = 2048;
+
+    // advanced the same way steam does when a socket gets reused
+    private static final AtomicInteger NEXT_SOURCE_CONN_ID = new AtomicInteger(512);
+
+    private final SelectorLoop loop;
+
+    private final int windowSize;
+
+    private final Queue<UdpPacket[]> outgoing = new ConcurrentLinkedQueue<>();
+
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+
+    private volatile State state = State.DISCONNECTED;
+
+    private volatile InetSocketAddress currentEndPoint;
+
+    // everything below is owned by the loop thread
+
+    private DatagramChannel channel;
+
+    private SelectionKey key;
+
+    private final byte[] receiveBuffer = new byte[MAX_DATAGRAM_SIZE];
+
+    private final ByteBuffer receiveByteBuffer = ByteBuffer.wrap(receiveBuffer);
+
+    private boolean writeBlocked;
+
+    private boolean userRequestedDisconnect;
+
+    private int sourceConnId;
+
+    private int remoteConnId;
+
+    /**
+     * The next outgoing sequence number to be used.
+     */
+    private int outSeq;
+
+    /**
+     * The highest sequence number of an outbound packet that has been sent.
+     */
+    private int outSeqSent;
+
+    /**
+     * The sequence number of the highest packet acknowledged by the server.
+     */
+    private int outSeqAcked;
+
+    /**
+     * The packets from outSeqAcked + 1 up to outSeq - 1.
+     */
+    private final UdpPacketRing outPackets;
+
+    /**
+     * The sequence number we plan on acknowledging receiving with the next Ack. All packets below or equal
+     * to inSeq *must* have been received, but not necessarily handled.
+     */
+    private int inSeq;
+
+    /**
+     * The highest sequence number we've acknowledged receiving.
+     */
+    private int inSeqAcked;
+
+    /**
+     * The highest sequence number we've processed.
+     */
+    private int inSeqHandled;
+
+    /**
+     * The data packets received after inSeqHandled.
+     */
+    private final UdpPacketRing inPackets;
+
+    private boolean ackRequired;
+
+    private int duplicateAcks;
+
+    /**
+     * Whether lost packets are being resent, until everything up to recoverSeq is acked.
+     */
+    private boolean recovering;
+
+    private int recoverSeq;
+
+    private long smoothedRttNanos = -1L;
+
+    private long rttVarianceNanos;
+
+    private long resendNanos = INITIAL_RESEND_NANOS;
+
+    private long resendDeadline;
+
+    private SelectorLoop.TimedTask resendTimer;
+
+    private long timeoutDeadline;
+
+    private SelectorLoop.TimedTask timeoutTimer;
+
+    public NioUdpConnection() {
+        this(SelectorLoopGroup.getDefault());
+    }
+
+    public NioUdpConnection(SelectorLoopGroup group) {
+        this(group, DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * @param group      the loops to pick the I/O thread from.
+     * @param windowSize the number of packets that are in flight without an ack.
+     */
+    public NioUdpConnection(SelectorLoopGroup group, int windowSize) {
+        if (group == null) {
+            throw new IllegalArgumentException("group is null");
+        }
+
+        if (windowSize < 1) {
+            throw new IllegalArgumentException("windowSize must be at least 1");
+        }
+
+        loop = group.next();
+        this.windowSize = windowSize;
+
+        outPackets = new UdpPacketRing(windowSize * 2, 1);
+        inPackets = new UdpPacketRing(windowSize * 2, 1);
+    }
+
+    @Override
+    public void connect(InetSocketAddress endPoint, int timeout) {
+        currentEndPoint = endPoint;
+
+        loop.execute(() -> {
+            logger.debug("Connecting to " + endPoint + "...");
+
+            reset();
+            state = State.CHALLENGE_REQ_SENT;
+
+            try {
+                channel = DatagramChannel.open();
+                channel.configureBlocking(false);
+                channel.connect(endPoint);
+                key = loop.register(channel, SelectionKey.OP_READ, this);
+            } catch (IOException e) {
+                logger.debug("Socket exception while completing connection request to " + endPoint, e);
+                release(false);
+                return;
+            }
+
+            timeoutDeadline = System.nanoTime() + timeout * 1_000_000L;
+            timeoutTimer = loop.schedule(this::onTimeoutTimer, timeout);
+
+            // Begin by sending off the challenge request, it's resent until the challenge arrives
+            sendPacket(new UdpPacket(EUdpPacketType.ChallengeReq));
+            restartResendTimer();
+        });
+    }
+
+    @Override
+    public void disconnect(boolean userInitiated) {
+        loop.execute(() -> {
+            if (state == State.DISCONNECTED || state == State.DISCONNECTING) {
+                return;
+            }
+
+            if (state != State.CONNECTED) {
+                release(userInitiated);
+                return;
+            }
+
+            state = State.DISCONNECTING;
+            userRequestedDisconnect = userInitiated;
+
+            // Play nicely and let the server know that we're done. Other party is expected to Ack this,
+            // so it needs to be sent sequenced, after whatever was sent before.
+            queueMessages();
+            queueMessage(new UdpPacket[]{new UdpPacket(EUdpPacketType.Disconnect)});
+            sendPendingMessages();
+        });
+    }
+
+    @Override
+    public void send(byte[] data) {
+        if (state != State.CONNECTED) {
+            logger.debug("Attempting to send client data when not connected.");
+            return;
+        }
+
+        outgoing.add(split(data));
+
+        if (flushScheduled.compareAndSet(false, true)) {
+            loop.execute(this::flush);
+        }
+    }
+
+    @Override
+    public InetAddress getLocalIP() {
+        DatagramChannel ch = channel;
+        if (ch == null) {
+            return null;
+        }
+
+        return NetHelpers.getLocalIP(ch.socket());
+    }
+
+    @Override
+    public InetSocketAddress getCurrentEndPoint() {
+        return currentEndPoint;
+    }
+
+    @Override
+    public ProtocolTypes getProtocolTypes() {
+        return ProtocolTypes.UDP;
+    }
+
+    @Override
+    public void handleSelect(SelectionKey key) {
+        try {
+            if (key.isReadable()) {
+                handleRead();
+            }
+
+            if (channel != null && key.isValid() && key.isWritable()) {
+                writeBlocked = false;
+                key.interestOps(SelectionKey.OP_READ);
+                sendPendingMessages();
+            }
+        } catch (IOException e) {
+            logger.debug("Socket exception occurred on " + currentEndPoint, e);
+            release(false);
+        }
+    }
+
+    /**
+     * Splits the data into the packets of a single message.
+     *
+     * @param data The data to send.
+     * @return The packets, without sequence numbers.
+     */
+    private static UdpPacket[] split(byte[] data) {
+        MemoryStream ms = new MemoryStream(data);
+        int count = (data.length + UdpPacket.MAX_PAYLOAD - 1) / UdpPacket.MAX_PAYLOAD;
+        UdpPacket[] packets = new UdpPacket[Math.max(1, count)];
+
+        for (int i = 0; i < packets.length; i++) {
+            int length = Math.min(UdpPacket.MAX_PAYLOAD, data.length - i * UdpPacket.MAX_PAYLOAD);
+
+            packets[i] = new UdpPacket(EUdpPacketType.Data, ms, length);
+            packets[i].getHeader().setMsgSize(data.length);
+        }
+
+        return packets;
+    }
+
+    private void reset() {
+        outgoing.clear();
+        writeBlocked = false;
+
+        sourceConnId = NEXT_SOURCE_CONN_ID.getAndAdd(256);
+        remoteConnId = 0;
+
+        outSeq = 1;
+        outSeqSent = 0;
+        outSeqAcked = 0;
+        outPackets.clear(1);
+
+        inSeq = 0;
+        inSeqAcked = 0;
+        inSeqHandled = 0;
+        inPackets.clear(1);
+
+        ackRequired = false;
+        duplicateAcks = 0;
+        recovering = false;
+
+        smoothedRttNanos = -1L;
+        rttVarianceNanos = 0L;
+        resendNanos = INITIAL_RESEND_NANOS;
+    }
+
+    private void flush() {
+        flushScheduled.set(false);
+
+        if (state != State.CONNECTED) {
+            outgoing.clear();
+            return;
+        }
+
+        queueMessages();
+        sendPendingMessages();
+    }
+
+    private void queueMessages() {
+        UdpPacket[] packets;
+        while ((packets = outgoing.poll()) != null) {
+            queueMessage(packets);
+        }
+    }
+
+    /**
+     * Gives the packets of a single message their sequence numbers and queues them.
+     *
+     * @param packets The packets that make up the single net message
+     */
+    private void queueMessage(UdpPacket[] packets) {
+        int msgStart = outSeq;
+
+        for (UdpPacket packet : packets) {
+            packet.getHeader().setSeqThis(outSeq);
+            packet.getHeader().setMsgStartSeq(msgStart);
+            packet.getHeader().setPacketsInMsg(packets.length);
+
+            outPackets.put(outSeq, packet);
+            outSeq++;
+        }
+    }
+
+    /**
+     * Sends the queued packets as long as the window has room.
+     */
+    private void sendPendingMessages() {
+        boolean wasIdle = outSeqSent == outSeqAcked;
+
+        while (!writeBlocked && outSeq - outSeqSent > 1 && outSeqSent - outSeqAcked < windowSize) {
+            if (!transmit(outSeqSent + 1)) {
+                break;
+            }
+
+            outSeqSent++;
+        }
+
+        if (wasIdle && outSeqSent != outSeqAcked) {
+            restartResendTimer();
+        }
+    }
+
+    /**
+     * Sends or resends a sequenced packet.
+     *
+     * @param seq The sequence number of a queued packet.
+     * @return True if the packet was handed to the socket.
+     */
+    private boolean transmit(int seq) {
+        UdpPacket packet = outPackets.get(seq);
+
+        if (packet == null || !sendPacket(packet)) {
+            return false;
+        }
+
+        outPackets.markSent(seq, System.nanoTime());
+        return true;
+    }
+
+    /**
+     * Sends a packet immediately.
+     *
+     * @param packet The packet.
+     * @return True if the packet was handed to the socket.
+     */
+    private boolean sendPacket(UdpPacket packet) {
+        UdpHeader header = packet.getHeader();
+        header.setSourceConnID(sourceConnId);
+        header.setDestConnID(remoteConnId);
+        header.setSeqAck(inSeq);
+
+        logger.debug(String.format("Sent -> %s Seq %d Ack %d; %d bytes; Message: %d bytes %d packets",
+                header.getPacketType(), header.getSeqThis(), header.getSeqAck(),
+                header.getPayloadSize(), header.getMsgSize(), header.getPacketsInMsg()));
+
+        try {
+            if (channel.write(ByteBuffer.wrap(packet.getData())) == 0) {
+                // the send buffer is full, carry on once the socket is writable again
+                writeBlocked = true;
+                key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                return false;
+            }
+        } catch (IOException e) {
+            logger.debug("Socket exception while writing data.", e);
+            release(false);
+            return false;
+        }
+
+        inSeqAcked = inSeq;
+        ackRequired = false;
+        return true;
+    }
+
+    /**
+     * Sends a datagram Ack, used when an Ack needs to be sent but there is no data response to piggy-back on.
+     */
+    private void sendAck() {
+        sendPacket(new UdpPacket(EUdpPacketType.Datagram));
+    }
+
+    private void handleRead() throws IOException {
+        boolean received = false;
+
+        for (int i = 0; i < MAX_READS && channel != null; i++) {
+            receiveByteBuffer.clear();
+
+            int length = channel.read(receiveByteBuffer);
+            if (length <= 0) {
+                break;
+            }
+
+            received = true;
+            receivePacket(new UdpPacket(new MemoryStream(receiveBuffer, 0, length)));
+        }
+
+        if (channel == null || !received) {
+            return;
+        }
+
+        // The datagrams that arrived together are answered together, so the acks mostly tag along with outgoing
+        // data and there are fewer of them.
+        sendPendingMessages();
+
+        if (channel != null && (ackRequired || inSeq != inSeqAcked)) {
+            sendAck();
+        }
+
+        // Once the disconnect notification is acked, there is nothing left to wait for.
+        if (state == State.DISCONNECTING && outSeqAcked == outSeq - 1) {
+            logger.debug("Graceful disconnect completed");
+            release(userRequestedDisconnect);
+        }
+    }
+
+    /**
+     * Receives the packet, performs all sanity checks and then passes it along as necessary.
+     *
+     * @param packet The packet.
+     */
+    private void receivePacket(UdpPacket packet) {
+        // Check for a malformed packet
+        if (!packet.isValid()) {
+            return;
+        }
+
+        UdpHeader header = packet.getHeader();
+
+        if (remoteConnId > 0 && header.getSourceConnID() != remoteConnId) {
+            return;
+        }
+
+        logger.debug(String.format("<- Recv'd %s Seq %d Ack %d; %d bytes; Message: %d bytes %d packets",
+                header.getPacketType(), header.getSeqThis(), header.getSeqAck(),
+                header.getPayloadSize(), header.getMsgSize(), header.getPacketsInMsg()));
+
+        if (state == State.CONNECTED || state == State.DISCONNECTING) {
+            timeoutDeadline = System.nanoTime() + TIMEOUT_DELAY * 1_000_000L;
+        }
+
+        boolean isData = header.getPacketType() == EUdpPacketType.Data;
+        int seqThis = header.getSeqThis();
+
+        receiveAck(header.getSeqAck(), header.getPacketType() == EUdpPacketType.Datagram);
+
+        if (channel == null) {
+            return;
+        }
+
+        if (isData) {
+            // Throw away any duplicate messages we've already received, making sure to
+            // re-ack it in case it got lost.
+            if (seqThis - inSeq <= 0) {
+                ackRequired = true;
+                return;
+            }
+
+            // Too far ahead to keep, the peer sends it again.
+            if (seqThis - inSeqHandled > MAX_RECEIVE_AHEAD) {
+                return;
+            }
+
+            // Ack a packet that skipped some right away, so the peer learns about the gap.
+            if (seqThis != inSeq + 1) {
+                ackRequired = true;
+            }
+        }
+
+        // inSeq should always be the latest value that we can ack, so advance it as far as is possible.
+        if (seqThis == inSeq + 1) {
+            do {
+                inSeq++;
+            } while (inPackets.contains(inSeq + 1));
+        }
+
+        switch (header.getPacketType()) {
+            case Challenge:
+                receiveChallenge(packet);
+                break;
+            case Accept:
+                receiveAccept(packet);
+                break;
+            case Data:
+                receiveData(packet);
+                break;
+            case Disconnect:
+                logger.debug("Disconnected by server");
+                release(false);
+                break;
+            case Datagram:
+                break;
+            default:
+                logger.debug("Received unexpected packet type " + header.getPacketType());
+                break;
+        }
+    }
+
+    /**
+     * Handles the cumulative ack of the peer.
+     *
+     * @param seqAck  The highest sequence number the peer received everything up to.
+     * @param pureAck Whether the packet carries nothing but the ack.
+     */
+    private void receiveAck(int seqAck, boolean pureAck) {
+        if (seqAck - outSeqAcked > 0 && seqAck - outSeq < 0) {
+            // outSeqSent can be less than this in a very rare case involving resent packets.
+            if (seqAck - outSeqSent > 0) {
+                outSeqSent = seqAck;
+            }
+
+            // A packet that was sent more than once doesn't tell which send the ack is for.
+            if (outPackets.sendCount(seqAck) == 1) {
+                updateResendTimeout(System.nanoTime() - outPackets.sentNanos(seqAck));
+            }
+
+            // When we get a SeqAck, all packets with sequence numbers below that have been safely received by
+            // the server; we are now free to remove our copies
+            outSeqAcked = seqAck;
+            outPackets.advanceTo(seqAck + 1);
+            duplicateAcks = 0;
+
+            if (recovering) {
+                if (seqAck - recoverSeq >= 0) {
+                    recovering = false;
+                } else {
+                    // only part of what was in flight at the resend arrived, the next packet was lost too
+                    transmit(seqAck + 1);
+                }
+            }
+
+            if (outSeqSent == outSeqAcked) {
+                cancelResendTimer();
+            } else {
+                restartResendTimer();
+            }
+        } else if (pureAck && seqAck == outSeqAcked && outSeqSent != outSeqAcked) {
+            if (++duplicateAcks == DUPLICATE_ACK_COUNT && !recovering) {
+                logger.debug("Packet " + (outSeqAcked + 1) + " was lost, resending");
+
+                recovering = true;
+                recoverSeq = outSeqSent;
+                transmit(outSeqAcked + 1);
+            }
+        }
+    }
+
+    /**
+     * Updates the resend timeout from a round trip time sample, as TCP does.
+     *
+     * @param rttNanos The time from sending a packet to its ack.
+     */
+    private void updateResendTimeout(long rttNanos) {
+        if (smoothedRttNanos < 0) {
+            smoothedRttNanos = rttNanos;
+            rttVarianceNanos = rttNanos / 2;
+        } else {
+            rttVarianceNanos = (3 * rttVarianceNanos + Math.abs(smoothedRttNanos - rttNanos)) / 4;
+            smoothedRttNanos = (7 * smoothedRttNanos + rttNanos) / 8;
+        }
+
+        resendNanos = Math.min(Math.max(smoothedRttNanos + 4 * rttVarianceNanos, MIN_RESEND_NANOS), MAX_RESEND_NANOS);
+    }
+
+    private void restartResendTimer() {
+        resendDeadline = System.nanoTime() + resendNanos;
+
+        if (resendTimer == null) {
+            resendTimer = loop.schedule(this::onResendTimer, toMillis(resendNanos));
+        }
+    }
+
+    private void cancelResendTimer() {
+        if (resendTimer != null) {
+            resendTimer.cancel();
+            resendTimer = null;
+        }
+    }
+
+    private void onResendTimer() {
+        resendTimer = null;
+
+        if (channel == null || (state != State.CHALLENGE_REQ_SENT && outSeqSent == outSeqAcked)) {
+            return;
+        }
+
+        long remaining = resendDeadline - System.nanoTime();
+        if (remaining > 0) {
+            resendTimer = loop.schedule(this::onResendTimer, toMillis(remaining));
+            return;
+        }
+
+        // If we can't clear the send queue during a Disconnect, give up on it
+        if (state == State.DISCONNECTING) {
+            logger.debug("Disconnect notification wasn't acked");
+            release(userRequestedDisconnect);
+            return;
+        }
+
+        // Nothing was acked for a whole timeout, the round trip time got longer or the link lost everything
+        resendNanos = Math.min(resendNanos * 2, MAX_RESEND_NANOS);
+        duplicateAcks = 0;
+
+        if (state == State.CHALLENGE_REQ_SENT) {
+            logger.debug("Challenge request resend required");
+            sendPacket(new UdpPacket(EUdpPacketType.ChallengeReq));
+        } else {
+            logger.debug("Sequenced packet resend required");
+            recovering = true;
+            recoverSeq = outSeqSent;
+            transmit(outSeqAcked + 1);
+        }
+
+        if (channel != null) {
+            restartResendTimer();
+        }
+    }
+
+    private void onTimeoutTimer() {
+        timeoutTimer = null;
+
+        if (channel == null) {
+            return;
+        }
+
+        long remaining = timeoutDeadline - System.nanoTime();
+        if (remaining > 0) {
+            timeoutTimer = loop.schedule(this::onTimeoutTimer, toMillis(remaining));
+            return;
+        }
+
+        logger.debug("Connection timed out");
+        release(false);
+    }
+
+    private static long toMillis(long nanos) {
+        return Math.max(1L, (nanos + 999_999L) / 1_000_000L);
+    }
+
+    /**
+     * Returns the number of message parts in the next message.
+     *
+     * @return Non-zero number of message parts if a message is ready to be handled, 0 otherwise
+     */
+    private int readyMessageParts() {
+        // Make sure that the first packet of the next message to handle is present
+        UdpPacket packet = inPackets.get(inSeqHandled + 1);
+        if (packet == null) {
+            return 0;
+        }
+
+        // ...and if relevant, all subparts of the message too
+        int packetsInMsg = packet.getHeader().getPacketsInMsg();
+        for (int i = 1; i < packetsInMsg; i++) {
+            if (!inPackets.contains(inSeqHandled + 1 + i)) {
+                return 0;
+            }
+        }
+
+        return packetsInMsg;
+    }
+
+    /**
+     * Dispatches up to one message to the rest of SteamKit
+     *
+     * @return True if a message was dispatched, false otherwise
+     */
+    private boolean dispatchMessage() {
+        int numPackets = readyMessageParts();
+
+        if (numPackets == 0) {
+            return false;
+        }
+
+        MemoryStream ms = new MemoryStream();
+        for (int i = 0; i < numPackets; i++) {
+            UdpPacket packet = inPackets.remove(++inSeqHandled);
+            byte[] payload = packet.getPayload().toByteArray();
+            ms.write(payload, 0, payload.length);
+        }
+
+        inPackets.advanceTo(inSeqHandled + 1);
+
+        byte[] data = ms.toByteArray();
+
+        logger.debug("Dispatching message: " + data.length + " bytes");
+
+        onNetMsgReceived(new NetMsgEventArgs(data, currentEndPoint));
+
+        return true;
+    }
+
+    /**
+     * Receives the challenge and responds with a Connect request
+     *
+     * @param packet The packet.
+     */
+    private void receiveChallenge(UdpPacket packet) {
+        if (state != State.CHALLENGE_REQ_SENT) {
+            return;
+        }
+
+        try {
+            ChallengeData cr = new ChallengeData();
+            cr.deserialize(packet.getPayload());
+
+            ConnectData cd = new ConnectData();
+            cd.setChallengeValue(cr.getChallengeValue() ^ ConnectData.CHALLENGE_MASK);
+
+            MemoryStream ms = new MemoryStream();
+            cd.serialize(ms.asOutputStream());
+            ms.seek(0, SeekOrigin.BEGIN);
+
+            state = State.CONNECT_SENT;
+            queueMessage(new UdpPacket[]{new UdpPacket(EUdpPacketType.Connect, ms)});
+
+            inSeqHandled = packet.getHeader().getSeqThis();
+            inPackets.advanceTo(inSeqHandled + 1);
+        } catch (IOException e) {
+            logger.debug(e);
+        }
+    }
+
+    private void receiveAccept(UdpPacket packet) {
+        if (state != State.CONNECT_SENT) {
+            return;
+        }
+
+        logger.debug("Connection established");
+
+        state = State.CONNECTED;
+        remoteConnId = packet.getHeader().getSourceConnID();
+        inSeqHandled = packet.getHeader().getSeqThis();
+        inPackets.advanceTo(inSeqHandled + 1);
+        timeoutDeadline = System.nanoTime() + TIMEOUT_DELAY * 1_000_000L;
+
+        onConnected();
+    }
+
+    private void receiveData(UdpPacket packet) {
+        // Data packets are unexpected if a valid connection has not been established
+        if (state != State.CONNECTED && state != State.DISCONNECTING) {
+            return;
+        }
+
+        // If we receive a packet that we've already processed (e.g. it got resent due to a lost ack)
+        // or that is already waiting to be processed, do nothing.
+        int seqThis = packet.getHeader().getSeqThis();
+        if (seqThis - inSeqHandled <= 0 || inPackets.contains(seqThis)) {
+            return;
+        }
+
+        inPackets.put(seqThis, packet);
+
+        // a handler may have disconnected us
+        //noinspection StatementWithEmptyBody
+        while (channel != null && dispatchMessage()) ;
+    }
+
+    private void release(boolean userRequestedDisconnect) {
+        if (state == State.DISCONNECTED) {
+            return;
+        }
+
+        state = State.DISCONNECTED;
+
+        cancelResendTimer();
+
+        if (timeoutTimer != null) {
+            timeoutTimer.cancel();
+            timeoutTimer = null;
+        }
+
+        if (key != null) {
+            key.cancel();
+            key = null;
+        }
+
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+            channel = null;
+        }
+
+        outgoing.clear();
+        outPackets.clear(outSeq);
+        inPackets.clear(inSeqHandled + 1);
+
+        onDisconnected(userRequestedDisconnect);
+    }
+
+    private enum State {
+        DISCONNECTED,
+        CHALLENGE_REQ_SENT,
+        CONNECT_SENT,
+        CONNECTED,
+        DISCONNECTING
+    }
+}
@@ -0,0 +1,239 @@
+package in.dragonbra.javasteam.networking.steam3;
+
+import in.dragonbra.javasteam.util.log.LogManager;
+import in.dragonbra.javasteam.util.log.Logger;
+
+import java.io.IOException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A single I/O thread that services any number of non-blocking channels through one {@link Selector}.
+ * Tasks submitted with {@link #execute(Runnable)} and {@link #schedule(Runnable, long)} run on the loop thread, so
+ * state owned by a channel handler never needs to be locked.
+ */
+public class SelectorLoop implements Runnable {
+
+    private static final Logger logger = LogManager.getLogger(SelectorLoop.class);
+
+    private final Selector selector;
+
+    private final Thread thread;
+
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+    // only touched from the loop thread
+    private final PriorityQueue<TimedTask> timedTasks = new PriorityQueue<>();
+
+    private volatile boolean shutdownRequested = false;
+
+    /**
+     * Receives readiness events for a channel registered with a {@link SelectorLoop}.
+     */
+    public interface Handler {
+        /**
+         * Called on the loop thread when the channel is ready for one or more of its interest operations.
+         *
+         * @param key the selection key of the channel.
+         */
+        void handleSelect(SelectionKey key);
+    }
+
+    public SelectorLoop(String name) throws IOException {
+        selector = Selector.open();
+        thread = new Thread(this, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * @return whether the calling thread is this loop's I/O thread.
+     */
+    public boolean inLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    /**
+     * Runs the task on the loop thread. The task runs inline if the caller is already on the loop thread.
+     *
+     * @param task the task to run.
+     */
+    public void execute(Runnable task) {
+        if (inLoop()) {
+            task.run();
+            return;
+        }
+
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    /**
+     * Runs the task on the loop thread after the given delay.
+     *
+     * @param task        the task to run.
+     * @param delayMillis the delay in milliseconds.
+     * @return a handle that can be used to cancel the task.
+     */
+    public TimedTask schedule(Runnable task, long delayMillis) {
+        TimedTask timedTask = new TimedTask(task, System.nanoTime() + delayMillis * 1_000_000L);
+        execute(() -> timedTasks.add(timedTask));
+        return timedTask;
+    }
+
+    /**
+     * Registers the channel with this loop's selector. Must be called on the loop thread.
+     *
+     * @param channel the channel to register, it must be in non-blocking mode.
+     * @param ops     the interest operations.
+     * @param handler the handler to notify about readiness events.
+     * @return the selection key.
+     * @throws IOException if the channel could not be registered.
+     */
+    public SelectionKey register(SelectableChannel channel, int ops, Handler handler) throws IOException {
+        if (!inLoop()) {
+            throw new IllegalStateException("channels must be registered from the loop thread");
+        }
+
+        return channel.register(selector, ops, handler);
+    }
+
+    /**
+     * Stops the loop and closes the selector. Channels still registered are not closed.
+     */
+    public void shutdown() {
+        shutdownRequested = true;
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        while (!shutdownRequested) {
+            try {
+                long timeout = runTimedTasks();
+
+                if (tasks.isEmpty()) {
+                    if (timeout < 0) {
+                        selector.select();
+                    } else if (timeout == 0) {
+                        selector.selectNow();
+                    } else {
+                        selector.select(timeout);
+                    }
+                } else {
+                    selector.selectNow();
+                }
+
+                processSelectedKeys();
+                runTasks();
+            } catch (ClosedSelectorException e) {
+                break;
+            } catch (Throwable t) {
+                logger.error("Unhandled exception in selector loop", t);
+            }
+        }
+
+        try {
+            selector.close();
+        } catch (IOException e) {
+            logger.debug(e);
+        }
+    }
+
+    private void processSelectedKeys() {
+        Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+        while (it.hasNext()) {
+            SelectionKey key = it.next();
+            it.remove();
+
+            if (!key.isValid()) {
+                continue;
+            }
+
+            try {
+                ((Handler) key.attachment()).handleSelect(key);
+            } catch (Exception e) {
+                logger.error("Unhandled exception in selector handler", e);
+            }
+        }
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (Exception e) {
+                logger.error("Unhandled exception in selector task", e);
+            }
+        }
+    }
+
+    /**
+     * Runs all expired timed tasks.
+     *
+     * @return milliseconds until the next timed task is due, or -1 if there is none.
+     */
+    private long runTimedTasks() {
+        long now = System.nanoTime();
+
+        TimedTask next;
+        while ((next = timedTasks.peek()) != null) {
+            if (next.cancelled) {
+                timedTasks.poll();
+                continue;
+            }
+
+            long remaining = next.deadline - now;
+            if (remaining > 0) {
+                // round up so we don't spin on sub-millisecond remainders
+                return Math.max(1L, (remaining + 999_999L) / 1_000_000L);
+            }
+
+            timedTasks.poll();
+
+            try {
+                next.task.run();
+            } catch (Exception e) {
+                logger.error("Unhandled exception in selector timed task", e);
+            }
+        }
+
+        return -1L;
+    }
+
+    /**
+     * A task scheduled on a {@link SelectorLoop}.
+     */
+    public static final class TimedTask implements Comparable<TimedTask> {
+
+        private final Runnable task;
+
+        private final long deadline;
+
+        private volatile boolean cancelled = false;
+
+        private TimedTask(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Prevents the task from running if it has not run yet.
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+
+        @Override
+        public int compareTo(TimedTask o) {
+            return Long.compare(deadline - o.deadline, 0L);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package in.dragonbra.javasteam.networking.steam3;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A fixed set of {@link SelectorLoop}s that connections are spread over in a round-robin fashion.
+ */
+public class SelectorLoopGroup {
+
+    private static final AtomicInteger GROUP_COUNT = new AtomicInteger();
+
+    private static volatile SelectorLoopGroup defaultGroup;
+
+    private final SelectorLoop[] loops;
+
+    private final AtomicInteger next = new AtomicInteger();
+
+    /**
+     * Creates a group with the given number of I/O threads.
+     *
+     * @param threads the number of selector threads, must be at least 1.
+     */
+    public SelectorLoopGroup(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1");
+        }
+
+        int groupId = GROUP_COUNT.incrementAndGet();
+
+        loops = new SelectorLoop[threads];
+        try {
+            for (int i = 0; i < threads; i++) {
+                loops[i] = new SelectorLoop("SelectorLoop-" + groupId + "-" + i);
+            }
+        } catch (IOException e) {
+            shutdown();
+            throw new UncheckedIOException("couldn't open selector", e);
+        }
+    }
+
+    /**
+     * @return the next loop to assign a connection to.
+     */
+    public SelectorLoop next() {
+        return loops[Math.floorMod(next.getAndIncrement(), loops.length)];
+    }
+
+    /**
+     * @return the number of I/O threads in this group.
+     */
+    public int getThreadCount() {
+        return loops.length;
+    }
+
+    /**
+     * Stops all loops of this group.
+     */
+    public void shutdown() {
+        for (SelectorLoop loop : loops) {
+            if (loop != null) {
+                loop.shutdown();
+            }
+        }
+    }
+
+    /**
+     * @return the process wide group used by connections which are not given a group explicitly.
+     */
+    public static SelectorLoopGroup getDefault() {
+        if (defaultGroup == null) {
+            synchronized (SelectorLoopGroup.class) {
+                if (defaultGroup == null) {
+                    int threads = Math.min(4, Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+                    defaultGroup = new SelectorLoopGroup(threads);
+                }
+            }
+        }
+
+        return defaultGroup;
+    }
+}
@@ -4,14 +4,23 @@ import in.dragonbra.javasteam.util.NetHelpers;
 import in.dragonbra.javasteam.util.log.LogManager;
 import in.dragonbra.javasteam.util.log.Logger;
 import in.dragonbra.javasteam.util.stream.BinaryReader;
-import in.dragonbra.javasteam.util.stream.BinaryWriter;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
+ * Sent messages are queued, whichever sender finds no write in progress writes out everything queued up to then as
+ * one batch. Senders don't wait for each other, and a batch costs one write to the socket instead of a few per
+ * message.
+ *
  * @author lngtr
  * @since 2018-02-21
  */
@@ -21,11 +30,15 @@ public class TcpConnection extends Connection {
 
     private static final int MAGIC = 0x31305456; // "VT01"
 
+    private static final int HEADER_SIZE = 8;
+
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
     private Socket socket;
 
     private InetSocketAddress currentEndPoint;
 
-    private BinaryWriter netWriter;
+    private volatile OutputStream netOutput;
 
     private BinaryReader netReader;
 
@@ -36,6 +49,13 @@ public class TcpConnection extends Connection {
 
     private final Object netLock = new Object();
 
+    private final Queue<byte[]> outgoing = new ConcurrentLinkedQueue<>();
+
+    private final AtomicBoolean writing = new AtomicBoolean(false);
+
+    // only used by the sender that holds writing
+    private final ByteBuffer writeBuffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
     private void shutdown() {
         try {
             if (socket.isConnected()) {
@@ -59,7 +79,7 @@ public class TcpConnection extends Connection {
         try {
             synchronized (netLock) {
                 netReader = new BinaryReader(socket.getInputStream());
-                netWriter = new BinaryWriter(socket.getOutputStream());
+                netOutput = socket.getOutputStream();
 
                 netLoop = new NetLoop();
                 netThread = new Thread(netLoop, "TcpConnection Thread");
@@ -78,14 +98,16 @@ public class TcpConnection extends Connection {
 
     private void release(boolean userRequestedDisconnect) {
         synchronized (netLock) {
-            if (netWriter != null) {
+            if (netOutput != null) {
                 try {
-                    netWriter.close();
+                    netOutput.close();
                 } catch (IOException ignored) {
                 }
-                netWriter = null;
+                netOutput = null;
             }
 
+            outgoing.clear();
+
             if (netReader != null) {
                 try {
                     netReader.close();
@@ -113,6 +135,8 @@ public class TcpConnection extends Connection {
             try {
                 logger.debug("Connecting to " + currentEndPoint + "...");
                 socket = new Socket();
+                // batches leave as soon as they are written, nagle would hold them back behind unacked data
+                socket.setTcpNoDelay(true);
                 socket.connect(endPoint, timeout);
 
                 connectionCompleted(true);
@@ -145,21 +169,59 @@ public class TcpConnection extends Connection {
 
     @Override
     public void send(byte[] data) {
-        synchronized (netLock) {
-            if (socket == null) {
-                logger.debug("Attempting to send client data when not connected.");
-                return;
-            }
+        if (netOutput == null) {
+            logger.debug("Attempting to send client data when not connected.");
+            return;
+        }
 
+        outgoing.add(data);
+
+        // the writer checks the queue again after letting go, a message queued by a sender that found it busy
+        // is written by it then
+        while (!outgoing.isEmpty() && writing.compareAndSet(false, true)) {
             try {
-                netWriter.writeInt(data.length);
-                netWriter.writeInt(MAGIC);
-                netWriter.write(data);
-            } catch (IOException e) {
-                logger.debug("Socket exception while writing data.", e);
+                writeQueued();
+            } finally {
+                writing.set(false);
+            }
+        }
+    }
+
+    private void writeQueued() {
+        OutputStream out = netOutput;
 
-                // looks like the only way to detect a closed connection is to try and write to it
-                // afaik read also throws an exception if the connection is open but there is nothing to read
+        if (out == null) {
+            outgoing.clear();
+            return;
+        }
+
+        try {
+            byte[] data;
+            while ((data = outgoing.poll()) != null) {
+                if (writeBuffer.remaining() < HEADER_SIZE + data.length) {
+                    writeBatch(out);
+                }
+
+                writeBuffer.putInt(data.length);
+                writeBuffer.putInt(MAGIC);
+
+                if (writeBuffer.remaining() < data.length) {
+                    // too large for a batch, it goes out right behind its header
+                    writeBatch(out);
+                    out.write(data);
+                } else {
+                    writeBuffer.put(data);
+                }
+            }
+
+            writeBatch(out);
+        } catch (IOException e) {
+            writeBuffer.clear();
+            logger.debug("Socket exception while writing data.", e);
+
+            // looks like the only way to detect a closed connection is to try and write to it
+            // afaik read also throws an exception if the connection is open but there is nothing to read
+            synchronized (netLock) {
                 if (netLoop != null) {
                     netLoop.stop(false);
                 }
@@ -167,6 +229,13 @@ public class TcpConnection extends Connection {
         }
     }
 
+    private void writeBatch(OutputStream out) throws IOException {
+        if (writeBuffer.position() > 0) {
+            out.write(writeBuffer.array(), 0, writeBuffer.position());
+            writeBuffer.clear();
+        }
+    }
+
     @Override
     public InetAddress getLocalIP() {
         synchronized (netLock) {
@@ -0,0 +1,181 @@
+package in.dragonbra.javasteam.networking.steam3;
+
+import java.util.Arrays;
+
+/**
+ * Packets indexed by their sequence number, stored in a ring that covers the sequence numbers from {@link #first()}
+ * onwards. Along with each packet it keeps when it was last sent and how often, for the outbound side of a
+ * {@link NioUdpConnection}.
+ */
+class UdpPacketRing {
+
+    private UdpPacket[] packets;
+
+    private long[] sentNanos;
+
+    private int[] sendCounts;
+
+    private int mask;
+
+    private int first;
+
+    /**
+     * @param capacity the number of sequence numbers the ring covers at first, rounded up to a power of two.
+     * @param first    the lowest sequence number the ring covers.
+     */
+    UdpPacketRing(int capacity, int first) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+
+        packets = new UdpPacket[size];
+        sentNanos = new long[size];
+        sendCounts = new int[size];
+        mask = size - 1;
+
+        this.first = first;
+    }
+
+    /**
+     * @return the lowest sequence number the ring covers.
+     */
+    int first() {
+        return first;
+    }
+
+    /**
+     * @param seq the sequence number.
+     * @return whether the sequence number is within the ring without growing it.
+     */
+    boolean fits(int seq) {
+        int offset = seq - first;
+        return offset >= 0 && offset < packets.length;
+    }
+
+    /**
+     * Stores a packet, growing the ring if the sequence number is beyond it.
+     *
+     * @param seq    the sequence number, not below {@link #first()}.
+     * @param packet the packet.
+     */
+    void put(int seq, UdpPacket packet) {
+        if (seq - first < 0) {
+            throw new IllegalArgumentException("sequence number " + seq + " is below " + first);
+        }
+
+        while (!fits(seq)) {
+            grow();
+        }
+
+        int index = seq & mask;
+        packets[index] = packet;
+        sentNanos[index] = 0L;
+        sendCounts[index] = 0;
+    }
+
+    /**
+     * @param seq the sequence number.
+     * @return the packet, or null if there is none.
+     */
+    UdpPacket get(int seq) {
+        return fits(seq) ? packets[seq & mask] : null;
+    }
+
+    boolean contains(int seq) {
+        return get(seq) != null;
+    }
+
+    /**
+     * Removes the packet and returns it.
+     *
+     * @param seq the sequence number.
+     * @return the packet, or null if there was none.
+     */
+    UdpPacket remove(int seq) {
+        if (!fits(seq)) {
+            return null;
+        }
+
+        int index = seq & mask;
+        UdpPacket packet = packets[index];
+        packets[index] = null;
+        return packet;
+    }
+
+    /**
+     * Drops every packet below the sequence number, which becomes the lowest one the ring covers.
+     *
+     * @param seq the new lowest sequence number.
+     */
+    void advanceTo(int seq) {
+        int count = Math.min(seq - first, packets.length);
+
+        for (int i = 0; i < count; i++) {
+            int index = (first + i) & mask;
+            packets[index] = null;
+            sendCounts[index] = 0;
+        }
+
+        if (seq - first > 0) {
+            first = seq;
+        }
+    }
+
+    /**
+     * Records that the packet was sent.
+     *
+     * @param seq      the sequence number of a packet in the ring.
+     * @param nowNanos the time it was sent.
+     */
+    void markSent(int seq, long nowNanos) {
+        int index = seq & mask;
+        sentNanos[index] = nowNanos;
+        sendCounts[index]++;
+    }
+
+    /**
+     * @param seq the sequence number of a packet in the ring.
+     * @return when the packet was last sent.
+     */
+    long sentNanos(int seq) {
+        return sentNanos[seq & mask];
+    }
+
+    /**
+     * @param seq the sequence number of a packet in the ring.
+     * @return how often the packet was sent.
+     */
+    int sendCount(int seq) {
+        return fits(seq) ? sendCounts[seq & mask] : 0;
+    }
+
+    /**
+     * Drops every packet.
+     *
+     * @param first the lowest sequence number the ring covers from now on.
+     */
+    void clear(int first) {
+        Arrays.fill(packets, null);
+        Arrays.fill(sendCounts, 0);
+        this.first = first;
+    }
+
+    private void grow() {
+        int size = packets.length << 1;
+
+        UdpPacket[] grownPackets = new UdpPacket[size];
+        long[] grownSentNanos = new long[size];
+        int[] grownSendCounts = new int[size];
+
+        for (int i = 0; i < packets.length; i++) {
+            int from = (first + i) & mask;
+            int to = (first + i) & (size - 1);
+            grownPackets[to] = packets[from];
+            grownSentNanos[to] = sentNanos[from];
+            grownSendCounts[to] = sendCounts[from];
+        }
+
+        packets = grownPackets;
+        sentNanos = grownSentNanos;
+        sendCounts = grownSendCounts;
+        mask = size - 1;
+    }
+}
@@ -1,49 +1,68 @@
 package `in`.dragonbra.javasteam.networking.steam3
 
+import `in`.dragonbra.javasteam.steam.steamclient.SteamRuntime
 import `in`.dragonbra.javasteam.util.log.LogManager
 import io.ktor.client.HttpClient
-import io.ktor.client.engine.cio.CIO
-import io.ktor.client.plugins.websocket.WebSockets
-import io.ktor.client.plugins.websocket.pingInterval
 import io.ktor.client.plugins.websocket.webSocketSession
 import io.ktor.http.URLProtocol
 import io.ktor.http.path
 import io.ktor.websocket.Frame
 import io.ktor.websocket.WebSocketSession
 import io.ktor.websocket.close
-import io.ktor.websocket.readBytes
 import io.ktor.websocket.readText
+import kotlinx.coroutines.CancellationException
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.Job
 import kotlinx.coroutines.SupervisorJob
 import kotlinx.coroutines.cancelChildren
+import kotlinx.coroutines.channels.Channel
 import kotlinx.coroutines.channels.consumeEach
 import kotlinx.coroutines.delay
 import kotlinx.coroutines.isActive
 import kotlinx.coroutines.launch
+import kotlinx.coroutines.withTimeout
 import java.net.InetAddress
 import java.net.InetSocketAddress
 import kotlin.coroutines.CoroutineContext
-import kotlin.time.DurationUnit
-import kotlin.time.toDuration
 
-class WebSocketConnection :
-    Connection(),
+/**
+ * A WebSocket connection to a CM server.
+ *
+ * Connections don't own an HTTP client, they open their sessions on a shared one, by default the one of
+ * [SteamRuntime.getDefault]. Its engine, selector and threads serve every connection, so thousands of connections
+ * don't mean thousands of engines. The client must have the WebSockets plugin installed.
+ */
+class WebSocketConnection internal constructor(
+    private val client: HttpClient,
+    private val protocol: URLProtocol,
+) : Connection(),
     CoroutineScope {
 
+    /**
+     * @param client the client to open the session on, it's not closed with the connection.
+     */
+    @JvmOverloads
+    constructor(client: HttpClient = SteamRuntime.getDefault().webSocketClient) : this(client, URLProtocol.WSS)
+
     companion object {
         private val logger = LogManager.getLogger(WebSocketConnection::class.java)
     }
 
     private val job: Job = SupervisorJob()
 
-    private var client: HttpClient? = null
-
+    // set and cleared by the coroutines of the connection, read by the callers of send and the watchdog
+    @Volatile
     private var session: WebSocketSession? = null
 
+    // messages waiting for the sender, they are written as one batch and flushed once
+    @Volatile
+    private var outgoing: Channel<ByteArray>? = null
+
+    @Volatile
     private var endpoint: InetSocketAddress? = null
 
+    @Volatile
     private var lastFrameTime = System.currentTimeMillis()
 
     override val coroutineContext: CoroutineContext = Dispatchers.IO + job
@@ -55,33 +74,31 @@ class WebSocketConnection :
             try {
                 endpoint = endPoint
 
-                client = HttpClient(CIO) {
-                    install(WebSockets) {
-                        pingInterval = timeout.toDuration(DurationUnit.SECONDS)
-                    }
-                }
-
-                val session = client?.webSocketSession {
-                    url {
-                        host = endPoint.hostName
-                        port = endPoint.port
-                        protocol = URLProtocol.WSS
-                        path("cmsocket/")
+                val session = withTimeout(timeout.toLong()) {
+                    client.webSocketSession {
+                        url {
+                            host = endPoint.hostName
+                            port = endPoint.port
+                            protocol = this@WebSocketConnection.protocol
+                            path("cmsocket/")
+                        }
                     }
                 }
 
                 this@WebSocketConnection.session = session
 
                 startConnectionMonitoring()
+                startSending(session)
 
                 launch {
                     try {
-                        session?.incoming?.consumeEach { frame ->
+                        session.incoming.consumeEach { frame ->
                             when (frame) {
                                 is Frame.Binary -> {
                                     // logger.debug("on Binary ${frame.data.size}")
                                     lastFrameTime = System.currentTimeMillis()
-                                    onNetMsgReceived(NetMsgEventArgs(frame.readBytes(), currentEndPoint))
+                                    // the frame owns its data, there is no need to copy it
+                                    onNetMsgReceived(NetMsgEventArgs(frame.data, currentEndPoint))
                                 }
 
                                 is Frame.Close -> disconnect(false)
@@ -90,6 +107,8 @@ class WebSocketConnection :
                                 is Frame.Text -> logger.debug("Received plain text ${frame.readText()}")
                             }
                         }
+                    } catch (e: CancellationException) {
+                        throw e
                     } catch (e: Exception) {
                         logger.error("An error occurred while receiving data", e)
                         disconnect(false)
@@ -109,11 +128,12 @@ class WebSocketConnection :
         logger.debug("Disconnect called: $userInitiated")
         launch {
             try {
+                // the client is shared, only this connection's session is closed
                 session?.close()
-                client?.close()
             } finally {
                 session = null
-                client = null
+                outgoing?.close()
+                outgoing = null
 
                 job.cancelChildren()
             }
@@ -123,15 +143,14 @@ class WebSocketConnection :
     }
 
     override fun send(data: ByteArray) {
-        launch {
-            try {
-                val frame = Frame.Binary(true, data)
-                session?.send(frame)
-            } catch (e: Exception) {
-                logger.error("An error occurred while sending data", e)
-                disconnect(false)
-            }
+        val queue = outgoing
+
+        if (queue == null) {
+            logger.debug("Attempting to send client data when not connected.")
+            return
         }
+
+        queue.trySend(data)
     }
 
     override fun getLocalIP(): InetAddress = InetAddress.getLocalHost()
@@ -140,13 +159,42 @@ class WebSocketConnection :
 
     override fun getProtocolTypes(): ProtocolTypes = ProtocolTypes.WEB_SOCKET
 
+    /**
+     * Writes the queued messages to the session in order. Whatever was queued while a batch was written goes out as
+     * the next batch, with one flush.
+     */
+    private fun startSending(session: WebSocketSession) {
+        val queue = Channel<ByteArray>(Channel.UNLIMITED)
+        outgoing = queue
+
+        launch {
+            try {
+                for (data in queue) {
+                    session.outgoing.send(Frame.Binary(true, data))
+
+                    while (true) {
+                        val next = queue.tryReceive().getOrNull() ?: break
+                        session.outgoing.send(Frame.Binary(true, next))
+                    }
+
+                    session.flush()
+                }
+            } catch (e: CancellationException) {
+                throw e
+            } catch (e: Exception) {
+                logger.error("An error occurred while sending data", e)
+                disconnect(false)
+            }
+        }
+    }
+
     /**
      * Rudimentary watchdog
      */
     private fun startConnectionMonitoring() {
         launch {
             while (isActive) {
-                if (client?.isActive == false || session?.isActive == false) {
+                if (!client.isActive || session?.isActive == false) {
                     logger.error("Client or Session is no longer active")
                     disconnect(userInitiated = false)
                 }
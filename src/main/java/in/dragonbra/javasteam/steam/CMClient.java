@@ -1,5 +1,7 @@
 package in.dragonbra.javasteam.steam;
 
+import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
 import in.dragonbra.javasteam.base.*;
 import in.dragonbra.javasteam.enums.EMsg;
 import in.dragonbra.javasteam.enums.EResult;
@@ -16,8 +18,11 @@ import in.dragonbra.javasteam.protobufs.steamclient.SteammessagesClientserverLog
 import in.dragonbra.javasteam.steam.discovery.ServerQuality;
 import in.dragonbra.javasteam.steam.discovery.ServerRecord;
 import in.dragonbra.javasteam.steam.discovery.SmartCMServerList;
+import in.dragonbra.javasteam.steam.ratelimit.SendRateLimits;
+import in.dragonbra.javasteam.steam.ratelimit.SendScheduler;
 import in.dragonbra.javasteam.steam.steamclient.configuration.SteamConfiguration;
 import in.dragonbra.javasteam.types.SteamID;
+import in.dragonbra.javasteam.util.GzipDecompressor;
 import in.dragonbra.javasteam.util.IDebugNetworkListener;
 import in.dragonbra.javasteam.util.MsgUtil;
 import in.dragonbra.javasteam.util.NetHookNetworkListener;
@@ -29,13 +34,11 @@ import in.dragonbra.javasteam.util.log.LogManager;
 import in.dragonbra.javasteam.util.log.Logger;
 import in.dragonbra.javasteam.util.stream.BinaryReader;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.util.*;
-import java.util.zip.GZIPInputStream;
 
 /**
  * This base client handles the underlying connection to a CM server. This class should not be use directly, but through
@@ -45,6 +48,11 @@ public abstract class CMClient {
 
     private static final Logger logger = LogManager.getLogger(CMClient.class);
 
+    /**
+     * Multi messages larger than this are decompressed into a buffer that is not kept around afterwards.
+     */
+    private static final int MAX_POOLED_MULTI_BUFFER = 1024 * 1024;
+
     private final SteamConfiguration configuration;
 
     private boolean isConnected;
@@ -68,6 +76,12 @@ public abstract class CMClient {
 
     private final ScheduledFunction heartBeatFunc;
 
+    private final SendScheduler sendScheduler;
+
+    private final GzipDecompressor multiDecompressor = new GzipDecompressor();
+
+    private byte[] multiBuffer;
+
     private final EventHandler<NetMsgEventArgs> netMsgReceived = (sender, e) -> onClientMsgReceived(getPacketMsg(e.getData()));
 
     private final EventHandler<EventArgs> connected = (sender, e) -> {
@@ -106,6 +120,11 @@ public abstract class CMClient {
 
             heartBeatFunc.stop();
 
+            if (sendScheduler != null) {
+                // messages still waiting were meant for the connection that is gone
+                sendScheduler.clear();
+            }
+
             onClientDisconnected(e.isUserInitiated() || expectDisconnection);
         }
     };
@@ -122,7 +141,12 @@ public abstract class CMClient {
                     CMsgClientHeartBeat.class, EMsg.ClientHeartBeat);
             heartbeat.getBody().setSendReply(true); // Ping Pong
             send(heartbeat);
-        }, 5000);
+        }, 5000, configuration.getRuntime().getScheduler());
+
+        SendRateLimits sendRateLimits = configuration.getSendRateLimits();
+        sendScheduler = sendRateLimits == null
+                ? null
+                : new SendScheduler(sendRateLimits, configuration.getRuntime().getScheduler());
     }
 
     /**
@@ -230,11 +254,28 @@ public abstract class CMClient {
         // on the network thread, and that will lead to a disconnect callback
         // down the line
 
-        if (connection != null) {
-            connection.send(msg.serialize());
+        Connection _connection = this.connection;
+
+        if (_connection == null) {
+            return;
+        }
+
+        if (sendScheduler != null) {
+            sendScheduler.send(_connection, msg.getMsgType(), getTargetJobName(msg), msg.serialize());
+        } else {
+            _connection.send(msg.serialize());
         }
     }
 
+    private static String getTargetJobName(IClientMsg msg) {
+        if (msg instanceof AClientMsgProtobuf) {
+            var header = ((AClientMsgProtobuf) msg).getProtoHeader();
+            return header.hasTargetJobName() ? header.getTargetJobName() : null;
+        }
+
+        return null;
+    }
+
     protected boolean onClientMsgReceived(IPacketMsg packetMsg) {
         if (packetMsg == null) {
             logger.debug("Packet message failed to parse, shutting down connection");
@@ -294,11 +335,17 @@ public abstract class CMClient {
 
     private Connection createConnection(EnumSet<ProtocolTypes> protocol) {
         if (protocol.contains(ProtocolTypes.WEB_SOCKET)) {
-            return new WebSocketConnection();
+            return new WebSocketConnection(configuration.getWebSocketClient());
         } else if (protocol.contains(ProtocolTypes.TCP)) {
-            return new EnvelopeEncryptedConnection(new TcpConnection(), getUniverse());
+            Connection tcpConnection = configuration.isNonBlockingTcp()
+                    ? new NioTcpConnection(configuration.getRuntime().getSelectorGroup())
+                    : new TcpConnection();
+            return new EnvelopeEncryptedConnection(tcpConnection, getUniverse(), configuration.getCipherProvider());
         } else if (protocol.contains(ProtocolTypes.UDP)) {
-            return new EnvelopeEncryptedConnection(new UdpConnection(), getUniverse());
+            Connection udpConnection = configuration.isNonBlockingUdp()
+                    ? new NioUdpConnection(configuration.getRuntime().getSelectorGroup())
+                    : new UdpConnection();
+            return new EnvelopeEncryptedConnection(udpConnection, getUniverse(), configuration.getCipherProvider());
         }
 
         throw new IllegalArgumentException("Protocol bitmask has no supported protocols set.");
@@ -310,12 +357,7 @@ public abstract class CMClient {
             return null;
         }
 
-        int rawEMsg = 0;
-        try (var reader = new BinaryReader(new ByteArrayInputStream(data))) {
-            rawEMsg = reader.readInt();
-        } catch (IOException e) {
-            logger.debug("Exception while getting EMsg code", e);
-        }
+        int rawEMsg = BinaryReader.getInt(data, 0);
         EMsg eMsg = MsgUtil.getMsg(rawEMsg);
 
         switch (eMsg) {
@@ -350,38 +392,85 @@ public abstract class CMClient {
 
         ClientMsgProtobuf<CMsgMulti.Builder> msgMulti = new ClientMsgProtobuf<>(CMsgMulti.class, packetMsg);
 
-        byte[] payload = msgMulti.getBody().getMessageBody().toByteArray();
-
-        if (msgMulti.getBody().getSizeUnzipped() > 0) {
-            try (var gzin = new GZIPInputStream(new ByteArrayInputStream(payload));
-                 var baos = new ByteArrayOutputStream()) {
-                int res = 0;
-                byte[] buf = new byte[1024];
-                while (res >= 0) {
-                    res = gzin.read(buf, 0, buf.length);
-                    if (res > 0) {
-                        baos.write(buf, 0, res);
-                    }
-                }
-                payload = baos.toByteArray();
-            } catch (IOException e) {
-                logger.debug("HandleMulti encountered an exception when decompressing.", e);
+        ByteString payload = msgMulti.getBody().getMessageBody();
+        int sizeUnzipped = msgMulti.getBody().getSizeUnzipped();
+
+        if (sizeUnzipped <= 0) {
+            dispatchMulti(payload);
+            return;
+        }
+
+        byte[] buffer = takeMultiBuffer(sizeUnzipped);
+
+        try {
+            int length;
+
+            synchronized (multiDecompressor) {
+                length = multiDecompressor.decompress(payload.asReadOnlyByteBuffer(), buffer);
+            }
+
+            // the sub messages are copied out of the buffer, so it can be reused once they are dispatched
+            dispatchMulti(UnsafeByteOperations.unsafeWrap(buffer, 0, length));
+        } catch (IOException e) {
+            logger.debug("HandleMulti encountered an exception when decompressing.", e);
+        } finally {
+            returnMultiBuffer(buffer);
+        }
+    }
+
+    private void dispatchMulti(ByteString payload) {
+        int offset = 0;
+
+        while (offset < payload.size()) {
+            if (payload.size() - offset < 4) {
+                logger.error("error in handleMulti()", new EOFException());
                 return;
             }
+
+            int subSize = (payload.byteAt(offset) & 0xFF) |
+                    ((payload.byteAt(offset + 1) & 0xFF) << 8) |
+                    ((payload.byteAt(offset + 2) & 0xFF) << 16) |
+                    ((payload.byteAt(offset + 3) & 0xFF) << 24);
+            offset += 4;
+
+            if (subSize < 0 || subSize > payload.size() - offset) {
+                logger.error("error in handleMulti()", new EOFException());
+                return;
+            }
+
+            byte[] subData = new byte[subSize];
+            payload.copyTo(subData, offset, 0, subSize);
+            offset += subSize;
+
+            if (!onClientMsgReceived(getPacketMsg(subData))) {
+                break;
+            }
         }
+    }
 
-        try (var bais = new ByteArrayInputStream(payload);
-             var br = new BinaryReader(bais)) {
-            while (br.available() > 0) {
-                int subSize = br.readInt();
-                byte[] subData = br.readBytes(subSize);
+    private byte[] takeMultiBuffer(int size) {
+        synchronized (multiDecompressor) {
+            byte[] buffer = multiBuffer;
 
-                if (!onClientMsgReceived(getPacketMsg(subData))) {
-                    break;
-                }
+            if (buffer != null && buffer.length >= size) {
+                // a multi nested in this one gets a buffer of its own
+                multiBuffer = null;
+                return buffer;
+            }
+        }
+
+        return new byte[size];
+    }
+
+    private void returnMultiBuffer(byte[] buffer) {
+        if (buffer.length > MAX_POOLED_MULTI_BUFFER) {
+            return;
+        }
+
+        synchronized (multiDecompressor) {
+            if (multiBuffer == null || multiBuffer.length < buffer.length) {
+                multiBuffer = buffer;
             }
-        } catch (IOException e) {
-            logger.error("error in handleMulti()", e);
         }
     }
 
@@ -464,6 +553,14 @@ public abstract class CMClient {
         return configuration.getServerList();
     }
 
+    /**
+     * @return the scheduler that paces the messages this client sends, with its queue delay metrics, or null if the
+     * configuration has no {@link SteamConfiguration#getSendRateLimits() send rate limits}.
+     */
+    public SendScheduler getSendScheduler() {
+        return sendScheduler;
+    }
+
     /**
      * Returns the local IP of this client.
      *
@@ -10,7 +10,6 @@ import `in`.dragonbra.javasteam.rpc.service.Authentication
 import `in`.dragonbra.javasteam.util.log.LogManager
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
-import kotlinx.coroutines.delay
 import kotlinx.coroutines.future.await
 import kotlinx.coroutines.future.future
 import kotlinx.coroutines.withContext
@@ -170,7 +169,7 @@ open class AuthSession(
     private suspend fun pollDeviceConfirmation(parentScope: CoroutineScope): AuthPollResult {
         while (true) {
             pollAuthSessionStatus(parentScope).await()?.let { return it }
-            delay(pollingInterval.toLong())
+            authentication.scheduler.delay(pollingInterval.toLong()).await()
         }
     }
 
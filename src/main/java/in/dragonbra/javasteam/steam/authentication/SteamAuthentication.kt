@@ -14,6 +14,7 @@ import `in`.dragonbra.javasteam.steam.handlers.steamunifiedmessages.SteamUnified
 import `in`.dragonbra.javasteam.steam.steamclient.SteamClient
 import `in`.dragonbra.javasteam.types.SteamID
 import `in`.dragonbra.javasteam.util.crypto.CryptoHelper
+import `in`.dragonbra.javasteam.util.event.TaskScheduler
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.future.future
 import java.math.BigInteger
@@ -35,6 +36,12 @@ class SteamAuthentication(private val steamClient: SteamClient) {
 
     internal val authenticationService: Authentication
 
+    /**
+     * The shared scheduler used to pace auth session polling.
+     */
+    internal val scheduler: TaskScheduler
+        get() = steamClient.configuration.runtime.scheduler
+
     init {
         val unifiedMessages = steamClient.getHandler(SteamUnifiedMessages::class.java)
             ?: throw NullPointerException("Unable to get SteamUnifiedMessages handler")
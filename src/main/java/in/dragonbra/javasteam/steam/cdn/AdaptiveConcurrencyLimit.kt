@@ -0,0 +1,136 @@
+package `in`.dragonbra.javasteam.steam.cdn
+
+import kotlin.math.max
+import kotlin.math.min
+
+/**
+ * Additive increase, multiplicative decrease limit on the requests in flight to one server, like the AIMD limit of
+ * Netflix's concurrency-limits and the congestion window of TCP.
+ *
+ * The limit shrinks by [backoffRatio] when a request times out or the server is overloaded, or when a request took
+ * more than [tolerance] times as long per byte as the fastest recent one. Adding requests to a link that is saturated
+ * makes every request slower without making the link faster, so the limit settles where the link is used fully.
+ * The limit shrinks at most once for the requests that were in flight together, they all saw the same congestion.
+ *
+ * While at least half of the limit is in use, every request that succeeds grows the limit by one until it shrinks
+ * for the first time, and by one per limit's worth of requests after that.
+ */
+internal class AdaptiveConcurrencyLimit(
+    initialLimit: Int = 4,
+    private val minLimit: Int = 1,
+    private val maxLimit: Int = 64,
+    private val backoffRatio: Double = 0.9,
+    private val tolerance: Double = 2.0,
+) {
+
+    companion object {
+        // the fastest time per byte is learned again after this many requests, in case the link got slower for good
+        private const val MIN_SAMPLE_WINDOW = 500
+    }
+
+    private var currentLimit = initialLimit.toDouble()
+
+    private var inFlightCount = 0
+
+    private var minNanosPerByte = Double.NaN
+
+    private var samples = 0
+
+    private var lastDecreaseNanos = System.nanoTime()
+
+    private var slowStart = true
+
+    init {
+        require(minLimit in 1..initialLimit && initialLimit <= maxLimit) { "initialLimit must be within the limits" }
+        require(backoffRatio > 0 && backoffRatio < 1) { "backoffRatio must be between 0 and 1" }
+        require(tolerance > 1) { "tolerance must be more than 1" }
+    }
+
+    /**
+     * The number of requests that may be in flight.
+     */
+    val limit: Int
+        @Synchronized get() = currentLimit.toInt()
+
+    /**
+     * The number of requests in flight.
+     */
+    val inFlight: Int
+        @Synchronized get() = inFlightCount
+
+    @Synchronized
+    fun hasCapacity(): Boolean = inFlightCount < currentLimit.toInt()
+
+    /**
+     * Takes a slot for a request.
+     * @return false if the limit is reached.
+     */
+    @Synchronized
+    fun tryAcquire(): Boolean {
+        if (inFlightCount >= currentLimit.toInt()) {
+            return false
+        }
+
+        inFlightCount++
+        return true
+    }
+
+    /**
+     * Takes a slot for a request even if the limit is reached, for when the limit isn't enforced.
+     */
+    @Synchronized
+    fun acquire() {
+        inFlightCount++
+    }
+
+    @Synchronized
+    fun release() {
+        if (inFlightCount > 0) {
+            inFlightCount--
+        }
+    }
+
+    /**
+     * Records a request that started at [startNanos] and downloaded [bytes] in [durationNanos].
+     */
+    @Synchronized
+    fun onSuccess(startNanos: Long, bytes: Int, durationNanos: Long) {
+        val nanosPerByte = durationNanos.toDouble() / max(bytes, 1)
+
+        if (++samples >= MIN_SAMPLE_WINDOW) {
+            samples = 0
+            minNanosPerByte = Double.NaN
+        }
+
+        if (minNanosPerByte.isNaN() || nanosPerByte < minNanosPerByte) {
+            minNanosPerByte = nanosPerByte
+        }
+
+        if (nanosPerByte > minNanosPerByte * tolerance) {
+            decrease(startNanos)
+        } else if (inFlightCount * 2 >= currentLimit) {
+            val increase = if (slowStart) 1.0 else 1.0 / currentLimit
+            currentLimit = min(currentLimit + increase, maxLimit.toDouble())
+        }
+    }
+
+    /**
+     * Records a request that started at [startNanos] and timed out or was turned away by an overloaded server.
+     */
+    @Synchronized
+    fun onDropped(startNanos: Long) {
+        decrease(startNanos)
+    }
+
+    private fun decrease(startNanos: Long) {
+        if (startNanos - lastDecreaseNanos <= 0) {
+            return
+        }
+
+        lastDecreaseNanos = System.nanoTime()
+        slowStart = false
+        currentLimit = max(currentLimit * backoffRatio, minLimit.toDouble())
+    }
+
+    override fun toString(): String = "$inFlight/$limit"
+}
@@ -1,12 +1,15 @@
 package `in`.dragonbra.javasteam.steam.cdn
 
+import `in`.dragonbra.javasteam.steam.contentdownloader.IChunkCache
 import `in`.dragonbra.javasteam.steam.handlers.steamcontent.SteamContent
 import `in`.dragonbra.javasteam.steam.steamclient.SteamClient
 import `in`.dragonbra.javasteam.types.ChunkData
 import `in`.dragonbra.javasteam.types.DepotManifest
+import `in`.dragonbra.javasteam.util.ByteArrayPool
 import `in`.dragonbra.javasteam.util.SteamKitWebRequestException
 import `in`.dragonbra.javasteam.util.Strings
 import `in`.dragonbra.javasteam.util.compat.readNBytesCompat
+import `in`.dragonbra.javasteam.util.crypto.SymmetricCiphers
 import `in`.dragonbra.javasteam.util.log.LogManager
 import `in`.dragonbra.javasteam.util.log.Logger
 import `in`.dragonbra.javasteam.util.stream.MemoryStream
@@ -34,6 +37,10 @@ class Client(steamClient: SteamClient) : Closeable {
 
     private val httpClient: OkHttpClient = steamClient.configuration.httpClient
 
+    private val chunkCache: IChunkCache? = steamClient.configuration.chunkCache
+
+    private val cipherProvider: SymmetricCiphers.Provider = steamClient.configuration.cipherProvider
+
     private val defaultScope = CoroutineScope(Dispatchers.IO)
 
     companion object {
@@ -180,7 +187,7 @@ class Client(steamClient: SteamClient) : Closeable {
 
             depotKey?.let { key ->
                 // if we have the depot key, decrypt the manifest filenames
-                depotManifest.decryptFilenames(key)
+                depotManifest.decryptFilenames(key, cipherProvider)
             }
 
             depotManifest
@@ -229,6 +236,8 @@ class Client(steamClient: SteamClient) : Closeable {
      * Downloads the specified depot chunk, and optionally processes the chunk and verifies the checksum if the depot decryption key has been provided.
      * This function will also validate the length of the downloaded chunk with the value of [ChunkData.compressedLength],
      * if it has been assigned a value.
+     * If the depot decryption key has been provided, the chunk is read from the configured chunk cache when it has it,
+     * and processed chunks are added to the cache.
      * @param depotId The id of the depot being accessed.
      * @param chunk A [ChunkData] instance that represents the chunk to download.
      * This value should come from a manifest downloaded with [downloadManifest].
@@ -252,6 +261,20 @@ class Client(steamClient: SteamClient) : Closeable {
         depotKey: ByteArray? = null,
         proxyServer: Server? = null,
         cdnAuthToken: String? = null,
+    ): Int = downloadDepotChunk(depotId, chunk, server, destination, depotKey, proxyServer, cdnAuthToken, null)
+
+    /**
+     * [downloadDepotChunk] that calls [onResponse] once the response headers arrived, to time the request.
+     */
+    internal suspend fun downloadDepotChunk(
+        depotId: Int,
+        chunk: ChunkData,
+        server: Server,
+        destination: ByteArray,
+        depotKey: ByteArray?,
+        proxyServer: Server?,
+        cdnAuthToken: String?,
+        onResponse: (() -> Unit)?,
     ): Int {
         require(chunk.chunkID != null) { "Chunk must have a ChunkID." }
 
@@ -263,6 +286,11 @@ class Client(steamClient: SteamClient) : Closeable {
             if (destination.size < chunk.uncompressedLength) {
                 throw IllegalArgumentException("The destination buffer must be longer than the chunk UncompressedLength.")
             }
+
+            val cachedLength = chunkCache?.fetchChunk(chunk, destination) ?: -1
+            if (cachedLength >= 0) {
+                return cachedLength
+            }
         }
 
         val chunkID = Strings.toHex(chunk.chunkID)
@@ -277,6 +305,8 @@ class Client(steamClient: SteamClient) : Closeable {
         withTimeout(requestTimeout) {
             httpClient.newCall(request).execute()
         }.use { response ->
+            onResponse?.invoke()
+
             if (!response.isSuccessful) {
                 throw SteamKitWebRequestException(
                     "Response status code does not indicate success: ${response.code} (${response.message})",
@@ -320,7 +350,8 @@ class Client(steamClient: SteamClient) : Closeable {
             }
 
             // We have to stream into a temporary buffer because a decryption will need to be performed
-            val buffer = ByteArray(contentLength)
+            val pool = ByteArrayPool.getShared()
+            val buffer = pool.rent(contentLength)
 
             try {
                 val bytesRead = withTimeout(responseBodyTimeout) {
@@ -334,10 +365,16 @@ class Client(steamClient: SteamClient) : Closeable {
                 }
 
                 // process the chunk immediately
-                return DepotChunk.process(chunk, buffer, destination, depotKey)
+                val writtenLength =
+                    DepotChunk.process(chunk, buffer, contentLength, destination, depotKey, cipherProvider)
+                chunkCache?.storeChunk(chunk, destination, writtenLength)
+
+                return writtenLength
             } catch (ex: Exception) {
                 logger.error("Failed to download a depot chunk ${request.url}", ex)
                 throw ex
+            } finally {
+                pool.release(buffer)
             }
         }
     }
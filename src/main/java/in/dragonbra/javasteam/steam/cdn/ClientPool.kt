@@ -9,21 +9,98 @@ import kotlinx.coroutines.Deferred
 import kotlinx.coroutines.Job
 import kotlinx.coroutines.async
 import kotlinx.coroutines.cancel
-import kotlinx.coroutines.delay
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.currentCoroutineContext
 import kotlinx.coroutines.isActive
 import kotlinx.coroutines.launch
-import java.util.concurrent.ConcurrentLinkedDeque
-import java.util.concurrent.ConcurrentLinkedQueue
-import java.util.concurrent.CountDownLatch
-import java.util.concurrent.TimeUnit
+import kotlinx.coroutines.withTimeoutOrNull
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ThreadLocalRandom
+import java.util.concurrent.atomic.AtomicBoolean
+import kotlin.math.abs
 
 /**
  * [ClientPool] provides a pool of connections to CDN endpoints, requesting CDN tokens as needed
+ *
+ * Servers are picked at random, weighted by their [ServerStats.score], so the servers that turned out fast get most
+ * requests while the others still get some. Servers that weren't used yet are weighted like the best server, so every
+ * server gets tried. A server whose request failed is backed off for a while instead of being dropped.
+ *
+ * Every server has its own limit on the requests in flight, see [ServerStats.concurrencyLimit]. It grows while the
+ * server keeps up and shrinks when requests time out, the server is overloaded or responses slow down.
  */
 class ClientPool(internal val steamClient: SteamClient, private val appId: Int, private val parentScope: CoroutineScope) {
 
+    /**
+     * Creates a pool that is shared by the downloads of several apps. It only uses the servers that serve every app.
+     */
+    constructor(steamClient: SteamClient, parentScope: CoroutineScope) : this(steamClient, ANY_APP, parentScope)
+
     companion object {
         private const val SERVER_ENDPOINT_MIN_SIZE = 8
+
+        private const val ANY_APP = -1
+
+        // how long to wait before fetching the server list again, when no server is usable and when only a few are
+        private const val EMPTY_REFRESH_MILLIS = 5_000L
+
+        private const val REFRESH_MILLIS = 60_000L
+
+        // requests are hedged once this many were timed
+        private const val MIN_HEDGE_SAMPLES = 20
+
+        private const val MIN_HEDGE_DELAY_MILLIS = 250L
+
+        private fun keyOf(server: Server): String = "${server.host}:${server.port}/${server.vHost}"
+
+        /**
+         * Picks a server at random, weighted by score. Servers without a score are weighted like the best one.
+         * @param random a number from 0 until 1.
+         */
+        internal fun pickWeighted(candidates: List<ServerStats>, random: Double): Server? {
+            if (candidates.isEmpty()) {
+                return null
+            }
+
+            val scores = candidates.map { it.score }
+            val best = scores.filter { !it.isNaN() }.maxOrNull() ?: 1.0
+            val weights = scores.map { if (it.isNaN()) best else it }
+
+            var target = random * weights.sum()
+
+            for (i in candidates.indices) {
+                target -= weights[i]
+
+                if (target < 0) {
+                    return candidates[i].server
+                }
+            }
+
+            return candidates.last().server
+        }
+
+        /**
+         * Starts a request on a server taken from a pool in [scope]. If the request is cancelled before [block] ran,
+         * [release] hands the server back, otherwise [block] has to.
+         */
+        internal fun <T> startRequest(
+            scope: CoroutineScope,
+            release: () -> Unit,
+            block: suspend () -> T,
+        ): Deferred<T> {
+            val started = AtomicBoolean()
+
+            return scope.async {
+                started.set(true)
+                block()
+            }.also { request ->
+                request.invokeOnCompletion {
+                    if (!started.get()) {
+                        release()
+                    }
+                }
+            }
+        }
     }
 
     val cdnClient: Client = Client(steamClient)
@@ -31,11 +108,40 @@ class ClientPool(internal val steamClient: SteamClient, private val appId: Int,
     var proxyServer: Server? = null
         private set
 
-    private val activeConnectionPool = ConcurrentLinkedDeque<Server>()
+    /**
+     * Whether a chunk request that takes much longer than usual is sent to a second server as well, the response that
+     * arrives first is used.
+     */
+    @Volatile
+    var hedgeRequests: Boolean = true
+
+    /**
+     * Whether the requests in flight to every server are limited by how the server responds. When false there is
+     * no limit per server.
+     */
+    @Volatile
+    var adaptiveConcurrency: Boolean = true
+
+    // what was learned about every server, kept when the server list is fetched again
+    private val stats = ConcurrentHashMap<String, ServerStats>()
+
+    // the servers of the last server list
+    @Volatile
+    private var servers: List<ServerStats> = emptyList()
+
+    private val populatePoolEvent = Channel<Unit>(Channel.CONFLATED)
+
+    // signalled when a request ends, so a request waiting for a server below its limit can go on
+    private val capacityEvent = Channel<Unit>(Channel.CONFLATED)
 
-    private val availableServerEndpoints = ConcurrentLinkedQueue<Server>()
+    // the average and deviation of the request durations, like the TCP retransmission timer
+    private val durationLock = Any()
 
-    private val populatePoolEvent = CountDownLatch(1)
+    private var durationSamples = 0
+
+    private var averageDurationMillis = 0.0
+
+    private var durationDeviationMillis = 0.0
 
     private val monitorJob: Job
 
@@ -45,6 +151,12 @@ class ClientPool(internal val steamClient: SteamClient, private val appId: Int,
         monitorJob = parentScope.launch { connectionPoolMonitor().await() }
     }
 
+    /**
+     * What was learned about the servers of the last server list, best first.
+     */
+    val serverStats: List<ServerStats>
+        get() = servers.sortedByDescending { it.score.takeUnless(Double::isNaN) ?: -1.0 }
+
     fun shutdown() {
         monitorJob.cancel()
     }
@@ -59,38 +171,51 @@ class ClientPool(internal val steamClient: SteamClient, private val appId: Int,
         }
     }
 
+    private fun usableServerCount(): Int {
+        val now = System.nanoTime()
+        return servers.count { !it.isBackedOff(now) }
+    }
+
     private fun connectionPoolMonitor() = parentScope.async {
         var didPopulate = false
+        var lastPopulateMillis = 0L
 
         while (isActive) {
-            populatePoolEvent.await(1, TimeUnit.SECONDS)
+            withTimeoutOrNull(1000) { populatePoolEvent.receive() }
+
+            val usable = usableServerCount()
+            val sincePopulate = System.currentTimeMillis() - lastPopulateMillis
+            val needsServers = !didPopulate ||
+                (usable == 0 && sincePopulate >= EMPTY_REFRESH_MILLIS) ||
+                (usable < SERVER_ENDPOINT_MIN_SIZE && sincePopulate >= REFRESH_MILLIS)
 
-            if (availableServerEndpoints.size < SERVER_ENDPOINT_MIN_SIZE && steamClient.isConnected) {
-                val servers = fetchBootstrapServerList().await()
+            if (needsServers && steamClient.isConnected) {
+                val fetchedServers = fetchBootstrapServerList().await()
 
-                if (servers.isNullOrEmpty()) {
+                if (fetchedServers.isNullOrEmpty()) {
                     logger.error("Servers is empty or null, exiting connection pool monitor")
                     parentScope.cancel()
                     return@async
                 }
 
-                proxyServer = servers.find { it.useAsProxy }
+                proxyServer = fetchedServers.find { it.useAsProxy }
 
-                val weightedCdnServers = servers
+                servers = fetchedServers
                     .filter { server ->
-                        val isEligibleForApp = server.allowedAppIds.isEmpty() || appId in server.allowedAppIds
+                        val isEligibleForApp = server.allowedAppIds.isEmpty() ||
+                            (appId != ANY_APP && appId in server.allowedAppIds)
                         isEligibleForApp && (server.type == "SteamCache" || server.type == "CDN")
                     }
                     .sortedBy { it.weightedLoad }
-
-                for (server in weightedCdnServers) {
-                    repeat(server.numEntries) {
-                        availableServerEndpoints.offer(server)
+                    .map { server ->
+                        stats.compute(keyOf(server)) { _, existing ->
+                            existing?.also { it.server = server } ?: ServerStats(server)
+                        }!!
                     }
-                }
 
+                lastPopulateMillis = System.currentTimeMillis()
                 didPopulate = true
-            } else if (availableServerEndpoints.isEmpty() && !steamClient.isConnected && didPopulate) {
+            } else if (usable == 0 && !steamClient.isConnected && didPopulate) {
                 logger.error("Available server endpoints is empty and steam is not connected, exiting connection pool monitor")
 
                 parentScope.cancel()
@@ -100,30 +225,39 @@ class ClientPool(internal val steamClient: SteamClient, private val appId: Int,
         }
     }
 
-    private fun buildConnection(): Deferred<Server?> = parentScope.async {
-        return@async try {
-            if (availableServerEndpoints.size < SERVER_ENDPOINT_MIN_SIZE) {
-                populatePoolEvent.countDown()
+    /**
+     * Picks a server that isn't backed off and is below its limit, and takes a slot of its limit.
+     */
+    private fun acquireServer(exclude: Server? = null): Server? {
+        val excludeKey = exclude?.let { keyOf(it) }
+
+        while (true) {
+            val now = System.nanoTime()
+            val adaptive = adaptiveConcurrency
+            val candidates = servers.filter { stats ->
+                !stats.isBackedOff(now) &&
+                    (!adaptive || stats.concurrency.hasCapacity()) &&
+                    keyOf(stats.server) != excludeKey
             }
 
-            var output: Server? = null
+            val server = pickWeighted(candidates, ThreadLocalRandom.current().nextDouble()) ?: return null
+            val concurrency = stats[keyOf(server)]!!.concurrency
 
-            while (isActive && availableServerEndpoints.poll().also { output = it } == null) {
-                delay(1000)
+            if (!adaptive) {
+                concurrency.acquire()
+                return server
             }
 
-            output
-        } catch (e: Exception) {
-            logger.error("Failed to build connection", e)
-
-            null
+            // otherwise another request took the last slot in the meantime
+            if (concurrency.tryAcquire()) {
+                return server
+            }
         }
     }
 
     internal fun getConnection(): Deferred<Server?> = parentScope.async {
         return@async try {
-            val server = activeConnectionPool.poll() ?: buildConnection().await()
-            server
+            acquireConnection()
         } catch (e: Exception) {
             logger.error("Failed to get/build connection", e)
 
@@ -131,12 +265,113 @@ class ClientPool(internal val steamClient: SteamClient, private val appId: Int,
         }
     }
 
+    /**
+     * Waits for a server that can take another request. Every server it returns has to be handed back with
+     * [returnConnection], [returnBrokenConnection] or [releaseConnection].
+     */
+    internal suspend fun acquireConnection(): Server? {
+        if (usableServerCount() < SERVER_ENDPOINT_MIN_SIZE) {
+            populatePoolEvent.trySend(Unit)
+        }
+
+        var server = acquireServer()
+
+        while (currentCoroutineContext().isActive && server == null) {
+            withTimeoutOrNull(1000) { capacityEvent.receive() }
+            server = acquireServer()
+        }
+
+        return server
+    }
+
+    /**
+     * Picks another server than [primary] to send a hedged request to.
+     * @return the server, or null if there is no other server that can take the request.
+     */
+    internal fun getHedgeConnection(primary: Server): Server? = acquireServer(exclude = primary)
+
+    /**
+     * Gets the time after which a chunk request is hedged, a bit over what almost all requests take.
+     * @return the time in milliseconds, or null if requests aren't hedged.
+     */
+    internal fun hedgeDelayMillis(): Long? {
+        if (!hedgeRequests) {
+            return null
+        }
+
+        synchronized(durationLock) {
+            if (durationSamples < MIN_HEDGE_SAMPLES) {
+                return null
+            }
+
+            return maxOf(MIN_HEDGE_DELAY_MILLIS, (averageDurationMillis + 4 * durationDeviationMillis).toLong())
+        }
+    }
+
+    /**
+     * Records a download of [bytes] from [server] that took [totalNanos], of which [firstByteNanos] until the
+     * response headers.
+     */
+    internal fun recordTransfer(server: Server, bytes: Int, firstByteNanos: Long, totalNanos: Long) {
+        stats[keyOf(server)]?.let { serverStats ->
+            serverStats.recordTransfer(bytes, firstByteNanos, totalNanos)
+            serverStats.concurrency.onSuccess(System.nanoTime() - totalNanos, bytes, totalNanos)
+        }
+
+        val durationMillis = totalNanos / 1e6
+
+        synchronized(durationLock) {
+            if (durationSamples == 0) {
+                averageDurationMillis = durationMillis
+                durationDeviationMillis = durationMillis / 2
+            } else {
+                durationDeviationMillis += (abs(averageDurationMillis - durationMillis) - durationDeviationMillis) / 4
+                averageDurationMillis += (durationMillis - averageDurationMillis) / 8
+            }
+
+            durationSamples++
+        }
+    }
+
     internal fun returnConnection(server: Server?) {
-        server?.let { activeConnectionPool.push(it) }
+        val serverStats = server?.let { stats[keyOf(it)] } ?: return
+
+        serverStats.recordSuccess()
+        release(serverStats)
+    }
+
+    /**
+     * Hands back a server whose request failed.
+     * @param overloaded whether the request timed out or the server was overloaded, which lowers its limit.
+     * @param requestStartNanos when the request started, the limit is only lowered once for concurrent requests.
+     */
+    internal fun returnBrokenConnection(
+        server: Server?,
+        overloaded: Boolean = true,
+        requestStartNanos: Long = System.nanoTime(),
+    ) {
+        val serverStats = server?.let { stats[keyOf(it)] } ?: return
+
+        // Broken connections are backed off, and used again once they were left alone long enough
+        serverStats.recordFailure()
+        logger.debug("Backing off $server after ${serverStats.consecutiveFailures} failures in a row")
+
+        if (overloaded) {
+            serverStats.concurrency.onDropped(requestStartNanos)
+        }
+
+        release(serverStats)
+    }
+
+    /**
+     * Hands back a server whose request was cancelled, without counting it as a success or a failure.
+     */
+    internal fun releaseConnection(server: Server?) {
+        server?.let { stats[keyOf(it)] }?.let { release(it) }
     }
 
-    @Suppress("unused")
-    internal fun returnBrokenConnection(server: Server?) {
-        // Broken connections are not returned to the pool
+    private fun release(serverStats: ServerStats) {
+        serverStats.concurrency.release()
+        capacityEvent.trySend(Unit)
     }
 }
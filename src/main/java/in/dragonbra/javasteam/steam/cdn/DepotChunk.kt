@@ -1,11 +1,12 @@
 package `in`.dragonbra.javasteam.steam.cdn
 
 import `in`.dragonbra.javasteam.types.ChunkData
+import `in`.dragonbra.javasteam.util.ByteArrayPool
 import `in`.dragonbra.javasteam.util.Strings
 import `in`.dragonbra.javasteam.util.Utils
 import `in`.dragonbra.javasteam.util.VZipUtil
 import `in`.dragonbra.javasteam.util.ZipUtil
-import `in`.dragonbra.javasteam.util.crypto.CryptoHelper
+import `in`.dragonbra.javasteam.util.crypto.SymmetricCiphers
 import `in`.dragonbra.javasteam.util.stream.MemoryStream
 import java.io.IOException
 import javax.crypto.Cipher
@@ -24,15 +25,42 @@ object DepotChunk {
      * @param data The encrypted chunk data.
      * @param destination The buffer to receive the decrypted chunk data.
      * @param depotKey The depot decryption key.
+     * @param cipherProvider The JCA provider of the AES ciphers.
      * @exception IOException Thrown if the processed data does not match the expected checksum given in its chunk information.
      * @exception IllegalArgumentException Thrown if the destination size is too small or the depot key is not 32 bytes long
      */
+    @JvmOverloads
     fun process(
         info: ChunkData,
         data: ByteArray,
         destination: ByteArray,
         depotKey: ByteArray,
+        cipherProvider: SymmetricCiphers.Provider = SymmetricCiphers.Provider.DEFAULT,
+    ): Int = process(info, data, data.size, destination, depotKey, cipherProvider)
+
+    /**
+     * Processes the specified depot key by decrypting the data with the given depot encryption key, and then by decompressing the data.
+     * The decrypted data is kept in a buffer from [ByteArrayPool.getShared].
+     * @param info The depot chunk data representing.
+     * @param data The buffer holding the encrypted chunk data, starting at its beginning.
+     * @param dataLength The length of the encrypted chunk data in [data].
+     * @param destination The buffer to receive the decrypted chunk data.
+     * @param depotKey The depot decryption key.
+     * @param cipherProvider The JCA provider of the AES ciphers.
+     * @exception IOException Thrown if the processed data does not match the expected checksum given in its chunk information.
+     * @exception IllegalArgumentException Thrown if the destination size is too small or the depot key is not 32 bytes long
+     */
+    @JvmOverloads
+    fun process(
+        info: ChunkData,
+        data: ByteArray,
+        dataLength: Int,
+        destination: ByteArray,
+        depotKey: ByteArray,
+        cipherProvider: SymmetricCiphers.Provider = SymmetricCiphers.Provider.DEFAULT,
     ): Int {
+        require(dataLength in 0..data.size) { "The data length is outside of the data buffer." }
+
         require(destination.size >= info.uncompressedLength) {
             "The destination buffer must be longer than the chunk ${ChunkData::uncompressedLength.name}."
         }
@@ -41,7 +69,7 @@ object DepotChunk {
 
         // first 16 bytes of input is the ECB encrypted IV
         val keySpec = SecretKeySpec(depotKey, "AES")
-        val ecbCipher = Cipher.getInstance("AES/ECB/NoPadding", CryptoHelper.SEC_PROV)
+        val ecbCipher = SymmetricCiphers.ecb(cipherProvider)
         ecbCipher.init(Cipher.DECRYPT_MODE, keySpec)
 
         val iv = ByteArray(16)
@@ -50,16 +78,17 @@ object DepotChunk {
         require(iv.size == ivBytesRead) { "Failed to decrypt depot chunk iv (${iv.size} != $ivBytesRead)" }
 
         // With CBC and padding, the decrypted size will always be smaller
-        val buffer = ByteArray(data.size - iv.size)
-        val cbcCipher = Cipher.getInstance("AES/CBC/PKCS7Padding", CryptoHelper.SEC_PROV)
+        val pool = ByteArrayPool.getShared()
+        val buffer = pool.rent(dataLength - iv.size)
+        val cbcCipher = SymmetricCiphers.cbc(cipherProvider)
         cbcCipher.init(Cipher.DECRYPT_MODE, keySpec, IvParameterSpec(iv))
 
         val writtenDecompressed: Int
 
         try {
-            val bytesWrittenToBuffer = cbcCipher.doFinal(data, iv.size, data.size - iv.size, buffer)
+            val bytesWrittenToBuffer = cbcCipher.doFinal(data, iv.size, dataLength - iv.size, buffer)
 
-            writtenDecompressed = if (buffer.size > 1 && buffer[0] == 'V'.code.toByte() && buffer[1] == 'Z'.code.toByte()) {
+            writtenDecompressed = if (bytesWrittenToBuffer > 1 && buffer[0] == 'V'.code.toByte() && buffer[1] == 'Z'.code.toByte()) {
                 MemoryStream(buffer, 0, bytesWrittenToBuffer).use { ms ->
                     VZipUtil.decompress(ms, destination, verifyChecksum = false)
                 }
@@ -70,13 +99,15 @@ object DepotChunk {
             }
         } catch (e: Exception) {
             throw IOException("Failed to decompress chunk ${Strings.toHex(info.chunkID)}: $e\n${e.stackTraceToString()}")
+        } finally {
+            pool.release(buffer)
         }
 
         if (info.uncompressedLength != writtenDecompressed) {
             throw IOException("Processed data checksum failed to decompress to the expected chunk uncompressed length. (was $writtenDecompressed, should be ${info.uncompressedLength})")
         }
 
-        val dataCrc = Utils.adlerHash(destination.sliceArray(0 until writtenDecompressed))
+        val dataCrc = Utils.adlerHash(destination, 0, writtenDecompressed)
 
         if (dataCrc != info.checksum) {
             throw IOException("Processed data checksum is incorrect ($dataCrc != ${info.checksum})! Downloaded depot chunk is corrupt or invalid/wrong depot key?")
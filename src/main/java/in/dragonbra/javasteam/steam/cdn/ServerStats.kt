@@ -0,0 +1,165 @@
+package `in`.dragonbra.javasteam.steam.cdn
+
+import java.util.concurrent.ThreadLocalRandom
+import kotlin.math.min
+
+/**
+ * What a [ClientPool] learned about a content server from the requests made to it.
+ *
+ * Throughput, time to first byte and error rate are exponentially weighted moving averages, so recent requests count
+ * the most. A server that fails is backed off for a time that doubles with every failure in a row, and is used again
+ * once the time is up.
+ */
+@Suppress("MemberVisibilityCanBePrivate")
+class ServerStats internal constructor(server: Server) {
+
+    companion object {
+        private const val THROUGHPUT_WEIGHT = 0.2
+
+        private const val ERROR_WEIGHT = 0.1
+
+        // the score is the rate a chunk of this size is downloaded at, including the time to first byte
+        private const val REFERENCE_CHUNK_SIZE = 1024.0 * 1024.0
+
+        private const val MIN_BACKOFF_NANOS = 1_000_000_000L
+
+        private const val MAX_BACKOFF_NANOS = 120_000_000_000L
+    }
+
+    /**
+     * The server, the last one the directory returned for this host.
+     */
+    @Volatile
+    var server: Server = server
+        internal set
+
+    /**
+     * The number of requests that succeeded.
+     */
+    var successes: Long = 0
+        @Synchronized get
+        private set
+
+    /**
+     * The number of requests that failed.
+     */
+    var failures: Long = 0
+        @Synchronized get
+        private set
+
+    /**
+     * The number of requests that failed since the last one that succeeded.
+     */
+    var consecutiveFailures: Int = 0
+        @Synchronized get
+        private set
+
+    /**
+     * The average rate the response bodies were received at, in bytes per second, or NaN before the first download.
+     */
+    var bytesPerSecond: Double = Double.NaN
+        @Synchronized get
+        private set
+
+    /**
+     * The average time until the response headers arrived, in milliseconds, or NaN before the first download.
+     */
+    var timeToFirstByteMillis: Double = Double.NaN
+        @Synchronized get
+        private set
+
+    /**
+     * The average share of the requests that failed, from 0 to 1.
+     */
+    var errorRate: Double = 0.0
+        @Synchronized get
+        private set
+
+    private var backoffUntilNanos = 0L
+
+    internal val concurrency = AdaptiveConcurrencyLimit()
+
+    /**
+     * The number of requests that may be in flight to this server at the same time, it adapts to how the server
+     * responds.
+     */
+    val concurrencyLimit: Int
+        get() = concurrency.limit
+
+    /**
+     * The number of requests in flight to this server.
+     */
+    val inFlight: Int
+        get() = concurrency.inFlight
+
+    /**
+     * Whether this server isn't used until it's backed off long enough.
+     */
+    val isBackedOff: Boolean
+        get() = isBackedOff(System.nanoTime())
+
+    /**
+     * How much this server is preferred, higher is better, or NaN before the first download. It's the rate in bytes per
+     * second a 1 MiB chunk is downloaded at, scaled by the share of requests that succeed.
+     */
+    val score: Double
+        @Synchronized get() {
+            if (bytesPerSecond.isNaN()) {
+                return Double.NaN
+            }
+
+            val seconds = timeToFirstByteMillis / 1000 + REFERENCE_CHUNK_SIZE / bytesPerSecond
+            return (1 - errorRate) * REFERENCE_CHUNK_SIZE / seconds
+        }
+
+    @Synchronized
+    internal fun isBackedOff(nowNanos: Long): Boolean = nowNanos - backoffUntilNanos < 0
+
+    /**
+     * Records a download of [bytes] that took [totalNanos], of which [firstByteNanos] until the response headers.
+     */
+    @Synchronized
+    internal fun recordTransfer(bytes: Int, firstByteNanos: Long, totalNanos: Long) {
+        // the body of a small response may arrive in no measurable time
+        val bodySeconds = maxOf(totalNanos - firstByteNanos, 1_000_000) / 1e9
+        val rate = bytes / bodySeconds
+        val firstByteMillis = firstByteNanos / 1e6
+
+        bytesPerSecond = average(bytesPerSecond, rate, THROUGHPUT_WEIGHT)
+        timeToFirstByteMillis = average(timeToFirstByteMillis, firstByteMillis, THROUGHPUT_WEIGHT)
+    }
+
+    @Synchronized
+    internal fun recordSuccess() {
+        successes++
+        consecutiveFailures = 0
+        backoffUntilNanos = 0
+        errorRate = average(errorRate, 0.0, ERROR_WEIGHT)
+    }
+
+    @Synchronized
+    internal fun recordFailure(nowNanos: Long = System.nanoTime()) {
+        failures++
+        consecutiveFailures++
+        errorRate = average(errorRate, 1.0, ERROR_WEIGHT)
+
+        // 1, 2, 4, ... seconds up to two minutes, spread so servers that failed together don't come back together
+        val backoff = min(MIN_BACKOFF_NANOS shl min(consecutiveFailures - 1, 7), MAX_BACKOFF_NANOS)
+        val jitter = ThreadLocalRandom.current().nextDouble(0.75, 1.25)
+        backoffUntilNanos = nowNanos + (backoff * jitter).toLong()
+    }
+
+    private fun average(current: Double, sample: Double, weight: Double): Double =
+        if (current.isNaN()) sample else current + weight * (sample - current)
+
+    override fun toString(): String =
+        "$server: %.2f MB/s, %.0f ms to first byte, %.0f%% errors, %d ok, %d failed, %s in flight%s".format(
+            bytesPerSecond / 1_000_000,
+            timeToFirstByteMillis,
+            errorRate * 100,
+            successes,
+            failures,
+            concurrency,
+            if (isBackedOff) ", backed off" else ""
+        )
+}
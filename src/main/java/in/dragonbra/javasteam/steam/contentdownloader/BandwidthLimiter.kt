@@ -0,0 +1,82 @@
+package `in`.dragonbra.javasteam.steam.contentdownloader
+
+import kotlinx.coroutines.delay
+import kotlin.math.min
+
+/**
+ * Token bucket that keeps downloads under [bytesPerSecond]. The bucket holds at most one second of traffic, so after
+ * a pause downloads may burst for up to a second before they're slowed down.
+ *
+ * Every request takes its bytes out of the bucket right away and waits until the bucket is no longer in debt. That
+ * lets requests larger than the bucket through, and serves concurrent requests in the order they came in.
+ *
+ * @constructor Instantiates a [BandwidthLimiter] object.
+ * @param bytesPerSecond the rate to keep downloads under, 0 or less for no limit.
+ */
+class BandwidthLimiter(bytesPerSecond: Long) {
+
+    private val lock = Any()
+
+    private var tokens = 0.0
+
+    private var lastRefillNanos = System.nanoTime()
+
+    /**
+     * The rate to keep downloads under, in bytes per second. 0 or less for no limit. It may be changed at any time.
+     */
+    @Volatile
+    var bytesPerSecond: Long = bytesPerSecond
+        set(value) {
+            synchronized(lock) {
+                refill(System.nanoTime())
+                field = value
+                tokens = min(tokens, value.toDouble())
+            }
+        }
+
+    init {
+        tokens = bytesPerSecond.toDouble()
+    }
+
+    /**
+     * Suspends until [bytes] may be downloaded.
+     */
+    suspend fun acquire(bytes: Long) {
+        val waitNanos = reserve(bytes, System.nanoTime())
+
+        if (waitNanos > 0) {
+            delay((waitNanos + 999_999) / 1_000_000)
+        }
+    }
+
+    /**
+     * Takes [bytes] out of the bucket.
+     * @return the time in nanoseconds the caller has to wait before it may download them.
+     */
+    internal fun reserve(bytes: Long, nowNanos: Long): Long {
+        synchronized(lock) {
+            val rate = bytesPerSecond
+            if (rate <= 0) {
+                return 0
+            }
+
+            refill(nowNanos)
+            tokens -= bytes
+
+            return if (tokens >= 0) 0 else (-tokens * 1_000_000_000 / rate).toLong()
+        }
+    }
+
+    private fun refill(nowNanos: Long) {
+        val rate = bytesPerSecond
+        val elapsed = nowNanos - lastRefillNanos
+
+        if (elapsed > 0) {
+            lastRefillNanos = nowNanos
+
+            if (rate > 0) {
+                tokens = min(rate.toDouble(), tokens + elapsed * rate / 1e9)
+            }
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package `in`.dragonbra.javasteam.steam.contentdownloader
+
+/**
+ * Wraps a chunk ID so it can be used as a hash map key. Chunk IDs are SHA-1 hashes, so their first bytes are
+ * already a good hash code.
+ */
+internal class ChunkKey(val id: ByteArray) {
+
+    private val hash = if (id.size >= 4) {
+        (id[0].toInt() and 0xFF) or
+            (id[1].toInt() and 0xFF shl 8) or
+            (id[2].toInt() and 0xFF shl 16) or
+            (id[3].toInt() shl 24)
+    } else {
+        id.contentHashCode()
+    }
+
+    override fun equals(other: Any?): Boolean = other is ChunkKey && id.contentEquals(other.id)
+
+    override fun hashCode(): Int = hash
+}
@@ -0,0 +1,80 @@
+package `in`.dragonbra.javasteam.steam.contentdownloader
+
+import `in`.dragonbra.javasteam.types.ChunkData
+import `in`.dragonbra.javasteam.util.ByteArrayPool
+import `in`.dragonbra.javasteam.util.Utils
+import java.io.IOException
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.Paths
+import java.nio.file.StandardOpenOption
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Remembers where chunks of an app were written, so depots that share chunks with an earlier depot copy them from
+ * disk instead of downloading them again. A copy is only used if its checksum still matches.
+ *
+ * Chunks are kept per app, so apps downloaded at the same time don't see each other's chunks. Only the [maxApps]
+ * apps used last are kept, with at most [maxEntries] chunks each.
+ */
+internal class ChunkLocationIndex(
+    private val maxEntries: Int = 1 shl 18,
+    private val maxApps: Int = 4,
+) {
+
+    private class Location(val path: String, val offset: Long)
+
+    private val apps = object : LinkedHashMap<Int, ConcurrentHashMap<ChunkKey, Location>>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<Int, ConcurrentHashMap<ChunkKey, Location>>) =
+            size > maxApps
+    }
+
+    private fun locationsOf(appId: Int): ConcurrentHashMap<ChunkKey, Location> = synchronized(apps) {
+        apps.getOrPut(appId) { ConcurrentHashMap() }
+    }
+
+    fun add(appId: Int, chunk: ChunkData, path: String) {
+        val chunkID = chunk.chunkID ?: return
+        val locations = locationsOf(appId)
+
+        if (locations.size < maxEntries) {
+            locations.putIfAbsent(ChunkKey(chunkID), Location(path, chunk.offset))
+        }
+    }
+
+    /**
+     * Reads an uncompressed chunk of an app from where it was written before into a pooled buffer.
+     * @return the chunk, or null if it wasn't written before or has changed since.
+     */
+    fun read(appId: Int, chunk: ChunkData): ChunkBuffer? {
+        val key = ChunkKey(chunk.chunkID ?: return null)
+        val locations = locationsOf(appId)
+        val location = locations[key] ?: return null
+
+        val pool = ByteArrayPool.getShared()
+        val data = pool.rent(chunk.uncompressedLength)
+
+        try {
+            val buffer = ByteBuffer.wrap(data, 0, chunk.uncompressedLength)
+
+            FileChannel.open(Paths.get(location.path), StandardOpenOption.READ).use { channel ->
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, location.offset + buffer.position()) < 0) {
+                        break
+                    }
+                }
+            }
+
+            if (!buffer.hasRemaining() && Utils.adlerHash(data, 0, chunk.uncompressedLength) == chunk.checksum) {
+                return ChunkBuffer(data, chunk.uncompressedLength, fromDisk = true)
+            }
+        } catch (e: IOException) {
+            // the file is gone, the chunk is downloaded instead
+        }
+
+        locations.remove(key, location)
+        pool.release(data)
+
+        return null
+    }
+}
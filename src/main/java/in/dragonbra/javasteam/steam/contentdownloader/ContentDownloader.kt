@@ -3,6 +3,7 @@ package `in`.dragonbra.javasteam.steam.contentdownloader
 import `in`.dragonbra.javasteam.enums.EDepotFileFlag
 import `in`.dragonbra.javasteam.enums.EResult
 import `in`.dragonbra.javasteam.steam.cdn.ClientPool
+import `in`.dragonbra.javasteam.steam.cdn.DepotChunk
 import `in`.dragonbra.javasteam.steam.cdn.Server
 import `in`.dragonbra.javasteam.steam.handlers.steamapps.PICSProductInfo
 import `in`.dragonbra.javasteam.steam.handlers.steamapps.PICSRequest
@@ -14,6 +15,7 @@ import `in`.dragonbra.javasteam.types.ChunkData
 import `in`.dragonbra.javasteam.types.DepotManifest
 import `in`.dragonbra.javasteam.types.FileData
 import `in`.dragonbra.javasteam.types.KeyValue
+import `in`.dragonbra.javasteam.util.ByteArrayPool
 import `in`.dragonbra.javasteam.util.SteamKitWebRequestException
 import `in`.dragonbra.javasteam.util.Strings
 import `in`.dragonbra.javasteam.util.Utils
@@ -26,13 +28,18 @@ import kotlinx.coroutines.Deferred
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.async
 import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.currentCoroutineContext
 import kotlinx.coroutines.future.future
 import kotlinx.coroutines.isActive
+import kotlinx.coroutines.selects.select
 import kotlinx.coroutines.sync.Semaphore
 import kotlinx.coroutines.sync.withPermit
+import kotlinx.coroutines.withTimeoutOrNull
 import java.io.File
 import java.io.FileInputStream
 import java.io.FileOutputStream
+import java.io.IOException
 import java.io.RandomAccessFile
 import java.nio.ByteBuffer
 import java.nio.file.Paths
@@ -40,6 +47,7 @@ import java.time.Instant
 import java.time.temporal.ChronoUnit
 import java.util.concurrent.CompletableFuture
 import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.atomic.AtomicBoolean
 
 @Suppress("unused", "SpellCheckingInspection")
 class ContentDownloader(val steamClient: SteamClient) {
@@ -48,6 +56,7 @@ class ContentDownloader(val steamClient: SteamClient) {
         private const val HTTP_UNAUTHORIZED = 401
         private const val HTTP_FORBIDDEN = 403
         private const val HTTP_NOT_FOUND = 404
+        private const val HTTP_SERVER_ERROR = 500
         private const val SERVICE_UNAVAILABLE = 503
 
         internal const val INVALID_APP_ID = Int.MAX_VALUE
@@ -58,6 +67,8 @@ class ContentDownloader(val steamClient: SteamClient) {
 
     private val defaultScope = CoroutineScope(Dispatchers.IO)
 
+    private val chunkLocations = ChunkLocationIndex()
+
     private fun requestDepotKey(
         appId: Int,
         depotId: Int,
@@ -139,6 +150,7 @@ class ContentDownloader(val steamClient: SteamClient) {
         maxDownloads: Int = 8,
         onDownloadProgress: ((Float) -> Unit)? = null,
         parentScope: CoroutineScope = defaultScope,
+        pipelineOptions: DownloadPipelineOptions = DownloadPipelineOptions(),
     ): Deferred<Boolean> = parentScope.async {
         downloadAppInternal(
             appId = appId,
@@ -148,6 +160,7 @@ class ContentDownloader(val steamClient: SteamClient) {
             branch = branch,
             maxDownloads = maxDownloads,
             onDownloadProgress = onDownloadProgress,
+            pipelineOptions = pipelineOptions,
             scope = parentScope
         )
     }
@@ -164,6 +177,7 @@ class ContentDownloader(val steamClient: SteamClient) {
         branch: String = "public",
         maxDownloads: Int = 8,
         progressCallback: ProgressCallback? = null,
+        pipelineOptions: DownloadPipelineOptions = DownloadPipelineOptions(),
     ): CompletableFuture<Boolean> = defaultScope.future {
         downloadAppInternal(
             appId = appId,
@@ -173,11 +187,16 @@ class ContentDownloader(val steamClient: SteamClient) {
             branch = branch,
             maxDownloads = maxDownloads,
             onDownloadProgress = progressCallback?.let { callback -> { progress -> callback.onProgress(progress) } },
+            pipelineOptions = pipelineOptions,
             scope = defaultScope
         )
     }
 
-    private suspend fun downloadAppInternal(
+    /**
+     * @param sharedPool the CDN pool to use instead of one of this download's own, it's left running afterwards.
+     * @param throttle the limits the CDN requests are put behind, see [DownloadManager].
+     */
+    internal suspend fun downloadAppInternal(
         appId: Int,
         depotId: Int,
         installPath: String,
@@ -185,14 +204,19 @@ class ContentDownloader(val steamClient: SteamClient) {
         branch: String = "public",
         maxDownloads: Int = 8,
         onDownloadProgress: ((Float) -> Unit)? = null,
+        pipelineOptions: DownloadPipelineOptions,
         scope: CoroutineScope,
+        sharedPool: ClientPool? = null,
+        throttle: DownloadThrottle? = null,
     ): Boolean {
         if (!scope.isActive) {
             logger.error("App $appId was not completely downloaded. Operation was canceled.")
             return false
         }
 
-        val cdnPool = ClientPool(steamClient, appId, scope)
+        val cdnPool = sharedPool ?: ClientPool(steamClient, appId, scope).apply {
+            adaptiveConcurrency = pipelineOptions.adaptiveConcurrency
+        }
 
         val shiftedAppId: Int
         val manifestId: Long
@@ -257,18 +281,39 @@ class ContentDownloader(val steamClient: SteamClient) {
                 previousManifest = oldProtoManifest
             )
 
-            downloadDepotFiles(cdnPool, downloadCounter, depotFileData, maxDownloads, onDownloadProgress, scope).await()
+            // Records the chunks that were written, so an interrupted download doesn't have to validate them again
+            val journal = DownloadJournal(Paths.get("$stagingDir.$depotId.journal"), depotId, manifestId)
+
+            try {
+                downloadDepotFiles(
+                    cdnPool,
+                    downloadCounter,
+                    depotFileData,
+                    journal,
+                    maxDownloads,
+                    pipelineOptions,
+                    throttle,
+                    onDownloadProgress,
+                    scope
+                ).await()
+            } finally {
+                journal.close()
+            }
 
             steamClient.configuration.depotManifestProvider.setLatestManifestId(depotId, manifestId)
 
-            cdnPool.shutdown()
+            if (sharedPool == null) {
+                cdnPool.shutdown()
+            }
 
-            // delete the staging directory of this app
+            // delete the journal and the staging directory of this app
+            journal.delete()
             File(stagingDir).deleteRecursively()
 
             logger.debug(
                 "Depot $depotId - Downloaded ${depotFileData.depotCounter.depotBytesCompressed} " +
-                    "bytes (${depotFileData.depotCounter.depotBytesUncompressed} bytes uncompressed)"
+                    "bytes (${depotFileData.depotCounter.depotBytesUncompressed} bytes uncompressed), " +
+                    "saved ${downloadCounter.totalBytesSaved} bytes on chunks that were already downloaded"
             )
 
             return true
@@ -287,7 +332,10 @@ class ContentDownloader(val steamClient: SteamClient) {
         cdnPool: ClientPool,
         downloadCounter: GlobalDownloadCounter,
         depotFilesData: DepotFilesData,
+        journal: DownloadJournal,
         maxDownloads: Int,
+        pipelineOptions: DownloadPipelineOptions,
+        throttle: DownloadThrottle?,
         onDownloadProgress: ((Float) -> Unit)? = null,
         parentScope: CoroutineScope,
     ) = parentScope.async {
@@ -311,6 +359,9 @@ class ContentDownloader(val steamClient: SteamClient) {
 
         logger.debug("Downloading depot ${depotFilesData.depotDownloadInfo.depotId}")
 
+        val diff = ManifestDiff(depotFilesData.previousManifest, depotFilesData.manifest)
+        logger.debug("Depot ${depotFilesData.depotDownloadInfo.depotId} - $diff")
+
         val files = depotFilesData.manifest.files.filter { !it.flags.contains(EDepotFileFlag.Directory) }.toTypedArray()
         val networkChunkQueue = ConcurrentLinkedQueue<Triple<FileStreamData, FileData, ChunkData>>()
 
@@ -318,50 +369,86 @@ class ContentDownloader(val steamClient: SteamClient) {
         files.map { file ->
             async {
                 downloadSemaphore.withPermit {
-                    downloadDepotFile(depotFilesData, file, networkChunkQueue, onDownloadProgress, parentScope).await()
-                }
-            }
-        }.awaitAll()
-
-        networkChunkQueue.map { (fileStreamData, fileData, chunk) ->
-            async {
-                downloadSemaphore.withPermit {
-                    downloadSteam3DepotFileChunk(
-                        cdnPool = cdnPool,
-                        downloadCounter = downloadCounter,
-                        depotFilesData = depotFilesData,
-                        file = fileData,
-                        fileStreamData = fileStreamData,
-                        chunk = chunk,
-                        onDownloadProgress = onDownloadProgress,
-                        parentScope = parentScope
+                    downloadDepotFile(
+                        depotFilesData,
+                        diff,
+                        journal,
+                        file,
+                        networkChunkQueue,
+                        onDownloadProgress,
+                        parentScope
                     ).await()
                 }
             }
         }.awaitAll()
 
-        // Check for deleted files if updating the depot.
-        depotFilesData.previousManifest?.apply {
-            val previousFilteredFiles = files.asSequence().map { it.fileName }.toMutableSet()
+        // Chunks with the same ID have the same content, each is downloaded once and written everywhere it's needed.
+        // Chunks without an ID can't be matched, they are downloaded on their own.
+        val uniqueChunks = networkChunkQueue.groupByTo(LinkedHashMap()) { destination ->
+            destination.third.chunkID?.let(::ChunkKey) ?: destination
+        }
 
-            // Of the list of files in the previous manifest, remove any file names that exist in the current set of all file names
-            previousFilteredFiles.removeAll(depotFilesData.manifest.files.map { it.fileName }.toSet())
+        // with adaptive concurrency the limits of the servers decide how many requests are in flight
+        val networkConcurrency = if (pipelineOptions.adaptiveConcurrency) {
+            maxOf(maxDownloads, pipelineOptions.maxNetworkConcurrency)
+        } else {
+            maxDownloads
+        }
 
-            for (existingFileName in previousFilteredFiles) {
-                val fileFinalPath = Paths.get(depotFilesData.depotDownloadInfo.installDir, existingFileName).toString()
+        val pipeline = DownloadPipeline<List<Triple<FileStreamData, FileData, ChunkData>>>(
+            networkConcurrency = networkConcurrency,
+            options = pipelineOptions,
+            fetch = { destinations ->
+                val chunk = destinations.first().third
+                val appId = depotFilesData.depotDownloadInfo.appId
+                chunkLocations.read(appId, chunk) ?: readCachedChunk(chunk) ?: if (throttle == null) {
+                    fetchDepotChunk(cdnPool, depotFilesData, chunk)
+                } else {
+                    throttle.fetch(chunk.compressedLength) { fetchDepotChunk(cdnPool, depotFilesData, chunk) }
+                }
+            },
+            decode = { destinations, data -> decodeDepotChunk(depotFilesData, destinations.first().third, data) },
+            writerOf = { destinations -> destinations.first().first },
+            write = { destinations, data ->
+                // the buffer is shared by all destinations and handed back after the last one
+                try {
+                    if (!data.fromDisk) {
+                        val chunk = destinations.first().third
+                        steamClient.configuration.chunkCache?.storeChunk(chunk, data.array, data.length)
+                    }
 
-                if (!File(fileFinalPath).exists()) {
-                    continue
+                    for ((fileStreamData, file, chunk) in destinations) {
+                        writeDepotChunk(depotFilesData, journal, file, fileStreamData, chunk, data, onDownloadProgress)
+                    }
+                } finally {
+                    ByteArrayPool.getShared().release(data.array)
                 }
 
-                File(fileFinalPath).delete()
-                logger.debug("Deleted $fileFinalPath")
+                countDepotChunk(downloadCounter, depotFilesData, destinations, data.fromDisk)
+            }
+        )
+
+        pipeline.run(uniqueChunks.values.toList())
+
+        logger.debug("Depot ${depotFilesData.depotDownloadInfo.depotId} pipeline - ${pipeline.stats}")
+
+        // Check for deleted files if updating the depot.
+        for (removedFile in diff.removedFiles) {
+            val fileFinalPath = Paths.get(depotFilesData.depotDownloadInfo.installDir, removedFile.fileName).toString()
+
+            if (!File(fileFinalPath).exists()) {
+                continue
             }
+
+            File(fileFinalPath).delete()
+            logger.debug("Deleted $fileFinalPath")
         }
     }
 
     private fun downloadDepotFile(
         depotFilesData: DepotFilesData,
+        diff: ManifestDiff,
+        journal: DownloadJournal,
         file: FileData,
         networkChunkQueue: ConcurrentLinkedQueue<Triple<FileStreamData, FileData, ChunkData>>,
         onDownloadProgress: ((Float) -> Unit)? = null,
@@ -372,7 +459,7 @@ class ContentDownloader(val steamClient: SteamClient) {
         }
 
         val depotDownloadCounter = depotFilesData.depotCounter
-        val oldManifestFile = depotFilesData.previousManifest?.files?.find { it.fileName == file.fileName }
+        val oldManifestFile = diff.previousFile(file.fileName)
 
         val fileFinalPath = Paths.get(depotFilesData.depotDownloadInfo.installDir, file.fileName).toString()
         val fileStagingPath = Paths.get(depotFilesData.stagingDir, file.fileName).toString()
@@ -384,6 +471,9 @@ class ContentDownloader(val steamClient: SteamClient) {
         val fi = File(fileFinalPath)
         val fileDidExist = fi.exists()
 
+        // The chunks an interrupted download wrote, only trusted if the file wasn't changed since
+        val remainingChunks = if (fileDidExist && fi.length() == file.totalSize) journal.remainingChunks(file) else null
+
         if (!fileDidExist) {
             // create new file. need all chunks
             FileOutputStream(fileFinalPath).use { fs ->
@@ -393,25 +483,20 @@ class ContentDownloader(val steamClient: SteamClient) {
             neededChunks = file.chunks.toMutableList()
         } else {
             // open existing
-            if (oldManifestFile != null) {
+            if (remainingChunks != null) {
+                logger.debug("Resuming $fileFinalPath")
+                neededChunks = remainingChunks
+            } else if (oldManifestFile != null) {
                 neededChunks = mutableListOf()
 
-                val hashMatches = oldManifestFile.fileHash.contentEquals(file.fileHash)
-                if (!hashMatches) {
+                // files whose hash matches have no change
+                val change = diff.change(file.fileName)
+                if (change != null) {
                     logger.debug("Validating $fileFinalPath")
 
-                    val matchingChunks = mutableListOf<ChunkMatch>()
+                    neededChunks.addAll(change.neededChunks)
 
-                    for (chunk in file.chunks) {
-                        val oldChunk = oldManifestFile.chunks.find { it.chunkID.contentEquals(chunk.chunkID) }
-                        if (oldChunk != null) {
-                            matchingChunks.add(ChunkMatch(oldChunk, chunk))
-                        } else {
-                            neededChunks.add(chunk)
-                        }
-                    }
-
-                    val orderedChunks = matchingChunks.sortedBy { it.oldChunk.offset }
+                    val orderedChunks = change.reusableChunks.sortedBy { it.oldChunk.offset }
 
                     val copyChunks = mutableListOf<ChunkMatch>()
 
@@ -446,6 +531,8 @@ class ContentDownloader(val steamClient: SteamClient) {
 
                                     fs.channel.position(match.newChunk.offset)
                                     fs.write(tmp)
+
+                                    journal.chunkWritten(file.fileName, match.newChunk.offset)
                                 }
                             }
                         }
@@ -469,6 +556,8 @@ class ContentDownloader(val steamClient: SteamClient) {
             }
 
             if (neededChunks.isEmpty()) {
+                journal.fileFinished(file.fileName)
+
                 synchronized(depotDownloadCounter) {
                     depotDownloadCounter.sizeDownloaded += file.totalSize
                 }
@@ -514,50 +603,45 @@ class ContentDownloader(val steamClient: SteamClient) {
         }
     }
 
-    private fun downloadSteam3DepotFileChunk(
+    /**
+     * Reads an uncompressed chunk from the configured chunk cache into a pooled buffer.
+     * @return the chunk, or null if there is no cache or it doesn't have the chunk.
+     */
+    private fun readCachedChunk(chunk: ChunkData): ChunkBuffer? {
+        val chunkCache = steamClient.configuration.chunkCache ?: return null
+
+        val pool = ByteArrayPool.getShared()
+        val data = pool.rent(chunk.uncompressedLength)
+        val length = chunkCache.fetchChunk(chunk, data)
+
+        if (length < 0) {
+            pool.release(data)
+            return null
+        }
+
+        return ChunkBuffer(data, length, fromDisk = true)
+    }
+
+    /**
+     * Downloads the chunk as it is stored on the CDN, still encrypted and compressed, into a pooled buffer.
+     */
+    private suspend fun fetchDepotChunk(
         cdnPool: ClientPool,
-        downloadCounter: GlobalDownloadCounter,
         depotFilesData: DepotFilesData,
-        file: FileData,
-        fileStreamData: FileStreamData,
         chunk: ChunkData,
-        onDownloadProgress: ((Float) -> Unit)? = null,
-        parentScope: CoroutineScope,
-    ) = parentScope.async {
-        if (!isActive) {
-            return@async
-        }
-
+    ): ChunkBuffer = coroutineScope {
         val depot = depotFilesData.depotDownloadInfo
-        val depotDownloadCounter = depotFilesData.depotCounter
 
         val chunkID = Strings.toHex(chunk.chunkID)
 
         val chunkInfo = ChunkData(chunk)
 
-        var outputChunkData = ByteArray(chunkInfo.uncompressedLength)
-        var writtenBytes = 0
-
         do {
-            var connection: Server? = null
-
             try {
-                connection = cdnPool.getConnection().await()
-
-                outputChunkData = ByteArray(chunkInfo.uncompressedLength)
-                writtenBytes = cdnPool.cdnClient.downloadDepotChunk(
-                    depotId = depot.depotId,
-                    chunk = chunkInfo,
-                    server = connection!!,
-                    destination = outputChunkData,
-                    depotKey = depot.depotKey,
-                    proxyServer = cdnPool.proxyServer
-                )
+                val connection = cdnPool.acquireConnection() ?: continue
 
-                cdnPool.returnConnection(connection)
+                return@coroutineScope fetchDepotChunkHedged(cdnPool, depot.depotId, chunkInfo, connection)
             } catch (e: SteamKitWebRequestException) {
-                cdnPool.returnBrokenConnection(connection)
-
                 when (e.statusCode) {
                     HTTP_UNAUTHORIZED, HTTP_FORBIDDEN -> {
                         logger.error("Encountered ${e.statusCode} for chunk $chunkID. Aborting.")
@@ -567,50 +651,201 @@ class ContentDownloader(val steamClient: SteamClient) {
                     else -> logger.error("Encountered error downloading chunk $chunkID: ${e.statusCode}")
                 }
             } catch (e: Exception) {
-                cdnPool.returnBrokenConnection(connection)
-
                 logger.error("Encountered unexpected error downloading chunk $chunkID", e)
             }
-        } while (isActive && writtenBytes <= 0)
+        } while (isActive)
 
-        if (writtenBytes <= 0) {
-            logger.error("Failed to find any server with chunk $chunkID for depot ${depot.depotId}. Aborting.")
-            throw CancellationException("Failed to download chunk")
+        logger.error("Failed to find any server with chunk $chunkID for depot ${depot.depotId}. Aborting.")
+        throw CancellationException("Failed to download chunk")
+    }
+
+    /**
+     * Downloads a chunk from [server], and if that takes much longer than usual from a second server as well.
+     * The response that arrives first is used.
+     */
+    private suspend fun fetchDepotChunkHedged(
+        cdnPool: ClientPool,
+        depotId: Int,
+        chunk: ChunkData,
+        server: Server,
+    ): ChunkBuffer {
+        val hedgeDelay = cdnPool.hedgeDelayMillis() ?: return fetchDepotChunkFrom(cdnPool, depotId, chunk, server)
+
+        // The requests block until they're done even when cancelled, so they don't run in the caller's scope,
+        // which would wait for the slower one. A request cancelled before it started hands its server back.
+        val claim = AtomicBoolean()
+        val fetchFrom = { from: Server ->
+            ClientPool.startRequest(defaultScope, { cdnPool.releaseConnection(from) }) {
+                fetchDepotChunkFrom(cdnPool, depotId, chunk, from, claim)
+            }
         }
+        val attempts = mutableListOf(fetchFrom(server))
 
         try {
-            fileStreamData.fileLock.acquire()
+            if (withTimeoutOrNull(hedgeDelay) { attempts[0].join() } == null) {
+                cdnPool.getHedgeConnection(server)?.let { backup ->
+                    logger.debug("Chunk ${Strings.toHex(chunk.chunkID)} is slow on $server, trying $backup too")
+                    attempts.add(fetchFrom(backup))
+                }
+            }
+
+            val pending = attempts.toMutableList()
+            var failure: Exception? = null
+
+            while (pending.isNotEmpty()) {
+                val done = select<Deferred<ChunkBuffer>> { pending.forEach { attempt -> attempt.onJoin { attempt } } }
+                pending.remove(done)
+
+                try {
+                    return done.await()
+                } catch (e: Exception) {
+                    failure = e
+                }
+            }
+
+            throw failure!!
+        } finally {
+            attempts.forEach { it.cancel() }
+        }
+    }
+
+    /**
+     * Downloads a chunk from one server into a pooled buffer, and tells the pool how long it took or that it failed.
+     * @param claim set by the first of several requests for the same chunk to succeed, the others hand their
+     * buffer back and throw [CancellationException].
+     */
+    private suspend fun fetchDepotChunkFrom(
+        cdnPool: ClientPool,
+        depotId: Int,
+        chunk: ChunkData,
+        server: Server,
+        claim: AtomicBoolean? = null,
+    ): ChunkBuffer {
+        val pool = ByteArrayPool.getShared()
+        val chunkData = pool.rent(chunk.compressedLength)
+        val start = System.nanoTime()
+        var firstByte = start
+
+        val writtenBytes = try {
+            cdnPool.cdnClient.downloadDepotChunk(
+                depotId = depotId,
+                chunk = chunk,
+                server = server,
+                destination = chunkData,
+                depotKey = null,
+                proxyServer = cdnPool.proxyServer,
+                cdnAuthToken = null,
+                onResponse = { firstByte = System.nanoTime() }
+            ).also { writtenBytes ->
+                if (writtenBytes <= 0) {
+                    throw IOException("Received an empty chunk")
+                }
+            }
+        } catch (e: Exception) {
+            pool.release(chunkData)
+
+            // timeouts count against the server, being cancelled doesn't
+            if (currentCoroutineContext().isActive) {
+                // a missing or forbidden chunk says nothing about the load of the server
+                val overloaded = e !is SteamKitWebRequestException || e.statusCode >= HTTP_SERVER_ERROR
+                cdnPool.returnBrokenConnection(server, overloaded, start)
+            } else {
+                cdnPool.releaseConnection(server)
+            }
+
+            throw e
+        }
+
+        cdnPool.recordTransfer(server, writtenBytes, firstByte - start, System.nanoTime() - start)
+        cdnPool.returnConnection(server)
+
+        if (claim != null && !claim.compareAndSet(false, true)) {
+            pool.release(chunkData)
+            throw CancellationException("Chunk was downloaded from another server")
+        }
+
+        return ChunkBuffer(chunkData, writtenBytes)
+    }
+
+    /**
+     * Decrypts and decompresses a downloaded chunk into a pooled buffer, and hands the downloaded buffer back.
+     * @return the uncompressed chunk, or null if the chunk is corrupt and has to be downloaded again.
+     */
+    private fun decodeDepotChunk(
+        depotFilesData: DepotFilesData,
+        chunk: ChunkData,
+        chunkData: ChunkBuffer,
+    ): ChunkBuffer? {
+        if (chunkData.fromDisk) {
+            return chunkData
+        }
+
+        val depotKey = depotFilesData.depotDownloadInfo.depotKey ?: return chunkData
+
+        val pool = ByteArrayPool.getShared()
+        val outputChunkData = pool.rent(chunk.uncompressedLength)
 
+        return try {
+            val writtenBytes = DepotChunk.process(
+                chunk,
+                chunkData.array,
+                chunkData.length,
+                outputChunkData,
+                depotKey,
+                steamClient.configuration.cipherProvider,
+            )
+
+            ChunkBuffer(outputChunkData, writtenBytes)
+        } catch (e: Exception) {
+            pool.release(outputChunkData)
+
+            logger.error("Encountered unexpected error processing chunk ${Strings.toHex(chunk.chunkID)}", e)
+            null
+        } finally {
+            pool.release(chunkData.array)
+        }
+    }
+
+    /**
+     * Writes a decoded chunk to one of the files that contain it.
+     */
+    private suspend fun writeDepotChunk(
+        depotFilesData: DepotFilesData,
+        journal: DownloadJournal,
+        file: FileData,
+        fileStreamData: FileStreamData,
+        chunk: ChunkData,
+        outputChunkData: ChunkBuffer,
+        onDownloadProgress: ((Float) -> Unit)? = null,
+    ) {
+        val depot = depotFilesData.depotDownloadInfo
+        val depotDownloadCounter = depotFilesData.depotCounter
+
+        val fileFinalPath = Paths.get(depot.installDir, file.fileName).toString()
+
+        fileStreamData.fileLock.withPermit {
             if (fileStreamData.fileStream == null) {
-                val fileFinalPath = Paths.get(depot.installDir, file.fileName).toString()
                 val randomAccessFile = RandomAccessFile(fileFinalPath, "rw")
                 fileStreamData.fileStream = randomAccessFile.channel
             }
 
-            fileStreamData.fileStream?.position(chunkInfo.offset)
-            fileStreamData.fileStream?.write(ByteBuffer.wrap(outputChunkData, 0, writtenBytes))
-        } finally {
-            fileStreamData.fileLock.release()
+            fileStreamData.fileStream?.position(chunk.offset)
+            fileStreamData.fileStream?.write(ByteBuffer.wrap(outputChunkData.array, 0, outputChunkData.length))
         }
 
+        chunkLocations.add(depot.appId, chunk, fileFinalPath)
+        journal.chunkWritten(file.fileName, chunk.offset)
+
         val remainingChunks = synchronized(fileStreamData) {
             --fileStreamData.chunksToDownload
         }
         if (remainingChunks <= 0) {
             fileStreamData.fileStream?.close()
+            journal.fileFinished(file.fileName)
         }
 
-        var sizeDownloaded: Long
         synchronized(depotDownloadCounter) {
-            sizeDownloaded = depotDownloadCounter.sizeDownloaded + outputChunkData.size
-            depotDownloadCounter.sizeDownloaded = sizeDownloaded
-            depotDownloadCounter.depotBytesCompressed += chunk.compressedLength
-            depotDownloadCounter.depotBytesUncompressed += chunk.uncompressedLength
-        }
-
-        synchronized(downloadCounter) {
-            downloadCounter.totalBytesCompressed += chunk.compressedLength
-            downloadCounter.totalBytesUncompressed += chunk.uncompressedLength
+            depotDownloadCounter.sizeDownloaded += outputChunkData.length
         }
 
         onDownloadProgress?.invoke(
@@ -618,6 +853,31 @@ class ContentDownloader(val steamClient: SteamClient) {
         )
     }
 
+    /**
+     * Counts a chunk as downloaded once, and its other destinations as saved.
+     */
+    private fun countDepotChunk(
+        downloadCounter: GlobalDownloadCounter,
+        depotFilesData: DepotFilesData,
+        destinations: List<Triple<FileStreamData, FileData, ChunkData>>,
+        fromDisk: Boolean,
+    ) {
+        val chunk = destinations.first().third
+        val downloads = if (fromDisk) 0 else 1
+        val depotDownloadCounter = depotFilesData.depotCounter
+
+        synchronized(depotDownloadCounter) {
+            depotDownloadCounter.depotBytesCompressed += chunk.compressedLength.toLong() * downloads
+            depotDownloadCounter.depotBytesUncompressed += chunk.uncompressedLength.toLong() * downloads
+        }
+
+        synchronized(downloadCounter) {
+            downloadCounter.totalBytesCompressed += chunk.compressedLength.toLong() * downloads
+            downloadCounter.totalBytesUncompressed += chunk.uncompressedLength.toLong() * downloads
+            downloadCounter.totalBytesSaved += chunk.compressedLength.toLong() * (destinations.size - downloads)
+        }
+    }
+
     private fun downloadFilesManifestOf(
         appId: Int,
         depotId: Int,
@@ -678,6 +938,8 @@ class ContentDownloader(val steamClient: SteamClient) {
 
                 cdnPool.returnConnection(connection)
             } catch (e: CancellationException) {
+                cdnPool.returnBrokenConnection(connection)
+
                 logger.error("Connection timeout downloading depot manifest $depotId $manifestId")
 
                 return@async null
@@ -0,0 +1,37 @@
+package `in`.dragonbra.javasteam.steam.contentdownloader
+
+import `in`.dragonbra.javasteam.types.ChunkData
+import `in`.dragonbra.javasteam.types.FileData
+
+/**
+ * The outcome of verifying an installed depot against its manifest.
+ *
+ * @param missingFiles the files that don't exist in the install directory.
+ * @param mismatchedChunks the chunks whose checksum doesn't match, by the file they belong to.
+ * @param bytesVerified the number of bytes read and checksummed.
+ * @param elapsedMillis how long the verification took.
+ */
+@Suppress("MemberVisibilityCanBePrivate")
+class DepotVerificationResult(
+    val missingFiles: List<FileData>,
+    val mismatchedChunks: Map<FileData, List<ChunkData>>,
+    val bytesVerified: Long,
+    val elapsedMillis: Long,
+) {
+
+    /**
+     * Gets whether every file exists and every chunk matches.
+     */
+    val isValid: Boolean
+        get() = missingFiles.isEmpty() && mismatchedChunks.isEmpty()
+
+    /**
+     * Gets the verification throughput in bytes per second.
+     */
+    val bytesPerSecond: Long
+        get() = if (elapsedMillis > 0) bytesVerified * 1000 / elapsedMillis else bytesVerified * 1000
+
+    override fun toString(): String = "${missingFiles.size} missing files, " +
+        "${mismatchedChunks.values.sumOf { it.size }} mismatched chunks in ${mismatchedChunks.size} files, " +
+        "$bytesVerified bytes verified in $elapsedMillis ms"
+}
@@ -0,0 +1,205 @@
+package `in`.dragonbra.javasteam.steam.contentdownloader
+
+import `in`.dragonbra.javasteam.enums.EDepotFileFlag
+import `in`.dragonbra.javasteam.types.ChunkData
+import `in`.dragonbra.javasteam.types.CompactDepotManifest
+import `in`.dragonbra.javasteam.types.DepotManifest
+import `in`.dragonbra.javasteam.types.FileData
+import `in`.dragonbra.javasteam.util.ByteArrayPool
+import `in`.dragonbra.javasteam.util.Utils
+import `in`.dragonbra.javasteam.util.log.LogManager
+import `in`.dragonbra.javasteam.util.log.Logger
+import java.io.IOException
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.Paths
+import java.nio.file.StandardOpenOption
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.ForkJoinTask
+import java.util.concurrent.RecursiveAction
+import java.util.concurrent.RecursiveTask
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.LongAdder
+
+/**
+ * Verifies installed depot files against the chunk checksums in their manifest.
+ *
+ * Files are verified in parallel, and the chunks of large files are split between tasks too. Chunks are read with
+ * positional reads into pooled buffers, so tasks can share a file without seeking.
+ *
+ * @constructor Instantiates a [DepotVerifier] object.
+ * @param pool the pool that runs the verification tasks.
+ */
+@Suppress("unused")
+class DepotVerifier @JvmOverloads constructor(
+    private val pool: ForkJoinPool = ForkJoinPool.commonPool(),
+) {
+
+    companion object {
+        private val logger: Logger = LogManager.getLogger(DepotVerifier::class.java)
+
+        // chunks are about 1 MiB, files with more chunks than this are split between tasks
+        private const val CHUNKS_PER_TASK = 8
+    }
+
+    /**
+     * Verifies an installed depot. Directories and symlinks are skipped.
+     * @param manifest the manifest of the installed depot.
+     * @param installDir the directory the depot is installed to.
+     * @return the missing files and mismatched chunks.
+     */
+    fun verifyDepot(manifest: DepotManifest, installDir: String): DepotVerificationResult =
+        verifyDepot(manifest, Paths.get(installDir))
+
+    /**
+     * Verifies an installed depot. Directories and symlinks are skipped.
+     * @param manifest the manifest of the installed depot.
+     * @param installDir the directory the depot is installed to.
+     * @return the missing files and mismatched chunks.
+     */
+    fun verifyDepot(manifest: DepotManifest, installDir: Path): DepotVerificationResult =
+        verifyFiles(manifest.depotID, manifest.files, installDir)
+
+    /**
+     * Verifies an installed depot. Directories and symlinks are skipped.
+     * @param manifest the compact manifest of the installed depot.
+     * @param installDir the directory the depot is installed to.
+     * @return the missing files and mismatched chunks.
+     */
+    fun verifyDepot(manifest: CompactDepotManifest, installDir: String): DepotVerificationResult =
+        verifyDepot(manifest, Paths.get(installDir))
+
+    /**
+     * Verifies an installed depot. Directories and symlinks are skipped.
+     * @param manifest the compact manifest of the installed depot.
+     * @param installDir the directory the depot is installed to.
+     * @return the missing files and mismatched chunks.
+     */
+    fun verifyDepot(manifest: CompactDepotManifest, installDir: Path): DepotVerificationResult =
+        verifyFiles(manifest.depotID, manifest.files, installDir)
+
+    private fun verifyFiles(depotID: Int, depotFiles: List<FileData>, installDir: Path): DepotVerificationResult {
+        val start = System.nanoTime()
+        val files = depotFiles.filter { !it.flags.contains(EDepotFileFlag.Directory) && it.linkTarget.isBlank() }
+
+        val missing = ConcurrentHashMap.newKeySet<FileData>()
+        val mismatched = ConcurrentHashMap<FileData, List<ChunkData>>()
+        val bytesVerified = LongAdder()
+
+        pool.invoke(
+            object : RecursiveAction() {
+                override fun compute() {
+                    ForkJoinTask.invokeAll(
+                        files.map { FileTask(installDir, it, missing, mismatched, bytesVerified) }
+                    )
+                }
+            }
+        )
+
+        val elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+        val result = DepotVerificationResult(
+            missingFiles = files.filter { it in missing },
+            mismatchedChunks = files.mapNotNull { file -> mismatched[file]?.let { file to it } }.toMap(),
+            bytesVerified = bytesVerified.sum(),
+            elapsedMillis = elapsedMillis
+        )
+
+        logger.debug("Verified depot $depotID: $result")
+
+        return result
+    }
+
+    private class FileTask(
+        private val installDir: Path,
+        private val file: FileData,
+        private val missing: MutableSet<FileData>,
+        private val mismatched: MutableMap<FileData, List<ChunkData>>,
+        private val bytesVerified: LongAdder,
+    ) : RecursiveAction() {
+
+        override fun compute() {
+            val path = installDir.resolve(file.fileName)
+
+            if (!Files.isRegularFile(path)) {
+                missing.add(file)
+                return
+            }
+
+            val chunks = file.chunks.toList()
+
+            val badChunks = try {
+                FileChannel.open(path, StandardOpenOption.READ).use { channel ->
+                    ChunkTask(channel, chunks, 0, chunks.size, bytesVerified).invoke()
+                }
+            } catch (e: IOException) {
+                logger.error("Failed to verify $path", e)
+                chunks
+            }
+
+            if (badChunks.isNotEmpty()) {
+                mismatched[file] = badChunks.sortedBy { it.offset }
+            }
+        }
+    }
+
+    private class ChunkTask(
+        private val channel: FileChannel,
+        private val chunks: List<ChunkData>,
+        private val from: Int,
+        private val to: Int,
+        private val bytesVerified: LongAdder,
+    ) : RecursiveTask<List<ChunkData>>() {
+
+        override fun compute(): List<ChunkData> {
+            if (to - from > CHUNKS_PER_TASK) {
+                val middle = (from + to) ushr 1
+                val left = ChunkTask(channel, chunks, from, middle, bytesVerified).fork()
+                val right = ChunkTask(channel, chunks, middle, to, bytesVerified).compute()
+
+                return left.join() + right
+            }
+
+            val pool = ByteArrayPool.getShared()
+            val badChunks = mutableListOf<ChunkData>()
+            var buffer: ByteArray? = null
+
+            try {
+                for (i in from until to) {
+                    val chunk = chunks[i]
+                    val length = chunk.uncompressedLength
+
+                    if (buffer == null || buffer.size < length) {
+                        pool.release(buffer)
+                        buffer = pool.rent(length)
+                    }
+
+                    val read = readFully(buffer, length, chunk.offset)
+                    bytesVerified.add(read.toLong())
+
+                    if (read < length || Utils.adlerHash(buffer, 0, read) != chunk.checksum) {
+                        badChunks.add(chunk)
+                    }
+                }
+            } finally {
+                pool.release(buffer)
+            }
+
+            return badChunks
+        }
+
+        private fun readFully(buffer: ByteArray, length: Int, position: Long): Int {
+            val target = ByteBuffer.wrap(buffer, 0, length)
+
+            while (target.hasRemaining()) {
+                if (channel.read(target, position + target.position()) < 0) {
+                    break
+                }
+            }
+
+            return target.position()
+        }
+    }
+}
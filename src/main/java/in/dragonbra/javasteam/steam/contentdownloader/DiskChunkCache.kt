@@ -0,0 +1,313 @@
+package `in`.dragonbra.javasteam.steam.contentdownloader
+
+import `in`.dragonbra.javasteam.types.ChunkData
+import `in`.dragonbra.javasteam.util.Strings
+import `in`.dragonbra.javasteam.util.Utils
+import `in`.dragonbra.javasteam.util.log.LogManager
+import `in`.dragonbra.javasteam.util.log.Logger
+import java.io.File
+import java.io.IOException
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.Files
+import java.nio.file.NoSuchFileException
+import java.nio.file.Path
+import java.nio.file.StandardCopyOption
+import java.nio.file.StandardOpenOption
+import java.nio.file.attribute.FileTime
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Chunk cache that stores every chunk in its own file under a directory, which several processes may share.
+ *
+ * Chunks are written to a temporary file and moved into place, so readers never see a partial chunk, and every
+ * read is checked against the chunk checksum. When the cache grows past [maxSize] the least recently used chunks
+ * are deleted. Each process tracks the chunks it has seen, so with several processes the directory can exceed
+ * [maxSize] until they come across each other's chunks.
+ *
+ * @constructor Instantiates a [DiskChunkCache] object.
+ * @param directory the directory that stores the chunks
+ * @param maxSize the size in bytes the cache is kept under
+ */
+@Suppress("MemberVisibilityCanBePrivate", "unused")
+class DiskChunkCache @JvmOverloads constructor(
+    private val directory: Path,
+    private val maxSize: Long = 10L shl 30,
+) : IChunkCache {
+
+    /**
+     * Instantiates a [DiskChunkCache] object.
+     * @param directory the directory that stores the chunks.
+     * @param maxSize the size in bytes the cache is kept under.
+     */
+    @JvmOverloads
+    constructor(directory: File, maxSize: Long = 10L shl 30) : this(directory.toPath(), maxSize)
+
+    /**
+     * Instantiates a [DiskChunkCache] object.
+     * @param directory the directory that stores the chunks.
+     * @param maxSize the size in bytes the cache is kept under.
+     */
+    @JvmOverloads
+    constructor(directory: String, maxSize: Long = 10L shl 30) : this(Path.of(directory), maxSize)
+
+    companion object {
+        private val logger: Logger = LogManager.getLogger(DiskChunkCache::class.java)
+
+        private const val CHUNK_SUFFIX = ".chunk"
+
+        private const val TEMP_SUFFIX = ".tmp"
+
+        // temporary files this old were left behind by a process that died while writing them
+        private val STALE_TEMP_MILLIS = TimeUnit.HOURS.toMillis(1)
+    }
+
+    private val lock = Any()
+
+    // chunk file name to size, least recently used first
+    private val entries = LinkedHashMap<String, Long>(16, 0.75f, true)
+
+    private var size = 0L
+
+    private val hitCount = AtomicLong()
+
+    private val missCount = AtomicLong()
+
+    private val bytesReadCount = AtomicLong()
+
+    private val bytesWrittenCount = AtomicLong()
+
+    private val evictionCount = AtomicLong()
+
+    init {
+        require(maxSize > 0) { "maxSize must be positive" }
+
+        Files.createDirectories(directory)
+        scan()
+    }
+
+    /**
+     * The number of chunks read from the cache.
+     */
+    val hits: Long
+        get() = hitCount.get()
+
+    /**
+     * The number of chunks the cache didn't have.
+     */
+    val misses: Long
+        get() = missCount.get()
+
+    /**
+     * The number of bytes read from the cache.
+     */
+    val bytesRead: Long
+        get() = bytesReadCount.get()
+
+    /**
+     * The number of bytes written to the cache.
+     */
+    val bytesWritten: Long
+        get() = bytesWrittenCount.get()
+
+    /**
+     * The number of chunks deleted to keep the cache under its size.
+     */
+    val evictions: Long
+        get() = evictionCount.get()
+
+    /**
+     * The size in bytes of the chunks this cache knows of.
+     */
+    val cacheSize: Long
+        get() = synchronized(lock) { size }
+
+    override fun fetchChunk(chunk: ChunkData, destination: ByteArray): Int {
+        val chunkID = chunk.chunkID ?: return -1
+        val name = fileName(chunkID)
+        val path = pathOf(name)
+        val length = chunk.uncompressedLength
+
+        require(destination.size >= length) {
+            "The destination buffer must be longer than the chunk UncompressedLength."
+        }
+
+        try {
+            FileChannel.open(path, StandardOpenOption.READ).use { channel ->
+                if (channel.size() == length.toLong()) {
+                    val buffer = ByteBuffer.wrap(destination, 0, length)
+
+                    while (buffer.hasRemaining()) {
+                        if (channel.read(buffer) < 0) {
+                            break
+                        }
+                    }
+
+                    if (!buffer.hasRemaining() && Utils.adlerHash(destination, 0, length) == chunk.checksum) {
+                        touch(name, path, length.toLong())
+                        hitCount.incrementAndGet()
+                        bytesReadCount.addAndGet(length.toLong())
+                        return length
+                    }
+                }
+            }
+
+            logger.debug("Deleting corrupt cached chunk $name")
+            delete(name, path)
+        } catch (e: NoSuchFileException) {
+            forget(name)
+        } catch (e: IOException) {
+            logger.debug("Failed to read cached chunk $name: ${e.message}")
+        }
+
+        missCount.incrementAndGet()
+        return -1
+    }
+
+    override fun storeChunk(chunk: ChunkData, data: ByteArray, length: Int) {
+        val chunkID = chunk.chunkID ?: return
+        val name = fileName(chunkID)
+
+        if (length != chunk.uncompressedLength || length.toLong() > maxSize) {
+            return
+        }
+
+        synchronized(lock) {
+            if (entries.containsKey(name)) {
+                return
+            }
+        }
+
+        val path = pathOf(name)
+        var tempFile: Path? = null
+
+        try {
+            Files.createDirectories(path.parent)
+            tempFile = Files.createTempFile(path.parent, name, TEMP_SUFFIX)
+
+            FileChannel.open(tempFile, StandardOpenOption.WRITE).use { channel ->
+                val buffer = ByteBuffer.wrap(data, 0, length)
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer)
+                }
+            }
+
+            Files.move(tempFile, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING)
+            tempFile = null
+
+            bytesWrittenCount.addAndGet(length.toLong())
+            add(name, length.toLong())
+        } catch (e: IOException) {
+            logger.debug("Failed to cache chunk $name: ${e.message}")
+        } finally {
+            tempFile?.let { runCatching { Files.deleteIfExists(it) } }
+        }
+    }
+
+    private fun fileName(chunkID: ByteArray): String = Strings.toHex(chunkID).lowercase() + CHUNK_SUFFIX
+
+    // chunks are spread over 256 directories by their first byte
+    private fun pathOf(name: String): Path = directory.resolve(name.substring(0, 2)).resolve(name)
+
+    /**
+     * Marks a chunk as used, also for other processes that scan the directory later.
+     */
+    private fun touch(name: String, path: Path, length: Long) {
+        runCatching { Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis())) }
+
+        synchronized(lock) {
+            if (entries[name] == null) {
+                // written by another process
+                entries[name] = length
+                size += length
+            }
+        }
+
+        evict()
+    }
+
+    private fun add(name: String, length: Long) {
+        synchronized(lock) {
+            entries.put(name, length)?.let { size -= it }
+            size += length
+        }
+
+        evict()
+    }
+
+    private fun forget(name: String) {
+        synchronized(lock) {
+            entries.remove(name)?.let { size -= it }
+        }
+    }
+
+    private fun delete(name: String, path: Path) {
+        forget(name)
+        runCatching { Files.deleteIfExists(path) }
+    }
+
+    private fun evict() {
+        while (true) {
+            val name = synchronized(lock) {
+                if (size <= maxSize) {
+                    return
+                }
+
+                val eldest = entries.entries.first()
+                entries.remove(eldest.key)
+                size -= eldest.value
+                eldest.key
+            }
+
+            // another process may be reading it, it keeps its open file where that's allowed
+            runCatching { Files.deleteIfExists(pathOf(name)) }
+            evictionCount.incrementAndGet()
+        }
+    }
+
+    /**
+     * Reads back the chunks in the directory, oldest first, and deletes abandoned temporary files.
+     */
+    private fun scan() {
+        val found = mutableListOf<Triple<String, Long, Long>>()
+        val now = System.currentTimeMillis()
+
+        Files.newDirectoryStream(directory).use { subdirectories ->
+            for (subdirectory in subdirectories) {
+                if (!Files.isDirectory(subdirectory)) {
+                    continue
+                }
+
+                Files.newDirectoryStream(subdirectory).use { files ->
+                    for (file in files) {
+                        val name = file.fileName.toString()
+
+                        try {
+                            val modified = Files.getLastModifiedTime(file).toMillis()
+
+                            if (name.endsWith(CHUNK_SUFFIX)) {
+                                found.add(Triple(name, Files.size(file), modified))
+                            } else if (name.endsWith(TEMP_SUFFIX) && now - modified > STALE_TEMP_MILLIS) {
+                                Files.deleteIfExists(file)
+                            }
+                        } catch (e: IOException) {
+                            // removed by another process in the meantime
+                        }
+                    }
+                }
+            }
+        }
+
+        synchronized(lock) {
+            for ((name, length, _) in found.sortedBy { it.third }) {
+                entries[name] = length
+                size += length
+            }
+        }
+
+        logger.debug("Found ${found.size} cached chunks ($size bytes) in $directory")
+
+        evict()
+    }
+}
@@ -0,0 +1,16 @@
+package `in`.dragonbra.javasteam.steam.contentdownloader
+
+/**
+ * A depot to download with a [DownloadManager], see [ContentDownloader.downloadApp] for the parameters.
+ *
+ * @param priority jobs with a higher priority start first, and their CDN requests go before those of running jobs
+ * with a lower priority. Running jobs of the same priority share the CDN requests evenly.
+ */
+data class DownloadJob @JvmOverloads constructor(
+    val appId: Int,
+    val depotId: Int,
+    val installPath: String,
+    val stagingPath: String,
+    val branch: String = "public",
+    val priority: Int = 0,
+)
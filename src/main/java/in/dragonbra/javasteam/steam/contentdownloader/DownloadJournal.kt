@@ -0,0 +1,235 @@
+package `in`.dragonbra.javasteam.steam.contentdownloader
+
+import `in`.dragonbra.javasteam.types.ChunkData
+import `in`.dragonbra.javasteam.types.FileData
+import `in`.dragonbra.javasteam.util.log.LogManager
+import `in`.dragonbra.javasteam.util.log.Logger
+import java.io.Closeable
+import java.io.IOException
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption
+import java.util.zip.CRC32
+
+/**
+ * Records which chunks of a depot download were written, so a download that was cancelled or died can resume
+ * without validating the files it already wrote.
+ *
+ * The journal is an append-only file that starts with the depot and manifest it belongs to, followed by a record
+ * for every written chunk and every finished file. Each record has a CRC, so a record that was cut short by a crash
+ * is dropped when the journal is opened again. Records are handed to the OS as they're written, which protects them
+ * from the process dying but not from a power loss.
+ *
+ * A journal that belongs to another manifest is started over. If writing the journal fails, the download goes on
+ * without it.
+ */
+internal class DownloadJournal(
+    private val path: Path,
+    private val depotId: Int,
+    private val manifestId: Long,
+) : Closeable {
+
+    companion object {
+        private val logger: Logger = LogManager.getLogger(DownloadJournal::class.java)
+
+        private const val MAGIC = 0x4A524E4C // "JRNL"
+
+        private const val HEADER_SIZE = 4 + 4 + 8
+
+        private const val TYPE_CHUNK: Byte = 1
+
+        private const val TYPE_FILE: Byte = 2
+    }
+
+    private val lock = Any()
+
+    private var channel: FileChannel? = null
+
+    private var size = 0L
+
+    // file name to the offsets of the chunks written to it
+    private val writtenChunks = HashMap<String, MutableSet<Long>>()
+
+    private val finishedFiles = HashSet<String>()
+
+    init {
+        try {
+            Files.createDirectories(path.toAbsolutePath().parent)
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)
+            load()
+        } catch (e: IOException) {
+            logger.error("Failed to open download journal $path", e)
+            closeChannel()
+        }
+    }
+
+    /**
+     * Gets the chunks of a file that weren't written yet.
+     * @return the chunks, or null if the journal doesn't know the file.
+     */
+    fun remainingChunks(file: FileData): MutableList<ChunkData>? {
+        synchronized(lock) {
+            if (file.fileName in finishedFiles) {
+                return mutableListOf()
+            }
+
+            val written = writtenChunks[file.fileName] ?: return null
+            return file.chunks.filterTo(mutableListOf()) { it.offset !in written }
+        }
+    }
+
+    fun chunkWritten(fileName: String, offset: Long) {
+        synchronized(lock) {
+            if (writtenChunks.getOrPut(fileName) { HashSet() }.add(offset)) {
+                append(TYPE_CHUNK, fileName, offset)
+            }
+        }
+    }
+
+    fun fileFinished(fileName: String) {
+        synchronized(lock) {
+            if (finishedFiles.add(fileName)) {
+                writtenChunks.remove(fileName)
+                append(TYPE_FILE, fileName, 0)
+            }
+        }
+    }
+
+    /**
+     * Deletes the journal once the download is complete.
+     */
+    fun delete() {
+        synchronized(lock) {
+            closeChannel()
+            writtenChunks.clear()
+            finishedFiles.clear()
+
+            try {
+                Files.deleteIfExists(path)
+            } catch (e: IOException) {
+                logger.error("Failed to delete download journal $path", e)
+            }
+        }
+    }
+
+    override fun close() {
+        synchronized(lock) {
+            closeChannel()
+        }
+    }
+
+    private fun load() {
+        val channel = channel!!
+        val data = ByteBuffer.allocate(channel.size().toInt())
+
+        while (data.hasRemaining()) {
+            if (channel.read(data, data.position().toLong()) < 0) {
+                break
+            }
+        }
+        data.flip()
+
+        if (data.remaining() < HEADER_SIZE ||
+            data.getInt() != MAGIC ||
+            data.getInt() != depotId ||
+            data.getLong() != manifestId
+        ) {
+            // a new download, or one of another manifest
+            channel.truncate(0)
+            channel.write(ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(depotId).putLong(manifestId).flip(), 0)
+            size = HEADER_SIZE.toLong()
+            return
+        }
+
+        var end = data.position()
+
+        while (true) {
+            val record = readRecord(data) ?: break
+            end = data.position()
+
+            val (type, fileName, offset) = record
+            if (type == TYPE_FILE) {
+                finishedFiles.add(fileName)
+                writtenChunks.remove(fileName)
+            } else if (fileName !in finishedFiles) {
+                writtenChunks.getOrPut(fileName) { HashSet() }.add(offset)
+            }
+        }
+
+        if (end < data.limit()) {
+            logger.debug("Discarding ${data.limit() - end} bytes of incomplete records in $path")
+            channel.truncate(end.toLong())
+        }
+
+        size = end.toLong()
+
+        logger.debug(
+            "Resuming depot $depotId manifest $manifestId with ${finishedFiles.size} finished files and " +
+                "${writtenChunks.values.sumOf { it.size }} written chunks"
+        )
+    }
+
+    // type, name length, name, chunk offset, CRC of all of these
+    private fun readRecord(data: ByteBuffer): Triple<Byte, String, Long>? {
+        if (data.remaining() < 1 + 4) {
+            return null
+        }
+
+        val start = data.position()
+        val type = data.get()
+        val nameLength = data.getInt()
+
+        if ((type != TYPE_CHUNK && type != TYPE_FILE) || nameLength < 0 || data.remaining() < nameLength + 8 + 4) {
+            return null
+        }
+
+        val name = ByteArray(nameLength)
+        data.get(name)
+        val offset = data.getLong()
+
+        val crc = CRC32()
+        crc.update(data.array(), start, data.position() - start)
+
+        if (data.getInt() != crc.value.toInt()) {
+            return null
+        }
+
+        return Triple(type, String(name, Charsets.UTF_8), offset)
+    }
+
+    private fun append(type: Byte, fileName: String, offset: Long) {
+        val channel = channel ?: return
+        val name = fileName.toByteArray(Charsets.UTF_8)
+        val record = ByteBuffer.allocate(1 + 4 + name.size + 8 + 4)
+            .put(type)
+            .putInt(name.size)
+            .put(name)
+            .putLong(offset)
+
+        val crc = CRC32()
+        crc.update(record.array(), 0, record.position())
+        record.putInt(crc.value.toInt()).flip()
+
+        try {
+            while (record.hasRemaining()) {
+                channel.write(record, size + record.position())
+            }
+            size += record.limit()
+        } catch (e: IOException) {
+            logger.error("Failed to write download journal $path, continuing without it", e)
+            closeChannel()
+        }
+    }
+
+    private fun closeChannel() {
+        try {
+            channel?.close()
+        } catch (e: IOException) {
+            logger.debug("Failed to close download journal $path: ${e.message}")
+        }
+
+        channel = null
+    }
+}
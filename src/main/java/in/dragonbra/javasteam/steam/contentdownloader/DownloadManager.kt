@@ -0,0 +1,248 @@
+package `in`.dragonbra.javasteam.steam.contentdownloader
+
+import `in`.dragonbra.javasteam.steam.cdn.ClientPool
+import `in`.dragonbra.javasteam.steam.steamclient.SteamClient
+import `in`.dragonbra.javasteam.util.log.LogManager
+import `in`.dragonbra.javasteam.util.log.Logger
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.cancel
+import kotlinx.coroutines.launch
+import java.io.Closeable
+import java.nio.file.Paths
+import java.util.PriorityQueue
+
+/**
+ * Downloads many depots, of one or several apps, at the same time. All downloads share one pool of CDN servers, at
+ * most [maxDownloads] CDN requests at a time and a bandwidth limit.
+ *
+ * At most [maxActiveJobs] jobs run at once, the others wait in order of their [DownloadJob.priority]. The CDN requests
+ * of the running jobs are handed out by priority too, and evenly between jobs of the same priority.
+ *
+ * The shared CDN pool only uses the servers that serve every app.
+ *
+ * @constructor Instantiates a [DownloadManager] object.
+ * @param steamClient the logged on client the depots are downloaded with.
+ * @param maxDownloads the number of CDN requests all jobs together make at the same time.
+ * @param bytesPerSecond the rate all jobs together download at most, 0 for no limit.
+ * @param maxActiveJobs the number of jobs that run at the same time.
+ * @param pipelineOptions the options every job is downloaded with.
+ */
+@Suppress("MemberVisibilityCanBePrivate", "unused")
+class DownloadManager @JvmOverloads constructor(
+    val steamClient: SteamClient,
+    private val maxDownloads: Int = 8,
+    bytesPerSecond: Long = 0,
+    private val maxActiveJobs: Int = 4,
+    private val pipelineOptions: DownloadPipelineOptions = DownloadPipelineOptions(),
+) : Closeable {
+
+    companion object {
+        private val logger: Logger = LogManager.getLogger(DownloadManager::class.java)
+    }
+
+    // the downloads of an app share the chunks they wrote
+    private class AppDownloads(val downloader: ContentDownloader) {
+        var running = 0
+    }
+
+    private val scope = CoroutineScope(SupervisorJob() + Dispatchers.IO)
+
+    // created once the first job starts, so the server list isn't fetched before it's needed
+    private var cdnPool: ClientPool? = null
+
+    private val gate = FairShareGate(maxDownloads)
+
+    private val limiter = BandwidthLimiter(bytesPerSecond)
+
+    private val meter = ThroughputMeter()
+
+    private val lock = Any()
+
+    private val order = compareByDescending<DownloadTask> { it.job.priority }.thenBy { it.sequence }
+
+    private val queue = PriorityQueue(order)
+
+    private val running = mutableSetOf<DownloadTask>()
+
+    private val apps = HashMap<Int, AppDownloads>()
+
+    private var sequence = 0L
+
+    private var closed = false
+
+    init {
+        require(maxDownloads > 0) { "maxDownloads must be at least 1" }
+        require(maxActiveJobs > 0) { "maxActiveJobs must be at least 1" }
+    }
+
+    /**
+     * The rate all jobs together download at most, in bytes per second. 0 for no limit.
+     */
+    var bytesPerSecondLimit: Long
+        get() = limiter.bytesPerSecond
+        set(value) {
+            limiter.bytesPerSecond = value
+        }
+
+    /**
+     * The number of compressed bytes all jobs downloaded from the CDN.
+     */
+    val bytesDownloaded: Long
+        get() = meter.totalBytes
+
+    /**
+     * The rate all jobs together downloaded at over the last seconds, in bytes per second.
+     */
+    val bytesPerSecond: Double
+        get() = meter.bytesPerSecond()
+
+    /**
+     * The tasks that are running or waiting to run, running ones first.
+     */
+    val tasks: List<DownloadTask>
+        get() = synchronized(lock) { running.toList() + queue.sortedWith(order) }
+
+    /**
+     * Adds a job to the queue.
+     * @param job the depot to download.
+     * @param progressCallback receives the share of the depot that is on disk, from 0 to 1.
+     * @return the task that follows the job.
+     */
+    @JvmOverloads
+    fun enqueue(job: DownloadJob, progressCallback: ProgressCallback? = null): DownloadTask {
+        val task = synchronized(lock) {
+            check(!closed) { "The download manager is closed" }
+
+            DownloadTask(job, sequence++, progressCallback, ::cancel).also { queue.add(it) }
+        }
+
+        startTasks()
+
+        return task
+    }
+
+    /**
+     * Cancels every task and stops the shared CDN pool.
+     */
+    override fun close() {
+        val tasks = synchronized(lock) {
+            closed = true
+            running.toList() + queue.toList()
+        }
+
+        tasks.forEach { cancel(it) }
+
+        cdnPool?.shutdown()
+        scope.cancel()
+    }
+
+    private fun cancel(task: DownloadTask) {
+        val wasQueued = synchronized(lock) {
+            task.cancelled = true
+            queue.remove(task)
+        }
+
+        if (wasQueued) {
+            task.state = DownloadTask.State.CANCELLED
+            task.result.complete(false)
+        } else {
+            task.runningJob?.cancel()
+        }
+    }
+
+    private fun startTasks() {
+        val started = mutableListOf<Pair<DownloadTask, AppDownloads>>()
+
+        val pool = synchronized(lock) {
+            while (!closed && running.size < maxActiveJobs) {
+                val task = queue.poll() ?: break
+
+                val app = apps.getOrPut(task.job.appId) { AppDownloads(ContentDownloader(steamClient)) }
+                app.running++
+
+                running.add(task)
+                task.state = DownloadTask.State.RUNNING
+                started.add(task to app)
+            }
+
+            if (started.isEmpty()) {
+                return
+            }
+
+            cdnPool ?: ClientPool(steamClient, scope).also {
+                it.adaptiveConcurrency = pipelineOptions.adaptiveConcurrency
+                cdnPool = it
+            }
+        }
+
+        for ((task, app) in started) {
+            run(task, app, pool)
+        }
+    }
+
+    private fun run(task: DownloadTask, app: AppDownloads, pool: ClientPool) {
+        val job = task.job
+        val throttle = DownloadThrottle(gate, limiter, task, job.priority, task.meter, meter)
+
+        logger.debug("Starting $task")
+
+        var downloaded = false
+
+        val runningJob = scope.launch {
+            downloaded = try {
+                app.downloader.downloadAppInternal(
+                    appId = job.appId,
+                    depotId = job.depotId,
+                    installPath = job.installPath,
+                    // depots of the same app may run at the same time, each needs its own staging directory
+                    stagingPath = Paths.get(job.stagingPath, job.depotId.toString()).toString(),
+                    branch = job.branch,
+                    maxDownloads = maxDownloads,
+                    onDownloadProgress = { progress ->
+                        task.progress = progress
+                        task.progressCallback?.onProgress(progress)
+                    },
+                    pipelineOptions = pipelineOptions,
+                    scope = this,
+                    sharedPool = pool,
+                    throttle = throttle
+                )
+            } catch (e: Exception) {
+                logger.error("Failed to download $task", e)
+                false
+            }
+        }
+
+        // also runs if the job is cancelled before it started
+        runningJob.invokeOnCompletion { finish(task, app, downloaded) }
+        task.runningJob = runningJob
+
+        // cancelled before the job was assigned
+        if (task.cancelled) {
+            runningJob.cancel()
+        }
+    }
+
+    private fun finish(task: DownloadTask, app: AppDownloads, downloaded: Boolean) {
+        synchronized(lock) {
+            running.remove(task)
+
+            if (--app.running == 0) {
+                apps.remove(task.job.appId)
+            }
+        }
+
+        task.state = when {
+            downloaded -> DownloadTask.State.COMPLETED
+            task.cancelled -> DownloadTask.State.CANCELLED
+            else -> DownloadTask.State.FAILED
+        }
+        task.result.complete(downloaded)
+
+        logger.debug("Finished $task")
+
+        startTasks()
+    }
+}
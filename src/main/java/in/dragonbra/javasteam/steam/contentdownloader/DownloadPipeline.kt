@@ -0,0 +1,176 @@
+package `in`.dragonbra.javasteam.steam.contentdownloader
+
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.cancel
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.joinAll
+import kotlinx.coroutines.launch
+import java.util.IdentityHashMap
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Moves items through three stages: [fetch] on [networkConcurrency] coroutines, [decode] on
+ * [DownloadPipelineOptions.decodeConcurrency] coroutines of [Dispatchers.Default], and [write] on
+ * [DownloadPipelineOptions.writeConcurrency] coroutines of [Dispatchers.IO].
+ *
+ * The decode queue and every writer queue hold at most [DownloadPipelineOptions.queueCapacity] items, so fetching
+ * suspends when decoding or writing falls behind. Items with the same [writerOf] key always go to the same writer,
+ * in the order they were decoded.
+ *
+ * @param fetch Downloads the raw data of an item.
+ * @param decode Turns raw data into the data to write, or returns null to fetch the item again.
+ * It owns the raw data, and may hand it back to a pool.
+ * @param writerOf The key that groups items written by the same writer, compared by identity.
+ * @param write Writes the decoded data of an item. It owns the decoded data, and may hand it back to a pool.
+ */
+internal class DownloadPipeline<T : Any>(
+    private val networkConcurrency: Int,
+    private val options: DownloadPipelineOptions,
+    private val fetch: suspend (T) -> ChunkBuffer,
+    private val decode: (T, ChunkBuffer) -> ChunkBuffer?,
+    private val writerOf: (T) -> Any,
+    private val write: suspend (T, ChunkBuffer) -> Unit,
+) {
+
+    val stats = DownloadPipelineStats()
+
+    private class Fetched<T>(val item: T, val data: ChunkBuffer)
+
+    init {
+        require(networkConcurrency > 0) { "networkConcurrency must be at least 1" }
+    }
+
+    /**
+     * Runs all [items] through the pipeline and returns once every one of them is written.
+     * If a stage throws, the other stages are cancelled and the exception is rethrown.
+     */
+    suspend fun run(items: Collection<T>): Unit = coroutineScope {
+        if (items.isEmpty()) {
+            return@coroutineScope
+        }
+
+        val scope = this
+
+        // a stage throwing CancellationException would only end its own coroutine and leave its item pending
+        fun fail(e: Throwable): Nothing {
+            if (e is CancellationException) {
+                scope.cancel(e)
+            }
+            throw e
+        }
+
+        val writerIndex = assignWriters(items)
+        val pending = AtomicInteger(items.size)
+
+        val fetchQueue = Channel<T>(Channel.UNLIMITED)
+        val decodeQueue = Channel<Fetched<T>>(options.queueCapacity)
+        val writeQueues = List(options.writeConcurrency) { Channel<Fetched<T>>(options.queueCapacity) }
+
+        for (item in items) {
+            stats.network.enqueue()
+            fetchQueue.trySend(item)
+        }
+
+        val fetchers = List(networkConcurrency) {
+            launch {
+                for (item in fetchQueue) {
+                    stats.network.start()
+                    val data = try {
+                        fetch(item)
+                    } catch (e: Throwable) {
+                        stats.network.abort()
+                        fail(e)
+                    }
+                    stats.network.finish(data.length.toLong())
+
+                    stats.decode.enqueue()
+                    decodeQueue.send(Fetched(item, data))
+                }
+            }
+        }
+
+        val decoders = List(options.decodeConcurrency) {
+            launch(Dispatchers.Default) {
+                for (fetched in decodeQueue) {
+                    stats.decode.start()
+                    val data = try {
+                        decode(fetched.item, fetched.data)
+                    } catch (e: Throwable) {
+                        stats.decode.abort()
+                        fail(e)
+                    }
+
+                    if (data == null) {
+                        // the fetch queue is unbounded, this never suspends
+                        stats.decode.abort()
+                        stats.network.enqueue()
+                        fetchQueue.send(fetched.item)
+                        continue
+                    }
+
+                    stats.decode.finish(data.length.toLong())
+
+                    stats.write.enqueue()
+                    writeQueues[writerIndex.getValue(writerOf(fetched.item))].send(Fetched(fetched.item, data))
+                }
+            }
+        }
+
+        val writers = writeQueues.map { queue ->
+            launch(Dispatchers.IO) {
+                for (decoded in queue) {
+                    stats.write.start()
+                    try {
+                        write(decoded.item, decoded.data)
+                    } catch (e: Throwable) {
+                        stats.write.abort()
+                        fail(e)
+                    }
+                    stats.write.finish(decoded.data.length.toLong())
+
+                    if (pending.decrementAndGet() == 0) {
+                        fetchQueue.close()
+                    }
+                }
+            }
+        }
+
+        val reporter = options.statsListener?.takeIf { options.statsIntervalMillis > 0 }?.let { listener ->
+            launch {
+                while (true) {
+                    delay(options.statsIntervalMillis)
+                    listener.onStats(stats)
+                }
+            }
+        }
+
+        // every stage ends once the one before it has ended and its queue is drained
+        fetchers.joinAll()
+        decodeQueue.close()
+        decoders.joinAll()
+        writeQueues.forEach { it.close() }
+        writers.joinAll()
+
+        reporter?.cancel()
+        options.statsListener?.onStats(stats)
+    }
+
+    private fun assignWriters(items: Collection<T>): Map<Any, Int> {
+        val writerIndex = IdentityHashMap<Any, Int>()
+
+        for (item in items) {
+            writerIndex.computeIfAbsent(writerOf(item)) { writerIndex.size % options.writeConcurrency }
+        }
+
+        return writerIndex
+    }
+}
+
+/**
+ * The data of a chunk, held in the first [length] bytes of [array]. The array may be longer when it comes from a pool.
+ * [fromDisk] chunks were copied from an earlier download and are already uncompressed.
+ */
+internal class ChunkBuffer(val array: ByteArray, val length: Int, val fromDisk: Boolean = false)
@@ -0,0 +1,37 @@
+package `in`.dragonbra.javasteam.steam.contentdownloader
+
+/**
+ * Tunes the stages a depot download goes through. Chunks are fetched from the CDN, then decrypted and decompressed,
+ * then written to their file. Every stage has its own concurrency, and the queues between the stages are bounded,
+ * so a slow stage holds back the ones before it instead of piling up chunks in memory.
+ * Without [adaptiveConcurrency], the number of concurrent CDN requests is the `maxDownloads` parameter of
+ * [ContentDownloader.downloadApp].
+ *
+ * @param decodeConcurrency How many chunks are decrypted and decompressed at the same time.
+ * @param writeConcurrency How many files are written to at the same time.
+ * All chunks of a file are written by the same writer.
+ * @param queueCapacity How many chunks may wait in front of the decode stage and in front of every writer.
+ * @param statsIntervalMillis How often [statsListener] is called while a depot downloads.
+ * With 0 it's only called once the depot is done.
+ * @param statsListener Receives the queue depth and throughput of the stages.
+ * @param adaptiveConcurrency Whether the number of requests in flight to every CDN server adapts to how the server
+ * responds, growing while it keeps up and shrinking when requests time out or slow down.
+ * @param maxNetworkConcurrency How many CDN requests may be in flight at most with [adaptiveConcurrency].
+ */
+data class DownloadPipelineOptions @JvmOverloads constructor(
+    val decodeConcurrency: Int = Runtime.getRuntime().availableProcessors(),
+    val writeConcurrency: Int = 2,
+    val queueCapacity: Int = 16,
+    val statsIntervalMillis: Long = 0,
+    val statsListener: PipelineStatsCallback? = null,
+    val adaptiveConcurrency: Boolean = true,
+    val maxNetworkConcurrency: Int = 64,
+) {
+    init {
+        require(decodeConcurrency > 0) { "decodeConcurrency must be at least 1" }
+        require(writeConcurrency > 0) { "writeConcurrency must be at least 1" }
+        require(queueCapacity > 0) { "queueCapacity must be at least 1" }
+        require(statsIntervalMillis >= 0) { "statsIntervalMillis must not be negative" }
+        require(maxNetworkConcurrency > 0) { "maxNetworkConcurrency must be at least 1" }
+    }
+}
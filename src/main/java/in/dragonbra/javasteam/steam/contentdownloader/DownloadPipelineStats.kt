@@ -0,0 +1,108 @@
+package `in`.dragonbra.javasteam.steam.contentdownloader
+
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Live statistics of the stages of a depot download, see [DownloadPipelineOptions].
+ */
+class DownloadPipelineStats internal constructor() {
+
+    private val startNanos = System.nanoTime()
+
+    /**
+     * Fetching chunks from the CDN.
+     */
+    val network = Stage("network")
+
+    /**
+     * Decrypting and decompressing chunks.
+     */
+    val decode = Stage("decode")
+
+    /**
+     * Writing chunks to their file.
+     */
+    val write = Stage("write")
+
+    /**
+     * The time since the depot download started, in milliseconds.
+     */
+    val elapsedMillis: Long
+        get() = (System.nanoTime() - startNanos) / 1_000_000
+
+    override fun toString(): String = "$network, $decode, $write"
+
+    /**
+     * A single stage of the download.
+     */
+    inner class Stage internal constructor(val name: String) {
+
+        internal val queued = AtomicInteger()
+
+        internal val active = AtomicInteger()
+
+        private val chunks = AtomicLong()
+
+        private val bytes = AtomicLong()
+
+        /**
+         * The number of chunks waiting for this stage.
+         */
+        val queueDepth: Int
+            get() = queued.get()
+
+        /**
+         * The number of chunks this stage is working on.
+         */
+        val inFlight: Int
+            get() = active.get()
+
+        /**
+         * The number of chunks that went through this stage.
+         */
+        val completedChunks: Long
+            get() = chunks.get()
+
+        /**
+         * The number of bytes that went through this stage. That's the compressed size for the network stage, and the
+         * uncompressed size for the others.
+         */
+        val completedBytes: Long
+            get() = bytes.get()
+
+        /**
+         * The average throughput of this stage since the download started, in bytes per second.
+         */
+        val bytesPerSecond: Double
+            get() {
+                val seconds = (System.nanoTime() - startNanos) / 1e9
+                return if (seconds > 0) bytes.get() / seconds else 0.0
+            }
+
+        internal fun enqueue() {
+            queued.incrementAndGet()
+        }
+
+        internal fun start() {
+            queued.decrementAndGet()
+            active.incrementAndGet()
+        }
+
+        internal fun finish(byteCount: Long) {
+            active.decrementAndGet()
+            chunks.incrementAndGet()
+            bytes.addAndGet(byteCount)
+        }
+
+        internal fun abort() {
+            active.decrementAndGet()
+        }
+
+        override fun toString(): String {
+            val megabytesPerSecond = bytesPerSecond / 1_000_000
+            return "$name: queued $queueDepth, in flight $inFlight, $completedChunks chunks, " +
+                "%.2f MB/s".format(megabytesPerSecond)
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package `in`.dragonbra.javasteam.steam.contentdownloader
+
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.future.asCompletableFuture
+import java.util.concurrent.CompletableFuture
+
+/**
+ * A [DownloadJob] that was handed to a [DownloadManager].
+ */
+@Suppress("MemberVisibilityCanBePrivate", "unused")
+class DownloadTask internal constructor(
+    val job: DownloadJob,
+    internal val sequence: Long,
+    internal val progressCallback: ProgressCallback?,
+    private val onCancel: (DownloadTask) -> Unit,
+) {
+
+    /**
+     * The states a task goes through.
+     */
+    enum class State {
+        QUEUED,
+        RUNNING,
+        COMPLETED,
+        FAILED,
+        CANCELLED,
+    }
+
+    internal val result = CompletableDeferred<Boolean>()
+
+    internal val meter = ThroughputMeter()
+
+    internal var runningJob: Job? = null
+
+    @Volatile
+    internal var cancelled = false
+
+    /**
+     * The state of this task.
+     */
+    @Volatile
+    var state: State = State.QUEUED
+        internal set
+
+    /**
+     * The share of the depot that is on disk, from 0 to 1.
+     */
+    @Volatile
+    var progress: Float = 0f
+        internal set
+
+    /**
+     * The number of compressed bytes this task downloaded from the CDN.
+     */
+    val bytesDownloaded: Long
+        get() = meter.totalBytes
+
+    /**
+     * The rate this task downloaded at over the last seconds, in bytes per second.
+     */
+    val bytesPerSecond: Double
+        get() = meter.bytesPerSecond()
+
+    /**
+     * Waits for the task to end.
+     * @return true if the depot was downloaded, false if the download failed or was cancelled.
+     */
+    suspend fun await(): Boolean = result.await()
+
+    /**
+     * Java-friendly version of [await].
+     */
+    fun future(): CompletableFuture<Boolean> = result.asCompletableFuture()
+
+    /**
+     * Cancels the task, either before it started or while it runs.
+     */
+    fun cancel() {
+        onCancel(this)
+    }
+
+    override fun toString(): String =
+        "app ${job.appId} depot ${job.depotId}: $state, %.0f%%, $bytesDownloaded bytes".format(progress * 100)
+}
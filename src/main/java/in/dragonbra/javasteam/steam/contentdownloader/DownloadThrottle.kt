@@ -0,0 +1,28 @@
+package `in`.dragonbra.javasteam.steam.contentdownloader
+
+/**
+ * Puts the CDN requests of one download behind the limits a [DownloadManager] shares between its downloads.
+ * Requests wait for a permit of [gate], then for [limiter] to allow their bytes.
+ */
+internal class DownloadThrottle(
+    private val gate: FairShareGate,
+    private val limiter: BandwidthLimiter,
+    private val owner: Any,
+    private val priority: Int,
+    private val meter: ThroughputMeter,
+    private val globalMeter: ThroughputMeter,
+) {
+
+    /**
+     * Runs a CDN request for [bytes] compressed bytes.
+     */
+    suspend fun fetch(bytes: Int, block: suspend () -> ChunkBuffer): ChunkBuffer =
+        gate.withPermit(owner, priority) {
+            limiter.acquire(bytes.toLong())
+
+            block().also { data ->
+                meter.add(data.length.toLong())
+                globalMeter.add(data.length.toLong())
+            }
+        }
+}
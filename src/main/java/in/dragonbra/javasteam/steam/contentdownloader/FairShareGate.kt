@@ -0,0 +1,115 @@
+package `in`.dragonbra.javasteam.steam.contentdownloader
+
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.CompletableDeferred
+
+/**
+ * Semaphore shared by several owners that hands free permits to the waiting owner with the highest priority, and
+ * among owners of the same priority to the one holding the fewest permits. An owner with a lot of queued work can't
+ * keep the permits from an owner that started later, and every owner of the top priority gets an even share.
+ */
+internal class FairShareGate(permits: Int) {
+
+    private class Waiter(val owner: Any, val priority: Int) {
+        val granted = CompletableDeferred<Unit>()
+    }
+
+    private val lock = Any()
+
+    private var available = permits
+
+    // oldest first, ties go to the one waiting longest
+    private val waiters = mutableListOf<Waiter>()
+
+    // owner to the number of permits it holds
+    private val held = HashMap<Any, Int>()
+
+    init {
+        require(permits > 0) { "permits must be at least 1" }
+    }
+
+    /**
+     * The number of permits [owner] holds.
+     */
+    fun heldBy(owner: Any): Int = synchronized(lock) { held[owner] ?: 0 }
+
+    suspend fun <T> withPermit(owner: Any, priority: Int, block: suspend () -> T): T {
+        acquire(owner, priority)
+
+        try {
+            return block()
+        } finally {
+            release(owner)
+        }
+    }
+
+    suspend fun acquire(owner: Any, priority: Int) {
+        val waiter = synchronized(lock) {
+            if (available > 0 && waiters.isEmpty()) {
+                available--
+                held.merge(owner, 1) { a, b -> a + b }
+                return
+            }
+
+            Waiter(owner, priority).also { waiters.add(it) }
+        }
+
+        try {
+            waiter.granted.await()
+        } catch (e: CancellationException) {
+            val wasGranted = synchronized(lock) { !waiters.remove(waiter) }
+
+            // the permit was handed over while this was being cancelled
+            if (wasGranted) {
+                release(owner)
+            }
+
+            throw e
+        }
+    }
+
+    fun release(owner: Any) {
+        val next = synchronized(lock) {
+            val count = held[owner] ?: 0
+            check(count > 0) { "$owner doesn't hold a permit" }
+
+            if (count == 1) {
+                held.remove(owner)
+            } else {
+                held[owner] = count - 1
+            }
+
+            val next = nextWaiter()
+
+            if (next == null) {
+                available++
+                return
+            }
+
+            waiters.remove(next)
+            held.merge(next.owner, 1) { a, b -> a + b }
+            next
+        }
+
+        next.granted.complete(Unit)
+    }
+
+    private fun nextWaiter(): Waiter? {
+        var best: Waiter? = null
+        var bestHeld = 0
+
+        for (waiter in waiters) {
+            val waiterHeld = held[waiter.owner] ?: 0
+
+            if (best == null ||
+                waiter.priority > best.priority ||
+                (waiter.priority == best.priority && waiterHeld < bestHeld)
+            ) {
+                best = waiter
+                bestHeld = waiterHeld
+            }
+        }
+
+        return best
+    }
+}
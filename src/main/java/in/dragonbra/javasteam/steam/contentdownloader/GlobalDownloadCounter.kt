@@ -1,6 +1,10 @@
 package `in`.dragonbra.javasteam.steam.contentdownloader
 
+/**
+ * @param totalBytesSaved compressed bytes that weren't downloaded because the chunk was needed more than once.
+ */
 data class GlobalDownloadCounter(
     var totalBytesCompressed: Long = 0,
     var totalBytesUncompressed: Long = 0,
+    var totalBytesSaved: Long = 0,
 )
@@ -0,0 +1,29 @@
+package `in`.dragonbra.javasteam.steam.contentdownloader
+
+import `in`.dragonbra.javasteam.types.ChunkData
+
+/**
+ * An interface for caching uncompressed depot chunks, so chunks that were downloaded before are read from the cache
+ * instead of the CDN. Chunks are identified by their chunk ID, which is the SHA-1 hash of their content, so the
+ * same entry serves every depot that contains the chunk.
+ *
+ * Implementations must be thread safe.
+ */
+interface IChunkCache {
+
+    /**
+     * Ask a cache to read a chunk
+     * @param chunk the chunk to read
+     * @param destination the buffer to receive the uncompressed chunk, at least [ChunkData.uncompressedLength] long
+     * @return the number of bytes written to [destination], or -1 if the cache doesn't have the chunk
+     */
+    fun fetchChunk(chunk: ChunkData, destination: ByteArray): Int
+
+    /**
+     * Ask a cache to store a chunk
+     * @param chunk the chunk to store
+     * @param data the buffer that holds the uncompressed chunk
+     * @param length the length of the chunk in [data]
+     */
+    fun storeChunk(chunk: ChunkData, data: ByteArray, length: Int)
+}
@@ -0,0 +1,394 @@
+package `in`.dragonbra.javasteam.steam.contentdownloader
+
+import `in`.dragonbra.javasteam.types.DepotManifest
+import `in`.dragonbra.javasteam.util.Utils
+import `in`.dragonbra.javasteam.util.log.LogManager
+import `in`.dragonbra.javasteam.util.log.Logger
+import java.io.Closeable
+import java.io.File
+import java.io.IOException
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardCopyOption
+import java.nio.file.StandardOpenOption
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+
+/**
+ * Depot manifest provider that appends depot manifests to a log file and keeps an index of them in memory.
+ *
+ * Storing a manifest or a latest manifest ID is a single append, and a lookup reads just the manifest it needs.
+ * The index is rebuilt from the record headers when the file is opened. Every append is flushed to disk before it
+ * returns, so after a crash only the last record can be incomplete, and it's cut off the next time the file is opened.
+ *
+ * Replaced manifests and manifest IDs stay in the file until it's compacted. That happens in the background once
+ * they take up more than [compactionThreshold] of the file, or when [compact] is called. Compaction writes the
+ * live records to a new file and moves it over the old one.
+ *
+ * @constructor Instantiates an [IndexedManifestProvider] object.
+ * @param file the file that will store the depot manifests
+ * @param compactionThreshold the share of the file that replaced records may take up before it's compacted
+ */
+@Suppress("unused")
+class IndexedManifestProvider @JvmOverloads constructor(
+    private val file: Path,
+    private val compactionThreshold: Double = 0.5,
+) : IManifestProvider, Closeable {
+
+    /**
+     * Instantiates an [IndexedManifestProvider] object.
+     * @param file the file that will store the depot manifests.
+     */
+    constructor(file: File) : this(file.toPath())
+
+    /**
+     * Instantiates an [IndexedManifestProvider] object.
+     * @param filename the filename that will store the depot manifests.
+     */
+    constructor(filename: String) : this(Path.of(filename))
+
+    private data class ManifestKey(val depotID: Int, val manifestID: Long)
+
+    private class Record(
+        val type: Byte,
+        val depotID: Int,
+        val manifestID: Long,
+        val offset: Long,
+        val length: Int,
+        val crc: Int,
+    ) {
+        val size: Long
+            get() = HEADER_SIZE + length.toLong()
+    }
+
+    companion object {
+        private val logger: Logger = LogManager.getLogger(IndexedManifestProvider::class.java)
+
+        private const val RECORD_MAGIC = 0x4D414E46 // "MANF"
+
+        private const val TYPE_MANIFEST: Byte = 1
+
+        private const val TYPE_LATEST: Byte = 2
+
+        // magic, type, depot ID, manifest ID, payload length, payload CRC
+        private const val HEADER_SIZE = 4 + 1 + 4 + 8 + 4 + 4
+
+        // don't bother compacting small files
+        private const val MIN_COMPACTION_SIZE = 1L shl 20
+
+        private val compactionExecutor: ExecutorService by lazy {
+            Executors.newSingleThreadExecutor { runnable ->
+                Thread(runnable, "IndexedManifestProvider compaction").apply { isDaemon = true }
+            }
+        }
+    }
+
+    private val compactFile: Path = file.resolveSibling("${file.fileName}.compact")
+
+    private val lock = Any()
+
+    private lateinit var channel: FileChannel
+
+    private var size = 0L
+
+    private var garbageSize = 0L
+
+    private var compactionScheduled = false
+
+    private var compacting = false
+
+    private var closed = false
+
+    private val manifests = HashMap<ManifestKey, Record>()
+
+    private val latest = HashMap<Int, Record>()
+
+    init {
+        require(file.fileName.toString().isNotBlank()) { "FileName must not be blank" }
+        require(compactionThreshold > 0 && compactionThreshold <= 1) { "compactionThreshold must be in (0, 1]" }
+
+        // a compaction that didn't finish leaves its file behind, the original is still complete
+        Files.deleteIfExists(compactFile)
+
+        synchronized(lock) {
+            open()
+        }
+    }
+
+    /**
+     * The size of the file in bytes.
+     */
+    val fileSize: Long
+        get() = synchronized(lock) { size }
+
+    override fun fetchManifest(depotID: Int, manifestID: Long): DepotManifest? {
+        val (record, data) = try {
+            synchronized(lock) {
+                val record = manifests[ManifestKey(depotID, manifestID)] ?: return null
+                record to readPayload(record)
+            }
+        } catch (e: IOException) {
+            logger.error("Failed to read manifest $manifestID of depot $depotID from ${file.fileName}", e)
+            return null
+        }
+
+        if (Utils.crc32(data).toInt() != record.crc) {
+            logger.error("Manifest $manifestID of depot $depotID in ${file.fileName} is corrupt")
+            return null
+        }
+
+        return runCatching { DepotManifest.deserialize(data) }.getOrElse { error ->
+            logger.error("Failed to parse manifest $manifestID of depot $depotID", error)
+            null
+        }
+    }
+
+    override fun fetchLatestManifest(depotID: Int): DepotManifest? {
+        val manifestID = synchronized(lock) { latest[depotID]?.manifestID } ?: return null
+        return fetchManifest(depotID, manifestID)
+    }
+
+    override fun setLatestManifestId(depotID: Int, manifestID: Long) {
+        try {
+            synchronized(lock) {
+                val record = append(TYPE_LATEST, depotID, manifestID, ByteArray(0))
+                latest.put(depotID, record)?.let { garbageSize += it.size }
+                maybeScheduleCompaction()
+            }
+        } catch (e: IOException) {
+            logger.error("Failed to write manifest ID to file ${file.fileName}", e)
+        }
+    }
+
+    override fun updateManifest(manifest: DepotManifest) {
+        val data = manifest.toByteArray()
+
+        try {
+            synchronized(lock) {
+                val key = ManifestKey(manifest.depotID, manifest.manifestGID)
+                val record = append(TYPE_MANIFEST, key.depotID, key.manifestID, data)
+                manifests.put(key, record)?.let { garbageSize += it.size }
+                maybeScheduleCompaction()
+            }
+        } catch (e: IOException) {
+            logger.error("Failed to write manifest to file ${file.fileName}", e)
+        }
+    }
+
+    /**
+     * Rewrites the file with only the records that are still in use. Lookups and appends go on while the records are
+     * copied, the provider is only blocked to copy the records appended in the meantime and to swap the files.
+     */
+    @Throws(IOException::class)
+    fun compact() {
+        val source: FileChannel
+        val live: List<Record>
+        val copiedSize: Long
+
+        synchronized(lock) {
+            compactionScheduled = false
+
+            if (closed || compacting || garbageSize == 0L) {
+                return
+            }
+
+            compacting = true
+            source = channel
+            live = (manifests.values + latest.values).sortedBy { it.offset }
+            copiedSize = size
+        }
+
+        try {
+            FileChannel.open(
+                compactFile,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE
+            ).use { target ->
+                // the header and payload are copied as they are
+                for (record in live) {
+                    transferFully(source, record.offset - HEADER_SIZE, record.size, target)
+                }
+
+                synchronized(lock) {
+                    if (closed) {
+                        return
+                    }
+
+                    transferFully(channel, copiedSize, size - copiedSize, target)
+                    target.force(true)
+                    target.close()
+                    channel.close()
+
+                    try {
+                        Files.move(
+                            compactFile,
+                            file,
+                            StandardCopyOption.REPLACE_EXISTING,
+                            StandardCopyOption.ATOMIC_MOVE
+                        )
+                    } finally {
+                        // reads back the index of either the compacted file or the original one, records replaced
+                        // while the live ones were copied count as garbage again
+                        open()
+                    }
+
+                    logger.debug("Compacted ${file.fileName} to $size bytes")
+                }
+            }
+        } finally {
+            runCatching { Files.deleteIfExists(compactFile) }
+
+            synchronized(lock) {
+                compacting = false
+            }
+        }
+    }
+
+    override fun close() {
+        synchronized(lock) {
+            if (!closed) {
+                closed = true
+                channel.close()
+            }
+        }
+    }
+
+    private fun maybeScheduleCompaction() {
+        if (compactionScheduled || size < MIN_COMPACTION_SIZE || garbageSize < size * compactionThreshold) {
+            return
+        }
+
+        compactionScheduled = true
+
+        compactionExecutor.execute {
+            try {
+                compact()
+            } catch (e: IOException) {
+                logger.error("Failed to compact ${file.fileName}", e)
+            }
+        }
+    }
+
+    /**
+     * Opens the file, rebuilds the index and cuts off an incomplete last record.
+     */
+    private fun open() {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)
+
+        manifests.clear()
+        latest.clear()
+        garbageSize = 0
+
+        val fileLength = channel.size()
+        val header = ByteBuffer.allocate(HEADER_SIZE)
+        val records = ArrayList<Record>()
+        var position = 0L
+
+        while (position + HEADER_SIZE <= fileLength) {
+            header.clear()
+            readFully(header, position)
+            header.flip()
+
+            val magic = header.getInt()
+            val type = header.get()
+            val depotID = header.getInt()
+            val manifestID = header.getLong()
+            val length = header.getInt()
+            val crc = header.getInt()
+
+            if (magic != RECORD_MAGIC || (type != TYPE_MANIFEST && type != TYPE_LATEST) || length < 0 ||
+                position + HEADER_SIZE + length > fileLength
+            ) {
+                break
+            }
+
+            records.add(Record(type, depotID, manifestID, position + HEADER_SIZE, length, crc))
+            position += HEADER_SIZE + length
+        }
+
+        // only the last record can have been cut short by a crash, the ones before it were flushed
+        val last = records.lastOrNull()
+        if (last != null && Utils.crc32(readPayload(last)).toInt() != last.crc) {
+            records.removeAt(records.size - 1)
+            position = last.offset - HEADER_SIZE
+        }
+
+        if (position < fileLength) {
+            logger.debug("Discarding ${fileLength - position} bytes of incomplete records in ${file.fileName}")
+            channel.truncate(position)
+            channel.force(true)
+        }
+
+        size = position
+
+        for (record in records) {
+            val replaced = when (record.type) {
+                TYPE_MANIFEST -> manifests.put(ManifestKey(record.depotID, record.manifestID), record)
+                else -> latest.put(record.depotID, record)
+            }
+
+            replaced?.let { garbageSize += it.size }
+        }
+    }
+
+    private fun append(type: Byte, depotID: Int, manifestID: Long, payload: ByteArray): Record {
+        check(!closed) { "The manifest provider is closed" }
+
+        val crc = Utils.crc32(payload).toInt()
+        val header = ByteBuffer.allocate(HEADER_SIZE)
+            .putInt(RECORD_MAGIC)
+            .put(type)
+            .putInt(depotID)
+            .putLong(manifestID)
+            .putInt(payload.size)
+            .putInt(crc)
+            .flip()
+        val buffers = arrayOf(header, ByteBuffer.wrap(payload))
+
+        try {
+            channel.position(size)
+            while (buffers[0].hasRemaining() || buffers[1].hasRemaining()) {
+                channel.write(buffers)
+            }
+            channel.force(false)
+        } catch (e: IOException) {
+            // don't leave a partial record in front of the next one
+            runCatching { channel.truncate(size) }
+            throw e
+        }
+
+        val record = Record(type, depotID, manifestID, size + HEADER_SIZE, payload.size, crc)
+        size += record.size
+
+        return record
+    }
+
+    private fun readPayload(record: Record): ByteArray {
+        val data = ByteArray(record.length)
+
+        if (record.length > 0) {
+            readFully(ByteBuffer.wrap(data), record.offset)
+        }
+
+        return data
+    }
+
+    private fun transferFully(source: FileChannel, position: Long, count: Long, target: FileChannel) {
+        var transferred = 0L
+
+        while (transferred < count) {
+            transferred += source.transferTo(position + transferred, count - transferred, target)
+        }
+    }
+
+    private fun readFully(buffer: ByteBuffer, position: Long) {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw IOException("Unexpected end of ${file.fileName}")
+            }
+        }
+    }
+}
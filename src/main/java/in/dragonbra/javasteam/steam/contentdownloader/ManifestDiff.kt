@@ -0,0 +1,187 @@
+package `in`.dragonbra.javasteam.steam.contentdownloader
+
+import `in`.dragonbra.javasteam.types.ChunkData
+import `in`.dragonbra.javasteam.types.CompactDepotManifest
+import `in`.dragonbra.javasteam.types.DepotManifest
+import `in`.dragonbra.javasteam.types.FileData
+
+/**
+ * The differences between two versions of a depot manifest, and what updating from one to the other takes.
+ *
+ * Files are matched by name, and a file whose content hash changed is matched chunk by chunk on chunk ID. Both
+ * are looked up in hash maps, so computing a diff takes time linear in the number of files and chunks.
+ *
+ * The sizes assume the previous version is installed intact, files that are missing or damaged on disk need more.
+ */
+@Suppress("MemberVisibilityCanBePrivate", "unused")
+class ManifestDiff private constructor(previous: List<FileData>?, current: List<FileData>) {
+
+    /**
+     * Computes the diff between two manifests.
+     * @param previous the installed manifest, or null for a fresh install.
+     * @param current the manifest to update to.
+     */
+    constructor(previous: DepotManifest?, current: DepotManifest) : this(previous?.files, current.files)
+
+    /**
+     * Computes the diff between two compact manifests. Their files and chunks are created from the packed arrays as
+     * the diff reads them.
+     * @param previous the installed manifest, or null for a fresh install.
+     * @param current the manifest to update to.
+     */
+    constructor(previous: CompactDepotManifest?, current: CompactDepotManifest) : this(previous?.files, current.files)
+
+    /**
+     * A file whose content changed between the manifests.
+     * @param previousFile the file in the previous manifest.
+     * @param file the file in the current manifest.
+     * @param reusableChunks the chunks that can be copied from the previous version of the file.
+     * @param neededChunks the chunks that have to be downloaded.
+     */
+    class FileChange(
+        val previousFile: FileData,
+        val file: FileData,
+        val reusableChunks: List<ChunkMatch>,
+        val neededChunks: List<ChunkData>,
+    )
+
+    private val previousFiles = HashMap<String, FileData>()
+
+    private val changes = HashMap<String, FileChange>()
+
+    /**
+     * Gets the files that are only in the current manifest.
+     */
+    val addedFiles: List<FileData>
+
+    /**
+     * Gets the files that are only in the previous manifest.
+     */
+    val removedFiles: List<FileData>
+
+    /**
+     * Gets the files in both manifests whose content changed.
+     */
+    val modifiedFiles: List<FileChange>
+
+    /**
+     * Gets the files in both manifests whose content is the same.
+     */
+    val unchangedFiles: List<FileData>
+
+    /**
+     * Gets the number of chunks that have to be downloaded.
+     */
+    val neededChunkCount: Int
+
+    /**
+     * Gets the compressed size of the chunks that have to be downloaded.
+     */
+    val downloadBytes: Long
+
+    /**
+     * Gets the uncompressed size of the chunks that have to be downloaded.
+     */
+    val downloadUncompressedBytes: Long
+
+    /**
+     * Gets the size of the chunks that are copied from the previous version of their file.
+     */
+    val reusedBytes: Long
+
+    init {
+        previous?.forEach { previousFiles.putIfAbsent(it.fileName, it) }
+
+        val currentNames = HashSet<String>(current.size * 2)
+        val added = ArrayList<FileData>()
+        val modified = ArrayList<FileChange>()
+        val unchanged = ArrayList<FileData>()
+        var chunkCount = 0
+        var compressed = 0L
+        var uncompressed = 0L
+        var reused = 0L
+
+        for (file in current) {
+            currentNames.add(file.fileName)
+
+            val previousFile = previousFiles[file.fileName]
+
+            if (previousFile == null) {
+                added.add(file)
+
+                for (chunk in file.chunks) {
+                    chunkCount++
+                    compressed += chunk.compressedLength
+                    uncompressed += chunk.uncompressedLength
+                }
+            } else if (previousFile.fileHash.contentEquals(file.fileHash)) {
+                unchanged.add(file)
+            } else {
+                val change = diffFile(previousFile, file)
+                modified.add(change)
+                changes[file.fileName] = change
+
+                for (chunk in change.neededChunks) {
+                    chunkCount++
+                    compressed += chunk.compressedLength
+                    uncompressed += chunk.uncompressedLength
+                }
+
+                for (match in change.reusableChunks) {
+                    reused += match.newChunk.uncompressedLength
+                }
+            }
+        }
+
+        addedFiles = added
+        modifiedFiles = modified
+        unchangedFiles = unchanged
+        removedFiles = previous?.filter { it.fileName !in currentNames } ?: emptyList()
+        neededChunkCount = chunkCount
+        downloadBytes = compressed
+        downloadUncompressedBytes = uncompressed
+        reusedBytes = reused
+    }
+
+    /**
+     * Looks up a file of the previous manifest.
+     * @param fileName the name of the file.
+     * @return the file, or null if the previous manifest doesn't have it.
+     */
+    fun previousFile(fileName: String): FileData? = previousFiles[fileName]
+
+    /**
+     * Looks up the change of a modified file.
+     * @param fileName the name of the file.
+     * @return the change, or null if the file wasn't modified.
+     */
+    fun change(fileName: String): FileChange? = changes[fileName]
+
+    override fun toString(): String = "${addedFiles.size} added, ${modifiedFiles.size} modified, " +
+        "${removedFiles.size} removed, ${unchangedFiles.size} unchanged files, $neededChunkCount chunks " +
+        "($downloadBytes bytes) to download, $reusedBytes bytes reused"
+
+    private fun diffFile(previousFile: FileData, file: FileData): FileChange {
+        val previousChunks = HashMap<ChunkKey, ChunkData>(previousFile.chunks.size * 2)
+
+        for (chunk in previousFile.chunks) {
+            val chunkID = chunk.chunkID ?: continue
+            previousChunks.putIfAbsent(ChunkKey(chunkID), chunk)
+        }
+
+        val reusable = ArrayList<ChunkMatch>()
+        val needed = ArrayList<ChunkData>()
+
+        for (chunk in file.chunks) {
+            val previousChunk = chunk.chunkID?.let { previousChunks[ChunkKey(it)] }
+
+            if (previousChunk != null) {
+                reusable.add(ChunkMatch(previousChunk, chunk))
+            } else {
+                needed.add(chunk)
+            }
+        }
+
+        return FileChange(previousFile, file, reusable, needed)
+    }
+}
@@ -0,0 +1,8 @@
+package `in`.dragonbra.javasteam.steam.contentdownloader
+
+/**
+ * Interface for Java to implement for download pipeline statistics
+ */
+fun interface PipelineStatsCallback {
+    fun onStats(stats: DownloadPipelineStats)
+}
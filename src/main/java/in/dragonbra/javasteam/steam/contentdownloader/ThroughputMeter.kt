@@ -0,0 +1,60 @@
+package `in`.dragonbra.javasteam.steam.contentdownloader
+
+/**
+ * Counts bytes in one second buckets, and reports the rate over the last [windowSeconds] full seconds.
+ */
+internal class ThroughputMeter(private val windowSeconds: Int = 5) {
+
+    private val buckets = LongArray(windowSeconds + 1)
+
+    private var currentSecond = System.nanoTime() / 1_000_000_000
+
+    private var total = 0L
+
+    init {
+        require(windowSeconds > 0) { "windowSeconds must be at least 1" }
+    }
+
+    val totalBytes: Long
+        @Synchronized get() = total
+
+    @Synchronized
+    fun add(bytes: Long, nowNanos: Long = System.nanoTime()) {
+        advance(nowNanos / 1_000_000_000)
+        buckets[indexOf(currentSecond)] += bytes
+        total += bytes
+    }
+
+    /**
+     * The bytes per second over the last [windowSeconds] seconds, leaving out the second in progress.
+     */
+    @Synchronized
+    fun bytesPerSecond(nowNanos: Long = System.nanoTime()): Double {
+        advance(nowNanos / 1_000_000_000)
+
+        var sum = 0L
+        for (i in buckets.indices) {
+            if (i != indexOf(currentSecond)) {
+                sum += buckets[i]
+            }
+        }
+
+        return sum.toDouble() / windowSeconds
+    }
+
+    private fun advance(second: Long) {
+        if (second <= currentSecond) {
+            return
+        }
+
+        // clear the buckets of the seconds nothing was counted in
+        val steps = minOf(second - currentSecond, buckets.size.toLong())
+        for (i in 1..steps) {
+            buckets[indexOf(currentSecond + i)] = 0
+        }
+
+        currentSecond = second
+    }
+
+    private fun indexOf(second: Long): Int = Math.floorMod(second, buckets.size.toLong()).toInt()
+}
@@ -2,6 +2,7 @@ package `in`.dragonbra.javasteam.steam.discovery
 
 import `in`.dragonbra.javasteam.networking.steam3.ProtocolTypes
 import `in`.dragonbra.javasteam.protobufs.steam.discovery.BasicServerListProtos.BasicServer
+import `in`.dragonbra.javasteam.protobufs.steam.discovery.BasicServerListProtos.BasicServerLatency
 import `in`.dragonbra.javasteam.protobufs.steam.discovery.BasicServerListProtos.BasicServerList
 import `in`.dragonbra.javasteam.util.log.LogManager
 import `in`.dragonbra.javasteam.util.log.Logger
@@ -10,15 +11,18 @@ import java.io.IOException
 import java.nio.file.Files
 import java.nio.file.NoSuchFileException
 import java.nio.file.Path
+import java.nio.file.StandardCopyOption
+import java.nio.file.attribute.FileTime
 import java.time.Instant
 
 /**
- * Server provider that stores servers in a file using protobuf.
+ * Server provider that stores servers in a file using protobuf, along with the round trip times measured to them.
+ * The servers and the round trip times are updated one at a time, each keeping what the other stored.
  *
  * @constructor Initialize a new instance of FileStorageServerListProvider
  * @param file the filename that will store the servers
  */
-class FileServerListProvider(val file: Path) : IServerListProvider {
+class FileServerListProvider(val file: Path) : IServerListProvider, IServerLatencyProvider {
 
     /**
      * Instantiates a [FileServerListProvider] object.
@@ -54,16 +58,14 @@ class FileServerListProvider(val file: Path) : IServerListProvider {
      * @return List of servers if persisted, otherwise an empty list
      */
     override fun fetchServerList(): List<ServerRecord> = runCatching {
-        Files.newInputStream(file).use { fis ->
-            val serverList = BasicServerList.parseFrom(fis)
-            List(serverList.serversCount) { i ->
-                val server: BasicServer = serverList.getServers(i)
-                ServerRecord.createServer(
-                    server.getAddress(),
-                    server.port,
-                    ProtocolTypes.from(server.protocol)
-                )
-            }
+        val serverList = readServerList()
+        List(serverList.serversCount) { i ->
+            val server: BasicServer = serverList.getServers(i)
+            ServerRecord.createServer(
+                server.getAddress(),
+                server.port,
+                ProtocolTypes.from(server.protocol)
+            )
         }
     }.fold(
         onSuccess = { it },
@@ -81,8 +83,13 @@ class FileServerListProvider(val file: Path) : IServerListProvider {
      * Writes the supplied list of servers to persistent storage
      * @param endpoints List of server endpoints
      */
+    @Synchronized
     override fun updateServerList(endpoints: List<ServerRecord>) {
+        // the round trip times are kept, those of servers that are no longer listed just go unused
+        val latencies = runCatching { readServerList().latenciesList }.getOrDefault(emptyList())
+
         val builder = BasicServerList.newBuilder().apply {
+            addAllLatencies(latencies)
             addAllServers(
                 endpoints.map { endpoint ->
                     BasicServer.newBuilder()
@@ -95,14 +102,73 @@ class FileServerListProvider(val file: Path) : IServerListProvider {
         }
 
         try {
-            Files.newOutputStream(file).use { fos ->
-                builder.build().writeTo(fos)
-            }
+            writeServerList(builder.build())
         } catch (e: IOException) {
             logger.error("Failed to write servers to file ${file.fileName}", e)
         }
     }
 
+    /**
+     * Read the stored round trip times from the file
+     * @return List of round trip times if persisted, otherwise an empty list
+     */
+    override fun fetchServerLatencies(): List<ServerLatency> = runCatching {
+        readServerList().latenciesList.map { latency ->
+            ServerLatency(
+                ServerRecord.createServer(latency.address, latency.port, ProtocolTypes.from(latency.protocol)),
+                latency.rttMillis,
+                Instant.ofEpochMilli(latency.measuredAt)
+            )
+        }
+    }.getOrDefault(emptyList())
+
+    /**
+     * Writes the supplied round trip times to persistent storage, keeping the stored servers. The modification time
+     * of the file is kept as well, as it tells when the server list was refreshed.
+     * @param latencies List of round trip times
+     */
+    @Synchronized
+    override fun updateServerLatencies(latencies: List<ServerLatency>) {
+        val existing = runCatching { readServerList() }.getOrNull()
+        val lastModified = if (existing == null) FileTime.from(Instant.EPOCH) else Files.getLastModifiedTime(file)
+
+        val builder = BasicServerList.newBuilder().apply {
+            existing?.let { addAllServers(it.serversList) }
+            addAllLatencies(
+                latencies.map { latency ->
+                    BasicServerLatency.newBuilder()
+                        .setAddress(latency.record.host)
+                        .setPort(latency.record.port)
+                        .setProtocol(ProtocolTypes.code(latency.record.protocolTypes))
+                        .setRttMillis(latency.rttMillis)
+                        .setMeasuredAt(latency.measuredAt.toEpochMilli())
+                        .build()
+                }
+            )
+        }
+
+        try {
+            writeServerList(builder.build())
+            Files.setLastModifiedTime(file, lastModified)
+        } catch (e: IOException) {
+            logger.error("Failed to write server latencies to file ${file.fileName}", e)
+        }
+    }
+
+    /**
+     * Writes the list next to the file and moves it over the file, so readers never see a partly written list.
+     */
+    @Throws(IOException::class)
+    private fun writeServerList(serverList: BasicServerList) {
+        val temp = file.resolveSibling("${file.fileName}.tmp")
+
+        Files.newOutputStream(temp).use { serverList.writeTo(it) }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+    }
+
+    @Throws(IOException::class)
+    private fun readServerList(): BasicServerList = Files.newInputStream(file).use { BasicServerList.parseFrom(it) }
+
     companion object {
         private val logger: Logger = LogManager.getLogger(FileServerListProvider::class.java)
     }
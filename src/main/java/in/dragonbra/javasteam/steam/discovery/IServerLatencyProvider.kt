@@ -0,0 +1,20 @@
+package `in`.dragonbra.javasteam.steam.discovery
+
+/**
+ * An interface for persisting the round trip times measured to servers, so a restarted client ranks servers by
+ * latency before it probes them again. [SmartCMServerList] uses it when its [IServerListProvider] implements it too.
+ */
+interface IServerLatencyProvider {
+
+    /**
+     * Ask a provider to fetch the round trip times it has stored
+     * @return A list of round trip times, empty if none are stored
+     */
+    fun fetchServerLatencies(): List<ServerLatency>
+
+    /**
+     * Update the persistent round trip times, replacing the stored ones
+     * @param latencies List of round trip times
+     */
+    fun updateServerLatencies(latencies: List<ServerLatency>)
+}
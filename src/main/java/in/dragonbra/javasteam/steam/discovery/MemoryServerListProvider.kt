@@ -5,10 +5,13 @@ import java.time.Instant
 /**
  * A server list provider that uses an in-memory list
  */
-class MemoryServerListProvider : IServerListProvider {
+class MemoryServerListProvider : IServerListProvider, IServerLatencyProvider {
 
     private var servers: List<ServerRecord> = listOf()
 
+    @Volatile
+    private var latencies: List<ServerLatency> = listOf()
+
     private var lastUpdated: Instant = Instant.MIN
 
     /**
@@ -31,4 +34,18 @@ class MemoryServerListProvider : IServerListProvider {
         servers = endpoints
         lastUpdated = Instant.now()
     }
+
+    /**
+     * Returns the round trip times stored in memory
+     * @return List of round trip times, empty if none are stored
+     */
+    override fun fetchServerLatencies(): List<ServerLatency> = latencies
+
+    /**
+     * Stores the supplied round trip times in memory
+     * @param latencies List of round trip times
+     */
+    override fun updateServerLatencies(latencies: List<ServerLatency>) {
+        this.latencies = latencies
+    }
 }
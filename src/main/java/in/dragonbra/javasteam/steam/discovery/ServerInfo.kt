@@ -8,5 +8,45 @@ import java.time.Instant
  * @since 2018-02-20
  */
 class ServerInfo(val record: ServerRecord, val protocol: ProtocolTypes) {
+
+    companion object {
+        private const val RTT_WEIGHT = 0.25
+    }
+
+    @Volatile
     var lastBadConnectionTimeUtc: Instant? = null
+
+    /**
+     * The round trip time to the server in milliseconds, an exponentially weighted moving average of the probes, or NaN
+     * before the server was probed.
+     */
+    @Volatile
+    var rttMillis: Double = Double.NaN
+        private set
+
+    /**
+     * When the server was last probed, or null if it never was.
+     */
+    @Volatile
+    var lastProbeTimeUtc: Instant? = null
+        private set
+
+    @Synchronized
+    internal fun recordRtt(sampleMillis: Double, time: Instant) {
+        val current = rttMillis
+        rttMillis = if (current.isNaN()) sampleMillis else current + RTT_WEIGHT * (sampleMillis - current)
+        lastProbeTimeUtc = time
+    }
+
+    @Synchronized
+    internal fun recordProbeFailure(time: Instant) {
+        lastBadConnectionTimeUtc = time
+        lastProbeTimeUtc = time
+    }
+
+    @Synchronized
+    internal fun restoreRtt(latency: ServerLatency) {
+        rttMillis = latency.rttMillis
+        lastProbeTimeUtc = latency.measuredAt
+    }
 }
@@ -0,0 +1,16 @@
+package `in`.dragonbra.javasteam.steam.discovery
+
+import java.time.Instant
+
+/**
+ * The round trip time measured to a server.
+ *
+ * @param record The server, with the single protocol the time applies to.
+ * @param rttMillis The smoothed round trip time in milliseconds.
+ * @param measuredAt When the server was last probed.
+ */
+data class ServerLatency(
+    val record: ServerRecord,
+    val rttMillis: Double,
+    val measuredAt: Instant,
+)
@@ -0,0 +1,81 @@
+package `in`.dragonbra.javasteam.steam.discovery
+
+import `in`.dragonbra.javasteam.networking.steam3.SelectorLoopGroup
+import java.io.IOException
+import java.net.InetSocketAddress
+import java.net.SocketTimeoutException
+import java.nio.channels.SelectionKey
+import java.nio.channels.SocketChannel
+import java.util.concurrent.CompletableFuture
+
+/**
+ * Measures the round trip time to servers by the time a TCP connect takes, which is one round trip for the SYN and
+ * the SYN-ACK. The connects are non-blocking and run on the selector loops, so many servers are probed at once
+ * without a thread each.
+ */
+internal class ServerProber(private val group: SelectorLoopGroup) {
+
+    /**
+     * @param endpoint The endpoint to connect to.
+     * @param timeoutMillis How long the connect may take.
+     * @return A future of the round trip time in milliseconds, it fails if the connect failed or timed out.
+     */
+    fun probe(endpoint: InetSocketAddress, timeoutMillis: Long): CompletableFuture<Double> {
+        val future = CompletableFuture<Double>()
+        val loop = group.next()
+
+        loop.execute {
+            var channel: SocketChannel? = null
+
+            try {
+                channel = SocketChannel.open()
+                channel.configureBlocking(false)
+
+                val start = System.nanoTime()
+
+                if (channel.connect(endpoint)) {
+                    channel.close()
+                    future.complete(elapsedMillis(start))
+                    return@execute
+                }
+
+                val connecting: SocketChannel = channel
+                val key = loop.register(connecting, SelectionKey.OP_CONNECT) { key ->
+                    try {
+                        connecting.finishConnect()
+                        future.complete(elapsedMillis(start))
+                    } catch (e: IOException) {
+                        future.completeExceptionally(e)
+                    } finally {
+                        close(key, connecting)
+                    }
+                }
+
+                val timeout = loop.schedule({
+                    if (future.completeExceptionally(SocketTimeoutException("Probe of $endpoint timed out"))) {
+                        close(key, connecting)
+                    }
+                }, timeoutMillis)
+
+                future.whenComplete { _, _ -> timeout.cancel() }
+            } catch (e: Exception) {
+                // also unresolved addresses, which connect reports with an unchecked exception
+                runCatching { channel?.close() }
+                future.completeExceptionally(e)
+            }
+        }
+
+        return future
+    }
+
+    private fun elapsedMillis(startNanos: Long): Double = (System.nanoTime() - startNanos) / 1e6
+
+    private fun close(key: SelectionKey, channel: SocketChannel) {
+        key.cancel()
+
+        try {
+            channel.close()
+        } catch (_: IOException) {
+        }
+    }
+}
@@ -10,9 +10,17 @@ import java.net.InetSocketAddress
 import java.time.Duration
 import java.time.Instant
 import java.util.EnumSet
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.Executor
+import java.util.concurrent.TimeUnit
 
 /**
  * Smart list of CM servers.
+ *
+ * Servers are ranked by their health first: servers that recently failed go last. Among equally healthy servers, the
+ * ones with the lowest round trip time go first, then the order of the list. With [probeCandidateCount] set, the best
+ * candidates are probed for their round trip time, and the times are stored with the server list provider if it's an
+ * [IServerLatencyProvider].
  */
 @Suppress("unused")
 class SmartCMServerList(private val configuration: SteamConfiguration) {
@@ -52,6 +60,30 @@ class SmartCMServerList(private val configuration: SteamConfiguration) {
     @Suppress("MemberVisibilityCanBePrivate")
     var badConnectionMemoryTimeSpan: Duration = Duration.ofMinutes(5)
 
+    /**
+     * Determines how many of the best candidates are probed for their round trip time, 0 turns probing off. A probe is
+     * a TCP connect to the endpoint of the server, a failed probe marks the server bad.
+     */
+    @Suppress("MemberVisibilityCanBePrivate")
+    var probeCandidateCount: Int = 0
+
+    /**
+     * Determines how long a probe may take before the server counts as unreachable.
+     */
+    @Suppress("MemberVisibilityCanBePrivate")
+    var probeTimeout: Duration = Duration.ofSeconds(1)
+
+    /**
+     * Determines how long a measured round trip time is used before the server is probed again.
+     */
+    @Suppress("MemberVisibilityCanBePrivate")
+    var probeInterval: Duration = Duration.ofMinutes(30)
+
+    private val prober by lazy { ServerProber(configuration.runtime.selectorGroup) }
+
+    @Volatile
+    private var probing: CompletableFuture<Void>? = null
+
     @Throws(IOException::class)
     private fun startFetchingServers() {
         if (servers.isNotEmpty()) {
@@ -171,6 +203,7 @@ class SmartCMServerList(private val configuration: SteamConfiguration) {
         servers.clear()
 
         distinctEndPoints.forEach(::addCore)
+        restoreLatencies()
 
         if (writeProvider) {
             configuration.serverListProvider.updateServerList(distinctEndPoints)
@@ -184,6 +217,19 @@ class SmartCMServerList(private val configuration: SteamConfiguration) {
         }
     }
 
+    private fun restoreLatencies() {
+        val provider = configuration.serverListProvider as? IServerLatencyProvider ?: return
+        val latencies = provider.fetchServerLatencies().associateBy { it.record }
+
+        if (latencies.isEmpty()) {
+            return
+        }
+
+        servers.forEach { serverInfo ->
+            latencies[ServerRecord(serverInfo.record.endpoint, serverInfo.protocol)]?.let(serverInfo::restoreRtt)
+        }
+    }
+
     /**
      * Explicitly resets the known state of all servers.
      */
@@ -244,11 +290,21 @@ class SmartCMServerList(private val configuration: SteamConfiguration) {
     private fun getNextServerCandidateInternal(supportedProtocolTypes: EnumSet<ProtocolTypes>): ServerRecord? {
         resetOldScores()
 
+        if (probeCandidateCount > 0) {
+            probeCandidates(supportedProtocolTypes)
+        }
+
         val result = servers
             .asSequence()
             .filter { supportedProtocolTypes.contains(it.protocol) }
             .mapIndexed { index, server -> server to index }
-            .sortedWith(compareBy({ it.first.lastBadConnectionTimeUtc ?: Instant.EPOCH }, { it.second }))
+            .sortedWith(
+                compareBy(
+                    { it.first.lastBadConnectionTimeUtc ?: Instant.EPOCH },
+                    { it.first.rttMillis.takeUnless(Double::isNaN) ?: Double.MAX_VALUE },
+                    { it.second }
+                )
+            )
             .map { it.first }
             .firstOrNull()
 
@@ -260,6 +316,104 @@ class SmartCMServerList(private val configuration: SteamConfiguration) {
         return ServerRecord(result.record.endpoint, result.protocol)
     }
 
+    /**
+     * Probes the best candidates that weren't probed within [probeInterval]. The first time, when nothing is known
+     * about the candidates, it waits for the probes so the pick isn't blind. Later probes run in the background and
+     * count for the next pick.
+     */
+    private fun probeCandidates(supportedProtocolTypes: EnumSet<ProtocolTypes>) {
+        val candidates = servers
+            .asSequence()
+            .filter { supportedProtocolTypes.contains(it.protocol) }
+            .mapIndexed { index, server -> server to index }
+            .sortedWith(compareBy({ it.first.lastBadConnectionTimeUtc ?: Instant.EPOCH }, { it.second }))
+            .map { it.first }
+            .distinctBy { it.record.endpoint }
+            .take(probeCandidateCount)
+            .toList()
+
+        val now = Instant.now()
+        val stale = candidates.filter { candidate ->
+            val lastProbe = candidate.lastProbeTimeUtc
+            lastProbe == null || Duration.between(lastProbe, now) >= probeInterval
+        }
+
+        if (stale.isEmpty()) {
+            return
+        }
+
+        val inFlight = probing
+        val future = if (inFlight != null && !inFlight.isDone) inFlight else probe(stale).also { probing = it }
+
+        if (candidates.all { it.rttMillis.isNaN() }) {
+            try {
+                future.get(probeTimeout.toMillis() + 500, TimeUnit.MILLISECONDS)
+            } catch (e: Exception) {
+                logger.debug("Gave up waiting for the server probes", e)
+            }
+        }
+    }
+
+    /**
+     * Probes the endpoints of the servers and records the round trip times with every server of the same endpoint.
+     *
+     * @param candidates The servers to probe.
+     * @return A future that completes once the probes are done. The round trip times are stored afterwards, without
+     * holding up whoever waits for the probes.
+     */
+    private fun probe(candidates: List<ServerInfo>): CompletableFuture<Void> {
+        // the probes complete on the selector threads, they only touch the servers captured here
+        val snapshot = servers.toList()
+        val timeoutMillis = probeTimeout.toMillis()
+
+        val probes = candidates.map { candidate ->
+            val endpoint = candidate.record.endpoint
+            val sameEndpoint = snapshot.filter { it.record.endpoint == endpoint }
+
+            prober.probe(endpoint, timeoutMillis).handle { rttMillis, error ->
+                val time = Instant.now()
+
+                if (error != null) {
+                    logger.debug("Probe of $endpoint failed, marking it bad: ${error.message}")
+                    sameEndpoint.forEach { it.recordProbeFailure(time) }
+                } else {
+                    logger.debug("Probed $endpoint: %.1f ms".format(rttMillis))
+                    sameEndpoint.forEach { it.recordRtt(rttMillis, time) }
+                }
+            }
+        }
+
+        // the provider may write a file, which doesn't belong on a selector thread
+        val scheduler = configuration.runtime.scheduler
+        val executor = Executor { task -> scheduler.schedule(task, 0) }
+
+        val probed = CompletableFuture.allOf(*probes.toTypedArray())
+
+        probed.thenRunAsync({ storeLatencies(snapshot) }, executor).exceptionally { error ->
+            logger.error("Failed to store the server round trip times", error)
+            null
+        }
+
+        return probed
+    }
+
+    private fun storeLatencies(snapshot: List<ServerInfo>) {
+        val provider = configuration.serverListProvider as? IServerLatencyProvider ?: return
+
+        val latencies = snapshot.mapNotNull { serverInfo ->
+            val rttMillis = serverInfo.rttMillis
+            val measuredAt = serverInfo.lastProbeTimeUtc
+
+            if (rttMillis.isNaN() || measuredAt == null) {
+                null
+            } else {
+                ServerLatency(ServerRecord(serverInfo.record.endpoint, serverInfo.protocol), rttMillis, measuredAt)
+            }
+        }
+
+        provider.updateServerLatencies(latencies)
+    }
+
     /**
      * Get the next server in the list.
      *
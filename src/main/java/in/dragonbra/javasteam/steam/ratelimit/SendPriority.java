@@ -0,0 +1,21 @@
+package in.dragonbra.javasteam.steam.ratelimit;
+
+/**
+ * The lane a message waits in on a {@link SendScheduler}. Waiting messages of a higher priority are sent first.
+ */
+public enum SendPriority {
+    /**
+     * Messages the session depends on, like heartbeats and logons.
+     */
+    HIGH,
+
+    /**
+     * Everything that isn't assigned a priority.
+     */
+    NORMAL,
+
+    /**
+     * Bulk requests, like PICS and friend lookups.
+     */
+    LOW,
+}
@@ -0,0 +1,200 @@
+package in.dragonbra.javasteam.steam.ratelimit;
+
+import in.dragonbra.javasteam.enums.EMsg;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The limits a {@link SendScheduler} paces outgoing messages by, and the priority of each message type.
+ * <p>
+ * A message may be limited by its {@link EMsg}, by the service of a unified message (the part of the target job name
+ * before the dot, e.g. {@code Player} for {@code Player.GetGameBadgeLevels#1}) and by the limit for all messages. It
+ * waits until every limit it falls under has a permit. The limit for all messages doesn't hold back
+ * {@link SendPriority#HIGH high priority} messages.
+ * <p>
+ * Heartbeats and logons are {@link SendPriority#HIGH high priority}, PICS requests and friend lookups are
+ * {@link SendPriority#LOW low priority}, everything else is {@link SendPriority#NORMAL normal priority}, unless the
+ * builder assigns another priority.
+ */
+public final class SendRateLimits {
+
+    private final Map<EMsg, Limit> messageLimits;
+
+    private final Map<String, Limit> serviceLimits;
+
+    private final Limit globalLimit;
+
+    private final Map<EMsg, SendPriority> priorities;
+
+    private SendRateLimits(Builder builder) {
+        messageLimits = Collections.unmodifiableMap(new EnumMap<>(builder.messageLimits));
+        serviceLimits = Collections.unmodifiableMap(new HashMap<>(builder.serviceLimits));
+        globalLimit = builder.globalLimit;
+        priorities = Collections.unmodifiableMap(new EnumMap<>(builder.priorities));
+    }
+
+    /**
+     * @return a builder without limits and with the default priorities.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return the limits by message type.
+     */
+    public Map<EMsg, Limit> getMessageLimits() {
+        return messageLimits;
+    }
+
+    /**
+     * @return the limits by the service of unified messages.
+     */
+    public Map<String, Limit> getServiceLimits() {
+        return serviceLimits;
+    }
+
+    /**
+     * @return the limit for all messages, or null if there is none.
+     */
+    public Limit getGlobalLimit() {
+        return globalLimit;
+    }
+
+    /**
+     * @param msgType the message type.
+     * @return the priority of the message type.
+     */
+    public SendPriority getPriority(EMsg msgType) {
+        return priorities.getOrDefault(msgType, SendPriority.NORMAL);
+    }
+
+    /**
+     * A rate of messages, with a burst of messages that may be sent at once after a quiet period.
+     */
+    public static final class Limit {
+
+        private final double permitsPerSecond;
+
+        private final int burst;
+
+        /**
+         * @param permitsPerSecond the number of messages per second in the long run.
+         * @param burst            the number of messages that may be sent at once.
+         */
+        public Limit(double permitsPerSecond, int burst) {
+            if (!(permitsPerSecond > 0)) {
+                throw new IllegalArgumentException("permitsPerSecond must be positive");
+            }
+
+            if (burst < 1) {
+                throw new IllegalArgumentException("burst must be at least 1");
+            }
+
+            this.permitsPerSecond = permitsPerSecond;
+            this.burst = burst;
+        }
+
+        public double getPermitsPerSecond() {
+            return permitsPerSecond;
+        }
+
+        public int getBurst() {
+            return burst;
+        }
+
+        @Override
+        public String toString() {
+            return permitsPerSecond + "/s, burst " + burst;
+        }
+    }
+
+    /**
+     * Builds {@link SendRateLimits}.
+     */
+    public static final class Builder {
+
+        private final Map<EMsg, Limit> messageLimits = new EnumMap<>(EMsg.class);
+
+        private final Map<String, Limit> serviceLimits = new HashMap<>();
+
+        private Limit globalLimit;
+
+        private final Map<EMsg, SendPriority> priorities = new EnumMap<>(EMsg.class);
+
+        private Builder() {
+            priorities.put(EMsg.ClientHeartBeat, SendPriority.HIGH);
+            priorities.put(EMsg.ClientHello, SendPriority.HIGH);
+            priorities.put(EMsg.ClientLogon, SendPriority.HIGH);
+            priorities.put(EMsg.ClientLogonGameServer, SendPriority.HIGH);
+            priorities.put(EMsg.ClientLogOff, SendPriority.HIGH);
+
+            priorities.put(EMsg.ClientPICSProductInfoRequest, SendPriority.LOW);
+            priorities.put(EMsg.ClientPICSChangesSinceRequest, SendPriority.LOW);
+            priorities.put(EMsg.ClientPICSAccessTokenRequest, SendPriority.LOW);
+            priorities.put(EMsg.ClientRequestFriendData, SendPriority.LOW);
+            priorities.put(EMsg.ClientFriendProfileInfo, SendPriority.LOW);
+        }
+
+        /**
+         * Limits the messages of a type.
+         *
+         * @param msgType          the message type.
+         * @param permitsPerSecond the number of messages per second in the long run.
+         * @param burst            the number of messages that may be sent at once.
+         * @return this builder.
+         */
+        public Builder limit(EMsg msgType, double permitsPerSecond, int burst) {
+            messageLimits.put(msgType, new Limit(permitsPerSecond, burst));
+            return this;
+        }
+
+        /**
+         * Limits the unified messages to a service.
+         *
+         * @param service          the service name, e.g. {@code Player}.
+         * @param permitsPerSecond the number of messages per second in the long run.
+         * @param burst            the number of messages that may be sent at once.
+         * @return this builder.
+         */
+        public Builder limitService(String service, double permitsPerSecond, int burst) {
+            serviceLimits.put(service, new Limit(permitsPerSecond, burst));
+            return this;
+        }
+
+        /**
+         * Limits all messages but the high priority ones together.
+         *
+         * @param permitsPerSecond the number of messages per second in the long run.
+         * @param burst            the number of messages that may be sent at once.
+         * @return this builder.
+         */
+        public Builder limitAll(double permitsPerSecond, int burst) {
+            globalLimit = new Limit(permitsPerSecond, burst);
+            return this;
+        }
+
+        /**
+         * Assigns the priority of a message type.
+         *
+         * @param msgType  the message type.
+         * @param priority the priority.
+         * @return this builder.
+         */
+        public Builder priority(EMsg msgType, SendPriority priority) {
+            if (priority == null) {
+                throw new IllegalArgumentException("priority is null");
+            }
+
+            priorities.put(msgType, priority);
+            return this;
+        }
+
+        public SendRateLimits build() {
+            return new SendRateLimits(this);
+        }
+    }
+}
@@ -0,0 +1,436 @@
+package in.dragonbra.javasteam.steam.ratelimit;
+
+import in.dragonbra.javasteam.enums.EMsg;
+import in.dragonbra.javasteam.networking.steam3.Connection;
+import in.dragonbra.javasteam.util.event.TaskScheduler;
+import in.dragonbra.javasteam.util.log.LogManager;
+import in.dragonbra.javasteam.util.log.Logger;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Paces the messages a client sends by the token buckets of {@link SendRateLimits}, so bursts of requests are spread
+ * out instead of running into the rate limits of the server.
+ * <p>
+ * A message that doesn't have to wait is handed to the connection right away. The others wait in the lane of their
+ * priority. Whenever a permit frees up, the waiting messages of the highest priority go first, and within a lane the
+ * message that waited longest. Messages of the same type, and of the same service, keep their order. Messages held
+ * back by one limit don't hold back messages which don't fall under it.
+ * <p>
+ * Messages are handed to the connections outside the lock, by one thread at a time so they keep their order. The
+ * messages that had to wait are handed over by a sender thread rather than by the task scheduler, which is shared by
+ * every client, so a connection that blocks while writing doesn't hold up the timers of the others.
+ * <p>
+ * The scheduler keeps track of how long messages waited in their lane (queue delay).
+ */
+public class SendScheduler {
+
+    private static final Logger logger = LogManager.getLogger(SendScheduler.class);
+
+    private static final SendPriority[] PRIORITIES = SendPriority.values();
+
+    private static final AtomicInteger SENDER_COUNT = new AtomicInteger();
+
+    // threads are only kept while there are messages to hand over
+    private static final ExecutorService DEFAULT_SENDER = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "SendScheduler-" + SENDER_COUNT.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final SendRateLimits limits;
+
+    private final TaskScheduler scheduler;
+
+    private final Executor sender;
+
+    private final Object lock = new Object();
+
+    private final Map<EMsg, TokenBucket> messageBuckets = new EnumMap<>(EMsg.class);
+
+    private final Map<String, TokenBucket> serviceBuckets = new HashMap<>();
+
+    private final TokenBucket globalBucket;
+
+    // messages that fall under the same buckets share a flow, keyed by the priority and the buckets
+    private final Map<List<Object>, Flow> flows = new HashMap<>();
+
+    // the flows with waiting messages, by priority
+    private final List<List<Flow>> lanes = new ArrayList<>();
+
+    private final long[] sentCounts = new long[PRIORITIES.length];
+
+    private final long[] totalDelayNanos = new long[PRIORITIES.length];
+
+    private final long[] maxDelayNanos = new long[PRIORITIES.length];
+
+    private int queuedCount;
+
+    // messages the buckets let through, in the order they are handed to their connections
+    private final ArrayDeque<Entry> ready = new ArrayDeque<>();
+
+    // whether a thread is handing the ready messages to their connections
+    private boolean sending;
+
+    private TaskScheduler.Handle wakeup;
+
+    private long wakeupNanos;
+
+    /**
+     * @param limits    the limits and priorities.
+     * @param scheduler the scheduler that wakes up when a waiting message may go.
+     */
+    public SendScheduler(SendRateLimits limits, TaskScheduler scheduler) {
+        this(limits, scheduler, DEFAULT_SENDER);
+    }
+
+    /**
+     * @param limits    the limits and priorities.
+     * @param scheduler the scheduler that wakes up when a waiting message may go.
+     * @param sender    the executor that hands the messages which had to wait to their connections.
+     */
+    public SendScheduler(SendRateLimits limits, TaskScheduler scheduler, Executor sender) {
+        if (limits == null) {
+            throw new IllegalArgumentException("limits is null");
+        }
+
+        if (scheduler == null) {
+            throw new IllegalArgumentException("scheduler is null");
+        }
+
+        if (sender == null) {
+            throw new IllegalArgumentException("sender is null");
+        }
+
+        this.limits = limits;
+        this.scheduler = scheduler;
+        this.sender = sender;
+
+        long now = System.nanoTime();
+
+        limits.getMessageLimits().forEach((msgType, limit) -> messageBuckets.put(msgType, new TokenBucket(limit, now)));
+        limits.getServiceLimits().forEach((service, limit) -> serviceBuckets.put(service, new TokenBucket(limit, now)));
+        globalBucket = limits.getGlobalLimit() == null ? null : new TokenBucket(limits.getGlobalLimit(), now);
+
+        for (int i = 0; i < PRIORITIES.length; i++) {
+            lanes.add(new ArrayList<>());
+        }
+    }
+
+    /**
+     * Sends a message to the connection once the limits allow it.
+     *
+     * @param connection    the connection to send the message on.
+     * @param msgType       the type of the message.
+     * @param targetJobName the target job name of a unified message, or null.
+     * @param data          the serialized message.
+     */
+    public void send(Connection connection, EMsg msgType, String targetJobName, byte[] data) {
+        SendPriority priority = limits.getPriority(msgType);
+        TokenBucket messageBucket = messageBuckets.get(msgType);
+        TokenBucket serviceBucket = serviceBuckets.isEmpty() ? null : serviceBuckets.get(getService(targetJobName));
+        TokenBucket allBucket = priority == SendPriority.HIGH ? null : globalBucket;
+        boolean sendReady;
+
+        synchronized (lock) {
+            long now = System.nanoTime();
+
+            Flow flow = flows.computeIfAbsent(
+                    Arrays.asList(priority, messageBucket, serviceBucket, allBucket),
+                    key -> new Flow(priority, messageBucket, serviceBucket, allBucket)
+            );
+
+            if (flow.entries.isEmpty()) {
+                lanes.get(priority.ordinal()).add(flow);
+            }
+
+            flow.entries.add(new Entry(connection, data, now));
+            queuedCount++;
+
+            drain(now);
+            sendReady = claimSending();
+        }
+
+        if (sendReady) {
+            sendReady();
+        }
+    }
+
+    /**
+     * Drops the messages that are waiting, e.g. because their connection is gone. The buckets keep their permits.
+     */
+    public void clear() {
+        synchronized (lock) {
+            for (List<Flow> lane : lanes) {
+                for (Flow flow : lane) {
+                    flow.entries.clear();
+                }
+
+                lane.clear();
+            }
+
+            queuedCount = 0;
+            cancelWakeup();
+        }
+    }
+
+    /**
+     * @return the number of messages waiting to be sent.
+     */
+    public int getQueuedCount() {
+        synchronized (lock) {
+            return queuedCount;
+        }
+    }
+
+    /**
+     * @param priority the priority.
+     * @return the number of messages of the priority that were sent.
+     */
+    public long getSentCount(SendPriority priority) {
+        synchronized (lock) {
+            return sentCounts[priority.ordinal()];
+        }
+    }
+
+    /**
+     * @param priority the priority.
+     * @return the average time the sent messages of the priority waited, in milliseconds.
+     */
+    public double getAverageQueueDelayMillis(SendPriority priority) {
+        synchronized (lock) {
+            long sent = sentCounts[priority.ordinal()];
+            return sent == 0 ? 0.0 : totalDelayNanos[priority.ordinal()] / 1_000_000.0 / sent;
+        }
+    }
+
+    /**
+     * @param priority the priority.
+     * @return the longest time a sent message of the priority waited, in milliseconds.
+     */
+    public double getMaxQueueDelayMillis(SendPriority priority) {
+        synchronized (lock) {
+            return maxDelayNanos[priority.ordinal()] / 1_000_000.0;
+        }
+    }
+
+    /**
+     * Resets the sent counts and the queue delays.
+     */
+    public void resetMetrics() {
+        synchronized (lock) {
+            Arrays.fill(sentCounts, 0L);
+            Arrays.fill(totalDelayNanos, 0L);
+            Arrays.fill(maxDelayNanos, 0L);
+        }
+    }
+
+    static String getService(String targetJobName) {
+        if (targetJobName == null) {
+            return null;
+        }
+
+        int dot = targetJobName.indexOf('.');
+        return dot < 0 ? targetJobName : targetJobName.substring(0, dot);
+    }
+
+    // moves what the buckets allow to the ready messages, then wakes up once the next waiting message may go
+    private void drain(long now) {
+        Set<TokenBucket> empty = Collections.newSetFromMap(new IdentityHashMap<>());
+        long wait = Long.MAX_VALUE;
+
+        for (List<Flow> lane : lanes) {
+            while (!lane.isEmpty()) {
+                Flow next = null;
+
+                for (Flow flow : lane) {
+                    if (flow.fallsUnder(empty)) {
+                        continue;
+                    }
+
+                    long flowWait = flow.waitNanos(now);
+
+                    if (flowWait > 0) {
+                        // nothing of lower priority takes the permits this flow waits for
+                        flow.addEmptyBucketsTo(empty, now);
+                        wait = Math.min(wait, flowWait);
+                    } else if (next == null || flow.queuedNanos() - next.queuedNanos() < 0) {
+                        next = flow;
+                    }
+                }
+
+                if (next == null) {
+                    break;
+                }
+
+                next.take(now);
+                Entry entry = next.entries.removeFirst();
+
+                if (next.entries.isEmpty()) {
+                    lane.remove(next);
+                }
+
+                queuedCount--;
+                recordDelay(next.priority, now - entry.queuedNanos);
+                ready.add(entry);
+            }
+        }
+
+        if (wait != Long.MAX_VALUE) {
+            scheduleWakeup(now + wait);
+        } else {
+            cancelWakeup();
+        }
+    }
+
+    private void recordDelay(SendPriority priority, long delayNanos) {
+        int index = priority.ordinal();
+        sentCounts[index]++;
+        totalDelayNanos[index] += delayNanos;
+        maxDelayNanos[index] = Math.max(maxDelayNanos[index], delayNanos);
+    }
+
+    private void scheduleWakeup(long dueNanos) {
+        if (wakeup != null && wakeupNanos - dueNanos <= 0) {
+            return;
+        }
+
+        cancelWakeup();
+
+        long delayMillis = TimeUnit.NANOSECONDS.toMillis(dueNanos - System.nanoTime() + 999_999L);
+        wakeupNanos = dueNanos;
+        wakeup = scheduler.schedule(() -> {
+            boolean sendReady;
+
+            synchronized (lock) {
+                wakeup = null;
+                drain(System.nanoTime());
+                sendReady = claimSending();
+            }
+
+            if (sendReady) {
+                sender.execute(this::sendReady);
+            }
+        }, delayMillis);
+    }
+
+    // whether the caller is to hand the ready messages to their connections, called holding the lock
+    private boolean claimSending() {
+        if (sending || ready.isEmpty()) {
+            return false;
+        }
+
+        sending = true;
+        return true;
+    }
+
+    // hands the ready messages to their connections until there are none left, without holding the lock
+    private void sendReady() {
+        while (true) {
+            Entry entry;
+
+            synchronized (lock) {
+                entry = ready.poll();
+
+                if (entry == null) {
+                    sending = false;
+                    return;
+                }
+            }
+
+            try {
+                entry.connection.send(entry.data);
+            } catch (RuntimeException e) {
+                logger.error("Failed to send a message", e);
+            }
+        }
+    }
+
+    private void cancelWakeup() {
+        if (wakeup != null) {
+            wakeup.cancel();
+            wakeup = null;
+        }
+    }
+
+    private static final class Entry {
+
+        private final Connection connection;
+
+        private final byte[] data;
+
+        private final long queuedNanos;
+
+        private Entry(Connection connection, byte[] data, long queuedNanos) {
+            this.connection = connection;
+            this.data = data;
+            this.queuedNanos = queuedNanos;
+        }
+    }
+
+    private static final class Flow {
+
+        private final SendPriority priority;
+
+        private final TokenBucket[] buckets;
+
+        private final ArrayDeque<Entry> entries = new ArrayDeque<>();
+
+        private Flow(SendPriority priority, TokenBucket... buckets) {
+            this.priority = priority;
+            this.buckets = Arrays.stream(buckets).filter(bucket -> bucket != null).toArray(TokenBucket[]::new);
+        }
+
+        private long waitNanos(long now) {
+            long wait = 0L;
+
+            for (TokenBucket bucket : buckets) {
+                wait = Math.max(wait, bucket.waitNanos(now));
+            }
+
+            return wait;
+        }
+
+        private void take(long now) {
+            for (TokenBucket bucket : buckets) {
+                bucket.take(now);
+            }
+        }
+
+        private boolean fallsUnder(Set<TokenBucket> set) {
+            for (TokenBucket bucket : buckets) {
+                if (set.contains(bucket)) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        private void addEmptyBucketsTo(Set<TokenBucket> set, long now) {
+            for (TokenBucket bucket : buckets) {
+                if (bucket.waitNanos(now) > 0) {
+                    set.add(bucket);
+                }
+            }
+        }
+
+        private long queuedNanos() {
+            return entries.getFirst().queuedNanos;
+        }
+    }
+}
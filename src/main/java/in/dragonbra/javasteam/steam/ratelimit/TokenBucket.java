@@ -0,0 +1,56 @@
+package in.dragonbra.javasteam.steam.ratelimit;
+
+/**
+ * Permits that refill at a steady rate, up to a burst. Not thread safe, the {@link SendScheduler} guards its buckets.
+ */
+class TokenBucket {
+
+    private final double permitsPerNano;
+
+    private final double burst;
+
+    private double permits;
+
+    private long refilledNanos;
+
+    /**
+     * The bucket starts out full.
+     *
+     * @param limit    the rate and the burst.
+     * @param nowNanos the current time.
+     */
+    TokenBucket(SendRateLimits.Limit limit, long nowNanos) {
+        permitsPerNano = limit.getPermitsPerSecond() / 1e9;
+        burst = limit.getBurst();
+        permits = burst;
+        refilledNanos = nowNanos;
+    }
+
+    /**
+     * @param nowNanos the current time.
+     * @return the nanoseconds until a permit is available, 0 if there is one now.
+     */
+    long waitNanos(long nowNanos) {
+        refill(nowNanos);
+        return permits >= 1 ? 0L : (long) Math.ceil((1 - permits) / permitsPerNano);
+    }
+
+    /**
+     * Takes a permit, which must be available.
+     *
+     * @param nowNanos the current time.
+     */
+    void take(long nowNanos) {
+        refill(nowNanos);
+        permits--;
+    }
+
+    private void refill(long nowNanos) {
+        long elapsed = nowNanos - refilledNanos;
+
+        if (elapsed > 0) {
+            permits = Math.min(burst, permits + elapsed * permitsPerNano);
+            refilledNanos = nowNanos;
+        }
+    }
+}
@@ -4,23 +4,35 @@ import `in`.dragonbra.javasteam.steam.steamclient.callbackmgr.CallbackMsg
 import `in`.dragonbra.javasteam.types.AsyncJob
 import `in`.dragonbra.javasteam.types.JobID
 import `in`.dragonbra.javasteam.util.event.ScheduledFunction
+import `in`.dragonbra.javasteam.util.event.TaskScheduler
 import `in`.dragonbra.javasteam.util.log.LogManager
+import java.util.PriorityQueue
 import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.ConcurrentMap
 
 /**
  * @author Lossy
  * @since 2023-03-17
+ *
+ * @param scheduler The scheduler to run the timeout checks on.
  */
-class AsyncJobManager {
+class AsyncJobManager @JvmOverloads constructor(scheduler: TaskScheduler = TaskScheduler.getDefault()) {
 
     companion object {
         private val logger = LogManager.getLogger(AsyncJobManager::class.java)
+
+        private const val STALE_COMPACT_THRESHOLD = 1024
     }
 
     val asyncJobs: ConcurrentMap<JobID, AsyncJob> = ConcurrentHashMap()
 
-    private val jobTimeoutFunc: ScheduledFunction = ScheduledFunction(this::cancelTimedOutJobs, 1000)
+    private val jobTimeoutFunc: ScheduledFunction = ScheduledFunction(this::cancelTimedOutJobs, 1000, scheduler)
+
+    /**
+     * Job deadlines ordered by the earliest deadline first. Entries are not removed when a job completes or its
+     * deadline moves, instead they are skipped once they come up, see [JobDeadline.isCurrent].
+     */
+    private val deadlines = PriorityQueue<JobDeadline>()
 
     /**
      * Tracks a job with this manager.
@@ -29,6 +41,18 @@ class AsyncJobManager {
      */
     fun startJob(asyncJob: AsyncJob) {
         asyncJobs[asyncJob.jobID] = asyncJob
+        addDeadline(asyncJob)
+    }
+
+    /**
+     * Updates the position of a job in the timeout order after its deadline changed.
+     *
+     * @param asyncJob The job whose timeout changed.
+     */
+    internal fun rescheduleJob(asyncJob: AsyncJob) {
+        if (asyncJobs[asyncJob.jobID] === asyncJob) {
+            addDeadline(asyncJob)
+        }
     }
 
     /**
@@ -87,6 +111,10 @@ class AsyncJobManager {
         }
 
         asyncJobs.clear()
+
+        synchronized(deadlines) {
+            deadlines.clear()
+        }
     }
 
     /**
@@ -104,14 +132,55 @@ class AsyncJobManager {
 
     /**
      * This is called periodically to cancel and clear out any jobs that have timed out (no response from Steam).
+     * Only the expired front of the deadline queue is looked at, so the cost does not depend on the number of jobs
+     * which are still pending.
      */
-    private fun cancelTimedOutJobs() {
-        asyncJobs.values.forEach { job ->
-            if (job.isTimedOut) {
-                job.setFailed(false)
-                asyncJobs.remove(job.jobID)
+    internal fun cancelTimedOutJobs() {
+        val now = System.nanoTime()
+        val timedOut = mutableListOf<AsyncJob>()
+
+        synchronized(deadlines) {
+            while (true) {
+                val next = deadlines.peek() ?: break
+
+                if (next.deadline - now > 0) {
+                    break
+                }
+
+                deadlines.poll()
+
+                if (next.isCurrent() && asyncJobs.remove(next.job.jobID, next.job)) {
+                    timedOut.add(next.job)
+                }
             }
         }
+
+        timedOut.forEach { job ->
+            job.setFailed(false)
+        }
+    }
+
+    private fun addDeadline(asyncJob: AsyncJob) {
+        synchronized(deadlines) {
+            deadlines.add(JobDeadline(asyncJob.deadline, asyncJob))
+
+            // completed and rescheduled jobs leave stale entries behind, drop them once they pile up
+            if (deadlines.size > STALE_COMPACT_THRESHOLD && deadlines.size > asyncJobs.size * 2) {
+                deadlines.removeIf { !it.isCurrent() || asyncJobs[it.job.jobID] !== it.job }
+            }
+        }
+    }
+
+    /**
+     * A job and the deadline it had when it was queued.
+     */
+    private class JobDeadline(val deadline: Long, val job: AsyncJob) : Comparable<JobDeadline> {
+        /**
+         * @return whether the deadline of the job hasn't moved since this entry was queued.
+         */
+        fun isCurrent(): Boolean = job.deadline == deadline
+
+        override fun compareTo(other: JobDeadline): Int = (deadline - other.deadline).compareTo(0L)
     }
 
     /**
@@ -88,7 +88,7 @@ class SteamClient @JvmOverloads constructor(
 
         processStartTime = Date()
 
-        jobManager = AsyncJobManager()
+        jobManager = AsyncJobManager(this.configuration.runtime.scheduler)
     }
 
     //region Handlers
@@ -0,0 +1,104 @@
+package `in`.dragonbra.javasteam.steam.steamclient
+
+import `in`.dragonbra.javasteam.networking.steam3.SelectorLoopGroup
+import `in`.dragonbra.javasteam.steam.steamclient.configuration.SteamConfiguration
+import `in`.dragonbra.javasteam.util.event.TaskScheduler
+import io.ktor.client.HttpClient
+import io.ktor.client.engine.cio.CIO
+import io.ktor.client.plugins.websocket.WebSockets
+import java.io.Closeable
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * A group of threads that is shared between any number of [SteamClient] instances.
+ * Socket I/O of non-blocking connections, WebSocket sessions, heartbeats and job timeouts of every client using the
+ * same runtime are multiplexed onto these threads, so the thread count does not grow with the number of clients.
+ *
+ * Pass it to the clients with [SteamConfiguration]; all clients use [SteamRuntime.getDefault] otherwise.
+ *
+ * @param scheduler The scheduler that runs periodic and delayed work, like heartbeats and job timeouts.
+ */
+class SteamRuntime private constructor(
+    ioThreads: Int,
+    val scheduler: TaskScheduler,
+    private val ownsScheduler: Boolean,
+) : Closeable {
+
+    /**
+     * Creates a new runtime with threads of its own.
+     *
+     * @param ioThreads The number of selector threads used by non-blocking connections.
+     * @param schedulerThreads The number of threads used for heartbeats and timeouts.
+     */
+    @JvmOverloads
+    constructor(
+        ioThreads: Int = DEFAULT_IO_THREADS,
+        schedulerThreads: Int = DEFAULT_SCHEDULER_THREADS,
+    ) : this(ioThreads, TaskScheduler(schedulerThreads, "SteamRuntime-${RUNTIME_COUNT.incrementAndGet()}"), true)
+
+    init {
+        require(ioThreads > 0) { "ioThreads must be at least 1" }
+    }
+
+    private val selectorGroupDelegate = lazy { SelectorLoopGroup(ioThreads) }
+
+    /**
+     * The selector threads that service non-blocking connections. They are only started when first used.
+     */
+    val selectorGroup: SelectorLoopGroup by selectorGroupDelegate
+
+    private val webSocketClientDelegate = lazy {
+        HttpClient(CIO) {
+            install(WebSockets)
+
+            engine {
+                // every WebSocket connection of every client holds one connection of this engine, often to the same CM
+                maxConnectionsCount = Int.MAX_VALUE
+                endpoint {
+                    maxConnectionsPerRoute = Int.MAX_VALUE
+                }
+            }
+        }
+    }
+
+    /**
+     * The HTTP client WebSocket connections open their sessions on. It's only created when first used.
+     */
+    val webSocketClient: HttpClient by webSocketClientDelegate
+
+    /**
+     * Stops all threads of this runtime. Clients using this runtime should be disconnected first.
+     */
+    override fun close() {
+        if (ownsScheduler) {
+            scheduler.shutdown()
+        }
+
+        if (selectorGroupDelegate.isInitialized()) {
+            selectorGroup.shutdown()
+        }
+
+        if (webSocketClientDelegate.isInitialized()) {
+            webSocketClient.close()
+        }
+    }
+
+    companion object {
+        private val RUNTIME_COUNT = AtomicInteger()
+
+        private val DEFAULT_IO_THREADS = (Runtime.getRuntime().availableProcessors() / 2).coerceIn(1, 4)
+
+        private const val DEFAULT_SCHEDULER_THREADS = 2
+
+        private val defaultRuntime: SteamRuntime by lazy {
+            SteamRuntime(DEFAULT_IO_THREADS, TaskScheduler.getDefault(), false)
+        }
+
+        /**
+         * @return the process wide runtime used by configurations that don't specify one.
+         * Its scheduler is [TaskScheduler.getDefault].
+         */
+        @JvmStatic
+        fun getDefault(): SteamRuntime = defaultRuntime
+    }
+}
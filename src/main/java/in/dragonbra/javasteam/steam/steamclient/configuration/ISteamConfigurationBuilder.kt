@@ -3,8 +3,13 @@ package `in`.dragonbra.javasteam.steam.steamclient.configuration
 import `in`.dragonbra.javasteam.enums.EClientPersonaStateFlag
 import `in`.dragonbra.javasteam.enums.EUniverse
 import `in`.dragonbra.javasteam.networking.steam3.ProtocolTypes
+import `in`.dragonbra.javasteam.steam.contentdownloader.IChunkCache
 import `in`.dragonbra.javasteam.steam.contentdownloader.IManifestProvider
 import `in`.dragonbra.javasteam.steam.discovery.IServerListProvider
+import `in`.dragonbra.javasteam.steam.ratelimit.SendRateLimits
+import `in`.dragonbra.javasteam.steam.steamclient.SteamRuntime
+import `in`.dragonbra.javasteam.util.crypto.SymmetricCiphers
+import io.ktor.client.HttpClient
 import okhttp3.OkHttpClient
 import java.util.*
 
@@ -78,6 +83,58 @@ interface ISteamConfigurationBuilder {
      */
     fun withProtocolTypes(protocolTypes: ProtocolTypes): ISteamConfigurationBuilder
 
+    /**
+     * Configures how this [SteamConfiguration] will connect to TCP servers.
+     *
+     * @param nonBlockingTcp Whether to use non-blocking sockets serviced by a shared selector thread instead of a dedicated thread per connection.
+     * @return A builder with modified configuration.
+     */
+    fun withNonBlockingTcp(nonBlockingTcp: Boolean): ISteamConfigurationBuilder
+
+    /**
+     * Configures how this [SteamConfiguration] will connect to UDP servers.
+     *
+     * @param nonBlockingUdp Whether to use non-blocking sockets serviced by a shared selector thread, which keep a
+     * window of packets in flight instead of waiting for an ack every few packets.
+     * @return A builder with modified configuration.
+     */
+    fun withNonBlockingUdp(nonBlockingUdp: Boolean): ISteamConfigurationBuilder
+
+    /**
+     * Configures the threads shared by clients using this [SteamConfiguration].
+     *
+     * @param runtime The runtime that runs socket I/O, heartbeats and job timeouts of the clients.
+     * @return A builder with modified configuration.
+     */
+    fun withRuntime(runtime: SteamRuntime): ISteamConfigurationBuilder
+
+    /**
+     * Configures the HTTP client WebSocket connections open their sessions on. It's shared by every connection and
+     * must have the WebSockets plugin installed. The client of the runtime is used if none is given.
+     *
+     * @param webSocketClient The client to use, it's not closed by the connections.
+     * @return A builder with modified configuration.
+     */
+    fun withWebSocketClient(webSocketClient: HttpClient): ISteamConfigurationBuilder
+
+    /**
+     * Configures how clients pace the messages they send. Messages wait until the limits allow them to be sent, and
+     * the waiting messages of a higher priority go first. Without limits, messages are sent right away.
+     *
+     * @param sendRateLimits The limits and priorities, or null to send messages right away.
+     * @return A builder with modified configuration.
+     */
+    fun withSendRateLimits(sendRateLimits: SendRateLimits?): ISteamConfigurationBuilder
+
+    /**
+     * Configures the JCA provider of the AES ciphers for depot chunks, manifest file names and the connection
+     * encryption. The platform's default provider is used if none is given.
+     *
+     * @param cipherProvider The provider to use.
+     * @return A builder with modified configuration.
+     */
+    fun withCipherProvider(cipherProvider: SymmetricCiphers.Provider): ISteamConfigurationBuilder
+
     /**
      * Configures the server list provider for this [SteamConfiguration].
      *
@@ -94,6 +151,14 @@ interface ISteamConfigurationBuilder {
      */
     fun withManifestProvider(provider: IManifestProvider): ISteamConfigurationBuilder
 
+    /**
+     * Configures the depot chunk cache for this [SteamConfiguration].
+     *
+     * @param cache The chunk cache to use, or null to always download chunks.
+     * @return A builder with modified configuration.
+     */
+    fun withChunkCache(cache: IChunkCache?): ISteamConfigurationBuilder
+
     /**
      * Configures the Universe that this [SteamConfiguration] belongs to.
      *
@@ -3,12 +3,17 @@ package `in`.dragonbra.javasteam.steam.steamclient.configuration
 import `in`.dragonbra.javasteam.enums.EClientPersonaStateFlag
 import `in`.dragonbra.javasteam.enums.EUniverse
 import `in`.dragonbra.javasteam.networking.steam3.ProtocolTypes
+import `in`.dragonbra.javasteam.steam.contentdownloader.IChunkCache
 import `in`.dragonbra.javasteam.steam.contentdownloader.IManifestProvider
 import `in`.dragonbra.javasteam.steam.discovery.IServerListProvider
 import `in`.dragonbra.javasteam.steam.discovery.SmartCMServerList
 import `in`.dragonbra.javasteam.steam.steamclient.SteamClient
+import `in`.dragonbra.javasteam.steam.ratelimit.SendRateLimits
+import `in`.dragonbra.javasteam.steam.steamclient.SteamRuntime
 import `in`.dragonbra.javasteam.steam.webapi.WebAPI
 import `in`.dragonbra.javasteam.util.compat.Consumer
+import `in`.dragonbra.javasteam.util.crypto.SymmetricCiphers
+import io.ktor.client.HttpClient
 import okhttp3.OkHttpClient
 import java.util.*
 
@@ -55,6 +60,42 @@ class SteamConfiguration internal constructor(private val state: SteamConfigurat
     val protocolTypes: EnumSet<ProtocolTypes>
         get() = state.protocolTypes
 
+    /**
+     * Whether to use non-blocking sockets serviced by a shared selector thread instead of a dedicated thread per connection.
+     */
+    val isNonBlockingTcp: Boolean
+        get() = state.isNonBlockingTcp
+
+    /**
+     * Whether to use non-blocking sockets serviced by a shared selector thread, with a window of packets in flight.
+     */
+    val isNonBlockingUdp: Boolean
+        get() = state.isNonBlockingUdp
+
+    /**
+     * The runtime that runs socket I/O, heartbeats and job timeouts of the clients.
+     */
+    val runtime: SteamRuntime
+        get() = state.runtime
+
+    /**
+     * The HTTP client WebSocket connections open their sessions on.
+     */
+    val webSocketClient: HttpClient
+        get() = state.webSocketClient ?: state.runtime.webSocketClient
+
+    /**
+     * The limits clients pace the messages they send by, or null if messages are sent right away.
+     */
+    val sendRateLimits: SendRateLimits?
+        get() = state.sendRateLimits
+
+    /**
+     * The JCA provider of the AES ciphers for depot chunks, manifest file names and the connection encryption.
+     */
+    val cipherProvider: SymmetricCiphers.Provider
+        get() = state.cipherProvider
+
     /**
      * The server list provider to use.
      */
@@ -67,6 +108,12 @@ class SteamConfiguration internal constructor(private val state: SteamConfigurat
     val depotManifestProvider: IManifestProvider
         get() = state.depotManifestProvider
 
+    /**
+     * The depot chunk cache to use, if any.
+     */
+    val chunkCache: IChunkCache?
+        get() = state.chunkCache
+
     /**
      * The Universe to connect to. This should always be [EUniverse.Public] unless you work at Valve and are using this internally. If this is you, hello there.
      */
@@ -3,11 +3,16 @@ package `in`.dragonbra.javasteam.steam.steamclient.configuration
 import `in`.dragonbra.javasteam.enums.EClientPersonaStateFlag
 import `in`.dragonbra.javasteam.enums.EUniverse
 import `in`.dragonbra.javasteam.networking.steam3.ProtocolTypes
+import `in`.dragonbra.javasteam.steam.contentdownloader.IChunkCache
 import `in`.dragonbra.javasteam.steam.contentdownloader.IManifestProvider
 import `in`.dragonbra.javasteam.steam.contentdownloader.MemoryManifestProvider
 import `in`.dragonbra.javasteam.steam.discovery.IServerListProvider
 import `in`.dragonbra.javasteam.steam.discovery.MemoryServerListProvider
+import `in`.dragonbra.javasteam.steam.ratelimit.SendRateLimits
+import `in`.dragonbra.javasteam.steam.steamclient.SteamRuntime
 import `in`.dragonbra.javasteam.steam.webapi.WebAPI
+import `in`.dragonbra.javasteam.util.crypto.SymmetricCiphers
+import io.ktor.client.HttpClient
 import okhttp3.OkHttpClient
 import java.util.*
 
@@ -61,6 +66,36 @@ class SteamConfigurationBuilder : ISteamConfigurationBuilder {
         return this
     }
 
+    override fun withNonBlockingTcp(nonBlockingTcp: Boolean): ISteamConfigurationBuilder {
+        state.isNonBlockingTcp = nonBlockingTcp
+        return this
+    }
+
+    override fun withNonBlockingUdp(nonBlockingUdp: Boolean): ISteamConfigurationBuilder {
+        state.isNonBlockingUdp = nonBlockingUdp
+        return this
+    }
+
+    override fun withRuntime(runtime: SteamRuntime): ISteamConfigurationBuilder {
+        state.runtime = runtime
+        return this
+    }
+
+    override fun withWebSocketClient(webSocketClient: HttpClient): ISteamConfigurationBuilder {
+        state.webSocketClient = webSocketClient
+        return this
+    }
+
+    override fun withSendRateLimits(sendRateLimits: SendRateLimits?): ISteamConfigurationBuilder {
+        state.sendRateLimits = sendRateLimits
+        return this
+    }
+
+    override fun withCipherProvider(cipherProvider: SymmetricCiphers.Provider): ISteamConfigurationBuilder {
+        state.cipherProvider = cipherProvider
+        return this
+    }
+
     override fun withServerListProvider(provider: IServerListProvider): ISteamConfigurationBuilder {
         state.serverListProvider = provider
         return this
@@ -71,6 +106,11 @@ class SteamConfigurationBuilder : ISteamConfigurationBuilder {
         return this
     }
 
+    override fun withChunkCache(cache: IChunkCache?): ISteamConfigurationBuilder {
+        state.chunkCache = cache
+        return this
+    }
+
     override fun withUniverse(universe: EUniverse): ISteamConfigurationBuilder {
         state.universe = universe
         return this
@@ -100,8 +140,15 @@ class SteamConfigurationBuilder : ISteamConfigurationBuilder {
             ),
             httpClient = OkHttpClient(),
             protocolTypes = EnumSet.of(ProtocolTypes.TCP, ProtocolTypes.WEB_SOCKET),
+            isNonBlockingTcp = false,
+            isNonBlockingUdp = false,
+            runtime = SteamRuntime.getDefault(),
+            webSocketClient = null,
+            sendRateLimits = null,
+            cipherProvider = SymmetricCiphers.Provider.DEFAULT,
             serverListProvider = MemoryServerListProvider(),
             depotManifestProvider = MemoryManifestProvider(),
+            chunkCache = null,
             universe = EUniverse.Public,
             webAPIBaseAddress = WebAPI.DEFAULT_BASE_ADDRESS,
             cellID = 0,
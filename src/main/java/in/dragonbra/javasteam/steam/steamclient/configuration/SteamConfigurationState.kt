@@ -3,8 +3,13 @@ package `in`.dragonbra.javasteam.steam.steamclient.configuration
 import `in`.dragonbra.javasteam.enums.EClientPersonaStateFlag
 import `in`.dragonbra.javasteam.enums.EUniverse
 import `in`.dragonbra.javasteam.networking.steam3.ProtocolTypes
+import `in`.dragonbra.javasteam.steam.contentdownloader.IChunkCache
 import `in`.dragonbra.javasteam.steam.contentdownloader.IManifestProvider
 import `in`.dragonbra.javasteam.steam.discovery.IServerListProvider
+import `in`.dragonbra.javasteam.steam.ratelimit.SendRateLimits
+import `in`.dragonbra.javasteam.steam.steamclient.SteamRuntime
+import `in`.dragonbra.javasteam.util.crypto.SymmetricCiphers
+import io.ktor.client.HttpClient
 import okhttp3.OkHttpClient
 import java.util.EnumSet
 
@@ -19,8 +24,15 @@ data class SteamConfigurationState(
     var defaultPersonaStateFlags: EnumSet<EClientPersonaStateFlag>,
     var httpClient: OkHttpClient,
     var protocolTypes: EnumSet<ProtocolTypes>,
+    var isNonBlockingTcp: Boolean,
+    var isNonBlockingUdp: Boolean,
+    var runtime: SteamRuntime,
+    var webSocketClient: HttpClient?,
+    var sendRateLimits: SendRateLimits?,
+    var cipherProvider: SymmetricCiphers.Provider,
     var serverListProvider: IServerListProvider,
     var depotManifestProvider: IManifestProvider,
+    var chunkCache: IChunkCache?,
     var universe: EUniverse,
     var webAPIBaseAddress: String,
     var webAPIKey: String?,
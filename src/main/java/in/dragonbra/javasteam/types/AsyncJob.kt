@@ -2,7 +2,7 @@ package `in`.dragonbra.javasteam.types
 
 import `in`.dragonbra.javasteam.steam.steamclient.SteamClient
 import `in`.dragonbra.javasteam.steam.steamclient.callbackmgr.CallbackMsg
-import java.time.Instant
+import java.util.concurrent.TimeUnit
 
 /**
  * The base class for awaitable versions of a [JobID].
@@ -13,12 +13,27 @@ import java.time.Instant
  */
 abstract class AsyncJob(val client: SteamClient, val jobID: JobID) {
 
-    private var jobStart = Instant.now()
-
-    var timeout: Long = 10000 // 10 Seconds
+    private val jobStart = System.nanoTime()
+
+    /**
+     * The time at which this job times out, in [System.nanoTime] units.
+     */
+    @Volatile
+    internal var deadline: Long = jobStart + TimeUnit.MILLISECONDS.toNanos(DEFAULT_TIMEOUT)
+        private set
+
+    /**
+     * The timeout of this job in milliseconds, measured from when the job was created.
+     */
+    var timeout: Long = DEFAULT_TIMEOUT
+        set(value) {
+            field = value
+            deadline = jobStart + TimeUnit.MILLISECONDS.toNanos(value)
+            client.jobManager.rescheduleJob(this)
+        }
 
     val isTimedOut: Boolean
-        get() = Instant.now() >= jobStart.plusMillis(timeout)
+        get() = System.nanoTime() - deadline >= 0
 
     protected fun registerJob(client: SteamClient) {
         client.startJob(this)
@@ -29,6 +44,10 @@ abstract class AsyncJob(val client: SteamClient, val jobID: JobID) {
     abstract fun setFailed(dueToRemoteFailure: Boolean)
 
     fun heartbeat() {
-        timeout += 10000
+        timeout += DEFAULT_TIMEOUT
+    }
+
+    companion object {
+        private const val DEFAULT_TIMEOUT = 10000L // 10 Seconds
     }
 }
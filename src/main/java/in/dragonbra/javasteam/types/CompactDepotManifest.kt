@@ -0,0 +1,523 @@
+package `in`.dragonbra.javasteam.types
+
+import com.google.protobuf.CodedInputStream
+import com.google.protobuf.ExtensionRegistryLite
+import com.google.protobuf.WireFormat
+import `in`.dragonbra.javasteam.enums.EDepotFileFlag
+import `in`.dragonbra.javasteam.protobufs.steamclient.ContentManifest.ContentManifestMetadata
+import `in`.dragonbra.javasteam.protobufs.steamclient.ContentManifest.ContentManifestPayload
+import `in`.dragonbra.javasteam.util.crypto.SymmetricCiphers
+import `in`.dragonbra.javasteam.util.log.LogManager
+import `in`.dragonbra.javasteam.util.log.Logger
+import java.io.ByteArrayOutputStream
+import java.io.File
+import java.io.InputStream
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.time.Instant
+import java.util.Date
+import javax.crypto.spec.SecretKeySpec
+
+/**
+ * A read-only, packed form of a [DepotManifest] that keeps its files and chunks in arrays instead of one object per
+ * file and chunk, which takes less than half the memory for large depots.
+ *
+ * [deserialize] parses protobuf manifests straight into the arrays, so the unpacked files never exist all at once.
+ * [files] returns [FileData] and [ChunkData] objects that are created from the arrays on access, so they can be passed
+ * to code that takes those, like [in.dragonbra.javasteam.steam.contentdownloader.ManifestDiff] and
+ * [in.dragonbra.javasteam.steam.contentdownloader.DepotVerifier]. They're copies, changing them doesn't change the
+ * manifest, and reading the same file twice creates it twice, so hold on to a file rather than looking it up
+ * repeatedly in a hot loop. [toDepotManifest] unpacks it for code that needs a [DepotManifest].
+ */
+@Suppress("MemberVisibilityCanBePrivate", "unused")
+class CompactDepotManifest private constructor(
+    filenamesEncrypted: Boolean,
+    /**
+     * Gets the depot id.
+     */
+    val depotID: Int,
+    /**
+     * Gets the manifest id.
+     */
+    val manifestGID: Long,
+    /**
+     * Gets the depot creation time.
+     */
+    val creationTime: Date,
+    /**
+     * Gets the total uncompressed size of all files in this depot.
+     */
+    val totalUncompressedSize: Long,
+    /**
+     * Gets the total compressed size of all files in this depot.
+     */
+    val totalCompressedSize: Long,
+    /**
+     * Gets CRC-32 checksum of encrypted manifest payload.
+     */
+    val encryptedCRC: Int,
+    packer: Packer,
+) {
+
+    companion object {
+        private val logger: Logger = LogManager.getLogger(CompactDepotManifest::class.java)
+
+        private const val CHUNK_ID_LENGTH = 20
+
+        /**
+         * Packs the files of a [DepotManifest]. The given manifest isn't referenced afterward.
+         * @param manifest the manifest to pack.
+         * @return the compact manifest.
+         * @exception IllegalArgumentException Thrown if a chunk has no 20 byte chunk ID.
+         */
+        @JvmStatic
+        fun from(manifest: DepotManifest): CompactDepotManifest {
+            val packer = Packer(manifest.files.size, manifest.files.sumOf { it.chunks.size })
+
+            for (file in manifest.files) {
+                packer.addFile(
+                    file.fileName.toByteArray(Charsets.UTF_8),
+                    file.fileNameHash,
+                    file.fileHash,
+                    file.linkTarget.toByteArray(Charsets.UTF_8),
+                    EDepotFileFlag.code(file.flags),
+                    file.totalSize
+                )
+
+                file.chunks.forEachIndexed { index, chunk ->
+                    val chunkID = chunk.chunkID
+                    require(chunkID != null && chunkID.size == CHUNK_ID_LENGTH) {
+                        "Chunk $index of ${file.fileName} has no valid chunk ID"
+                    }
+
+                    packer.addChunk(
+                        chunkID,
+                        chunk.checksum,
+                        chunk.offset,
+                        chunk.compressedLength,
+                        chunk.uncompressedLength
+                    )
+                }
+            }
+
+            return CompactDepotManifest(
+                filenamesEncrypted = manifest.filenamesEncrypted,
+                depotID = manifest.depotID,
+                manifestGID = manifest.manifestGID,
+                creationTime = manifest.creationTime,
+                totalUncompressedSize = manifest.totalUncompressedSize,
+                totalCompressedSize = manifest.totalCompressedSize,
+                encryptedCRC = manifest.encryptedCRC,
+                packer = packer
+            )
+        }
+
+        /**
+         * Deserializes a depot manifest into its packed form. Protobuf manifests are parsed one file mapping at a
+         * time, old binary manifests are read into a [DepotManifest] first.
+         * @param data Raw depot manifest data to deserialize.
+         * @exception NoSuchElementException Thrown if the given data is not something recognizable.
+         * @exception IllegalArgumentException Thrown if a chunk has no 20 byte chunk ID.
+         */
+        @JvmStatic
+        @OptIn(ExperimentalStdlibApi::class)
+        fun deserialize(data: ByteArray): CompactDepotManifest {
+            val buffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN)
+            var payloadOffset = -1
+            var payloadLength = 0
+            var metadata: ContentManifestMetadata? = null
+            var signature = false
+
+            while (true) {
+                val magic = buffer.int
+
+                if (magic == DepotManifest.PROTOBUF_ENDOFMANIFEST_MAGIC) {
+                    break
+                }
+
+                when (magic) {
+                    Steam3Manifest.MAGIC -> return from(DepotManifest.deserialize(data))
+
+                    DepotManifest.PROTOBUF_PAYLOAD_MAGIC -> {
+                        payloadLength = buffer.int
+                        payloadOffset = buffer.position()
+                        buffer.position(payloadOffset + payloadLength)
+                    }
+
+                    DepotManifest.PROTOBUF_METADATA_MAGIC -> {
+                        val metadataLength = buffer.int
+                        metadata = ContentManifestMetadata.parseFrom(
+                            CodedInputStream.newInstance(data, buffer.position(), metadataLength)
+                        )
+                        buffer.position(buffer.position() + metadataLength)
+                    }
+
+                    DepotManifest.PROTOBUF_SIGNATURE_MAGIC -> {
+                        val signatureLength = buffer.int
+                        buffer.position(buffer.position() + signatureLength)
+                        signature = true
+                    }
+
+                    else -> throw NoSuchElementException(
+                        "Unrecognized magic value ${magic.toHexString(HexFormat.Default)} in depot manifest."
+                    )
+                }
+            }
+
+            if (payloadOffset < 0 || metadata == null || !signature) {
+                throw NoSuchElementException("Missing ContentManifest sections required for parsing depot manifest")
+            }
+
+            val packer = Packer(16, 16)
+            val input = CodedInputStream.newInstance(data, payloadOffset, payloadLength)
+            val chunkID = ByteArray(CHUNK_ID_LENGTH)
+
+            while (true) {
+                val tag = input.readTag()
+
+                if (tag == 0) {
+                    break
+                }
+
+                if (WireFormat.getTagFieldNumber(tag) != ContentManifestPayload.MAPPINGS_FIELD_NUMBER) {
+                    input.skipField(tag)
+                    continue
+                }
+
+                // only one mapping is alive at a time
+                val mapping = input.readMessage(
+                    ContentManifestPayload.FileMapping.parser(),
+                    ExtensionRegistryLite.getEmptyRegistry()
+                )
+
+                val fileName = if (metadata.filenamesEncrypted) {
+                    mapping.filename
+                } else {
+                    mapping.filename.replace('\\', File.separatorChar)
+                }
+
+                packer.addFile(
+                    fileName.toByteArray(Charsets.UTF_8),
+                    mapping.shaFilename.toByteArray(),
+                    mapping.shaContent.toByteArray(),
+                    mapping.linktargetBytes.toByteArray(),
+                    mapping.flags,
+                    mapping.size
+                )
+
+                mapping.chunksList.forEachIndexed { index, chunk ->
+                    require(chunk.sha.size() == CHUNK_ID_LENGTH) {
+                        "Chunk $index of ${mapping.filename} has no valid chunk ID"
+                    }
+
+                    chunk.sha.copyTo(chunkID, 0)
+                    packer.addChunk(chunkID, chunk.crc, chunk.offset, chunk.cbCompressed, chunk.cbOriginal)
+                }
+            }
+
+            return CompactDepotManifest(
+                filenamesEncrypted = metadata.filenamesEncrypted,
+                depotID = metadata.depotId,
+                manifestGID = metadata.gidManifest,
+                creationTime = Date.from(Instant.ofEpochSecond(metadata.creationTime.toLong())),
+                totalUncompressedSize = metadata.cbDiskOriginal,
+                totalCompressedSize = metadata.cbDiskCompressed,
+                encryptedCRC = metadata.crcEncrypted,
+                packer = packer
+            )
+        }
+
+        /**
+         * Deserializes a depot manifest into its packed form, see [deserialize].
+         * @param stream Raw depot manifest stream to deserialize.
+         * @exception NoSuchElementException Thrown if the given data is not something recognizable.
+         * @exception IllegalArgumentException Thrown if a chunk has no 20 byte chunk ID.
+         */
+        @JvmStatic
+        fun deserialize(stream: InputStream): CompactDepotManifest = deserialize(stream.readBytes())
+    }
+
+    /**
+     * Gets a value indicating whether filenames within this depot are encrypted.
+     */
+    var filenamesEncrypted: Boolean = filenamesEncrypted
+        private set
+
+    /**
+     * Gets the number of files in this manifest.
+     */
+    val fileCount: Int = packer.fileCount
+
+    /**
+     * Gets the number of chunks of all files in this manifest.
+     */
+    val chunkCount: Int = packer.chunkCount
+
+    // per file: name, name hash, content hash and link target, at index 4 * file + n
+    private var blobs: BlobTable = packer.blobs.build()
+
+    private var fileFlags: IntArray = packer.fileFlags.copyOf(fileCount)
+
+    private var fileSizes: LongArray = packer.fileSizes.copyOf(fileCount)
+
+    // the chunks of file i are chunkStart[i] until chunkEnd[i], decrypting the names moves the files but not the
+    // chunks, so the chunk lists of files read before stay valid
+    private var chunkStart: IntArray = packer.chunkStart.copyOf(fileCount)
+
+    private var chunkEnd: IntArray = packer.chunkStart.copyOfRange(1, fileCount + 1)
+
+    private val chunkIDs: ByteArray = packer.chunkIDs.copyOf(chunkCount * CHUNK_ID_LENGTH)
+
+    private val chunkOffsets: LongArray = packer.chunkOffsets.copyOf(chunkCount)
+
+    private val chunkChecksums: IntArray = packer.chunkChecksums.copyOf(chunkCount)
+
+    private val chunkCompressedLengths: IntArray = packer.chunkCompressedLengths.copyOf(chunkCount)
+
+    private val chunkUncompressedLengths: IntArray = packer.chunkUncompressedLengths.copyOf(chunkCount)
+
+    /**
+     * Gets the list of files within this manifest. Each file is created from the packed arrays when it's read.
+     */
+    val files: List<FileData> = object : AbstractList<FileData>(), RandomAccess {
+        override val size: Int
+            get() = fileCount
+
+        override fun get(index: Int): FileData {
+            if (index < 0 || index >= fileCount) {
+                throw IndexOutOfBoundsException("Index $index out of bounds for $fileCount files")
+            }
+
+            return FileData(
+                fileName = blobs.getString(index * 4),
+                fileNameHash = blobs.getBytes(index * 4 + 1),
+                chunks = ChunkList(index),
+                flags = EDepotFileFlag.from(fileFlags[index]),
+                totalSize = fileSizes[index],
+                fileHash = blobs.getBytes(index * 4 + 2),
+                linkTarget = blobs.getString(index * 4 + 3),
+                encrypted = filenamesEncrypted
+            )
+        }
+    }
+
+    /**
+     * Attempts to decrypt file names with the given encryption key, like [DepotManifest.decryptFilenames]. The files
+     * are sorted by their decrypted name afterward.
+     * @param encryptionKey The encryption key.
+     * @param cipherProvider The JCA provider of the AES ciphers.
+     * @return `true` if the file names were successfully decrypted; otherwise `false`.
+     */
+    @JvmOverloads
+    fun decryptFilenames(
+        encryptionKey: ByteArray,
+        cipherProvider: SymmetricCiphers.Provider = SymmetricCiphers.Provider.DEFAULT,
+    ): Boolean {
+        if (!filenamesEncrypted) {
+            return true
+        }
+
+        assert(encryptionKey.size == 32) { "Decrypt filenames used with non 32 byte key!" }
+
+        val ecbCipher = SymmetricCiphers.ecb(cipherProvider)
+        val aes = SymmetricCiphers.cbc(cipherProvider)
+        val secretKey = SecretKeySpec(encryptionKey, "AES")
+
+        // nothing changes unless every name decrypts
+        val names = try {
+            Array(fileCount) { file ->
+                val decoded = DepotManifest.decodeFilename(blobs.getString(file * 4))
+                DepotManifest.decryptFilename(decoded, ecbCipher, aes, secretKey)
+            }
+        } catch (e: Exception) {
+            logger.error("Failed to decrypt filenames: $e")
+            return false
+        }
+
+        // Sort file entries alphabetically because that's what Steam does
+        val order = (0 until fileCount).sortedWith(compareBy(String.CASE_INSENSITIVE_ORDER) { names[it] })
+        reorder(order, names)
+
+        filenamesEncrypted = false
+        return true
+    }
+
+    /**
+     * Unpacks this manifest into a [DepotManifest] that has an object for each file and chunk.
+     */
+    fun toDepotManifest(): DepotManifest = DepotManifest(
+        files = files.mapTo(ArrayList(fileCount)) { FileData(it) },
+        filenamesEncrypted = filenamesEncrypted,
+        depotID = depotID,
+        manifestGID = manifestGID,
+        creationTime = creationTime,
+        totalUncompressedSize = totalUncompressedSize,
+        totalCompressedSize = totalCompressedSize,
+        encryptedCRC = encryptedCRC
+    )
+
+    /**
+     * Serializes the depot manifest into a byte array.
+     */
+    fun toByteArray(): ByteArray = toDepotManifest().toByteArray()
+
+    /**
+     * Rebuilds the file arrays with the files in the given order and the given names.
+     */
+    private fun reorder(order: List<Int>, names: Array<String>) {
+        val blobBuilder = BlobTable.Builder(fileCount * 4)
+        val newFlags = IntArray(fileCount)
+        val newSizes = LongArray(fileCount)
+        val newStart = IntArray(fileCount)
+        val newEnd = IntArray(fileCount)
+
+        order.forEachIndexed { index, file ->
+            blobBuilder.add(names[file].toByteArray(Charsets.UTF_8))
+            blobBuilder.add(blobs.getBytes(file * 4 + 1))
+            blobBuilder.add(blobs.getBytes(file * 4 + 2))
+            blobBuilder.add(blobs.getBytes(file * 4 + 3))
+
+            newFlags[index] = fileFlags[file]
+            newSizes[index] = fileSizes[file]
+            newStart[index] = chunkStart[file]
+            newEnd[index] = chunkEnd[file]
+        }
+
+        blobs = blobBuilder.build()
+        fileFlags = newFlags
+        fileSizes = newSizes
+        chunkStart = newStart
+        chunkEnd = newEnd
+    }
+
+    /**
+     * The read-only chunks of a file, created from the packed arrays when they're read.
+     */
+    private inner class ChunkList(file: Int) : java.util.AbstractList<ChunkData>(), RandomAccess {
+        private val first = chunkStart[file]
+
+        override val size: Int = chunkEnd[file] - first
+
+        override fun get(index: Int): ChunkData {
+            if (index < 0 || index >= size) {
+                throw IndexOutOfBoundsException("Index $index out of bounds for $size chunks")
+            }
+
+            val chunk = first + index
+
+            return ChunkData(
+                chunkID = chunkIDs.copyOfRange(chunk * CHUNK_ID_LENGTH, (chunk + 1) * CHUNK_ID_LENGTH),
+                checksum = chunkChecksums[chunk],
+                offset = chunkOffsets[chunk],
+                compressedLength = chunkCompressedLengths[chunk],
+                uncompressedLength = chunkUncompressedLengths[chunk]
+            )
+        }
+    }
+
+    /**
+     * Collects files and chunks into arrays that grow as they're added.
+     */
+    private class Packer(fileCapacity: Int, chunkCapacity: Int) {
+        val blobs = BlobTable.Builder(fileCapacity * 4)
+
+        var fileCount = 0
+
+        var chunkCount = 0
+
+        var fileFlags = IntArray(fileCapacity)
+
+        var fileSizes = LongArray(fileCapacity)
+
+        var chunkStart = IntArray(fileCapacity + 1)
+
+        var chunkIDs = ByteArray(chunkCapacity * CHUNK_ID_LENGTH)
+
+        var chunkOffsets = LongArray(chunkCapacity)
+
+        var chunkChecksums = IntArray(chunkCapacity)
+
+        var chunkCompressedLengths = IntArray(chunkCapacity)
+
+        var chunkUncompressedLengths = IntArray(chunkCapacity)
+
+        fun addFile(
+            name: ByteArray,
+            nameHash: ByteArray,
+            fileHash: ByteArray,
+            linkTarget: ByteArray,
+            flags: Int,
+            size: Long,
+        ) {
+            if (fileCount == fileFlags.size) {
+                val capacity = grow(fileCount)
+                fileFlags = fileFlags.copyOf(capacity)
+                fileSizes = fileSizes.copyOf(capacity)
+                chunkStart = chunkStart.copyOf(capacity + 1)
+            }
+
+            blobs.add(name)
+            blobs.add(nameHash)
+            blobs.add(fileHash)
+            blobs.add(linkTarget)
+
+            fileFlags[fileCount] = flags
+            fileSizes[fileCount] = size
+            chunkStart[fileCount] = chunkCount
+            chunkStart[++fileCount] = chunkCount
+        }
+
+        /**
+         * Adds a chunk to the last added file.
+         */
+        fun addChunk(chunkID: ByteArray, checksum: Int, offset: Long, compressedLength: Int, uncompressedLength: Int) {
+            if (chunkCount == chunkOffsets.size) {
+                val capacity = grow(chunkCount)
+                chunkIDs = chunkIDs.copyOf(capacity * CHUNK_ID_LENGTH)
+                chunkOffsets = chunkOffsets.copyOf(capacity)
+                chunkChecksums = chunkChecksums.copyOf(capacity)
+                chunkCompressedLengths = chunkCompressedLengths.copyOf(capacity)
+                chunkUncompressedLengths = chunkUncompressedLengths.copyOf(capacity)
+            }
+
+            System.arraycopy(chunkID, 0, chunkIDs, chunkCount * CHUNK_ID_LENGTH, CHUNK_ID_LENGTH)
+            chunkOffsets[chunkCount] = offset
+            chunkChecksums[chunkCount] = checksum
+            chunkCompressedLengths[chunkCount] = compressedLength
+            chunkUncompressedLengths[chunkCount] = uncompressedLength
+            chunkStart[fileCount] = ++chunkCount
+        }
+
+        private fun grow(capacity: Int): Int = maxOf(16, capacity + (capacity shr 1))
+    }
+
+    /**
+     * Variable length byte strings stored back to back in one array.
+     */
+    private class BlobTable(private val data: ByteArray, private val offsets: IntArray) {
+
+        fun getBytes(index: Int): ByteArray = data.copyOfRange(offsets[index], offsets[index + 1])
+
+        fun getString(index: Int): String =
+            String(data, offsets[index], offsets[index + 1] - offsets[index], Charsets.UTF_8)
+
+        class Builder(capacity: Int) {
+            private val data = ByteArrayOutputStream()
+
+            private var offsets = IntArray(capacity + 1)
+
+            private var count = 0
+
+            fun add(bytes: ByteArray) {
+                if (count + 1 == offsets.size) {
+                    offsets = offsets.copyOf(maxOf(16, offsets.size + (offsets.size shr 1)))
+                }
+
+                data.write(bytes)
+                offsets[++count] = data.size()
+            }
+
+            fun build(): BlobTable = BlobTable(data.toByteArray(), offsets.copyOf(count + 1))
+        }
+    }
+}
@@ -8,6 +8,7 @@ import `in`.dragonbra.javasteam.protobufs.steamclient.ContentManifest.ContentMan
 import `in`.dragonbra.javasteam.util.Utils
 import `in`.dragonbra.javasteam.util.compat.readNBytesCompat
 import `in`.dragonbra.javasteam.util.crypto.CryptoHelper
+import `in`.dragonbra.javasteam.util.crypto.SymmetricCiphers
 import `in`.dragonbra.javasteam.util.log.LogManager
 import `in`.dragonbra.javasteam.util.log.Logger
 import `in`.dragonbra.javasteam.util.stream.BinaryReader
@@ -79,6 +80,49 @@ class DepotManifest {
                 deserialize(fs)
             }
         }
+
+        /**
+         * Decodes an encrypted file name from its base64 form, see [decryptFilenames].
+         */
+        internal fun decodeFilename(fileName: String): ByteArray = Base64.getUrlDecoder().decode(
+            fileName
+                .replace('+', '-')
+                .replace('/', '_')
+                .replace("\n", "")
+                .replace("\r", "")
+                .replace(" ", "")
+        )
+
+        /**
+         * Decrypts a decoded file name, see [decryptFilenames].
+         * @exception Exception Thrown if the file name can't be decrypted with the key.
+         */
+        internal fun decryptFilename(
+            decoded: ByteArray,
+            ecbCipher: Cipher,
+            aes: Cipher,
+            secretKey: SecretKeySpec,
+        ): String {
+            // Extract IV from the first 16 bytes
+            ecbCipher.init(Cipher.DECRYPT_MODE, secretKey)
+            val iv = ecbCipher.doFinal(decoded, 0, 16)
+
+            // Decrypt filename
+            aes.init(Cipher.DECRYPT_MODE, secretKey, IvParameterSpec(iv))
+            val bufferDecrypted = aes.doFinal(decoded, iv.size, decoded.size - iv.size)
+
+            // Trim the ending null byte, safe for UTF-8
+            val filenameLength = bufferDecrypted.size - if (
+                bufferDecrypted.isNotEmpty() &&
+                bufferDecrypted[bufferDecrypted.size - 1] == 0.toByte()
+            ) {
+                1
+            } else {
+                0
+            }
+
+            return String(bufferDecrypted, 0, filenameLength, Charsets.UTF_8).replace('\\', File.separatorChar)
+        }
     }
 
     /**
@@ -150,12 +194,37 @@ class DepotManifest {
         encryptedCRC = manifest.encryptedCRC
     }
 
+    internal constructor(
+        files: MutableList<FileData>,
+        filenamesEncrypted: Boolean,
+        depotID: Int,
+        manifestGID: Long,
+        creationTime: Date,
+        totalUncompressedSize: Long,
+        totalCompressedSize: Long,
+        encryptedCRC: Int,
+    ) {
+        this.files = files
+        this.filenamesEncrypted = filenamesEncrypted
+        this.depotID = depotID
+        this.manifestGID = manifestGID
+        this.creationTime = creationTime
+        this.totalUncompressedSize = totalUncompressedSize
+        this.totalCompressedSize = totalCompressedSize
+        this.encryptedCRC = encryptedCRC
+    }
+
     /**
      * Attempts to decrypt file names with the given encryption key.
      * @param encryptionKey The encryption key.
+     * @param cipherProvider The JCA provider of the AES ciphers.
      * @return `true` if the file names were successfully decrypted; otherwise `false`.
      */
-    fun decryptFilenames(encryptionKey: ByteArray): Boolean {
+    @JvmOverloads
+    fun decryptFilenames(
+        encryptionKey: ByteArray,
+        cipherProvider: SymmetricCiphers.Provider = SymmetricCiphers.Provider.DEFAULT,
+    ): Boolean {
         if (!filenamesEncrypted) {
             return true
         }
@@ -163,48 +232,20 @@ class DepotManifest {
         assert(encryptionKey.size == 32) { "Decrypt filenames used with non 32 byte key!" }
 
         // This was originally copy-pasted in the SteamKit2 source from CryptoHelper.SymmetricDecrypt to avoid allocating Aes instance for every filename
-        val ecbCipher = Cipher.getInstance("AES/ECB/NoPadding", CryptoHelper.SEC_PROV)
-        val aes = Cipher.getInstance("AES/CBC/PKCS7Padding", CryptoHelper.SEC_PROV)
+        val ecbCipher = SymmetricCiphers.ecb(cipherProvider)
+        val aes = SymmetricCiphers.cbc(cipherProvider)
         val secretKey = SecretKeySpec(encryptionKey, "AES")
-        var iv: ByteArray
 
         try {
             for (file in files) {
-                val decoded = Base64.getUrlDecoder().decode(
-                    file.fileName
-                        .replace('+', '-')
-                        .replace('/', '_')
-                        .replace("\n", "")
-                        .replace("\r", "")
-                        .replace(" ", "")
-                )
+                val decoded = decodeFilename(file.fileName)
 
-                val bufferDecrypted: ByteArray
-                try {
-                    // Extract IV from the first 16 bytes
-                    ecbCipher.init(Cipher.DECRYPT_MODE, secretKey)
-                    iv = ecbCipher.doFinal(decoded, 0, 16)
-
-                    // Decrypt filename
-                    aes.init(Cipher.DECRYPT_MODE, secretKey, IvParameterSpec(iv))
-                    bufferDecrypted = aes.doFinal(decoded, iv.size, decoded.size - iv.size)
+                file.fileName = try {
+                    decryptFilename(decoded, ecbCipher, aes, secretKey)
                 } catch (e: Exception) {
                     logger.error("Failed to decrypt the filename: $e")
                     return false
                 }
-
-                // Trim the ending null byte, safe for UTF-8
-                val filenameLength = bufferDecrypted.size - if (
-                    bufferDecrypted.isNotEmpty() &&
-                    bufferDecrypted[bufferDecrypted.size - 1] == 0.toByte()
-                ) {
-                    1
-                } else {
-                    0
-                }
-
-                file.fileName = String(bufferDecrypted, 0, filenameLength, Charsets.UTF_8)
-                    .replace('\\', File.separatorChar)
             }
         } catch (e: Exception) {
             logger.error("Failed to decrypt filenames: $e")
@@ -0,0 +1,124 @@
+package in.dragonbra.javasteam.util;
+
+/**
+ * A pool of byte arrays in power of two size classes, so large short-lived buffers like depot chunks can be reused
+ * instead of being allocated for every use.
+ * <p>
+ * {@link #rent(int)} returns an array that is at least as long as requested, callers must keep track of how much of
+ * it they use. Arrays are handed back once with {@link #release(byte[])}, and must not be used after that. Arrays
+ * that are never released are simply garbage collected.
+ * <p>
+ * Instances are thread safe.
+ */
+public final class ByteArrayPool {
+
+    private static final int MIN_SIZE_CLASS = 12;
+
+    private static final ByteArrayPool SHARED = new ByteArrayPool(1 << 24, 32, 1 << 25);
+
+    private final Bucket[] buckets;
+
+    /**
+     * @param maxArrayLength     the longest array that is pooled, longer arrays are allocated on every rent.
+     * @param maxArraysPerBucket the most arrays kept per size class.
+     * @param maxBytesPerBucket  the most bytes kept per size class, this limits the number of large arrays kept.
+     */
+    public ByteArrayPool(int maxArrayLength, int maxArraysPerBucket, int maxBytesPerBucket) {
+        if (maxArrayLength < 1 || maxArraysPerBucket < 1 || maxBytesPerBucket < 1) {
+            throw new IllegalArgumentException("pool limits must be positive");
+        }
+
+        int bucketCount = Math.max(0, sizeClass(maxArrayLength) - MIN_SIZE_CLASS + 1);
+        buckets = new Bucket[bucketCount];
+
+        for (int i = 0; i < bucketCount; i++) {
+            int arrayLength = 1 << (i + MIN_SIZE_CLASS);
+            int capacity = Math.max(1, Math.min(maxArraysPerBucket, maxBytesPerBucket / arrayLength));
+            buckets[i] = new Bucket(arrayLength, capacity);
+        }
+    }
+
+    /**
+     * @return the pool shared by the library. It keeps arrays up to 16 MiB, and at most 32 MiB per size class.
+     */
+    public static ByteArrayPool getShared() {
+        return SHARED;
+    }
+
+    /**
+     * Returns an array that is at least {@code minimumLength} bytes long. Its contents are undefined.
+     *
+     * @param minimumLength the length needed.
+     * @return a pooled array, or a new one.
+     */
+    public byte[] rent(int minimumLength) {
+        if (minimumLength < 0) {
+            throw new IllegalArgumentException("minimumLength is negative");
+        }
+
+        Bucket bucket = bucketFor(minimumLength);
+
+        if (bucket == null) {
+            return new byte[minimumLength];
+        }
+
+        byte[] array = bucket.poll();
+        return array != null ? array : new byte[bucket.arrayLength];
+    }
+
+    /**
+     * Hands an array back to the pool. Arrays that weren't rented from a pool of this size are ignored.
+     *
+     * @param array the array, may be null.
+     */
+    public void release(byte[] array) {
+        if (array == null) {
+            return;
+        }
+
+        Bucket bucket = bucketFor(array.length);
+
+        if (bucket != null && bucket.arrayLength == array.length) {
+            bucket.offer(array);
+        }
+    }
+
+    private Bucket bucketFor(int length) {
+        int index = Math.max(sizeClass(length), MIN_SIZE_CLASS) - MIN_SIZE_CLASS;
+        return index < buckets.length ? buckets[index] : null;
+    }
+
+    private static int sizeClass(int length) {
+        return length <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(length - 1);
+    }
+
+    private static final class Bucket {
+
+        private final int arrayLength;
+
+        private final byte[][] arrays;
+
+        private int count;
+
+        private Bucket(int arrayLength, int capacity) {
+            this.arrayLength = arrayLength;
+            this.arrays = new byte[capacity][];
+        }
+
+        private synchronized byte[] poll() {
+            if (count == 0) {
+                return null;
+            }
+
+            byte[] array = arrays[--count];
+            arrays[count] = null;
+            return array;
+        }
+
+        private synchronized void offer(byte[] array) {
+            if (count < arrays.length) {
+                arrays[count++] = array;
+            }
+        }
+    }
+}
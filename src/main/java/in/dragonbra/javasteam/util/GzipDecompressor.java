@@ -0,0 +1,154 @@
+package in.dragonbra.javasteam.util;
+
+import java.io.EOFException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Decompresses gzip data straight into a caller supplied array. Unlike {@link java.util.zip.GZIPInputStream} the
+ * {@link Inflater} is reused between calls and no intermediate buffers are allocated.
+ * <p>
+ * Instances are not thread safe.
+ */
+public class GzipDecompressor {
+
+    private static final int GZIP_MAGIC = 0x8B1F;
+
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+
+    private final Inflater inflater = new Inflater(true);
+
+    private final CRC32 crc = new CRC32();
+
+    private final byte[] probe = new byte[1];
+
+    /**
+     * Decompresses a single gzip member.
+     *
+     * @param input  the compressed data, it's consumed from its position.
+     * @param output the array the decompressed data is written to, it must be large enough to hold all of it.
+     * @return the number of decompressed bytes.
+     * @throws ZipException if the data is not valid gzip or doesn't fit in the output.
+     * @throws EOFException if the data is truncated.
+     */
+    public int decompress(ByteBuffer input, byte[] output) throws ZipException, EOFException {
+        ByteBuffer in = input.slice().order(ByteOrder.LITTLE_ENDIAN);
+
+        readHeader(in);
+
+        int length = 0;
+
+        try {
+            inflater.setInput(in);
+
+            while (!inflater.finished()) {
+                int count;
+
+                if (length < output.length) {
+                    count = inflater.inflate(output, length, output.length - length);
+                } else {
+                    // the output is full, but the end of the stream may not have been seen yet
+                    count = inflater.inflate(probe);
+
+                    if (count > 0) {
+                        throw new ZipException("Decompressed data is larger than the output buffer");
+                    }
+                }
+
+                length += count;
+
+                if (count == 0 && !inflater.finished()) {
+                    if (inflater.needsInput()) {
+                        throw new EOFException("Unexpected end of gzip data");
+                    }
+
+                    if (inflater.needsDictionary()) {
+                        throw new ZipException("Gzip data requires a dictionary");
+                    }
+                }
+            }
+        } catch (DataFormatException e) {
+            ZipException zipException = new ZipException("Invalid gzip data");
+            zipException.initCause(e);
+            throw zipException;
+        } finally {
+            inflater.reset();
+        }
+
+        readTrailer(in, output, length);
+
+        input.position(input.position() + in.position());
+
+        return length;
+    }
+
+    private static void readHeader(ByteBuffer in) throws ZipException, EOFException {
+        require(in, 10);
+
+        if ((in.getShort() & 0xFFFF) != GZIP_MAGIC) {
+            throw new ZipException("Not in gzip format");
+        }
+
+        if (in.get() != 8) {
+            throw new ZipException("Unsupported compression method");
+        }
+
+        int flags = in.get() & 0xFF;
+
+        // modification time, extra flags and os
+        in.position(in.position() + 6);
+
+        if ((flags & FEXTRA) == FEXTRA) {
+            require(in, 2);
+            int extraLength = in.getShort() & 0xFFFF;
+            require(in, extraLength);
+            in.position(in.position() + extraLength);
+        }
+
+        if ((flags & FNAME) == FNAME) {
+            skipString(in);
+        }
+
+        if ((flags & FCOMMENT) == FCOMMENT) {
+            skipString(in);
+        }
+
+        if ((flags & FHCRC) == FHCRC) {
+            require(in, 2);
+            in.position(in.position() + 2);
+        }
+    }
+
+    private void readTrailer(ByteBuffer in, byte[] output, int length) throws ZipException, EOFException {
+        require(in, 8);
+
+        long expectedCrc = in.getInt() & 0xFFFFFFFFL;
+        long expectedSize = in.getInt() & 0xFFFFFFFFL;
+
+        crc.reset();
+        crc.update(output, 0, length);
+
+        if (crc.getValue() != expectedCrc || expectedSize != (length & 0xFFFFFFFFL)) {
+            throw new ZipException("Corrupt gzip trailer");
+        }
+    }
+
+    private static void skipString(ByteBuffer in) throws EOFException {
+        do {
+            require(in, 1);
+        } while (in.get() != 0);
+    }
+
+    private static void require(ByteBuffer in, int length) throws EOFException {
+        if (in.remaining() < length) {
+            throw new EOFException("Unexpected end of gzip data");
+        }
+    }
+}
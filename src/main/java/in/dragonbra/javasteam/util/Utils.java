@@ -11,7 +11,6 @@ import java.util.Map;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.zip.CRC32;
 import java.util.zip.Checksum;
 
@@ -23,6 +22,11 @@ public class Utils {
 
     private static final String JAVA_RUNTIME = getSystemProperty("java.runtime.name");
 
+    private static final int ADLER_MOD = 65521;
+
+    // The most bytes that can be summed before b overflows a signed int
+    private static final int ADLER_BLOCK = 3800;
+
     private static final Map<Boolean, EOSType> WIN_OS_MAP = new LinkedHashMap<>();
 
     private static final Map<Boolean, EOSType> OSX_OS_MAP = new LinkedHashMap<>();
@@ -189,8 +193,20 @@ public class Utils {
      * @return long value of the CRC32
      */
     public static long crc32(byte[] bytes) {
+        return crc32(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Convenience method for calculating the CRC2 checksum of a part of a byte array.
+     *
+     * @param bytes  the byte array
+     * @param offset the start of the part
+     * @param length the length of the part
+     * @return long value of the CRC32
+     */
+    public static long crc32(byte[] bytes, int offset, int length) {
         Checksum checksum = new CRC32();
-        checksum.update(bytes, 0, bytes.length);
+        checksum.update(bytes, offset, length);
         return checksum.getValue();
     }
 
@@ -198,11 +214,29 @@ public class Utils {
      * Performs an Adler32 on the given input
      */
     public static int adlerHash(byte[] input) {
+        return adlerHash(input, 0, input.length);
+    }
+
+    /**
+     * Performs an Adler32 on a part of the given input
+     */
+    public static int adlerHash(byte[] input, int offset, int length) {
         int a = 0, b = 0;
-        for (byte value : input) {
-            // Use bitwise AND with 0xFF to treat byte as unsigned
-            a = (a + (value & 0xFF)) % 65521;
-            b = (b + a) % 65521;
+        int end = offset + length;
+        int i = offset;
+
+        // The sums are only reduced once per block, a block is short enough that b can't overflow
+        while (i < end) {
+            int blockEnd = Math.min(end, i + ADLER_BLOCK);
+
+            for (; i < blockEnd; i++) {
+                // Use bitwise AND with 0xFF to treat byte as unsigned
+                a += input[i] & 0xFF;
+                b += a;
+            }
+
+            a %= ADLER_MOD;
+            b %= ADLER_MOD;
         }
 
         return a | (b << 16);
@@ -220,24 +254,36 @@ public class Utils {
     @SuppressWarnings("resource")
     public static List<ChunkData> validateSteam3FileChecksums(RandomAccessFile fs, ChunkData[] chunkData) throws IOException {
         List<ChunkData> neededChunks = new ArrayList<>();
-        int read;
-
-        for (ChunkData data : chunkData) {
-            byte[] chunk = new byte[data.getUncompressedLength()];
-            fs.getChannel().position(data.getOffset());
-            read = fs.read(chunk, 0, data.getUncompressedLength());
-
-            byte[] tempChunk;
-            if (read > 0 && read < data.getUncompressedLength()) {
-                tempChunk = Arrays.copyOf(chunk, read);
-            } else {
-                tempChunk = chunk;
-            }
+        ByteArrayPool pool = ByteArrayPool.getShared();
+        byte[] chunk = null;
+
+        try {
+            for (ChunkData data : chunkData) {
+                int length = data.getUncompressedLength();
 
-            int adler = adlerHash(tempChunk);
-            if (adler != data.getChecksum()) {
-                neededChunks.add(data);
+                if (chunk == null || chunk.length < length) {
+                    pool.release(chunk);
+                    chunk = pool.rent(length);
+                }
+
+                fs.getChannel().position(data.getOffset());
+
+                int read = 0;
+                while (read < length) {
+                    int count = fs.read(chunk, read, length - read);
+                    if (count < 0) {
+                        break;
+                    }
+                    read += count;
+                }
+
+                int adler = adlerHash(chunk, 0, read);
+                if (adler != data.getChecksum()) {
+                    neededChunks.add(data);
+                }
             }
+        } finally {
+            pool.release(chunk);
         }
 
         return neededChunks;
@@ -6,12 +6,13 @@ import `in`.dragonbra.javasteam.util.stream.BinaryReader
 import `in`.dragonbra.javasteam.util.stream.BinaryWriter
 import `in`.dragonbra.javasteam.util.stream.MemoryStream
 import `in`.dragonbra.javasteam.util.stream.SeekOrigin
+import org.tukaani.xz.ArrayCache
+import org.tukaani.xz.BasicArrayCache
 import org.tukaani.xz.LZMA2Options
 import org.tukaani.xz.LZMAInputStream
 import org.tukaani.xz.LZMAOutputStream
 import java.io.ByteArrayOutputStream
 import java.util.zip.DataFormatException
-import kotlin.math.max
 
 @Suppress("SpellCheckingInspection", "unused")
 object VZipUtil {
@@ -23,7 +24,18 @@ object VZipUtil {
 
     private const val VERSION = 'a'
 
-    fun decompress(ms: MemoryStream, destination: ByteArray, verifyChecksum: Boolean = true): Int {
+    /**
+     * Decompresses a VZip stream into [destination].
+     * @param arrayCache Provides the LZMA dictionary. The default cache keeps dictionaries around between calls,
+     * since every depot chunk needs one.
+     * @return The number of bytes written to [destination].
+     */
+    fun decompress(
+        ms: MemoryStream,
+        destination: ByteArray,
+        verifyChecksum: Boolean = true,
+        arrayCache: ArrayCache = BasicArrayCache.getInstance(),
+    ): Int {
         BinaryReader(ms).use { reader ->
             if (reader.readShort() != VZIP_HEADER) {
                 throw IllegalArgumentException("Expecting VZipHeader at start of stream")
@@ -60,20 +72,20 @@ object VZipUtil {
             // jump back to the beginning of the compressed data
             ms.position = compressedBytesOffset
 
-            // If the value of dictionary size in properties is smaller than (1 << 12),
-            // the LZMA decoder must set the dictionary size variable to (1 << 12).
-            val windowBuffer = ByteArray(max(1 shl 12, dictionarySize))
+            // The decoder takes its dictionary from the cache, and returns it when closed.
+            // It also raises dictionary sizes smaller than (1 << 12) to that size.
             val bytesRead = LZMAInputStream(
                 ms,
                 sizeDecompressed.toLong(),
                 propertyBits,
                 dictionarySize,
-                windowBuffer
+                null,
+                arrayCache
             ).use { lzmaInput ->
                 lzmaInput.readNBytesCompat(destination, 0, sizeDecompressed)
             }
 
-            if (verifyChecksum && Utils.crc32(destination).toInt() != outputCrc) {
+            if (verifyChecksum && Utils.crc32(destination, 0, sizeDecompressed).toInt() != outputCrc) {
                 throw DataFormatException("CRC does not match decompressed data. VZip data may be corrupted.")
             }
 
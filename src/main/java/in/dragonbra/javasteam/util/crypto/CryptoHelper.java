@@ -7,7 +7,6 @@ import in.dragonbra.javasteam.util.log.LogManager;
 import in.dragonbra.javasteam.util.log.Logger;
 import in.dragonbra.javasteam.util.stream.BinaryWriter;
 import in.dragonbra.javasteam.util.stream.MemoryStream;
-import in.dragonbra.javasteam.util.stream.SeekOrigin;
 
 import javax.crypto.*;
 import javax.crypto.spec.IvParameterSpec;
@@ -15,7 +14,6 @@ import javax.crypto.spec.SecretKeySpec;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.security.*;
-import java.util.Arrays;
 import java.util.zip.CRC32;
 
 /**
@@ -145,32 +143,18 @@ public class CryptoHelper {
                 logger.debug("SymmetricDecrypt used with non 32 byte key!");
             }
 
-            Cipher cipher = Cipher.getInstance("AES/ECB/NoPadding", SEC_PROV);
+            Cipher cipher = SymmetricCiphers.ecb(SymmetricCiphers.Provider.DEFAULT);
 
-            // first 16 bytes of input is the ECB encrypted IV
-            iv.setValue(new byte[16]);
-            final byte[] cryptedIv = Arrays.copyOfRange(input, 0, 16);
-
-            // the rest is ciphertext
-            byte[] cipherText = new byte[input.length - cryptedIv.length];
-            cipherText = Arrays.copyOfRange(input, cryptedIv.length, cryptedIv.length + cipherText.length);
-
-            // decrypt the IV using ECB
+            // first 16 bytes of input is the ECB encrypted IV, decrypt it in place using ECB
             cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(key, "AES"));
-            iv.setValue(cipher.doFinal(cryptedIv));
+            iv.setValue(cipher.doFinal(input, 0, 16));
 
-            cipher = Cipher.getInstance("AES/CBC/PKCS7Padding", SEC_PROV);
+            cipher = SymmetricCiphers.cbc(SymmetricCiphers.Provider.DEFAULT);
 
-            // decrypt the remaining ciphertext in cbc with the decrypted IV
+            // the rest is ciphertext, decrypt it in cbc with the decrypted IV without copying it out first
             cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(key, "AES"), new IvParameterSpec(iv.getValue()));
-            return cipher.doFinal(cipherText);
-        } catch (final InvalidKeyException |
-                       InvalidAlgorithmParameterException |
-                       NoSuchAlgorithmException |
-                       NoSuchPaddingException |
-                       BadPaddingException |
-                       IllegalBlockSizeException |
-                       NoSuchProviderException e) {
+            return cipher.doFinal(input, 16, input.length - 16);
+        } catch (final GeneralSecurityException e) {
             throw new CryptoException("failed to symmetric decrypt", e);
         }
     }
@@ -204,13 +188,13 @@ public class CryptoHelper {
             }
 
             // encrypt iv using ECB and provided key
-            Cipher cipher = Cipher.getInstance("AES/ECB/NoPadding", SEC_PROV);
+            Cipher cipher = SymmetricCiphers.ecb(SymmetricCiphers.Provider.DEFAULT);
             cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"));
 
             final byte[] cryptedIv = cipher.doFinal(iv);
 
             // encrypt input plaintext with CBC using the generated (plaintext) IV and the provided key
-            cipher = Cipher.getInstance("AES/CBC/PKCS7Padding", SEC_PROV);
+            cipher = SymmetricCiphers.cbc(SymmetricCiphers.Provider.DEFAULT);
             cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"), new IvParameterSpec(iv));
 
             final byte[] cipherText = cipher.doFinal(input);
@@ -221,13 +205,7 @@ public class CryptoHelper {
             System.arraycopy(cipherText, 0, output, cryptedIv.length, cipherText.length);
 
             return output;
-        } catch (final InvalidKeyException |
-                       InvalidAlgorithmParameterException |
-                       NoSuchAlgorithmException |
-                       IllegalBlockSizeException |
-                       NoSuchPaddingException |
-                       NoSuchProviderException |
-                       BadPaddingException e) {
+        } catch (final GeneralSecurityException e) {
             throw new CryptoException("failed to symmetric encrypt", e);
         }
     }
@@ -280,29 +258,22 @@ public class CryptoHelper {
         // validate HMAC
         byte[] hmacBytes;
 
-        try (MemoryStream ms = new MemoryStream()) {
-            ms.write(iv.getValue(), iv.getValue().length - 3, 3);
-            ms.write(plaintextData, 0, plaintextData.length);
-            ms.seek(0, SeekOrigin.BEGIN);
+        try {
+            Mac mac = Mac.getInstance("HmacSHA1");
+            mac.init(new SecretKeySpec(hmacSecret, "HmacSHA1"));
+            mac.update(iv.getValue(), iv.getValue().length - 3, 3);
+            hmacBytes = mac.doFinal(plaintextData);
+        } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+            throw new CryptoException("NetFilterEncryption was unable to decrypt packet", e);
+        }
 
-            try {
-                Mac mac = Mac.getInstance("HmacSHA1");
-                mac.init(new SecretKeySpec(hmacSecret, "HmacSHA1"));
-                hmacBytes = mac.doFinal(ms.toByteArray());
-
-                for (int i = 0; i < iv.getValue().length - 3; i++) {
-                    if (hmacBytes[i] != iv.getValue()[i]) {
-                        throw new CryptoException("NetFilterEncryption was unable to decrypt packet: HMAC from server did not match computed HMAC.");
-                    }
-                }
-            } catch (NoSuchAlgorithmException | InvalidKeyException e) {
-                throw new CryptoException("NetFilterEncryption was unable to decrypt packet", e);
+        for (int i = 0; i < iv.getValue().length - 3; i++) {
+            if (hmacBytes[i] != iv.getValue()[i]) {
+                throw new CryptoException("NetFilterEncryption was unable to decrypt packet: HMAC from server did not match computed HMAC.");
             }
-
-            return plaintextData;
-        } catch (Exception e) {
-            throw new RuntimeException("MemoryStream closed");
         }
+
+        return plaintextData;
     }
 
     /**
@@ -0,0 +1,278 @@
+package in.dragonbra.javasteam.util.crypto;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+
+/**
+ * The symmetric encryption of a single session, like a connection to a CM server. It produces the same output as
+ * {@link CryptoHelper#symmetricEncryptWithIV} and {@link CryptoHelper#symmetricEncryptWithHMACIV}, but because the key
+ * doesn't change during the session, the {@link Cipher} and {@link Mac} instances are created and keyed only once
+ * instead of for every message. Data is encrypted and decrypted into caller supplied buffers.
+ * <p>
+ * Encryption and decryption use separate instances, so one thread can encrypt while another one decrypts.
+ */
+public class SessionCipher {
+
+    private static final int BLOCK_SIZE = 16;
+
+    private static final int HMAC_SIZE = 20;
+
+    private static final int IV_RANDOM_SIZE = 3;
+
+    private final SecretKeySpec key;
+
+    private final SecureRandom random = new SecureRandom();
+
+    private final Direction encryption;
+
+    private final Direction decryption;
+
+    /**
+     * @param sessionKey the AES key of the session.
+     * @param hmacSecret the HMAC-SHA1 secret used to generate and validate the IVs, or null for random IVs.
+     * @throws CryptoException if the ciphers can't be created.
+     */
+    public SessionCipher(byte[] sessionKey, byte[] hmacSecret) throws CryptoException {
+        this(sessionKey, hmacSecret, SymmetricCiphers.Provider.DEFAULT);
+    }
+
+    /**
+     * @param sessionKey the AES key of the session.
+     * @param hmacSecret the HMAC-SHA1 secret used to generate and validate the IVs, or null for random IVs.
+     * @param provider   the provider of the AES ciphers.
+     * @throws CryptoException if the ciphers can't be created.
+     */
+    public SessionCipher(byte[] sessionKey, byte[] hmacSecret, SymmetricCiphers.Provider provider)
+            throws CryptoException {
+        if (sessionKey == null) {
+            throw new IllegalArgumentException("sessionKey is null");
+        }
+
+        if (provider == null) {
+            throw new IllegalArgumentException("provider is null");
+        }
+
+        key = new SecretKeySpec(sessionKey, "AES");
+
+        try {
+            encryption = new Direction(Cipher.ENCRYPT_MODE, hmacSecret, provider);
+            decryption = new Direction(Cipher.DECRYPT_MODE, hmacSecret, provider);
+        } catch (GeneralSecurityException e) {
+            throw new CryptoException("failed to create session cipher", e);
+        }
+    }
+
+    /**
+     * @return whether the IVs are HMACs of the plaintext.
+     */
+    public boolean isHmac() {
+        return encryption.mac != null;
+    }
+
+    /**
+     * @param length the length of the plaintext.
+     * @return the length of the encrypted message, the encrypted IV followed by the padded ciphertext.
+     */
+    public static int getEncryptedSize(int length) {
+        return BLOCK_SIZE + (length / BLOCK_SIZE + 1) * BLOCK_SIZE;
+    }
+
+    /**
+     * @param length the length of the encrypted message.
+     * @return an upper bound for the length of the plaintext.
+     */
+    public static int getMaxDecryptedSize(int length) {
+        return Math.max(0, length - BLOCK_SIZE);
+    }
+
+    /**
+     * Encrypts a message into a caller supplied buffer.
+     *
+     * @param input        the plaintext.
+     * @param offset       the offset of the plaintext in the input.
+     * @param length       the length of the plaintext.
+     * @param output       the buffer to write the message to.
+     * @param outputOffset the offset in the output to write to, there must be room for
+     *                     {@link #getEncryptedSize(int)} bytes.
+     * @return the number of bytes written.
+     * @throws CryptoException if the encryption fails or the output is too small.
+     */
+    public int encrypt(byte[] input, int offset, int length, byte[] output, int outputOffset) throws CryptoException {
+        synchronized (encryption) {
+            byte[] iv = encryption.iv;
+
+            if (encryption.mac != null) {
+                // IV is HMAC-SHA1(Random(3) + Plaintext) + Random(3). (Same random values for both)
+                random.nextBytes(encryption.random);
+
+                encryption.mac.update(encryption.random, 0, IV_RANDOM_SIZE);
+                encryption.mac.update(input, offset, length);
+                encryption.doFinalMac();
+
+                System.arraycopy(encryption.hash, 0, iv, 0, BLOCK_SIZE - IV_RANDOM_SIZE);
+                System.arraycopy(encryption.random, 0, iv, BLOCK_SIZE - IV_RANDOM_SIZE, IV_RANDOM_SIZE);
+            } else {
+                random.nextBytes(iv);
+            }
+
+            try {
+                // the IV is encrypted with ECB, the plaintext with CBC using the plain IV
+                int written = encryption.ecb.doFinal(iv, 0, BLOCK_SIZE, output, outputOffset);
+
+                encryption.cbc.init(Cipher.ENCRYPT_MODE, key, new IvParameterSpec(iv));
+                written += encryption.cbc.doFinal(input, offset, length, output, outputOffset + written);
+
+                return written;
+            } catch (GeneralSecurityException e) {
+                throw new CryptoException("failed to symmetric encrypt", e);
+            }
+        }
+    }
+
+    /**
+     * Encrypts a message.
+     *
+     * @param input the plaintext.
+     * @return the encrypted message.
+     * @throws CryptoException if the encryption fails.
+     */
+    public byte[] encrypt(byte[] input) throws CryptoException {
+        byte[] output = new byte[getEncryptedSize(input.length)];
+        encrypt(input, 0, input.length, output, 0);
+        return output;
+    }
+
+    /**
+     * Decrypts a message into a caller supplied buffer, and validates the HMAC of the IV if the session uses them.
+     *
+     * @param input        the encrypted message.
+     * @param offset       the offset of the message in the input.
+     * @param length       the length of the message.
+     * @param output       the buffer to write the plaintext to.
+     * @param outputOffset the offset in the output to write to, there must be room for
+     *                     {@link #getMaxDecryptedSize(int)} bytes.
+     * @return the length of the plaintext.
+     * @throws CryptoException if the decryption fails, the HMAC doesn't match or the output is too small.
+     */
+    public int decrypt(byte[] input, int offset, int length, byte[] output, int outputOffset) throws CryptoException {
+        checkEncryptedSize(length);
+
+        synchronized (decryption) {
+            int plaintextLength;
+
+            try {
+                initDecryption(input, offset);
+                plaintextLength = decryption.cbc.doFinal(input, offset + BLOCK_SIZE, length - BLOCK_SIZE, output, outputOffset);
+            } catch (GeneralSecurityException e) {
+                throw new CryptoException("failed to symmetric decrypt", e);
+            }
+
+            validateHmac(output, outputOffset, plaintextLength);
+
+            return plaintextLength;
+        }
+    }
+
+    /**
+     * Decrypts a message, and validates the HMAC of the IV if the session uses them.
+     *
+     * @param input the encrypted message.
+     * @return the plaintext.
+     * @throws CryptoException if the decryption fails or the HMAC doesn't match.
+     */
+    public byte[] decrypt(byte[] input) throws CryptoException {
+        checkEncryptedSize(input.length);
+
+        synchronized (decryption) {
+            byte[] output;
+
+            try {
+                initDecryption(input, 0);
+                output = decryption.cbc.doFinal(input, BLOCK_SIZE, input.length - BLOCK_SIZE);
+            } catch (GeneralSecurityException e) {
+                throw new CryptoException("failed to symmetric decrypt", e);
+            }
+
+            validateHmac(output, 0, output.length);
+
+            return output;
+        }
+    }
+
+    private static void checkEncryptedSize(int length) throws CryptoException {
+        if (length < 2 * BLOCK_SIZE) {
+            throw new CryptoException("encrypted message is too short");
+        }
+    }
+
+    private void initDecryption(byte[] input, int offset) throws GeneralSecurityException {
+        // first 16 bytes of input is the ECB encrypted IV, the rest is CBC ciphertext
+        decryption.ecb.doFinal(input, offset, BLOCK_SIZE, decryption.iv, 0);
+        decryption.cbc.init(Cipher.DECRYPT_MODE, key, new IvParameterSpec(decryption.iv));
+    }
+
+    private void validateHmac(byte[] plaintext, int offset, int length) throws CryptoException {
+        if (decryption.mac == null) {
+            return;
+        }
+
+        byte[] iv = decryption.iv;
+
+        decryption.mac.update(iv, BLOCK_SIZE - IV_RANDOM_SIZE, IV_RANDOM_SIZE);
+        decryption.mac.update(plaintext, offset, length);
+        decryption.doFinalMac();
+
+        for (int i = 0; i < BLOCK_SIZE - IV_RANDOM_SIZE; i++) {
+            if (decryption.hash[i] != iv[i]) {
+                throw new CryptoException("NetFilterEncryption was unable to decrypt packet: HMAC from server did not match computed HMAC.");
+            }
+        }
+    }
+
+    /**
+     * The keyed instances and scratch buffers of one direction, guarded by locking on the instance.
+     */
+    private final class Direction {
+
+        private final Cipher ecb;
+
+        private final Cipher cbc;
+
+        private final Mac mac;
+
+        private final byte[] iv = new byte[BLOCK_SIZE];
+
+        private final byte[] random = new byte[IV_RANDOM_SIZE];
+
+        private final byte[] hash = new byte[HMAC_SIZE];
+
+        private Direction(int mode, byte[] hmacSecret, SymmetricCiphers.Provider provider)
+                throws GeneralSecurityException {
+            ecb = SymmetricCiphers.createEcb(provider);
+            ecb.init(mode, key);
+
+            // the CBC cipher is re-initialized with the IV of every message, but the instance is kept
+            cbc = SymmetricCiphers.createCbc(provider);
+
+            if (hmacSecret != null) {
+                mac = Mac.getInstance("HmacSHA1");
+                mac.init(new SecretKeySpec(hmacSecret, "HmacSHA1"));
+            } else {
+                mac = null;
+            }
+        }
+
+        private void doFinalMac() throws CryptoException {
+            try {
+                mac.doFinal(hash, 0);
+            } catch (ShortBufferException e) {
+                throw new CryptoException(e);
+            }
+        }
+    }
+}
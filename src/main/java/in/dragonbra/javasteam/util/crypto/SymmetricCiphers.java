@@ -0,0 +1,124 @@
+package in.dragonbra.javasteam.util.crypto;
+
+import javax.crypto.Cipher;
+import java.security.GeneralSecurityException;
+
+/**
+ * Creates the AES ciphers used for depot chunks, manifest file names and the CM connection encryption.
+ * <p>
+ * The {@link Provider} decides which JCA provider implements them, it's configured with
+ * {@link in.dragonbra.javasteam.steam.steamclient.configuration.SteamConfiguration#getCipherProvider()}.
+ * {@link Provider#DEFAULT} uses the platform's own provider, which on desktop JVMs is SunJCE with AES-NI intrinsics
+ * and on Android is Conscrypt. Both are much faster than the pure Java AES of
+ * {@link Provider#SECURITY_PROVIDER BouncyCastle}. The output is the same, since PKCS#5 padding is PKCS#7 padding for
+ * 16 byte blocks.
+ * <p>
+ * Creating a {@link Cipher} does a provider lookup, so {@link #ecb(Provider)} and {@link #cbc(Provider)} return
+ * instances that are cached per thread and provider. Callers must re-initialize them before use and must not hold on
+ * to them.
+ */
+public final class SymmetricCiphers {
+
+    /**
+     * The JCA provider that implements AES.
+     */
+    public enum Provider {
+        /**
+         * The platform's default provider, using {@code AES/CBC/PKCS5Padding}.
+         */
+        DEFAULT("AES/ECB/NoPadding", "AES/CBC/PKCS5Padding"),
+
+        /**
+         * The security provider in {@link CryptoHelper#SEC_PROV}, BouncyCastle or SpongyCastle, using
+         * {@code AES/CBC/PKCS7Padding}.
+         */
+        SECURITY_PROVIDER("AES/ECB/NoPadding", "AES/CBC/PKCS7Padding");
+
+        private final String ecbTransformation;
+
+        private final String cbcTransformation;
+
+        Provider(String ecbTransformation, String cbcTransformation) {
+            this.ecbTransformation = ecbTransformation;
+            this.cbcTransformation = cbcTransformation;
+        }
+
+        private Cipher create(String transformation) throws GeneralSecurityException {
+            if (this == SECURITY_PROVIDER) {
+                return Cipher.getInstance(transformation, CryptoHelper.SEC_PROV);
+            }
+
+            return Cipher.getInstance(transformation);
+        }
+    }
+
+    private static final ThreadLocal<CachedCiphers[]> CACHED_CIPHERS =
+            ThreadLocal.withInitial(() -> new CachedCiphers[Provider.values().length]);
+
+    private SymmetricCiphers() {
+    }
+
+    /**
+     * @param provider the provider to create the cipher with.
+     * @return a new {@code AES/ECB/NoPadding} cipher.
+     * @throws GeneralSecurityException if the provider doesn't support it.
+     */
+    public static Cipher createEcb(Provider provider) throws GeneralSecurityException {
+        return provider.create(provider.ecbTransformation);
+    }
+
+    /**
+     * @param provider the provider to create the cipher with.
+     * @return a new AES/CBC cipher with PKCS#7 compatible padding.
+     * @throws GeneralSecurityException if the provider doesn't support it.
+     */
+    public static Cipher createCbc(Provider provider) throws GeneralSecurityException {
+        return provider.create(provider.cbcTransformation);
+    }
+
+    /**
+     * @param provider the provider of the cipher.
+     * @return the {@code AES/ECB/NoPadding} cipher of the current thread.
+     * @throws GeneralSecurityException if the provider doesn't support it.
+     */
+    public static Cipher ecb(Provider provider) throws GeneralSecurityException {
+        return cachedCiphers(provider).ecb;
+    }
+
+    /**
+     * @param provider the provider of the cipher.
+     * @return the AES/CBC cipher with PKCS#7 compatible padding of the current thread.
+     * @throws GeneralSecurityException if the provider doesn't support it.
+     */
+    public static Cipher cbc(Provider provider) throws GeneralSecurityException {
+        return cachedCiphers(provider).cbc;
+    }
+
+    private static CachedCiphers cachedCiphers(Provider provider) throws GeneralSecurityException {
+        if (provider == null) {
+            throw new IllegalArgumentException("provider is null");
+        }
+
+        CachedCiphers[] ciphers = CACHED_CIPHERS.get();
+        CachedCiphers cached = ciphers[provider.ordinal()];
+
+        if (cached == null) {
+            cached = new CachedCiphers(provider);
+            ciphers[provider.ordinal()] = cached;
+        }
+
+        return cached;
+    }
+
+    private static final class CachedCiphers {
+
+        private final Cipher ecb;
+
+        private final Cipher cbc;
+
+        private CachedCiphers(Provider provider) throws GeneralSecurityException {
+            this.ecb = provider.create(provider.ecbTransformation);
+            this.cbc = provider.create(provider.cbcTransformation);
+        }
+    }
+}
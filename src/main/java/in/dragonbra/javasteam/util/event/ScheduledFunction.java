@@ -1,9 +1,8 @@
 package in.dragonbra.javasteam.util.event;
 
-import java.util.Timer;
-import java.util.TimerTask;
-
 /**
+ * Runs a function periodically on a {@link TaskScheduler}.
+ *
  * @author lngtr
  * @since 2018-02-20
  */
@@ -13,35 +12,43 @@ public class ScheduledFunction {
 
     private final Runnable func;
 
-    private Timer timer;
+    private final TaskScheduler scheduler;
 
-    private boolean bStarted = false;
+    private TaskScheduler.Handle handle;
 
     public ScheduledFunction(Runnable func, long delay) {
+        this(func, delay, TaskScheduler.getDefault());
+    }
+
+    /**
+     * @param func      the function to run periodically.
+     * @param delay     the period in milliseconds.
+     * @param scheduler the scheduler to run the function on.
+     */
+    public ScheduledFunction(Runnable func, long delay, TaskScheduler scheduler) {
+        if (scheduler == null) {
+            throw new IllegalArgumentException("scheduler is null");
+        }
+
         this.delay = delay;
         this.func = func;
+        this.scheduler = scheduler;
     }
 
-    public void start() {
-        if (!bStarted) {
-            timer = new Timer();
-            timer.scheduleAtFixedRate(new TimerTask() {
-                @Override
-                public void run() {
-                    if (func != null) {
-                        func.run();
-                    }
+    public synchronized void start() {
+        if (handle == null) {
+            handle = scheduler.scheduleAtFixedRate(() -> {
+                if (func != null) {
+                    func.run();
                 }
             }, 0, delay);
-            bStarted = true;
         }
     }
 
-    public void stop() {
-        if (bStarted) {
-            timer.cancel();
-            timer = null;
-            bStarted = false;
+    public synchronized void stop() {
+        if (handle != null) {
+            handle.cancel();
+            handle = null;
         }
     }
 
@@ -0,0 +1,278 @@
+package in.dragonbra.javasteam.util.event;
+
+import in.dragonbra.javasteam.util.log.LogManager;
+import in.dragonbra.javasteam.util.log.Logger;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+
+/**
+ * Runs delayed and periodic tasks on a small, fixed set of daemon threads.
+ * Every task gets a {@link Handle} that can cancel it. The scheduler also keeps track of how many tasks are scheduled
+ * and how late tasks start compared to when they were due (timer lag), which shows drift when the threads are
+ * overloaded.
+ */
+public class TaskScheduler {
+
+    private static final Logger logger = LogManager.getLogger(TaskScheduler.class);
+
+    private static volatile TaskScheduler defaultScheduler;
+
+    private final ScheduledThreadPoolExecutor executor;
+
+    private final AtomicInteger scheduledTasks = new AtomicInteger();
+
+    private final AtomicLong executedTasks = new AtomicLong();
+
+    private final AtomicLong totalLagNanos = new AtomicLong();
+
+    private final LongAccumulator maxLagNanos = new LongAccumulator(Math::max, 0L);
+
+    private volatile long lastLagNanos;
+
+    /**
+     * @param threads the number of threads that run the tasks.
+     * @param name    the prefix of the thread names.
+     */
+    public TaskScheduler(int threads, String name) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1");
+        }
+
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = new ScheduledThreadPoolExecutor(threads, runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * @return the process wide scheduler.
+     */
+    public static TaskScheduler getDefault() {
+        if (defaultScheduler == null) {
+            synchronized (TaskScheduler.class) {
+                if (defaultScheduler == null) {
+                    defaultScheduler = new TaskScheduler(2, "TaskScheduler");
+                }
+            }
+        }
+
+        return defaultScheduler;
+    }
+
+    /**
+     * Runs the task once after the given delay.
+     *
+     * @param task        the task.
+     * @param delayMillis the delay in milliseconds.
+     * @return a handle that can cancel the task.
+     */
+    public Handle schedule(Runnable task, long delayMillis) {
+        Handle handle = new Handle(task, 0L);
+        handle.submit(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(0L, delayMillis)));
+        return handle;
+    }
+
+    /**
+     * Runs the task periodically until it's cancelled. Runs which were missed because the scheduler was busy are not
+     * made up for, the period restarts from the late run instead.
+     *
+     * @param task               the task.
+     * @param initialDelayMillis the delay before the first run in milliseconds.
+     * @param periodMillis       the period in milliseconds.
+     * @return a handle that can cancel the task.
+     */
+    public Handle scheduleAtFixedRate(Runnable task, long initialDelayMillis, long periodMillis) {
+        if (periodMillis <= 0) {
+            throw new IllegalArgumentException("periodMillis must be positive");
+        }
+
+        Handle handle = new Handle(task, TimeUnit.MILLISECONDS.toNanos(periodMillis));
+        handle.submit(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(0L, initialDelayMillis)));
+        return handle;
+    }
+
+    /**
+     * Returns a future that completes after the given delay. Cancelling the future releases the scheduled task.
+     *
+     * @param delayMillis the delay in milliseconds.
+     * @return the future.
+     */
+    public CompletableFuture<Void> delay(long delayMillis) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        Handle handle = schedule(() -> future.complete(null), delayMillis);
+        future.whenComplete((result, throwable) -> {
+            if (future.isCancelled()) {
+                handle.cancel();
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Stops the threads of this scheduler. Tasks which haven't run yet are dropped.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * @return the number of tasks that are scheduled and haven't finished or been cancelled.
+     */
+    public int getScheduledTaskCount() {
+        return scheduledTasks.get();
+    }
+
+    /**
+     * @return the number of task runs so far.
+     */
+    public long getExecutedTaskCount() {
+        return executedTasks.get();
+    }
+
+    /**
+     * @return how late the most recent task run started, in milliseconds.
+     */
+    public double getLastLagMillis() {
+        return lastLagNanos / 1_000_000.0;
+    }
+
+    /**
+     * @return the average of how late task runs started, in milliseconds.
+     */
+    public double getAverageLagMillis() {
+        long executed = executedTasks.get();
+        return executed == 0 ? 0.0 : totalLagNanos.get() / 1_000_000.0 / executed;
+    }
+
+    /**
+     * @return the worst lag of a task run, in milliseconds.
+     */
+    public double getMaxLagMillis() {
+        return maxLagNanos.get() / 1_000_000.0;
+    }
+
+    /**
+     * Resets the lag metrics and the executed task count.
+     */
+    public void resetMetrics() {
+        executedTasks.set(0L);
+        totalLagNanos.set(0L);
+        maxLagNanos.reset();
+        lastLagNanos = 0L;
+    }
+
+    private void recordLag(long lagNanos) {
+        lagNanos = Math.max(0L, lagNanos);
+        executedTasks.incrementAndGet();
+        totalLagNanos.addAndGet(lagNanos);
+        maxLagNanos.accumulate(lagNanos);
+        lastLagNanos = lagNanos;
+    }
+
+    /**
+     * A task scheduled on a {@link TaskScheduler}.
+     */
+    public final class Handle {
+
+        private final Runnable task;
+
+        private final long periodNanos;
+
+        private final AtomicBoolean finished = new AtomicBoolean(false);
+
+        private volatile boolean cancelled = false;
+
+        private volatile ScheduledFuture<?> future;
+
+        private long dueNanos;
+
+        private Handle(Runnable task, long periodNanos) {
+            this.task = task;
+            this.periodNanos = periodNanos;
+            scheduledTasks.incrementAndGet();
+        }
+
+        private void submit(long dueNanos) {
+            this.dueNanos = dueNanos;
+
+            try {
+                future = executor.schedule(this::run, dueNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException e) {
+                logger.debug("Scheduler is shut down, dropping task", e);
+                finish();
+                return;
+            }
+
+            // cancel() may have raced with a periodic reschedule
+            if (cancelled) {
+                future.cancel(false);
+            }
+        }
+
+        private void run() {
+            if (cancelled) {
+                return;
+            }
+
+            long now = System.nanoTime();
+            recordLag(now - dueNanos);
+
+            try {
+                task.run();
+            } catch (Exception e) {
+                logger.error("Unhandled exception in scheduled task", e);
+            }
+
+            if (periodNanos == 0L) {
+                finish();
+            } else if (!cancelled) {
+                submit(Math.max(dueNanos + periodNanos, System.nanoTime()));
+            }
+        }
+
+        private void finish() {
+            if (finished.compareAndSet(false, true)) {
+                scheduledTasks.decrementAndGet();
+            }
+        }
+
+        /**
+         * Cancels the task. A run that is already in progress is allowed to finish.
+         */
+        public void cancel() {
+            cancelled = true;
+
+            ScheduledFuture<?> f = future;
+            if (f != null) {
+                f.cancel(false);
+            }
+
+            finish();
+        }
+
+        /**
+         * @return whether the task was cancelled.
+         */
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * @return whether the task won't run anymore, because it was cancelled or it was a one-shot task that ran.
+         */
+        public boolean isDone() {
+            return finished.get();
+        }
+    }
+}
@@ -38,13 +38,33 @@ public class BinaryReader extends FilterInputStream {
 
         byte[] bytes = new byte[len];
 
-        for (int i = 0; i < bytes.length; i++) {
-            bytes[i] = readByte();
+        int read = 0;
+        while (read < len) {
+            int count = in.read(bytes, read, len - read);
+            if (count < 0) {
+                throw new EOFException();
+            }
+            read += count;
         }
 
+        position += len;
         return bytes;
     }
 
+    /**
+     * Reads a little endian int straight from an array, without wrapping it in a stream.
+     *
+     * @param data   the array.
+     * @param offset the offset of the int in the array.
+     * @return the int.
+     */
+    public static int getInt(byte[] data, int offset) {
+        return (data[offset] & 0xFF) |
+                ((data[offset + 1] & 0xFF) << 8) |
+                ((data[offset + 2] & 0xFF) << 16) |
+                ((data[offset + 3] & 0xFF) << 24);
+    }
+
     public byte readByte() throws IOException {
         int ch = in.read();
         if (ch < 0) {
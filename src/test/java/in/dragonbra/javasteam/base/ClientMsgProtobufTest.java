@@ -0,0 +1,140 @@
+package in.dragonbra.javasteam.base;
+
+import com.google.protobuf.ByteString;
+import in.dragonbra.javasteam.enums.EMsg;
+import in.dragonbra.javasteam.generated.MsgHdrProtoBuf;
+import in.dragonbra.javasteam.protobufs.steamclient.SteammessagesBase.CMsgMulti;
+import in.dragonbra.javasteam.steam.CMClient;
+import in.dragonbra.javasteam.types.JobID;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+public class ClientMsgProtobufTest {
+
+    private static byte[] createMessage() {
+        ClientMsgProtobuf<CMsgMulti.Builder> msg = new ClientMsgProtobuf<>(CMsgMulti.class, EMsg.Multi);
+        msg.setSourceJobID(new JobID(123));
+        msg.setTargetJobID(new JobID(456));
+        msg.getBody().setSizeUnzipped(42);
+        msg.getBody().setMessageBody(ByteString.copyFrom(new byte[512]));
+        return msg.serialize();
+    }
+
+    @Test
+    public void packetHeaderIsParsedInPlace() {
+        byte[] data = createMessage();
+
+        PacketClientMsgProtobuf packetMsg = (PacketClientMsgProtobuf) CMClient.getPacketMsg(data);
+
+        Assertions.assertNotNull(packetMsg);
+        Assertions.assertEquals(EMsg.Multi, packetMsg.getMsgType());
+        Assertions.assertEquals(EMsg.Multi, packetMsg.getHeader().getMsg());
+        Assertions.assertEquals(123L, packetMsg.getSourceJobID());
+        Assertions.assertEquals(456L, packetMsg.getTargetJobID());
+        Assertions.assertEquals(8 + packetMsg.getHeader().getHeaderLength(), packetMsg.getBodyOffset());
+    }
+
+    @Test
+    public void bodyIsParsedFromPacket() {
+        byte[] data = createMessage();
+
+        IPacketMsg packetMsg = CMClient.getPacketMsg(data);
+        ClientMsgProtobuf<CMsgMulti.Builder> msg = new ClientMsgProtobuf<>(CMsgMulti.class, packetMsg);
+
+        Assertions.assertEquals(EMsg.Multi, msg.getMsgType());
+        Assertions.assertEquals(123L, msg.getSourceJobID().getValue());
+        Assertions.assertEquals(456L, msg.getTargetJobID().getValue());
+        Assertions.assertEquals(42, msg.getBody().getSizeUnzipped());
+        Assertions.assertEquals(512, msg.getBody().getMessageBody().size());
+        Assertions.assertArrayEquals(data, msg.serialize());
+    }
+
+    @Test
+    public void messagesDoNotShareThePacketHeader() {
+        IPacketMsg packetMsg = CMClient.getPacketMsg(createMessage());
+
+        ClientMsgProtobuf<CMsgMulti.Builder> first = new ClientMsgProtobuf<>(CMsgMulti.class, packetMsg);
+        first.setTargetJobID(new JobID(789));
+
+        ClientMsgProtobuf<CMsgMulti.Builder> second = new ClientMsgProtobuf<>(CMsgMulti.class, packetMsg);
+
+        Assertions.assertEquals(456L, packetMsg.getTargetJobID());
+        Assertions.assertEquals(456L, second.getTargetJobID().getValue());
+    }
+
+    @Test
+    public void deserializeFromData() {
+        byte[] data = createMessage();
+
+        ClientMsgProtobuf<CMsgMulti.Builder> msg = new ClientMsgProtobuf<>(CMsgMulti.class, EMsg.Invalid);
+        msg.deserialize(data);
+
+        Assertions.assertEquals(EMsg.Multi, msg.getMsgType());
+        Assertions.assertEquals(42, msg.getBody().getSizeUnzipped());
+        Assertions.assertArrayEquals(data, msg.serialize());
+    }
+
+    @Test
+    public void truncatedHeaderIsRejected() {
+        byte[] data = createMessage();
+        byte[] truncated = new byte[12];
+        System.arraycopy(data, 0, truncated, 0, truncated.length);
+
+        Assertions.assertNull(CMClient.getPacketMsg(truncated));
+    }
+
+    @Test
+    public void inPlaceParsingAllocatesLessThanStreams() throws IOException {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assumptions.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+        long threadId = Thread.currentThread().getId();
+        byte[] data = createMessage();
+        int iterations = 20_000;
+
+        // warm up both paths
+        for (int i = 0; i < iterations; i++) {
+            parseWithStreams(data);
+            new ClientMsgProtobuf<CMsgMulti.Builder>(CMsgMulti.class, CMClient.getPacketMsg(data));
+        }
+
+        long start = threadBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < iterations; i++) {
+            parseWithStreams(data);
+        }
+        long streamBytes = threadBean.getThreadAllocatedBytes(threadId) - start;
+
+        start = threadBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < iterations; i++) {
+            new ClientMsgProtobuf<CMsgMulti.Builder>(CMsgMulti.class, CMClient.getPacketMsg(data));
+        }
+        long sliceBytes = threadBean.getThreadAllocatedBytes(threadId) - start;
+
+        // the stream path allocates a CodedInputStream buffer and parses the header twice for every message
+        Assertions.assertTrue(sliceBytes < streamBytes,
+                "in place " + (sliceBytes / iterations) + " bytes, streams " + (streamBytes / iterations) + " bytes");
+    }
+
+    /**
+     * The stream based parsing the in place path replaced, kept to compare allocations.
+     */
+    private static void parseWithStreams(byte[] data) throws IOException {
+        MsgHdrProtoBuf packetHeader = new MsgHdrProtoBuf();
+        try (var stream = new ByteArrayInputStream(data)) {
+            packetHeader.deserialize(stream);
+        }
+
+        MsgHdrProtoBuf header = new MsgHdrProtoBuf();
+        try (var stream = new ByteArrayInputStream(data)) {
+            header.deserialize(stream);
+            CMsgMulti.newBuilder().mergeFrom(stream);
+        }
+    }
+}
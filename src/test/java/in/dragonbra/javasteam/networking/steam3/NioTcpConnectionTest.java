@@ -0,0 +1,145 @@
+package in.dragonbra.javasteam.networking.steam3;
+
+import in.dragonbra.javasteam.TestBase;
+import in.dragonbra.javasteam.util.stream.BinaryReader;
+import in.dragonbra.javasteam.util.stream.BinaryWriter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class NioTcpConnectionTest extends TestBase {
+
+    private static final int MAGIC = 0x31305456;
+
+    private ServerSocket server;
+
+    private SelectorLoopGroup group;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        group = new SelectorLoopGroup(1);
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        server.close();
+        group.shutdown();
+    }
+
+    @Test
+    public void receivesFramesSplitAcrossWrites() throws Exception {
+        BlockingQueue<byte[]> received = new LinkedBlockingQueue<>();
+        CountDownLatch connected = new CountDownLatch(1);
+
+        NioTcpConnection connection = new NioTcpConnection(group);
+        connection.getConnected().addEventHandler((sender, e) -> connected.countDown());
+        connection.getNetMsgReceived().addEventHandler((sender, e) -> received.add(e.getData()));
+        connection.connect(new InetSocketAddress(server.getInetAddress(), server.getLocalPort()));
+
+        try (Socket peer = server.accept()) {
+            assertTrue(connected.await(5, TimeUnit.SECONDS));
+
+            BinaryWriter writer = new BinaryWriter(peer.getOutputStream());
+
+            // two frames in one write, then a frame written byte by byte
+            writer.writeInt(3);
+            writer.writeInt(MAGIC);
+            writer.write(new byte[]{1, 2, 3});
+            writer.writeInt(1);
+            writer.writeInt(MAGIC);
+            writer.write(new byte[]{4});
+            writer.flush();
+
+            assertArrayEquals(new byte[]{1, 2, 3}, received.poll(5, TimeUnit.SECONDS));
+            assertArrayEquals(new byte[]{4}, received.poll(5, TimeUnit.SECONDS));
+
+            byte[] frame = new byte[]{2, 0, 0, 0, 0x56, 0x54, 0x30, 0x31, 5, 6};
+            for (byte b : frame) {
+                peer.getOutputStream().write(b);
+                peer.getOutputStream().flush();
+            }
+
+            assertArrayEquals(new byte[]{5, 6}, received.poll(5, TimeUnit.SECONDS));
+        } finally {
+            connection.disconnect(true);
+        }
+    }
+
+    @Test
+    public void sendsFramedData() throws Exception {
+        CountDownLatch connected = new CountDownLatch(1);
+
+        NioTcpConnection connection = new NioTcpConnection(group);
+        connection.getConnected().addEventHandler((sender, e) -> connected.countDown());
+        connection.connect(new InetSocketAddress(server.getInetAddress(), server.getLocalPort()));
+
+        try (Socket peer = server.accept()) {
+            assertTrue(connected.await(5, TimeUnit.SECONDS));
+
+            connection.send(new byte[]{7, 8, 9});
+
+            BinaryReader reader = new BinaryReader(peer.getInputStream());
+            assertEquals(3, reader.readInt());
+            assertEquals(MAGIC, reader.readInt());
+            assertArrayEquals(new byte[]{7, 8, 9}, reader.readBytes(3));
+        } finally {
+            connection.disconnect(true);
+        }
+    }
+
+    @Test
+    public void reportsDisconnectWhenPeerCloses() throws Exception {
+        CountDownLatch connected = new CountDownLatch(1);
+        CountDownLatch disconnected = new CountDownLatch(1);
+
+        NioTcpConnection connection = new NioTcpConnection(group);
+        connection.getConnected().addEventHandler((sender, e) -> connected.countDown());
+        connection.getDisconnected().addEventHandler((sender, e) -> {
+            assertFalse(e.isUserInitiated());
+            disconnected.countDown();
+        });
+        connection.connect(new InetSocketAddress(server.getInetAddress(), server.getLocalPort()));
+
+        Socket peer = server.accept();
+        assertTrue(connected.await(5, TimeUnit.SECONDS));
+        peer.close();
+
+        assertTrue(disconnected.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void dropsConnectionOnOversizedFrame() throws Exception {
+        CountDownLatch connected = new CountDownLatch(1);
+        CountDownLatch disconnected = new CountDownLatch(1);
+
+        NioTcpConnection connection = new NioTcpConnection(group);
+        connection.getConnected().addEventHandler((sender, e) -> connected.countDown());
+        connection.getDisconnected().addEventHandler((sender, e) -> disconnected.countDown());
+        connection.connect(new InetSocketAddress(server.getInetAddress(), server.getLocalPort()));
+
+        try (Socket peer = server.accept()) {
+            assertTrue(connected.await(5, TimeUnit.SECONDS));
+
+            // a length this large overflowed the frame size and tried to allocate it
+            BinaryWriter writer = new BinaryWriter(peer.getOutputStream());
+            writer.writeInt(Integer.MAX_VALUE - 4);
+            writer.writeInt(MAGIC);
+            writer.flush();
+
+            assertTrue(disconnected.await(5, TimeUnit.SECONDS));
+        }
+    }
+}
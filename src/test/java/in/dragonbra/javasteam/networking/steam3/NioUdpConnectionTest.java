@@ -0,0 +1,434 @@
+package in.dragonbra.javasteam.networking.steam3;
+
+import in.dragonbra.javasteam.TestBase;
+import in.dragonbra.javasteam.enums.EUdpPacketType;
+import in.dragonbra.javasteam.generated.ChallengeData;
+import in.dragonbra.javasteam.generated.UdpHeader;
+import in.dragonbra.javasteam.util.stream.MemoryStream;
+import in.dragonbra.javasteam.util.stream.SeekOrigin;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class NioUdpConnectionTest extends TestBase {
+
+    private SelectorLoopGroup group;
+
+    private FakeServer server;
+
+    private LossyLink link;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        group = new SelectorLoopGroup(1);
+        server = new FakeServer();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        if (link != null) {
+            link.close();
+        }
+
+        server.close();
+        group.shutdown();
+    }
+
+    @Test
+    public void sendsMessagesSplitIntoPackets() throws Exception {
+        NioUdpConnection connection = connect(server.getAddress());
+
+        try {
+            transfer(connection, 3, UdpPacket.MAX_PAYLOAD * 3 + 1);
+        } finally {
+            connection.disconnect(true);
+        }
+    }
+
+    @Test
+    public void reassemblesMessagesReceivedOutOfOrder() throws Exception {
+        BlockingQueue<byte[]> received = new LinkedBlockingQueue<>();
+
+        NioUdpConnection connection = new NioUdpConnection(group);
+        connection.getNetMsgReceived().addEventHandler((sender, e) -> received.add(e.getData()));
+        awaitConnected(connection, server.getAddress());
+
+        try {
+            byte[] data = new byte[UdpPacket.MAX_PAYLOAD * 2 + 100];
+            new Random(1).nextBytes(data);
+
+            server.sendReversed(data);
+
+            assertArrayEquals(data, received.poll(5, TimeUnit.SECONDS));
+            assertNull(received.poll(100, TimeUnit.MILLISECONDS));
+        } finally {
+            connection.disconnect(true);
+        }
+    }
+
+    @Test
+    public void disconnectIsAckedByTheServer() throws Exception {
+        CountDownLatch disconnected = new CountDownLatch(1);
+
+        NioUdpConnection connection = connect(server.getAddress());
+        connection.getDisconnected().addEventHandler((sender, e) -> {
+            assertTrue(e.isUserInitiated());
+            disconnected.countDown();
+        });
+
+        connection.disconnect(true);
+
+        assertTrue(server.disconnectReceived.await(5, TimeUnit.SECONDS));
+        assertTrue(disconnected.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void keepsAWindowOfPacketsInFlight() throws Exception {
+        long delayMillis = 20;
+        link = new LossyLink(server.getAddress(), 0.0, delayMillis);
+
+        NioUdpConnection connection = connect(link.getAddress());
+
+        try {
+            int count = 100;
+            int size = 5000;
+            double seconds = transfer(connection, count, size) / 1e9;
+            double goodput = count * size / seconds;
+
+            // waiting for an ack after every three packets, as UdpConnection does, gets this far at most
+            double threePacketsPerRoundTrip = 3.0 * UdpPacket.MAX_PAYLOAD / (2 * delayMillis / 1000.0);
+
+            assertTrue(goodput > 3 * threePacketsPerRoundTrip,
+                    String.format("%.0f KB/s with a %d ms round trip", goodput / 1000, 2 * delayMillis));
+        } finally {
+            connection.disconnect(true);
+        }
+    }
+
+    @Test
+    public void deliversEverythingOverALossyLink() throws Exception {
+        link = new LossyLink(server.getAddress(), 0.05, 5);
+
+        NioUdpConnection connection = connect(link.getAddress());
+
+        try {
+            int count = 200;
+            int size = 2000;
+            double seconds = transfer(connection, count, size) / 1e9;
+
+            assertTrue(seconds < 20, String.format("%.0f KB/s with 5%% loss", count * size / seconds / 1000));
+        } finally {
+            connection.disconnect(true);
+        }
+    }
+
+    private NioUdpConnection connect(InetSocketAddress endPoint) throws InterruptedException {
+        NioUdpConnection connection = new NioUdpConnection(group);
+        awaitConnected(connection, endPoint);
+        return connection;
+    }
+
+    private static void awaitConnected(NioUdpConnection connection, InetSocketAddress endPoint)
+            throws InterruptedException {
+        CountDownLatch connected = new CountDownLatch(1);
+        connection.getConnected().addEventHandler((sender, e) -> connected.countDown());
+        connection.connect(endPoint, 10000);
+
+        assertTrue(connected.await(10, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Sends random messages and waits for the server to receive all of them in order.
+     *
+     * @return the nanoseconds it took.
+     */
+    private long transfer(NioUdpConnection connection, int count, int size) throws InterruptedException {
+        Random random = new Random(count);
+        List<byte[]> sent = new ArrayList<>();
+
+        long start = System.nanoTime();
+
+        for (int i = 0; i < count; i++) {
+            byte[] data = new byte[size];
+            random.nextBytes(data);
+            sent.add(data);
+
+            connection.send(data);
+        }
+
+        for (byte[] expected : sent) {
+            byte[] received = server.messages.poll(30, TimeUnit.SECONDS);
+            assertNotNull(received, "timed out waiting for a message");
+            assertArrayEquals(expected, received);
+        }
+
+        return System.nanoTime() - start;
+    }
+
+    private static UdpPacket readPacket(DatagramPacket datagram) {
+        byte[] data = Arrays.copyOf(datagram.getData(), datagram.getLength());
+        return new UdpPacket(new MemoryStream(data));
+    }
+
+    /**
+     * The server side of the protocol. It acks every packet it receives with the highest sequence number up to which
+     * it received everything, like Steam does.
+     */
+    private static final class FakeServer implements Closeable {
+
+        private static final int CONN_ID = 0x4321;
+
+        private static final int CHALLENGE = 0x12345678;
+
+        private final DatagramSocket socket = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+
+        private final BlockingQueue<byte[]> messages = new LinkedBlockingQueue<>();
+
+        private final CountDownLatch disconnectReceived = new CountDownLatch(1);
+
+        private final Map<Integer, UdpPacket> pending = new HashMap<>();
+
+        private final ByteArrayOutputStream message = new ByteArrayOutputStream();
+
+        private volatile SocketAddress client;
+
+        private volatile int inSeq;
+
+        // Challenge is 1 and Accept is 2
+        private int outSeq = 3;
+
+        FakeServer() throws IOException {
+            Thread thread = new Thread(this::run, "FakeServer");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        InetSocketAddress getAddress() {
+            return (InetSocketAddress) socket.getLocalSocketAddress();
+        }
+
+        /**
+         * Sends the data as one message with its packets in reverse order.
+         */
+        void sendReversed(byte[] data) throws IOException {
+            MemoryStream ms = new MemoryStream(data);
+            int count = (data.length + UdpPacket.MAX_PAYLOAD - 1) / UdpPacket.MAX_PAYLOAD;
+            UdpPacket[] packets = new UdpPacket[count];
+
+            for (int i = 0; i < count; i++) {
+                int length = Math.min(UdpPacket.MAX_PAYLOAD, data.length - i * UdpPacket.MAX_PAYLOAD);
+
+                packets[i] = new UdpPacket(EUdpPacketType.Data, ms, length);
+                packets[i].getHeader().setSeqThis(outSeq + i);
+                packets[i].getHeader().setMsgStartSeq(outSeq);
+                packets[i].getHeader().setPacketsInMsg(count);
+                packets[i].getHeader().setMsgSize(data.length);
+            }
+
+            outSeq += count;
+
+            for (int i = count - 1; i >= 0; i--) {
+                send(packets[i]);
+            }
+        }
+
+        private void run() {
+            byte[] buffer = new byte[2048];
+
+            while (!socket.isClosed()) {
+                DatagramPacket datagram = new DatagramPacket(buffer, buffer.length);
+
+                try {
+                    socket.receive(datagram);
+                    client = datagram.getSocketAddress();
+                    receive(readPacket(datagram));
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        }
+
+        private void receive(UdpPacket packet) throws IOException {
+            if (!packet.isValid()) {
+                return;
+            }
+
+            UdpHeader header = packet.getHeader();
+
+            if (header.getPacketType() == EUdpPacketType.ChallengeReq) {
+                ChallengeData challenge = new ChallengeData();
+                challenge.setChallengeValue(CHALLENGE);
+
+                MemoryStream ms = new MemoryStream();
+                challenge.serialize(ms.asOutputStream());
+                ms.seek(0, SeekOrigin.BEGIN);
+
+                UdpPacket reply = new UdpPacket(EUdpPacketType.Challenge, ms);
+                reply.getHeader().setSeqThis(1);
+                send(reply);
+                return;
+            }
+
+            if (header.getPacketType() == EUdpPacketType.Datagram) {
+                return;
+            }
+
+            int seq = header.getSeqThis();
+            if (seq > inSeq) {
+                pending.putIfAbsent(seq, packet);
+            }
+
+            UdpPacket next;
+            while ((next = pending.remove(inSeq + 1)) != null) {
+                inSeq++;
+                handle(next);
+            }
+
+            if (header.getPacketType() == EUdpPacketType.Connect) {
+                // also answers a Connect that was resent because the Accept got lost
+                UdpPacket accept = new UdpPacket(EUdpPacketType.Accept);
+                accept.getHeader().setSeqThis(2);
+                send(accept);
+            } else {
+                send(new UdpPacket(EUdpPacketType.Datagram));
+            }
+        }
+
+        private void handle(UdpPacket packet) {
+            UdpHeader header = packet.getHeader();
+
+            if (header.getPacketType() == EUdpPacketType.Disconnect) {
+                disconnectReceived.countDown();
+                return;
+            }
+
+            if (header.getPacketType() != EUdpPacketType.Data) {
+                return;
+            }
+
+            byte[] payload = packet.getPayload().toByteArray();
+            message.write(payload, 0, payload.length);
+
+            if (header.getSeqThis() == header.getMsgStartSeq() + header.getPacketsInMsg() - 1) {
+                messages.add(message.toByteArray());
+                message.reset();
+            }
+        }
+
+        private synchronized void send(UdpPacket packet) throws IOException {
+            packet.getHeader().setSourceConnID(CONN_ID);
+            packet.getHeader().setSeqAck(inSeq);
+
+            byte[] data = packet.getData();
+            socket.send(new DatagramPacket(data, data.length, client));
+        }
+
+        @Override
+        public void close() {
+            socket.close();
+        }
+    }
+
+    /**
+     * Relays datagrams between a client and a server, dropping some and delaying the others.
+     */
+    private static final class LossyLink implements Closeable {
+
+        private final DatagramSocket clientSide = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+
+        private final DatagramSocket serverSide = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+
+        private final ScheduledExecutorService delayer = Executors.newSingleThreadScheduledExecutor();
+
+        private final Random random = new Random(42);
+
+        private final double loss;
+
+        private final long delayMillis;
+
+        private volatile SocketAddress client;
+
+        LossyLink(SocketAddress server, double loss, long delayMillis) throws IOException {
+            this.loss = loss;
+            this.delayMillis = delayMillis;
+
+            start("LossyLink-up", clientSide, serverSide, () -> server);
+            start("LossyLink-down", serverSide, clientSide, () -> client);
+        }
+
+        InetSocketAddress getAddress() {
+            return (InetSocketAddress) clientSide.getLocalSocketAddress();
+        }
+
+        private void start(String name, DatagramSocket from, DatagramSocket to, Destination destination) {
+            Thread thread = new Thread(() -> {
+                byte[] buffer = new byte[2048];
+
+                while (!from.isClosed()) {
+                    DatagramPacket datagram = new DatagramPacket(buffer, buffer.length);
+
+                    try {
+                        from.receive(datagram);
+                    } catch (IOException e) {
+                        return;
+                    }
+
+                    if (from == clientSide) {
+                        client = datagram.getSocketAddress();
+                    }
+
+                    if (random.nextDouble() < loss) {
+                        continue;
+                    }
+
+                    byte[] data = Arrays.copyOf(datagram.getData(), datagram.getLength());
+                    SocketAddress address = destination.get();
+
+                    delayer.schedule(() -> {
+                        try {
+                            to.send(new DatagramPacket(data, data.length, address));
+                        } catch (IOException ignored) {
+                        }
+                    }, delayMillis, TimeUnit.MILLISECONDS);
+                }
+            }, name);
+
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        @Override
+        public void close() {
+            clientSide.close();
+            serverSide.close();
+            delayer.shutdownNow();
+        }
+
+        private interface Destination {
+            SocketAddress get();
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package in.dragonbra.javasteam.networking.steam3;
+
+import in.dragonbra.javasteam.TestBase;
+import in.dragonbra.javasteam.util.stream.BinaryReader;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TcpConnectionTest extends TestBase {
+
+    private static final int MAGIC = 0x31305456;
+
+    private ServerSocket server;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        server.close();
+    }
+
+    @Test
+    public void sendsFramedData() throws Exception {
+        TcpConnection connection = connect();
+
+        try (Socket peer = server.accept()) {
+            byte[] large = new byte[100_000];
+            new Random(1).nextBytes(large);
+
+            // the large message doesn't fit in a batch and goes out on its own
+            connection.send(new byte[]{7, 8, 9});
+            connection.send(large);
+            connection.send(new byte[]{10});
+
+            BinaryReader reader = new BinaryReader(peer.getInputStream());
+            assertArrayEquals(new byte[]{7, 8, 9}, readFrame(reader));
+            assertArrayEquals(large, readFrame(reader));
+            assertArrayEquals(new byte[]{10}, readFrame(reader));
+        } finally {
+            connection.disconnect(true);
+        }
+    }
+
+    @Test
+    public void concurrentSendersKeepTheirOrder() throws Exception {
+        TcpConnection connection = connect();
+
+        try (Socket peer = server.accept()) {
+            transfer(connection, peer, 8, 2_000, 64);
+        } finally {
+            connection.disconnect(true);
+        }
+    }
+
+    @Test
+    @Tag("benchmark")
+    public void concurrentSendersThroughput() throws Exception {
+        for (int senders : new int[]{1, 8, 64}) {
+            TcpConnection connection = connect();
+
+            try (Socket peer = server.accept()) {
+                double seconds = transfer(connection, peer, senders, 200_000 / senders, 64) / 1e9;
+
+                System.out.printf("%d senders: %.0f messages/s%n", senders, 200_000 / seconds);
+            } finally {
+                connection.disconnect(true);
+            }
+        }
+    }
+
+    private TcpConnection connect() throws InterruptedException {
+        CountDownLatch connected = new CountDownLatch(1);
+
+        TcpConnection connection = new TcpConnection();
+        connection.getConnected().addEventHandler((sender, e) -> connected.countDown());
+        connection.connect(new InetSocketAddress(server.getInetAddress(), server.getLocalPort()));
+
+        assertTrue(connected.await(5, TimeUnit.SECONDS));
+        return connection;
+    }
+
+    /**
+     * Sends messages from a number of threads at once and waits for the peer to read all of them. Every message
+     * carries its sender and its index, the messages of each sender have to arrive in the order they were sent.
+     *
+     * @return the nanoseconds it took.
+     */
+    private static long transfer(TcpConnection connection, Socket peer, int senders, int count, int size)
+            throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(senders + 1);
+
+        try {
+            Future<?> reading = executor.submit(() -> {
+                BinaryReader reader = new BinaryReader(new BufferedInputStream(peer.getInputStream()));
+                int[] next = new int[senders];
+
+                for (int i = 0; i < senders * count; i++) {
+                    ByteBuffer message = ByteBuffer.wrap(readFrame(reader));
+                    assertEquals(size, message.remaining());
+
+                    int sender = message.getInt();
+                    assertEquals(next[sender]++, message.getInt());
+                }
+
+                return null;
+            });
+
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> sending = new ArrayList<>();
+
+            for (int sender = 0; sender < senders; sender++) {
+                int id = sender;
+                sending.add(executor.submit(() -> {
+                    start.await();
+
+                    for (int i = 0; i < count; i++) {
+                        connection.send(ByteBuffer.allocate(size).putInt(id).putInt(i).array());
+                    }
+
+                    return null;
+                }));
+            }
+
+            long startTime = System.nanoTime();
+            start.countDown();
+
+            for (Future<?> future : sending) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+            reading.get(30, TimeUnit.SECONDS);
+
+            return System.nanoTime() - startTime;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static byte[] readFrame(BinaryReader reader) throws IOException {
+        int length = reader.readInt();
+        assertEquals(MAGIC, reader.readInt());
+        return reader.readBytes(length);
+    }
+}
@@ -0,0 +1,203 @@
+package `in`.dragonbra.javasteam.networking.steam3
+
+import io.ktor.client.HttpClient
+import io.ktor.client.engine.cio.CIO
+import io.ktor.client.plugins.websocket.WebSockets
+import io.ktor.http.URLProtocol
+import kotlinx.coroutines.isActive
+import mockwebserver3.MockResponse
+import mockwebserver3.MockWebServer
+import okhttp3.Response
+import okhttp3.WebSocket
+import okhttp3.WebSocketListener
+import okio.ByteString
+import okio.ByteString.Companion.toByteString
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Tag
+import org.junit.jupiter.api.Test
+import java.net.InetSocketAddress
+import java.nio.ByteBuffer
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.TimeUnit
+
+class WebSocketConnectionTest {
+
+    private lateinit var server: MockWebServer
+
+    private lateinit var client: HttpClient
+
+    @BeforeEach
+    fun setUp() {
+        server = MockWebServer()
+        server.start()
+
+        client = HttpClient(CIO) {
+            install(WebSockets)
+        }
+    }
+
+    @AfterEach
+    fun tearDown() {
+        client.close()
+        server.shutdown()
+    }
+
+    @Test
+    fun receivesBinaryFrames() {
+        server.enqueue(
+            MockResponse.Builder().webSocketUpgrade(object : WebSocketListener() {
+                override fun onOpen(webSocket: WebSocket, response: Response) {
+                    webSocket.send(byteArrayOf(1, 2, 3).toByteString())
+                    webSocket.send(byteArrayOf(4).toByteString())
+                }
+            }).build()
+        )
+
+        val received = LinkedBlockingQueue<ByteArray>()
+
+        val connection = WebSocketConnection(client, URLProtocol.WS)
+        connection.netMsgReceived.addEventHandler { _, e -> received.add(e.data) }
+        connect(connection)
+
+        try {
+            Assertions.assertArrayEquals(byteArrayOf(1, 2, 3), received.poll(5, TimeUnit.SECONDS))
+            Assertions.assertArrayEquals(byteArrayOf(4), received.poll(5, TimeUnit.SECONDS))
+        } finally {
+            connection.disconnect(true)
+        }
+    }
+
+    @Test
+    fun sendsMessagesInOrder() {
+        val received = LinkedBlockingQueue<Int>()
+
+        server.enqueue(
+            MockResponse.Builder().webSocketUpgrade(object : WebSocketListener() {
+                override fun onMessage(webSocket: WebSocket, bytes: ByteString) {
+                    received.add(ByteBuffer.wrap(bytes.toByteArray()).int)
+                }
+            }).build()
+        )
+
+        val connection = WebSocketConnection(client, URLProtocol.WS)
+        connect(connection)
+
+        try {
+            // sends that were each written by a coroutine of their own could overtake each other
+            repeat(500) { connection.send(ByteBuffer.allocate(4).putInt(it).array()) }
+
+            repeat(500) { Assertions.assertEquals(it, received.poll(5, TimeUnit.SECONDS)) }
+        } finally {
+            connection.disconnect(true)
+        }
+    }
+
+    @Test
+    fun connectionsShareTheClient() {
+        repeat(2) {
+            server.enqueue(MockResponse.Builder().webSocketUpgrade(object : WebSocketListener() {}).build())
+        }
+
+        repeat(2) {
+            val disconnected = CountDownLatch(1)
+
+            val connection = WebSocketConnection(client, URLProtocol.WS)
+            connection.disconnected.addEventHandler { _, _ -> disconnected.countDown() }
+            connect(connection)
+
+            connection.disconnect(true)
+            Assertions.assertTrue(disconnected.await(5, TimeUnit.SECONDS))
+        }
+
+        // closing a connection must not close the client the other connections use
+        Assertions.assertTrue(client.isActive)
+        Assertions.assertEquals(2, server.requestCount)
+    }
+
+    @Test
+    fun concurrentConnectionsShareTheClient() {
+        val count = 8
+        val received = LinkedBlockingQueue<Int>()
+
+        repeat(count) {
+            server.enqueue(
+                MockResponse.Builder().webSocketUpgrade(object : WebSocketListener() {
+                    override fun onMessage(webSocket: WebSocket, bytes: ByteString) {
+                        received.add(ByteBuffer.wrap(bytes.toByteArray()).int)
+                    }
+                }).build()
+            )
+        }
+
+        val connections = List(count) { WebSocketConnection(client, URLProtocol.WS) }
+        connectAll(connections)
+
+        try {
+            connections.forEachIndexed { i, connection -> connection.send(ByteBuffer.allocate(4).putInt(i).array()) }
+
+            val values = List(count) { received.poll(5, TimeUnit.SECONDS) }
+            Assertions.assertEquals((0 until count).toSet(), values.toSet())
+        } finally {
+            connections.forEach { it.disconnect(true) }
+        }
+
+        Assertions.assertTrue(client.isActive)
+        Assertions.assertEquals(count, server.requestCount)
+    }
+
+    @Test
+    @Tag("benchmark")
+    fun footprintOfConnections() {
+        val count = 500
+
+        repeat(count) {
+            server.enqueue(MockResponse.Builder().webSocketUpgrade(object : WebSocketListener() {}).build())
+        }
+
+        // the mock server has a thread per connection, those aren't counted
+        fun clientThreads() = Thread.getAllStackTraces().keys.count { !it.name.startsWith("MockWebServer") }
+
+        val runtime = Runtime.getRuntime()
+        System.gc()
+        val threadsBefore = clientThreads()
+        val memoryBefore = runtime.totalMemory() - runtime.freeMemory()
+
+        val connections = List(count) { WebSocketConnection(client, URLProtocol.WS) }
+        connectAll(connections, timeoutSeconds = 60)
+
+        try {
+            System.gc()
+            val threads = clientThreads() - threadsBefore
+            val memory = runtime.totalMemory() - runtime.freeMemory() - memoryBefore
+
+            println(
+                "per 1000 connections: ${threads * 1000 / count} threads, " +
+                    "${memory * 1000 / count / (1024 * 1024)} MiB heap including the mock server's side"
+            )
+        } finally {
+            connections.forEach { it.disconnect(true) }
+        }
+    }
+
+    private fun connectAll(connections: List<WebSocketConnection>, timeoutSeconds: Long = 5) {
+        val connected = CountDownLatch(connections.size)
+
+        connections.forEach { connection ->
+            connection.connected.addEventHandler { _, _ -> connected.countDown() }
+            connection.connect(InetSocketAddress(server.hostName, server.port), (timeoutSeconds * 1000).toInt())
+        }
+
+        Assertions.assertTrue(connected.await(timeoutSeconds, TimeUnit.SECONDS))
+    }
+
+    private fun connect(connection: WebSocketConnection) {
+        val connected = CountDownLatch(1)
+        connection.connected.addEventHandler { _, _ -> connected.countDown() }
+        connection.connect(InetSocketAddress(server.hostName, server.port), 5000)
+
+        Assertions.assertTrue(connected.await(5, TimeUnit.SECONDS))
+    }
+}
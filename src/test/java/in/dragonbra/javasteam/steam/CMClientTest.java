@@ -1,6 +1,8 @@
 package in.dragonbra.javasteam.steam;
 
 import in.dragonbra.javasteam.TestBase;
+import com.google.protobuf.ByteString;
+import in.dragonbra.javasteam.base.ClientMsgProtobuf;
 import in.dragonbra.javasteam.base.IPacketMsg;
 import in.dragonbra.javasteam.base.ISteamSerializableHeader;
 import in.dragonbra.javasteam.base.PacketClientMsgProtobuf;
@@ -8,11 +10,17 @@ import in.dragonbra.javasteam.base.PacketMsg;
 import in.dragonbra.javasteam.enums.EMsg;
 import in.dragonbra.javasteam.generated.MsgHdr;
 import in.dragonbra.javasteam.generated.MsgHdrProtoBuf;
+import in.dragonbra.javasteam.protobufs.steamclient.SteammessagesBase.CMsgMulti;
+import in.dragonbra.javasteam.protobufs.steamclient.SteammessagesClientserverLogin.CMsgClientHeartBeat;
+import in.dragonbra.javasteam.types.JobID;
 import in.dragonbra.javasteam.util.stream.BinaryWriter;
 import org.junit.jupiter.api.Test;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -71,6 +79,91 @@ public class CMClientTest extends TestBase {
         assertNull(packetMsg);
     }
 
+    @Test
+    public void handleMultiDispatchesCompressedMessages() throws IOException {
+        assertMultiDispatched(true);
+    }
+
+    @Test
+    public void handleMultiDispatchesUncompressedMessages() throws IOException {
+        assertMultiDispatched(false);
+    }
+
+    @Test
+    public void handleMultiDropsCorruptPayload() throws IOException {
+        byte[] payload = createMultiPayload(3);
+        byte[] compressed = gzip(payload);
+        compressed[compressed.length - 5] ^= 0x01;
+
+        List<Long> received = new ArrayList<>();
+        receivingClient(received).handleClientMsg(createMulti(compressed, payload.length));
+
+        assertTrue(received.isEmpty());
+    }
+
+    private static void assertMultiDispatched(boolean compressed) throws IOException {
+        byte[] payload = createMultiPayload(100);
+
+        ClientMsgProtobuf<CMsgMulti.Builder> multi = compressed
+                ? createMulti(gzip(payload), payload.length)
+                : createMulti(payload, 0);
+
+        List<Long> received = new ArrayList<>();
+        DummyClient client = receivingClient(received);
+
+        // the second round reuses the decompression buffer of the first one
+        client.handleClientMsg(multi);
+        client.handleClientMsg(multi);
+
+        assertEquals(200, received.size());
+        for (int i = 0; i < 200; i++) {
+            assertEquals(i % 100L, (long) received.get(i));
+        }
+    }
+
+    private static DummyClient receivingClient(List<Long> received) {
+        return new DummyClient() {
+            @Override
+            protected boolean onClientMsgReceived(IPacketMsg packetMsg) {
+                if (packetMsg != null && packetMsg.getMsgType() == EMsg.ClientHeartBeat) {
+                    received.add(packetMsg.getSourceJobID());
+                }
+                return super.onClientMsgReceived(packetMsg);
+            }
+        };
+    }
+
+    private static byte[] createMultiPayload(int count) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        BinaryWriter bw = new BinaryWriter(baos);
+
+        for (int i = 0; i < count; i++) {
+            ClientMsgProtobuf<CMsgClientHeartBeat.Builder> msg = new ClientMsgProtobuf<>(CMsgClientHeartBeat.class, EMsg.ClientHeartBeat);
+            msg.setSourceJobID(new JobID(i));
+
+            byte[] data = msg.serialize();
+            bw.writeInt(data.length);
+            bw.write(data);
+        }
+
+        return baos.toByteArray();
+    }
+
+    private static ClientMsgProtobuf<CMsgMulti.Builder> createMulti(byte[] body, int sizeUnzipped) {
+        ClientMsgProtobuf<CMsgMulti.Builder> multi = new ClientMsgProtobuf<>(CMsgMulti.class, EMsg.Multi);
+        multi.getBody().setSizeUnzipped(sizeUnzipped);
+        multi.getBody().setMessageBody(ByteString.copyFrom(body));
+        return multi;
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(baos)) {
+            gzip.write(data);
+        }
+        return baos.toByteArray();
+    }
+
     private static byte[] serialize(ISteamSerializableHeader hdr) throws IOException {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
         hdr.serialize(baos);
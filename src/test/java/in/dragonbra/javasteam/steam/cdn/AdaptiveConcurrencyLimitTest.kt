@@ -0,0 +1,230 @@
+package `in`.dragonbra.javasteam.steam.cdn
+
+import `in`.dragonbra.javasteam.steam.steamclient.SteamClient
+import `in`.dragonbra.javasteam.types.ChunkData
+import `in`.dragonbra.javasteam.util.SteamKitWebRequestException
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.runBlocking
+import mockwebserver3.Dispatcher
+import mockwebserver3.MockResponse
+import mockwebserver3.MockWebServer
+import mockwebserver3.RecordedRequest
+import okio.Buffer
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Tag
+import org.junit.jupiter.api.Test
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+
+class AdaptiveConcurrencyLimitTest {
+
+    private val chunkSize = 64 * 1024
+
+    @Test
+    fun growsWhileRequestsStayFast() {
+        val limit = AdaptiveConcurrencyLimit(initialLimit = 4)
+
+        repeat(4) { Assertions.assertTrue(limit.tryAcquire()) }
+        Assertions.assertFalse(limit.tryAcquire())
+
+        repeat(4) {
+            limit.onSuccess(System.nanoTime(), chunkSize, 10_000_000)
+        }
+
+        Assertions.assertEquals(8, limit.limit)
+    }
+
+    @Test
+    fun doesNotGrowWhenLittleIsInFlight() {
+        val limit = AdaptiveConcurrencyLimit(initialLimit = 8)
+
+        limit.tryAcquire()
+        repeat(10) {
+            limit.onSuccess(System.nanoTime(), chunkSize, 10_000_000)
+        }
+
+        Assertions.assertEquals(8, limit.limit)
+    }
+
+    @Test
+    fun shrinksOnceForConcurrentDrops() {
+        val limit = AdaptiveConcurrencyLimit(initialLimit = 20)
+        val start = System.nanoTime()
+
+        repeat(5) { limit.onDropped(start) }
+        Assertions.assertEquals(18, limit.limit)
+
+        limit.onDropped(System.nanoTime())
+        Assertions.assertEquals(16, limit.limit)
+
+        // grows by one per limit's worth of requests after shrinking
+        repeat(16) { limit.tryAcquire() }
+        repeat(17) { limit.onSuccess(System.nanoTime(), chunkSize, 10_000_000) }
+        Assertions.assertEquals(17, limit.limit)
+    }
+
+    @Test
+    fun shrinksWhenRequestsSlowDown() {
+        val limit = AdaptiveConcurrencyLimit(initialLimit = 20)
+
+        limit.onSuccess(System.nanoTime(), chunkSize, 10_000_000)
+        limit.onSuccess(System.nanoTime(), chunkSize, 30_000_000)
+
+        Assertions.assertEquals(18, limit.limit)
+    }
+
+    @Test
+    fun neverGoesBelowTheMinimum() {
+        val limit = AdaptiveConcurrencyLimit(initialLimit = 2, minLimit = 2)
+
+        repeat(10) { limit.onDropped(System.nanoTime()) }
+
+        Assertions.assertEquals(2, limit.limit)
+    }
+
+    @Test
+    fun requestCancelledBeforeItStartsHandsBackItsSlot() = runBlocking {
+        val limit = AdaptiveConcurrencyLimit(initialLimit = 1)
+        Assertions.assertTrue(limit.tryAcquire())
+        Assertions.assertFalse(limit.hasCapacity())
+
+        // runBlocking only runs the request once this coroutine suspends, so it's cancelled before it starts
+        val started = AtomicBoolean()
+        val request = ClientPool.startRequest(this, limit::release) {
+            started.set(true)
+            limit.release()
+        }
+        request.cancel()
+        request.join()
+
+        Assertions.assertFalse(started.get())
+        Assertions.assertEquals(0, limit.inFlight)
+        Assertions.assertTrue(limit.hasCapacity())
+    }
+
+    @Test
+    fun startedRequestHandsBackItsSlotItself() = runBlocking {
+        val limit = AdaptiveConcurrencyLimit(initialLimit = 2)
+        repeat(2) { Assertions.assertTrue(limit.tryAcquire()) }
+
+        val request = ClientPool.startRequest(this, limit::release) {
+            limit.release()
+            42
+        }
+
+        Assertions.assertEquals(42, request.await())
+        Assertions.assertEquals(1, limit.inFlight)
+    }
+
+    /**
+     * A link that serves [capacity] requests in [latencyMillis] each, and every further request makes all of them
+     * slower, like a saturated link.
+     */
+    private class SaturatingDispatcher(
+        private val capacity: Int,
+        private val latencyMillis: Long,
+        private val body: ByteArray,
+        private val rejectOverCapacity: Boolean,
+    ) : Dispatcher() {
+        val active = AtomicInteger()
+
+        val rejected = AtomicInteger()
+
+        override fun dispatch(request: RecordedRequest): MockResponse {
+            val concurrent = active.incrementAndGet()
+
+            try {
+                if (rejectOverCapacity && concurrent > capacity) {
+                    rejected.incrementAndGet()
+                    Thread.sleep(latencyMillis)
+                    return MockResponse.Builder().code(503).build()
+                }
+
+                Thread.sleep(latencyMillis * maxOf(concurrent, capacity) / capacity)
+                return MockResponse.Builder().body(Buffer().write(body)).build()
+            } finally {
+                active.decrementAndGet()
+            }
+        }
+    }
+
+    /**
+     * Downloads [requests] chunks from [server] with [workers] coroutines, as many at a time as [limit] allows.
+     */
+    private fun download(limit: AdaptiveConcurrencyLimit, mockServer: MockWebServer, workers: Int, requests: Int) {
+        val steamClient = SteamClient()
+        val host = mockServer.hostName
+        val server = Server(host = host, vHost = host, port = mockServer.port, type = "CDN")
+        val chunk = ChunkData(chunkID = ByteArray(20), compressedLength = chunkSize, uncompressedLength = chunkSize)
+        val remaining = AtomicInteger(requests)
+
+        Client(steamClient).use { client ->
+            runBlocking(Dispatchers.IO) {
+                List(workers) {
+                    launch {
+                        val destination = ByteArray(chunkSize)
+
+                        while (remaining.getAndDecrement() > 0) {
+                            while (!limit.tryAcquire()) {
+                                delay(1)
+                            }
+
+                            val start = System.nanoTime()
+
+                            try {
+                                val bytes = client.downloadDepotChunk(0, chunk, server, destination)
+                                limit.onSuccess(start, bytes, System.nanoTime() - start)
+                            } catch (e: SteamKitWebRequestException) {
+                                limit.onDropped(start)
+                            } finally {
+                                limit.release()
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    @Tag("benchmark")
+    fun settlesNearTheCapacityOfASlowingLink() {
+        MockWebServer().use { mockServer ->
+            val dispatcher = SaturatingDispatcher(8, 20, ByteArray(chunkSize), rejectOverCapacity = false)
+            mockServer.dispatcher = dispatcher
+            mockServer.start()
+
+            val limit = AdaptiveConcurrencyLimit()
+            val start = System.nanoTime()
+
+            download(limit, mockServer, workers = 48, requests = 600)
+
+            val seconds = (System.nanoTime() - start) / 1e9
+            println("limit ${limit.limit}, ${600 / seconds} requests/s, the link serves at most 400 requests/s")
+
+            // grew from 4 to use the link, and stopped well before the 48 workers
+            Assertions.assertTrue(limit.limit in 8..24, "limit ${limit.limit}")
+        }
+    }
+
+    @Test
+    @Tag("benchmark")
+    fun settlesNearTheCapacityOfAnOverloadedServer() {
+        MockWebServer().use { mockServer ->
+            val dispatcher = SaturatingDispatcher(8, 20, ByteArray(chunkSize), rejectOverCapacity = true)
+            mockServer.dispatcher = dispatcher
+            mockServer.start()
+
+            val limit = AdaptiveConcurrencyLimit()
+
+            download(limit, mockServer, workers = 48, requests = 600)
+
+            println("limit ${limit.limit}, ${dispatcher.rejected.get()} of 600 requests rejected")
+
+            Assertions.assertTrue(limit.limit in 4..12, "limit ${limit.limit}")
+            Assertions.assertTrue(dispatcher.rejected.get() < 600 / 4, "${dispatcher.rejected.get()} rejected")
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package in.dragonbra.javasteam.steam.cdn;
+
+import in.dragonbra.javasteam.TestBase;
+import in.dragonbra.javasteam.types.ChunkData;
+import in.dragonbra.javasteam.util.Utils;
+import in.dragonbra.javasteam.util.crypto.CryptoHelper;
+import in.dragonbra.javasteam.util.crypto.SymmetricCiphers;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.tukaani.xz.LZMA2Options;
+import org.tukaani.xz.LZMAOutputStream;
+
+import javax.crypto.Cipher;
+import java.io.ByteArrayOutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+public class DepotChunkTest extends TestBase {
+
+    private static final byte[] DEPOT_KEY = CryptoHelper.generateRandomBlock(32);
+
+    private static byte[] createData(int length) {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+
+    /**
+     * Builds a chunk the way the CDN serves it, a zip with a single stored entry, encrypted with the depot key.
+     */
+    private static byte[] createChunk(byte[] data) throws Exception {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+
+        ZipEntry entry = new ZipEntry("z");
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(data.length);
+        entry.setCompressedSize(data.length);
+        entry.setCrc(crc.getValue());
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(baos)) {
+            zip.putNextEntry(entry);
+            zip.write(data);
+            zip.closeEntry();
+        }
+
+        return CryptoHelper.symmetricEncrypt(baos.toByteArray(), DEPOT_KEY);
+    }
+
+    /**
+     * Builds an LZMA compressed chunk, a VZip wrapping a raw LZMA stream, encrypted with the depot key.
+     */
+    private static byte[] createVZipChunk(byte[] data) throws Exception {
+        LZMA2Options options = new LZMA2Options(1);
+        options.setDictSize(1 << 20);
+
+        ByteArrayOutputStream lzma = new ByteArrayOutputStream();
+        try (LZMAOutputStream out = new LZMAOutputStream(lzma, options, false)) {
+            out.write(data);
+        }
+
+        int crc = (int) Utils.crc32(data);
+        byte[] compressed = lzma.toByteArray();
+
+        ByteBuffer vzip = ByteBuffer.allocate(7 + 5 + compressed.length + 10).order(ByteOrder.LITTLE_ENDIAN);
+        vzip.put((byte) 'V').put((byte) 'Z').put((byte) 'a').putInt(crc);
+        vzip.put((byte) ((options.getPb() * 5 + options.getLp()) * 9 + options.getLc())).putInt(options.getDictSize());
+        vzip.put(compressed);
+        vzip.putInt(crc).putInt(data.length).put((byte) 'z').put((byte) 'v');
+
+        return CryptoHelper.symmetricEncrypt(vzip.array(), DEPOT_KEY);
+    }
+
+    /**
+     * Data that compresses somewhat, like most game files.
+     */
+    private static byte[] createCompressibleData(int length) {
+        byte[] data = new byte[length];
+        Random random = new Random(length);
+
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (random.nextInt(16) + 'a');
+        }
+
+        return data;
+    }
+
+    private static ChunkData chunkInfo(byte[] data, byte[] chunk) {
+        return new ChunkData(new byte[20], Utils.adlerHash(data), 0L, chunk.length, data.length);
+    }
+
+    @Test
+    public void providersProduceSameResult() throws Exception {
+        byte[] data = createData(100_000);
+        byte[] chunk = createChunk(data);
+        ChunkData info = chunkInfo(data, chunk);
+
+        for (SymmetricCiphers.Provider provider : SymmetricCiphers.Provider.values()) {
+            byte[] destination = new byte[data.length];
+            int written = DepotChunk.INSTANCE.process(info, chunk, destination, DEPOT_KEY, provider);
+
+            Assertions.assertEquals(data.length, written, provider.name());
+            Assertions.assertArrayEquals(data, destination, provider.name());
+        }
+    }
+
+    @Test
+    public void vzipChunk() throws Exception {
+        byte[] data = createCompressibleData(100_000);
+        byte[] chunk = createVZipChunk(data);
+
+        byte[] destination = new byte[data.length];
+        int written = DepotChunk.INSTANCE.process(chunkInfo(data, chunk), chunk, destination, DEPOT_KEY);
+
+        Assertions.assertEquals(data.length, written);
+        Assertions.assertArrayEquals(data, destination);
+    }
+
+    @Test
+    public void processPartOfBuffer() throws Exception {
+        byte[] data = createData(10_000);
+        byte[] chunk = createChunk(data);
+
+        // like a pooled buffer, longer than the chunk
+        byte[] buffer = new byte[chunk.length + 1000];
+        System.arraycopy(chunk, 0, buffer, 0, chunk.length);
+
+        byte[] destination = new byte[16_384];
+        int written = DepotChunk.INSTANCE.process(chunkInfo(data, chunk), buffer, chunk.length, destination, DEPOT_KEY);
+
+        Assertions.assertEquals(data.length, written);
+        Assertions.assertArrayEquals(data, Arrays.copyOf(destination, written));
+    }
+
+    @Test
+    public void wrongKeyFails() throws Exception {
+        byte[] data = createData(1000);
+        byte[] chunk = createChunk(data);
+
+        Assertions.assertThrows(Exception.class, () ->
+                DepotChunk.INSTANCE.process(chunkInfo(data, chunk), chunk, new byte[data.length], CryptoHelper.generateRandomBlock(32)));
+    }
+
+    @Test
+    @Tag("benchmark")
+    public void decryptThroughput() throws Exception {
+        // 1 MiB is the usual uncompressed chunk size
+        byte[] data = createData(1024 * 1024);
+        byte[] chunk = createChunk(data);
+        ChunkData info = chunkInfo(data, chunk);
+        byte[] destination = new byte[data.length];
+        int iterations = 20;
+
+        for (SymmetricCiphers.Provider provider : SymmetricCiphers.Provider.values()) {
+            for (int i = 0; i < iterations; i++) {
+                DepotChunk.INSTANCE.process(info, chunk, destination, DEPOT_KEY, provider);
+            }
+
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                DepotChunk.INSTANCE.process(info, chunk, destination, DEPOT_KEY, provider);
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            System.out.printf("%s: %.1f MB/s per core%n", provider, iterations * chunk.length / seconds / 1_000_000.0);
+        }
+    }
+
+    @Test
+    public void ciphersAreCachedPerProvider() throws Exception {
+        Cipher securityProvider = SymmetricCiphers.cbc(SymmetricCiphers.Provider.SECURITY_PROVIDER);
+        Assertions.assertEquals(CryptoHelper.SEC_PROV, securityProvider.getProvider().getName());
+        Assertions.assertSame(securityProvider, SymmetricCiphers.cbc(SymmetricCiphers.Provider.SECURITY_PROVIDER));
+
+        Cipher platform = SymmetricCiphers.cbc(SymmetricCiphers.Provider.DEFAULT);
+        Assertions.assertNotEquals(CryptoHelper.SEC_PROV, platform.getProvider().getName());
+        Assertions.assertSame(securityProvider, SymmetricCiphers.cbc(SymmetricCiphers.Provider.SECURITY_PROVIDER));
+    }
+
+    @Test
+    @Tag("benchmark")
+    public void allocationsPerChunk() throws Exception {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            return;
+        }
+
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+        long threadId = Thread.currentThread().getId();
+
+        // a synthetic depot of 1 MiB chunks, half zip and half VZip
+        int chunkCount = 8;
+        byte[][] data = new byte[chunkCount][];
+        byte[][] chunks = new byte[chunkCount][];
+        ChunkData[] infos = new ChunkData[chunkCount];
+
+        for (int i = 0; i < chunkCount; i++) {
+            data[i] = createCompressibleData(1024 * 1024 - i);
+            chunks[i] = i % 2 == 0 ? createChunk(data[i]) : createVZipChunk(data[i]);
+            infos[i] = chunkInfo(data[i], chunks[i]);
+        }
+
+        byte[] destination = new byte[1024 * 1024];
+
+        // warm up, this also fills the pools
+        for (int i = 0; i < chunkCount * 4; i++) {
+            DepotChunk.INSTANCE.process(infos[i % chunkCount], chunks[i % chunkCount], destination, DEPOT_KEY);
+        }
+
+        long start = threadBean.getThreadAllocatedBytes(threadId);
+        long gcStart = gcCount();
+        for (int i = 0; i < chunkCount * 4; i++) {
+            DepotChunk.INSTANCE.process(infos[i % chunkCount], chunks[i % chunkCount], destination, DEPOT_KEY);
+        }
+        long perChunk = (threadBean.getThreadAllocatedBytes(threadId) - start) / (chunkCount * 4);
+
+        System.out.println("Allocated " + perChunk + " bytes per 1 MiB chunk, " + (gcCount() - gcStart) + " collections");
+
+        // without pooling every chunk allocated its decrypted copy, a checksum copy and an LZMA dictionary
+        Assertions.assertTrue(perChunk < 512 * 1024, "allocated " + perChunk + " bytes per chunk");
+    }
+
+    private static long gcCount() {
+        long count = 0;
+
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+
+        return count;
+    }
+}
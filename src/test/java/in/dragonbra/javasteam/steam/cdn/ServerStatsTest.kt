@@ -0,0 +1,118 @@
+package `in`.dragonbra.javasteam.steam.cdn
+
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Test
+
+class ServerStatsTest {
+
+    private val second = 1_000_000_000L
+
+    private fun stats(host: String) = ServerStats(Server(host = host, vHost = host, port = 80, type = "CDN"))
+
+    @Test
+    fun unusedServersHaveNoScore() {
+        val stats = stats("a")
+
+        Assertions.assertTrue(stats.score.isNaN())
+        Assertions.assertTrue(stats.bytesPerSecond.isNaN())
+        Assertions.assertFalse(stats.isBackedOff)
+    }
+
+    @Test
+    fun fasterServersScoreHigher() {
+        val fast = stats("fast")
+        val slow = stats("slow")
+        val laggy = stats("laggy")
+
+        // 1 MB in 100 ms after 20 ms
+        fast.recordTransfer(1_000_000, second / 50, second / 50 + second / 10)
+        // 1 MB in a second after 20 ms
+        slow.recordTransfer(1_000_000, second / 50, second / 50 + second)
+        // 1 MB in 100 ms after 500 ms
+        laggy.recordTransfer(1_000_000, second / 2, second / 2 + second / 10)
+
+        Assertions.assertEquals(10_000_000.0, fast.bytesPerSecond, 1.0)
+        Assertions.assertEquals(20.0, fast.timeToFirstByteMillis, 0.001)
+        Assertions.assertTrue(fast.score > laggy.score)
+        Assertions.assertTrue(laggy.score > slow.score)
+    }
+
+    @Test
+    fun averagesFollowRecentTransfers() {
+        val stats = stats("a")
+
+        stats.recordTransfer(1_000_000, 0, second)
+
+        repeat(30) {
+            stats.recordTransfer(1_000_000, 0, second / 10)
+        }
+
+        Assertions.assertEquals(10_000_000.0, stats.bytesPerSecond, 100_000.0)
+    }
+
+    @Test
+    fun errorsLowerTheScore() {
+        val reliable = stats("reliable")
+        val flaky = stats("flaky")
+
+        for (stats in listOf(reliable, flaky)) {
+            stats.recordTransfer(1_000_000, 0, second / 10)
+            stats.recordSuccess()
+        }
+
+        flaky.recordFailure()
+        flaky.recordSuccess()
+
+        Assertions.assertEquals(0.09, flaky.errorRate, 0.0001)
+        Assertions.assertEquals(1L, flaky.failures)
+        Assertions.assertEquals(2L, flaky.successes)
+        Assertions.assertTrue(reliable.score > flaky.score)
+    }
+
+    @Test
+    fun failuresBackOffExponentially() {
+        val stats = stats("a")
+        val now = System.nanoTime()
+
+        // 1 s, give or take a quarter
+        stats.recordFailure(now)
+        Assertions.assertTrue(stats.isBackedOff(now + second * 7 / 10))
+        Assertions.assertFalse(stats.isBackedOff(now + second * 13 / 10))
+
+        // 2 s
+        stats.recordFailure(now)
+        Assertions.assertTrue(stats.isBackedOff(now + second * 14 / 10))
+        Assertions.assertFalse(stats.isBackedOff(now + second * 26 / 10))
+
+        // at most two minutes
+        repeat(20) { stats.recordFailure(now) }
+        Assertions.assertEquals(22, stats.consecutiveFailures)
+        Assertions.assertFalse(stats.isBackedOff(now + 151 * second))
+
+        stats.recordSuccess()
+        Assertions.assertFalse(stats.isBackedOff(now))
+        Assertions.assertEquals(0, stats.consecutiveFailures)
+    }
+
+    @Test
+    fun serversArePickedByScore() {
+        val fast = stats("fast")
+        val slow = stats("slow")
+        val untried = stats("untried")
+
+        fast.recordTransfer(3_000_000, 0, second)
+        slow.recordTransfer(1_000_000, 0, second)
+
+        val candidates = listOf(fast, slow, untried)
+        val picks = (0 until 700)
+            .groupingBy { ClientPool.pickWeighted(candidates, (it + 0.5) / 700)!!.host }
+            .eachCount()
+
+        // the untried server is weighted like the best one
+        Assertions.assertEquals(300, picks["fast"])
+        Assertions.assertEquals(100, picks["slow"])
+        Assertions.assertEquals(300, picks["untried"])
+
+        Assertions.assertNull(ClientPool.pickWeighted(emptyList(), 0.5))
+    }
+}
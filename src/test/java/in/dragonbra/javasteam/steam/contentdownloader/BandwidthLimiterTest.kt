@@ -0,0 +1,75 @@
+package `in`.dragonbra.javasteam.steam.contentdownloader
+
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.runBlocking
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Test
+
+class BandwidthLimiterTest {
+
+    private val second = 1_000_000_000L
+
+    @Test
+    fun burstIsAllowedThenRequestsWait() {
+        val limiter = BandwidthLimiter(1000)
+        val start = System.nanoTime()
+
+        // the bucket starts full
+        Assertions.assertEquals(0, limiter.reserve(600, start))
+        Assertions.assertEquals(0, limiter.reserve(400, start))
+
+        // empty now, 500 bytes take half a second
+        Assertions.assertEquals(second / 2, limiter.reserve(500, start))
+
+        // the next request waits behind the previous one
+        Assertions.assertEquals(second, limiter.reserve(500, start))
+
+        // after two seconds the debt is paid off
+        Assertions.assertEquals(0, limiter.reserve(0, start + 2 * second))
+    }
+
+    @Test
+    fun requestsLargerThanTheBucketAreAllowed() {
+        val limiter = BandwidthLimiter(1000)
+        val start = System.nanoTime()
+
+        Assertions.assertEquals(2 * second, limiter.reserve(3000, start))
+    }
+
+    @Test
+    fun bucketDoesNotGrowPastOneSecond() {
+        val limiter = BandwidthLimiter(1000)
+        val start = System.nanoTime()
+
+        Assertions.assertEquals(0, limiter.reserve(1000, start))
+        Assertions.assertEquals(second, limiter.reserve(2000, start + 10 * second))
+    }
+
+    @Test
+    fun noLimit() {
+        val limiter = BandwidthLimiter(0)
+
+        Assertions.assertEquals(0, limiter.reserve(Long.MAX_VALUE / 2, System.nanoTime()))
+
+        limiter.bytesPerSecond = 1000
+        Assertions.assertTrue(limiter.reserve(1000, System.nanoTime()) > 0)
+    }
+
+    @Test
+    fun concurrentRequestsKeepTheRate() = runBlocking {
+        val limiter = BandwidthLimiter(1_000_000)
+        val start = System.nanoTime()
+
+        // 1 MB of burst, then 1 MB more at 1 MB/s
+        List(8) {
+            launch {
+                repeat(8) {
+                    limiter.acquire(32 * 1024)
+                }
+            }
+        }.forEach { it.join() }
+
+        val elapsed = (System.nanoTime() - start) / 1e9
+        Assertions.assertTrue(elapsed >= 0.95, "took $elapsed s")
+    }
+}
@@ -0,0 +1,103 @@
+package `in`.dragonbra.javasteam.steam.contentdownloader
+
+import `in`.dragonbra.javasteam.types.ChunkData
+import `in`.dragonbra.javasteam.util.Utils
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+import java.io.RandomAccessFile
+import java.nio.file.Files
+import java.nio.file.Path
+import kotlin.random.Random
+
+class ChunkLocationIndexTest {
+
+    @TempDir
+    lateinit var dir: Path
+
+    private val data = Random(42).nextBytes(3 * 4096)
+
+    private fun chunk(index: Int) = ChunkData(
+        chunkID = ByteArray(20) { (index + it).toByte() },
+        checksum = Utils.adlerHash(data, index * 4096, 4096),
+        offset = index * 4096L,
+        compressedLength = 1000,
+        uncompressedLength = 4096
+    )
+
+    private fun writeFile(name: String): String {
+        val path = dir.resolve(name)
+        Files.write(path, data)
+        return path.toString()
+    }
+
+    @Test
+    fun readsWrittenChunks() {
+        val index = ChunkLocationIndex()
+        index.add(10, chunk(1), writeFile("a.bin"))
+
+        val buffer = index.read(10, chunk(1))
+
+        Assertions.assertNotNull(buffer)
+        Assertions.assertTrue(buffer!!.fromDisk)
+        Assertions.assertEquals(4096, buffer.length)
+        Assertions.assertArrayEquals(data.copyOfRange(4096, 8192), buffer.array.copyOf(buffer.length))
+        Assertions.assertNull(index.read(10, chunk(2)))
+    }
+
+    @Test
+    fun changedChunksAreNotUsed() {
+        val index = ChunkLocationIndex()
+        val path = writeFile("a.bin")
+        index.add(10, chunk(0), path)
+        index.add(10, chunk(2), path)
+
+        RandomAccessFile(path, "rw").use {
+            it.seek(10)
+            it.write(data[10].toInt() xor 1)
+            it.setLength(2 * 4096 + 100)
+        }
+
+        Assertions.assertNull(index.read(10, chunk(0)))
+        Assertions.assertNull(index.read(10, chunk(2)))
+    }
+
+    @Test
+    fun appsAreKeptApart() {
+        val index = ChunkLocationIndex()
+        index.add(10, chunk(0), writeFile("a.bin"))
+        index.add(20, chunk(1), writeFile("b.bin"))
+
+        Assertions.assertNotNull(index.read(10, chunk(0)))
+        Assertions.assertNotNull(index.read(20, chunk(1)))
+        Assertions.assertNull(index.read(20, chunk(0)))
+        Assertions.assertNull(index.read(10, chunk(1)))
+    }
+
+    @Test
+    fun leastRecentlyUsedAppsAreForgotten() {
+        val index = ChunkLocationIndex(maxApps = 2)
+        val path = writeFile("a.bin")
+        index.add(10, chunk(0), path)
+        index.add(20, chunk(0), path)
+
+        Assertions.assertNotNull(index.read(10, chunk(0)))
+
+        index.add(30, chunk(0), path)
+
+        Assertions.assertNotNull(index.read(10, chunk(0)))
+        Assertions.assertNull(index.read(20, chunk(0)))
+        Assertions.assertNotNull(index.read(30, chunk(0)))
+    }
+
+    @Test
+    fun indexIsBounded() {
+        val index = ChunkLocationIndex(maxEntries = 1)
+        val path = writeFile("a.bin")
+        index.add(10, chunk(0), path)
+        index.add(10, chunk(1), path)
+
+        Assertions.assertNotNull(index.read(10, chunk(0)))
+        Assertions.assertNull(index.read(10, chunk(1)))
+    }
+}
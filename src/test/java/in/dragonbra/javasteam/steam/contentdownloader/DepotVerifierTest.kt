@@ -0,0 +1,147 @@
+package `in`.dragonbra.javasteam.steam.contentdownloader
+
+import `in`.dragonbra.javasteam.enums.EDepotFileFlag
+import `in`.dragonbra.javasteam.types.ChunkData
+import `in`.dragonbra.javasteam.types.CompactDepotManifest
+import `in`.dragonbra.javasteam.types.DepotManifest
+import `in`.dragonbra.javasteam.types.FileData
+import `in`.dragonbra.javasteam.util.Utils
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Tag
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+import java.io.RandomAccessFile
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.EnumSet
+import kotlin.random.Random
+
+class DepotVerifierTest {
+
+    @TempDir
+    lateinit var dir: Path
+
+    private val random = Random(42)
+
+    // writes random content and returns the file with its chunks
+    private fun createFile(name: String, chunkCount: Int, chunkSize: Int = 64 * 1024): FileData {
+        val chunks = mutableListOf<ChunkData>()
+        val path = dir.resolve(name)
+        Files.createDirectories(path.parent)
+
+        Files.newOutputStream(path).use { output ->
+            for (i in 0 until chunkCount) {
+                val data = random.nextBytes(chunkSize)
+                output.write(data)
+                val offset = i.toLong() * chunkSize
+                chunks.add(ChunkData(ByteArray(20), Utils.adlerHash(data), offset, chunkSize, chunkSize))
+            }
+        }
+
+        return FileData(
+            fileName = name,
+            fileNameHash = ByteArray(20),
+            chunks = chunks,
+            flags = EnumSet.noneOf(EDepotFileFlag::class.java),
+            totalSize = chunkCount.toLong() * chunkSize,
+            fileHash = ByteArray(20),
+            linkTarget = "",
+            encrypted = false
+        )
+    }
+
+    private fun manifest(files: List<FileData>) = DepotManifest().apply { this.files.addAll(files) }
+
+    @Test
+    fun intactDepotIsValid() {
+        val files = List(10) { createFile("dir/file$it.bin", it + 1) }
+        val directory = FileData(
+            fileName = "dir",
+            fileNameHash = ByteArray(20),
+            flags = EnumSet.of(EDepotFileFlag.Directory),
+            totalSize = 0,
+            fileHash = ByteArray(20),
+            linkTarget = "",
+            encrypted = false
+        )
+
+        val result = DepotVerifier().verifyDepot(manifest(files + directory), dir)
+
+        Assertions.assertTrue(result.isValid, result.toString())
+        Assertions.assertEquals(55L * 64 * 1024, result.bytesVerified)
+    }
+
+    @Test
+    fun reportsMissingFilesAndMismatchedChunks() {
+        val corrupt = createFile("corrupt.bin", 40)
+        val truncated = createFile("truncated.bin", 4)
+        val missing = createFile("missing.bin", 1)
+        val intact = createFile("intact.bin", 3)
+
+        RandomAccessFile(dir.resolve("corrupt.bin").toFile(), "rw").use { file ->
+            file.seek(corrupt.chunks[5].offset + 100)
+            val value = file.read()
+            file.seek(corrupt.chunks[5].offset + 100)
+            file.write(value xor 0xFF)
+            file.seek(corrupt.chunks[33].offset)
+            file.write(ByteArray(10))
+        }
+        RandomAccessFile(dir.resolve("truncated.bin").toFile(), "rw").use { it.setLength(it.length() - 1) }
+        Files.delete(dir.resolve("missing.bin"))
+
+        val result = DepotVerifier().verifyDepot(manifest(listOf(corrupt, truncated, missing, intact)), dir.toString())
+
+        Assertions.assertFalse(result.isValid)
+        Assertions.assertEquals(listOf(missing), result.missingFiles)
+        Assertions.assertEquals(setOf(corrupt, truncated), result.mismatchedChunks.keys)
+        Assertions.assertEquals(listOf(corrupt.chunks[5], corrupt.chunks[33]), result.mismatchedChunks[corrupt])
+        Assertions.assertEquals(listOf(truncated.chunks[3]), result.mismatchedChunks[truncated])
+    }
+
+    @Test
+    fun verifiesCompactManifest() {
+        val corrupt = createFile("corrupt.bin", 6)
+        val missing = createFile("missing.bin", 1)
+        val intact = createFile("intact.bin", 3)
+
+        RandomAccessFile(dir.resolve("corrupt.bin").toFile(), "rw").use { file ->
+            file.seek(corrupt.chunks[2].offset)
+            file.write(ByteArray(10))
+        }
+        Files.delete(dir.resolve("missing.bin"))
+
+        val compact = CompactDepotManifest.from(manifest(listOf(corrupt, missing, intact)))
+        val result = DepotVerifier().verifyDepot(compact, dir)
+
+        Assertions.assertFalse(result.isValid)
+        Assertions.assertEquals(listOf("missing.bin"), result.missingFiles.map { it.fileName })
+        Assertions.assertEquals(listOf("corrupt.bin"), result.mismatchedChunks.keys.map { it.fileName })
+        val mismatched = result.mismatchedChunks.values.single()
+        Assertions.assertEquals(listOf(corrupt.chunks[2].offset), mismatched.map { it.offset })
+    }
+
+    @Test
+    @Tag("benchmark")
+    fun verificationThroughput() {
+        // 256 MiB in 1 MiB chunks
+        val files = List(16) { createFile("large$it.bin", 16, 1024 * 1024) }
+        val manifest = manifest(files)
+        val verifier = DepotVerifier()
+
+        // the first run warms up the page cache and the JIT
+        verifier.verifyDepot(manifest, dir)
+        val result = verifier.verifyDepot(manifest, dir)
+
+        Assertions.assertTrue(result.isValid)
+        println("Verified ${result.bytesVerified} bytes at %.2f GB/s".format(result.bytesPerSecond / 1e9))
+
+        val start = System.nanoTime()
+        files.forEach { file ->
+            RandomAccessFile(dir.resolve(file.fileName).toFile(), "r").use {
+                Utils.validateSteam3FileChecksums(it, file.chunks.toTypedArray())
+            }
+        }
+        val seconds = (System.nanoTime() - start) / 1e9
+        println("Sequential validation at %.2f GB/s".format(result.bytesVerified / seconds / 1e9))
+    }
+}
@@ -0,0 +1,121 @@
+package `in`.dragonbra.javasteam.steam.contentdownloader
+
+import `in`.dragonbra.javasteam.types.ChunkData
+import `in`.dragonbra.javasteam.util.Utils
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.stream.Collectors
+import kotlin.random.Random
+
+class DiskChunkCacheTest {
+
+    @TempDir
+    lateinit var dir: Path
+
+    private val random = Random(42)
+
+    private fun chunkData(size: Int = 4096) = random.nextBytes(size)
+
+    private fun chunk(data: ByteArray) = ChunkData(
+        chunkID = random.nextBytes(20),
+        checksum = Utils.adlerHash(data),
+        compressedLength = data.size / 2,
+        uncompressedLength = data.size
+    )
+
+    private fun chunkFiles(): List<Path> = Files.walk(dir).use { paths ->
+        paths.filter { Files.isRegularFile(it) }.collect(Collectors.toList())
+    }
+
+    @Test
+    fun storedChunksAreFetched() {
+        val cache = DiskChunkCache(dir)
+        val data = chunkData()
+        val chunk = chunk(data)
+        val destination = ByteArray(8192)
+
+        Assertions.assertEquals(-1, cache.fetchChunk(chunk, destination))
+
+        cache.storeChunk(chunk, data, data.size)
+
+        Assertions.assertEquals(data.size, cache.fetchChunk(chunk, destination))
+        Assertions.assertArrayEquals(data, destination.copyOf(data.size))
+
+        Assertions.assertEquals(1, cache.hits)
+        Assertions.assertEquals(1, cache.misses)
+        Assertions.assertEquals(4096L, cache.bytesRead)
+        Assertions.assertEquals(4096L, cache.bytesWritten)
+        Assertions.assertEquals(4096L, cache.cacheSize)
+        Assertions.assertEquals(1, chunkFiles().size)
+    }
+
+    @Test
+    fun chunksAreSharedBetweenInstances() {
+        val data = chunkData()
+        val chunk = chunk(data)
+
+        DiskChunkCache(dir).storeChunk(chunk, data, data.size)
+
+        // another process using the same directory
+        val other = DiskChunkCache(dir.toString())
+
+        Assertions.assertEquals(4096L, other.cacheSize)
+        Assertions.assertEquals(data.size, other.fetchChunk(chunk, ByteArray(data.size)))
+    }
+
+    @Test
+    fun corruptChunksAreDeleted() {
+        val cache = DiskChunkCache(dir)
+        val data = chunkData()
+        val chunk = chunk(data)
+
+        cache.storeChunk(chunk, data, data.size)
+
+        val file = chunkFiles().single()
+        val corrupt = Files.readAllBytes(file)
+        corrupt[100] = (corrupt[100].toInt() xor 1).toByte()
+        Files.write(file, corrupt)
+
+        Assertions.assertEquals(-1, cache.fetchChunk(chunk, ByteArray(data.size)))
+        Assertions.assertTrue(chunkFiles().isEmpty())
+        Assertions.assertEquals(0L, cache.cacheSize)
+    }
+
+    @Test
+    fun leastRecentlyUsedChunksAreEvicted() {
+        val cache = DiskChunkCache(dir, 3 * 4096L)
+        val data = List(4) { chunkData() }
+        val chunks = data.map { chunk(it) }
+        val destination = ByteArray(4096)
+
+        for (i in 0 until 3) {
+            cache.storeChunk(chunks[i], data[i], 4096)
+        }
+
+        // chunk 1 becomes the least recently used one
+        Assertions.assertEquals(4096, cache.fetchChunk(chunks[0], destination))
+
+        cache.storeChunk(chunks[3], data[3], 4096)
+
+        Assertions.assertEquals(1, cache.evictions)
+        Assertions.assertEquals(3 * 4096L, cache.cacheSize)
+        Assertions.assertEquals(3, chunkFiles().size)
+        Assertions.assertEquals(-1, cache.fetchChunk(chunks[1], destination))
+        Assertions.assertEquals(4096, cache.fetchChunk(chunks[0], destination))
+        Assertions.assertEquals(4096, cache.fetchChunk(chunks[3], destination))
+    }
+
+    @Test
+    fun chunksWithWrongLengthAreNotStored() {
+        val cache = DiskChunkCache(dir)
+        val data = chunkData()
+
+        cache.storeChunk(chunk(data), data, 100)
+
+        Assertions.assertEquals(0L, cache.bytesWritten)
+        Assertions.assertTrue(chunkFiles().isEmpty())
+    }
+}
@@ -0,0 +1,110 @@
+package `in`.dragonbra.javasteam.steam.contentdownloader
+
+import `in`.dragonbra.javasteam.enums.EDepotFileFlag
+import `in`.dragonbra.javasteam.types.ChunkData
+import `in`.dragonbra.javasteam.types.FileData
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption
+import java.util.EnumSet
+
+class DownloadJournalTest {
+
+    @TempDir
+    lateinit var dir: Path
+
+    private val path: Path
+        get() = dir.resolve("app.1.journal")
+
+    private fun file(name: String, chunkCount: Int): FileData {
+        val chunks = MutableList(chunkCount) { ChunkData(ByteArray(20) { _ -> it.toByte() }, 0, it * 1024L, 100, 1024) }
+
+        return FileData(
+            fileName = name,
+            fileNameHash = ByteArray(20),
+            chunks = chunks,
+            flags = EnumSet.noneOf(EDepotFileFlag::class.java),
+            totalSize = chunkCount * 1024L,
+            fileHash = ByteArray(20),
+            linkTarget = "",
+            encrypted = true
+        )
+    }
+
+    @Test
+    fun unknownFilesHaveNoRemainingChunks() {
+        DownloadJournal(path, 1, 2).use { journal ->
+            Assertions.assertNull(journal.remainingChunks(file("a", 4)))
+        }
+    }
+
+    @Test
+    fun writtenChunksSurviveReopening() {
+        val a = file("a", 4)
+        val b = file("b", 2)
+
+        DownloadJournal(path, 1, 2).use { journal ->
+            journal.chunkWritten("a", 1024)
+            journal.chunkWritten("a", 3072)
+            journal.chunkWritten("b", 0)
+            journal.chunkWritten("b", 1024)
+            journal.fileFinished("b")
+        }
+
+        DownloadJournal(path, 1, 2).use { journal ->
+            Assertions.assertEquals(listOf(0L, 2048L), journal.remainingChunks(a)!!.map { it.offset })
+            Assertions.assertTrue(journal.remainingChunks(b)!!.isEmpty())
+        }
+    }
+
+    @Test
+    fun tornRecordsAreDropped() {
+        val a = file("a", 4)
+
+        DownloadJournal(path, 1, 2).use { journal ->
+            journal.chunkWritten("a", 0)
+            journal.chunkWritten("a", 1024)
+        }
+
+        // the process died in the middle of the last record
+        val size = Files.size(path)
+        Files.newByteChannel(path, StandardOpenOption.WRITE).use { it.truncate(size - 3) }
+
+        DownloadJournal(path, 1, 2).use { journal ->
+            Assertions.assertEquals(listOf(1024L, 2048L, 3072L), journal.remainingChunks(a)!!.map { it.offset })
+
+            journal.chunkWritten("a", 2048)
+        }
+
+        DownloadJournal(path, 1, 2).use { journal ->
+            Assertions.assertEquals(listOf(1024L, 3072L), journal.remainingChunks(a)!!.map { it.offset })
+        }
+    }
+
+    @Test
+    fun otherManifestsStartOver() {
+        DownloadJournal(path, 1, 2).use { journal ->
+            journal.chunkWritten("a", 0)
+        }
+
+        DownloadJournal(path, 1, 3).use { journal ->
+            Assertions.assertNull(journal.remainingChunks(file("a", 4)))
+        }
+    }
+
+    @Test
+    fun deleteRemovesTheJournal() {
+        val journal = DownloadJournal(path, 1, 2)
+        journal.chunkWritten("a", 0)
+        journal.delete()
+
+        Assertions.assertFalse(Files.exists(path))
+
+        // writes after deleting are ignored
+        journal.chunkWritten("a", 1024)
+        Assertions.assertFalse(Files.exists(path))
+    }
+}
@@ -0,0 +1,148 @@
+package `in`.dragonbra.javasteam.steam.contentdownloader
+
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.runBlocking
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Tag
+import org.junit.jupiter.api.Test
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+
+class DownloadPipelineTest {
+
+    private class Item(val file: Any, val index: Int)
+
+    private fun buffer(data: ByteArray) = ChunkBuffer(data, data.size)
+
+    @Test
+    fun everyItemIsWrittenOnce() = runBlocking {
+        val files = List(20) { Any() }
+        val items = List(1000) { Item(files[it % files.size], it) }
+
+        val attempts = ConcurrentHashMap<Int, AtomicInteger>()
+        val written = ConcurrentHashMap<Int, ByteArray>()
+        val writing = ConcurrentHashMap<Any, AtomicBoolean>()
+        val statsCalls = AtomicInteger()
+
+        val pipeline = DownloadPipeline<Item>(
+            networkConcurrency = 8,
+            options = DownloadPipelineOptions(
+                decodeConcurrency = 4,
+                writeConcurrency = 3,
+                queueCapacity = 4,
+                statsListener = { statsCalls.incrementAndGet() }
+            ),
+            fetch = { item -> buffer(byteArrayOf(item.index.toByte())) },
+            decode = { item, data ->
+                val attempt = attempts.computeIfAbsent(item.index) { AtomicInteger() }.incrementAndGet()
+                // every tenth item is corrupt the first time
+                if (item.index % 10 == 0 && attempt == 1) null else buffer(data.array + data.array)
+            },
+            writerOf = { it.file },
+            write = { item, data ->
+                val busy = writing.computeIfAbsent(item.file) { AtomicBoolean() }
+                Assertions.assertTrue(busy.compareAndSet(false, true), "file written concurrently")
+                Assertions.assertNull(written.put(item.index, data.array.copyOf(data.length)))
+                busy.set(false)
+            }
+        )
+
+        pipeline.run(items)
+
+        Assertions.assertEquals(items.size, written.size)
+        items.forEach {
+            Assertions.assertArrayEquals(byteArrayOf(it.index.toByte(), it.index.toByte()), written[it.index])
+        }
+
+        val stats = pipeline.stats
+        Assertions.assertEquals(1100L, stats.network.completedChunks)
+        Assertions.assertEquals(1000L, stats.decode.completedChunks)
+        Assertions.assertEquals(1000L, stats.write.completedChunks)
+        Assertions.assertEquals(2000L, stats.write.completedBytes)
+        listOf(stats.network, stats.decode, stats.write).forEach {
+            Assertions.assertEquals(0, it.queueDepth, it.name)
+            Assertions.assertEquals(0, it.inFlight, it.name)
+        }
+        Assertions.assertEquals(1, statsCalls.get())
+    }
+
+    @Test
+    fun slowWriterHoldsBackFetching() = runBlocking {
+        val options = DownloadPipelineOptions(decodeConcurrency = 2, writeConcurrency = 1, queueCapacity = 2)
+        val networkConcurrency = 4
+
+        val fetched = AtomicInteger()
+        val written = AtomicInteger()
+        var maxOutstanding = 0
+
+        val pipeline = DownloadPipeline<Item>(
+            networkConcurrency = networkConcurrency,
+            options = options,
+            fetch = { item ->
+                fetched.incrementAndGet()
+                buffer(byteArrayOf(item.index.toByte()))
+            },
+            decode = { _, data -> data },
+            writerOf = { it.file },
+            write = { _, _ ->
+                delay(2)
+                maxOutstanding = maxOf(maxOutstanding, fetched.get() - written.get())
+                written.incrementAndGet()
+            }
+        )
+
+        val file = Any()
+        pipeline.run(List(200) { Item(file, it) })
+
+        // every fetcher, decoder and writer may hold one item besides the queues
+        val bound = networkConcurrency + options.decodeConcurrency + options.writeConcurrency +
+            options.queueCapacity * (1 + options.writeConcurrency)
+        Assertions.assertTrue(maxOutstanding <= bound, "$maxOutstanding chunks held in memory, expected at most $bound")
+        Assertions.assertEquals(200, written.get())
+    }
+
+    @Test
+    fun cancellationStopsPipeline() {
+        val pipeline = DownloadPipeline<Item>(
+            networkConcurrency = 4,
+            options = DownloadPipelineOptions(),
+            fetch = { item ->
+                if (item.index == 50) {
+                    throw CancellationException("Failed to download chunk")
+                }
+                buffer(byteArrayOf(0))
+            },
+            decode = { _, data -> data },
+            writerOf = { it.file },
+            write = { _, _ -> delay(1) }
+        )
+
+        Assertions.assertThrows(CancellationException::class.java) {
+            runBlocking {
+                pipeline.run(List(200) { Item(it % 7, it) })
+            }
+        }
+    }
+
+    @Test
+    @Tag("benchmark")
+    fun stageThroughput() = runBlocking {
+        val chunk = ByteArray(1024 * 1024)
+        val files = List(64) { Any() }
+
+        val pipeline = DownloadPipeline<Item>(
+            networkConcurrency = 8,
+            options = DownloadPipelineOptions(),
+            fetch = { buffer(chunk) },
+            decode = { _, data -> buffer(data.array.copyOf()) },
+            writerOf = { it.file },
+            write = { _, _ -> }
+        )
+
+        pipeline.run(List(512) { Item(files[it % files.size], it) })
+
+        println("${pipeline.stats} in ${pipeline.stats.elapsedMillis} ms")
+    }
+}
@@ -0,0 +1,75 @@
+package `in`.dragonbra.javasteam.steam.contentdownloader
+
+import kotlinx.coroutines.CoroutineStart
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.yield
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Test
+
+class FairShareGateTest {
+
+    @Test
+    fun higherPriorityGoesFirst() = runBlocking {
+        val gate = FairShareGate(1)
+        val order = mutableListOf<String>()
+
+        gate.acquire("holder", 0)
+
+        val low = launch(start = CoroutineStart.UNDISPATCHED) {
+            gate.withPermit("low", 0) { order.add("low") }
+        }
+        val high = launch(start = CoroutineStart.UNDISPATCHED) {
+            gate.withPermit("high", 5) { order.add("high") }
+        }
+
+        gate.release("holder")
+        low.join()
+        high.join()
+
+        Assertions.assertEquals(listOf("high", "low"), order)
+    }
+
+    @Test
+    fun ownersOfTheSamePriorityShareEvenly() = runBlocking {
+        val gate = FairShareGate(4)
+
+        // a owns every permit and has more work queued before b shows up
+        repeat(4) { gate.acquire("a", 0) }
+
+        val waiting = List(8) {
+            launch(start = CoroutineStart.UNDISPATCHED) { gate.acquire("a", 0) }
+        } + List(2) {
+            launch(start = CoroutineStart.UNDISPATCHED) { gate.acquire("b", 0) }
+        }
+
+        // a finishes two requests, both permits go to b
+        gate.release("a")
+        gate.release("a")
+        yield()
+
+        Assertions.assertEquals(2, gate.heldBy("a"))
+        Assertions.assertEquals(2, gate.heldBy("b"))
+
+        waiting.forEach { it.cancel() }
+    }
+
+    @Test
+    fun cancelledWaitersGiveUpTheirPlace() = runBlocking {
+        val gate = FairShareGate(1)
+
+        gate.acquire("holder", 0)
+
+        val cancelled = launch(start = CoroutineStart.UNDISPATCHED) { gate.acquire("cancelled", 9) }
+        val waiting = launch(start = CoroutineStart.UNDISPATCHED) { gate.acquire("waiting", 0) }
+
+        cancelled.cancel()
+        cancelled.join()
+
+        gate.release("holder")
+        waiting.join()
+
+        Assertions.assertEquals(0, gate.heldBy("cancelled"))
+        Assertions.assertEquals(1, gate.heldBy("waiting"))
+    }
+}
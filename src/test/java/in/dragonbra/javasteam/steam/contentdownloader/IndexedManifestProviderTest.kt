@@ -0,0 +1,224 @@
+package `in`.dragonbra.javasteam.steam.contentdownloader
+
+import com.google.protobuf.ByteString
+import `in`.dragonbra.javasteam.protobufs.steamclient.ContentManifest.ContentManifestMetadata
+import `in`.dragonbra.javasteam.protobufs.steamclient.ContentManifest.ContentManifestPayload
+import `in`.dragonbra.javasteam.types.DepotManifest
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Tag
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+import java.io.RandomAccessFile
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.file.Files
+import java.nio.file.Path
+
+class IndexedManifestProviderTest {
+
+    @TempDir
+    lateinit var dir: Path
+
+    companion object {
+        fun createManifest(depotID: Int, manifestID: Long, fileCount: Int): DepotManifest {
+            val payload = ContentManifestPayload.newBuilder()
+
+            for (i in 0 until fileCount) {
+                val chunk = ContentManifestPayload.FileMapping.ChunkData.newBuilder().apply {
+                    sha = ByteString.copyFrom(ByteArray(20) { (i + it).toByte() })
+                    crc = i
+                    offset = 0
+                    cbOriginal = 1024
+                    cbCompressed = 512
+                }
+
+                payload.addMappings(
+                    ContentManifestPayload.FileMapping.newBuilder().apply {
+                        filename = "dir\\file$i.bin"
+                        size = 1024
+                        flags = 0
+                        shaFilename = ByteString.copyFrom(ByteArray(20))
+                        shaContent = ByteString.copyFrom(ByteArray(20) { i.toByte() })
+                        addChunks(chunk)
+                    }
+                )
+            }
+
+            val metadata = ContentManifestMetadata.newBuilder().apply {
+                depotId = depotID
+                gidManifest = manifestID
+                cbDiskOriginal = 1024L * fileCount
+                cbDiskCompressed = 512L * fileCount
+            }
+
+            val payloadData = payload.build().toByteArray()
+            val metadataData = metadata.build().toByteArray()
+
+            val data = ByteBuffer.allocate(payloadData.size + metadataData.size + 28).order(ByteOrder.LITTLE_ENDIAN)
+            data.putInt(DepotManifest.PROTOBUF_PAYLOAD_MAGIC).putInt(payloadData.size).put(payloadData)
+            data.putInt(DepotManifest.PROTOBUF_METADATA_MAGIC).putInt(metadataData.size).put(metadataData)
+            data.putInt(DepotManifest.PROTOBUF_SIGNATURE_MAGIC).putInt(0)
+            data.putInt(DepotManifest.PROTOBUF_ENDOFMANIFEST_MAGIC)
+
+            return DepotManifest.deserialize(data.array())
+        }
+
+        private fun assertSameManifest(expected: DepotManifest, actual: DepotManifest?) {
+            Assertions.assertNotNull(actual)
+            Assertions.assertEquals(expected.depotID, actual!!.depotID)
+            Assertions.assertEquals(expected.manifestGID, actual.manifestGID)
+            Assertions.assertArrayEquals(expected.toByteArray(), actual.toByteArray())
+        }
+    }
+
+    @Test
+    fun storesAndFetchesManifests() {
+        val first = createManifest(1, 100, 10)
+        val second = createManifest(2, 200, 20)
+
+        IndexedManifestProvider(dir.resolve("manifests.bin")).use { provider ->
+            provider.updateManifest(first)
+            provider.updateManifest(second)
+            provider.setLatestManifestId(1, 100)
+
+            assertSameManifest(first, provider.fetchManifest(1, 100))
+            assertSameManifest(second, provider.fetchManifest(2, 200))
+            assertSameManifest(first, provider.fetchLatestManifest(1))
+
+            Assertions.assertNull(provider.fetchManifest(1, 200))
+            Assertions.assertNull(provider.fetchLatestManifest(2))
+        }
+    }
+
+    @Test
+    fun indexIsRestoredOnOpen() {
+        val file = dir.resolve("manifests.bin")
+        val manifest = createManifest(1, 100, 10)
+
+        IndexedManifestProvider(file).use { provider ->
+            provider.updateManifest(createManifest(1, 99, 5))
+            provider.updateManifest(manifest)
+            provider.setLatestManifestId(1, 99)
+            provider.setLatestManifestId(1, 100)
+        }
+
+        IndexedManifestProvider(file).use { provider ->
+            assertSameManifest(manifest, provider.fetchLatestManifest(1))
+            Assertions.assertEquals(Files.size(file), provider.fileSize)
+        }
+    }
+
+    @Test
+    fun incompleteRecordIsDiscarded() {
+        val file = dir.resolve("manifests.bin")
+        val manifest = createManifest(1, 100, 10)
+        var completeSize = 0L
+
+        IndexedManifestProvider(file).use { provider ->
+            provider.updateManifest(manifest)
+            provider.setLatestManifestId(1, 100)
+            completeSize = provider.fileSize
+            provider.updateManifest(createManifest(2, 200, 10))
+        }
+
+        // a crash in the middle of the last append
+        RandomAccessFile(file.toFile(), "rw").use { it.setLength(it.length() - 10) }
+
+        IndexedManifestProvider(file).use { provider ->
+            Assertions.assertEquals(completeSize, provider.fileSize)
+            Assertions.assertNull(provider.fetchManifest(2, 200))
+            assertSameManifest(manifest, provider.fetchLatestManifest(1))
+
+            // appending continues after the last complete record
+            provider.setLatestManifestId(2, 200)
+        }
+
+        IndexedManifestProvider(file).use { provider ->
+            assertSameManifest(manifest, provider.fetchLatestManifest(1))
+        }
+    }
+
+    @Test
+    fun compactionDropsReplacedRecords() {
+        val file = dir.resolve("manifests.bin")
+        val manifest = createManifest(1, 100, 100)
+
+        IndexedManifestProvider(file).use { provider ->
+            repeat(5) { provider.updateManifest(manifest) }
+            repeat(1000) { provider.setLatestManifestId(1, 100) }
+            provider.updateManifest(createManifest(2, 200, 10))
+
+            val before = provider.fileSize
+            provider.compact()
+
+            Assertions.assertTrue(provider.fileSize < before / 3, "${provider.fileSize} of $before bytes left")
+            Assertions.assertEquals(Files.size(file), provider.fileSize)
+            assertSameManifest(manifest, provider.fetchLatestManifest(1))
+            Assertions.assertNotNull(provider.fetchManifest(2, 200))
+        }
+
+        IndexedManifestProvider(file).use { provider ->
+            assertSameManifest(manifest, provider.fetchLatestManifest(1))
+        }
+    }
+
+    @Test
+    fun compactionKeepsRecordsAppendedMeanwhile() {
+        val file = dir.resolve("manifests.bin")
+        val manifest = createManifest(1, 100, 1000)
+
+        IndexedManifestProvider(file).use { provider ->
+            repeat(20) { provider.updateManifest(manifest) }
+
+            val writer = Thread {
+                for (depotID in 2..50) {
+                    provider.updateManifest(createManifest(depotID, depotID * 100L, 10))
+                    provider.setLatestManifestId(depotID, depotID * 100L)
+                }
+            }
+
+            writer.start()
+            repeat(10) { provider.compact() }
+            writer.join()
+            provider.compact()
+
+            assertSameManifest(manifest, provider.fetchManifest(1, 100))
+            for (depotID in 2..50) {
+                Assertions.assertNotNull(provider.fetchLatestManifest(depotID), "depot $depotID")
+            }
+        }
+
+        IndexedManifestProvider(file).use { provider ->
+            assertSameManifest(manifest, provider.fetchManifest(1, 100))
+            for (depotID in 2..50) {
+                Assertions.assertNotNull(provider.fetchLatestManifest(depotID), "depot $depotID")
+            }
+        }
+    }
+
+    @Test
+    @Tag("benchmark")
+    fun updateCostComparedToZipProvider() {
+        val manifests = (1..50).map { createManifest(it, it * 1000L, 500) }
+
+        val zipProvider = FileManifestProvider(dir.resolve("manifests.zip"))
+        IndexedManifestProvider(dir.resolve("manifests.bin")).use { indexedProvider ->
+            for (provider in listOf(zipProvider, indexedProvider)) {
+                manifests.forEach { provider.updateManifest(it) }
+
+                val start = System.nanoTime()
+                manifests.forEach { provider.setLatestManifestId(it.depotID, it.manifestGID) }
+                val updateMillis = (System.nanoTime() - start) / 1e6 / manifests.size
+
+                val lookupStart = System.nanoTime()
+                manifests.forEach { Assertions.assertNotNull(provider.fetchLatestManifest(it.depotID)) }
+                val lookupMillis = (System.nanoTime() - lookupStart) / 1e6 / manifests.size
+
+                println(
+                    "${provider.javaClass.simpleName}: %.2f ms per latest manifest update, %.2f ms per lookup"
+                        .format(updateMillis, lookupMillis)
+                )
+            }
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package `in`.dragonbra.javasteam.steam.contentdownloader
+
+import `in`.dragonbra.javasteam.enums.EDepotFileFlag
+import `in`.dragonbra.javasteam.types.ChunkData
+import `in`.dragonbra.javasteam.types.CompactDepotManifest
+import `in`.dragonbra.javasteam.types.DepotManifest
+import `in`.dragonbra.javasteam.types.FileData
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Tag
+import org.junit.jupiter.api.Test
+import java.util.EnumSet
+
+class ManifestDiffTest {
+
+    private fun chunkID(value: Int) = ByteArray(20) { (value shr (it % 4 * 8)).toByte() }
+
+    private fun file(name: String, version: Int, chunkIDs: List<Int>) = FileData(
+        fileName = name,
+        fileNameHash = ByteArray(20),
+        chunks = chunkIDs.mapIndexed { index, id ->
+            ChunkData(chunkID(id), id, index * 1024L, 100 + index, 1024)
+        }.toMutableList(),
+        flags = EnumSet.noneOf(EDepotFileFlag::class.java),
+        totalSize = chunkIDs.size * 1024L,
+        fileHash = ByteArray(20) { version.toByte() },
+        linkTarget = "",
+        encrypted = false
+    )
+
+    private fun manifest(vararg files: FileData) = DepotManifest().apply { this.files.addAll(files) }
+
+    // every file has 4 chunks, version 2 replaces a fifth of the files, changes one chunk in each modified file and
+    // adds files in place of the removed ones
+    private fun createManifests(fileCount: Int): Pair<DepotManifest, DepotManifest> {
+        val previous = DepotManifest()
+        val current = DepotManifest()
+
+        for (i in 0 until fileCount) {
+            val chunks = List(4) { i * 4 + it }
+            previous.files.add(file("dir${i % 100}/file$i", 1, chunks))
+
+            when (i % 5) {
+                0 -> current.files.add(file("dir${i % 100}/new$i", 1, chunks.map { it + fileCount * 4 }))
+                1 -> current.files.add(file("dir${i % 100}/file$i", 2, chunks.take(3) + (i * 4 + fileCount * 8)))
+                else -> current.files.add(file("dir${i % 100}/file$i", 1, chunks))
+            }
+        }
+
+        return previous to current
+    }
+
+    @Test
+    fun classifiesFilesAndChunks() {
+        val previous = manifest(
+            file("same", 1, listOf(1, 2)),
+            file("changed", 1, listOf(3, 4, 5)),
+            file("removed", 1, listOf(6))
+        )
+        val current = manifest(
+            file("same", 1, listOf(1, 2)),
+            file("changed", 2, listOf(5, 7, 3)),
+            file("added", 1, listOf(8, 9))
+        )
+
+        val diff = ManifestDiff(previous, current)
+
+        Assertions.assertEquals(listOf("added"), diff.addedFiles.map { it.fileName })
+        Assertions.assertEquals(listOf("removed"), diff.removedFiles.map { it.fileName })
+        Assertions.assertEquals(listOf("same"), diff.unchangedFiles.map { it.fileName })
+        Assertions.assertEquals(listOf("changed"), diff.modifiedFiles.map { it.file.fileName })
+
+        val change = diff.change("changed")!!
+        Assertions.assertSame(previous.files[1], change.previousFile)
+        Assertions.assertEquals(listOf(5, 3), change.reusableChunks.map { it.newChunk.checksum })
+        Assertions.assertEquals(listOf(5, 3), change.reusableChunks.map { it.oldChunk.checksum })
+        Assertions.assertEquals(listOf(7), change.neededChunks.map { it.checksum })
+        Assertions.assertNull(diff.change("same"))
+
+        Assertions.assertSame(previous.files[2], diff.previousFile("removed"))
+        Assertions.assertNull(diff.previousFile("added"))
+
+        // chunk 7 and both chunks of the added file
+        Assertions.assertEquals(3, diff.neededChunkCount)
+        Assertions.assertEquals(101L + 100 + 101, diff.downloadBytes)
+        Assertions.assertEquals(3 * 1024L, diff.downloadUncompressedBytes)
+        Assertions.assertEquals(2 * 1024L, diff.reusedBytes)
+    }
+
+    @Test
+    fun freshInstallNeedsEverything() {
+        val current = manifest(file("a", 1, listOf(1, 2)), file("b", 1, listOf(3)))
+
+        val diff = ManifestDiff(null, current)
+
+        Assertions.assertEquals(2, diff.addedFiles.size)
+        Assertions.assertTrue(diff.removedFiles.isEmpty())
+        Assertions.assertEquals(3, diff.neededChunkCount)
+        Assertions.assertEquals(0L, diff.reusedBytes)
+    }
+
+    @Test
+    fun diffManyFiles() {
+        val fileCount = 10_000
+        val (previous, current) = createManifests(fileCount)
+
+        val diff = ManifestDiff(previous, current)
+
+        Assertions.assertEquals(fileCount / 5, diff.addedFiles.size)
+        Assertions.assertEquals(fileCount / 5, diff.removedFiles.size)
+        Assertions.assertEquals(fileCount / 5, diff.modifiedFiles.size)
+        Assertions.assertEquals(fileCount / 5 * 3, diff.unchangedFiles.size)
+        Assertions.assertEquals(fileCount / 5 * 5, diff.neededChunkCount)
+    }
+
+    @Test
+    fun diffCompactManifests() {
+        val fileCount = 1_000
+        val (previous, current) = createManifests(fileCount)
+
+        val expected = ManifestDiff(previous, current)
+        val diff = ManifestDiff(CompactDepotManifest.from(previous), CompactDepotManifest.from(current))
+
+        Assertions.assertEquals(expected.addedFiles.map { it.fileName }, diff.addedFiles.map { it.fileName })
+        Assertions.assertEquals(expected.removedFiles.map { it.fileName }, diff.removedFiles.map { it.fileName })
+        Assertions.assertEquals(expected.unchangedFiles.size, diff.unchangedFiles.size)
+        Assertions.assertEquals(expected.modifiedFiles.size, diff.modifiedFiles.size)
+        Assertions.assertEquals(expected.neededChunkCount, diff.neededChunkCount)
+        Assertions.assertEquals(expected.downloadBytes, diff.downloadBytes)
+        Assertions.assertEquals(expected.reusedBytes, diff.reusedBytes)
+
+        val change = diff.change("dir1/file1")!!
+        Assertions.assertEquals(3, change.reusableChunks.size)
+        Assertions.assertArrayEquals(chunkID(4 + fileCount * 8), change.neededChunks.single().chunkID)
+    }
+
+    @Test
+    @Tag("benchmark")
+    fun diffLargeManifests() {
+        val fileCount = 200_000
+        val (previous, current) = createManifests(fileCount)
+
+        // warm up
+        repeat(3) { ManifestDiff(previous, current) }
+
+        val start = System.nanoTime()
+        val diff = ManifestDiff(previous, current)
+        val millis = (System.nanoTime() - start) / 1e6
+
+        println("Diffing two manifests of $fileCount files took %.1f ms: $diff".format(millis))
+
+        // the lookups this replaces, on a subset since they are quadratic
+        val subset = 5_000
+        val naiveStart = System.nanoTime()
+        for (file in current.files.take(subset)) {
+            val oldFile = previous.files.find { it.fileName == file.fileName } ?: continue
+            for (chunk in file.chunks) {
+                oldFile.chunks.find { it.chunkID.contentEquals(chunk.chunkID) }
+            }
+        }
+        val naiveMillis = (System.nanoTime() - naiveStart) / 1e6
+
+        println("Linear lookups for $subset of the files took %.1f ms".format(naiveMillis))
+    }
+}
@@ -16,6 +16,10 @@ import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.EnumSet;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 public class FileServerListProviderTest extends TestBase {
 
@@ -118,4 +122,36 @@ public class FileServerListProviderTest extends TestBase {
         Files.deleteIfExists(file);
         Assertions.assertFalse(file.toFile().exists());
     }
+
+    @Test
+    public void testConcurrentUpdatesKeepEachOther() throws Exception {
+        var provider = new FileServerListProvider(tempDir.resolve("servertest.bin"));
+
+        var servers = List.of(ServerRecord.createServer("127.0.0.1", 8080, ProtocolTypes.TCP));
+        var latencies = List.of(new ServerLatency(servers.get(0), 20.0, Instant.now()));
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        try {
+            // each update reads what the other stored, updates that ran at the same time would drop it
+            Future<?> serverUpdates = executor.submit(() -> {
+                for (int i = 0; i < 200; i++) {
+                    provider.updateServerList(servers);
+                }
+            });
+            Future<?> latencyUpdates = executor.submit(() -> {
+                for (int i = 0; i < 200; i++) {
+                    provider.updateServerLatencies(latencies);
+                }
+            });
+
+            serverUpdates.get(30, TimeUnit.SECONDS);
+            latencyUpdates.get(30, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdown();
+        }
+
+        Assertions.assertEquals(1, provider.fetchServerList().size());
+        Assertions.assertEquals(1, provider.fetchServerLatencies().size());
+    }
 }
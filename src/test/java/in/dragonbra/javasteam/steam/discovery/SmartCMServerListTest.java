@@ -7,9 +7,12 @@ import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.net.ServerSocket;
 import java.net.UnknownHostException;
+import java.time.Instant;
 import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.List;
@@ -268,6 +271,76 @@ public class SmartCMServerListTest extends TestBase {
         Assertions.assertEquals(3, candidatesReturned.size(), "All candidates returned");
     }
 
+    @Test
+    public void getNextServerCandidate_PrefersLowestRtt_OfEquallyHealthyServers() throws UnknownHostException {
+        var provider = new MemoryServerListProvider();
+        var configuration = SteamConfiguration.create(b ->
+                b.withDirectoryFetch(false).withServerListProvider(provider));
+        serverList = new SmartCMServerList(configuration);
+
+        var far = new InetSocketAddress(InetAddress.getByName("10.0.0.1"), 27017);
+        var near = new InetSocketAddress(InetAddress.getByName("10.0.0.2"), 27017);
+        var farRecord = ServerRecord.createSocketServer(far);
+        var nearRecord = ServerRecord.createSocketServer(near);
+
+        // the round trip times a previous run stored with the provider
+        var now = Instant.now();
+        provider.updateServerLatencies(List.of(
+                new ServerLatency(ServerRecord.createServer(far.getHostString(), 27017, ProtocolTypes.TCP), 150.0, now),
+                new ServerLatency(ServerRecord.createServer(near.getHostString(), 27017, ProtocolTypes.TCP), 20.0, now)
+        ));
+        serverList.replaceList(List.of(farRecord, nearRecord));
+
+        var nextRecord = serverList.getNextServerCandidate(ProtocolTypes.TCP);
+        Assertions.assertEquals(nearRecord.getEndpoint(), nextRecord.getEndpoint());
+
+        // UDP wasn't measured, the list order decides
+        nextRecord = serverList.getNextServerCandidate(ProtocolTypes.UDP);
+        Assertions.assertEquals(farRecord.getEndpoint(), nextRecord.getEndpoint());
+
+        // health comes before latency
+        serverList.tryMark(nearRecord.getEndpoint(), ProtocolTypes.TCP, ServerQuality.BAD);
+        nextRecord = serverList.getNextServerCandidate(ProtocolTypes.TCP);
+        Assertions.assertEquals(farRecord.getEndpoint(), nextRecord.getEndpoint());
+    }
+
+    @Test
+    public void getNextServerCandidate_ProbesCandidates() throws IOException, InterruptedException {
+        var provider = new MemoryServerListProvider();
+        var configuration = SteamConfiguration.create(b ->
+                b.withDirectoryFetch(false).withServerListProvider(provider));
+        serverList = new SmartCMServerList(configuration);
+        serverList.setProbeCandidateCount(2);
+
+        int closedPort;
+        try (var closed = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            closedPort = closed.getLocalPort();
+        }
+
+        try (var listening = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            var unreachableRecord = ServerRecord.createSocketServer(
+                    new InetSocketAddress(InetAddress.getLoopbackAddress(), closedPort));
+            var reachableRecord = ServerRecord.createSocketServer(
+                    new InetSocketAddress(InetAddress.getLoopbackAddress(), listening.getLocalPort()));
+
+            serverList.replaceList(List.of(unreachableRecord, reachableRecord));
+
+            // nothing is known about the candidates, so the pick waits for the probes
+            var nextRecord = serverList.getNextServerCandidate(ProtocolTypes.TCP);
+            Assertions.assertEquals(reachableRecord.getEndpoint(), nextRecord.getEndpoint());
+
+            // the measured round trip times are stored with the provider
+            var expected = ServerRecord.createServer("127.0.0.1", listening.getLocalPort(), ProtocolTypes.TCP);
+
+            for (int i = 0; i < 50 && provider.fetchServerLatencies().isEmpty(); i++) {
+                TimeUnit.MILLISECONDS.sleep(100);
+            }
+
+            var latencies = provider.fetchServerLatencies();
+            Assertions.assertTrue(latencies.stream().anyMatch(latency -> latency.getRecord().equals(expected)));
+        }
+    }
+
     @Test
     public void tryMark_ReturnsTrue_IfServerInList() {
         var record = ServerRecord.createSocketServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 27015));
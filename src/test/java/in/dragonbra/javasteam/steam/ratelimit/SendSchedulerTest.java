@@ -0,0 +1,236 @@
+package in.dragonbra.javasteam.steam.ratelimit;
+
+import in.dragonbra.javasteam.TestBase;
+import in.dragonbra.javasteam.enums.EMsg;
+import in.dragonbra.javasteam.networking.steam3.Connection;
+import in.dragonbra.javasteam.networking.steam3.ProtocolTypes;
+import in.dragonbra.javasteam.util.event.TaskScheduler;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SendSchedulerTest extends TestBase {
+
+    private TaskScheduler taskScheduler;
+
+    private FakeConnection connection;
+
+    @BeforeEach
+    public void setUp() {
+        taskScheduler = new TaskScheduler(1, "SendSchedulerTest");
+        connection = new FakeConnection();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        taskScheduler.shutdown();
+    }
+
+    @Test
+    public void sendsRightAwayWithoutLimits() {
+        SendScheduler scheduler = new SendScheduler(SendRateLimits.builder().build(), taskScheduler);
+
+        scheduler.send(connection, EMsg.ClientPICSProductInfoRequest, null, new byte[]{1});
+        scheduler.send(connection, EMsg.ClientHeartBeat, null, new byte[]{2});
+
+        assertEquals(1, connection.sent.poll()[0]);
+        assertEquals(2, connection.sent.poll()[0]);
+        assertEquals(0, scheduler.getQueuedCount());
+        assertEquals(1, scheduler.getSentCount(SendPriority.LOW));
+        assertEquals(1, scheduler.getSentCount(SendPriority.HIGH));
+    }
+
+    @Test
+    public void pacesMessagesByTheirLimit() throws InterruptedException {
+        SendRateLimits limits = SendRateLimits.builder()
+                .limit(EMsg.ClientPICSProductInfoRequest, 20, 2)
+                .build();
+        SendScheduler scheduler = new SendScheduler(limits, taskScheduler);
+
+        long start = System.nanoTime();
+
+        for (int i = 0; i < 6; i++) {
+            scheduler.send(connection, EMsg.ClientPICSProductInfoRequest, null, new byte[]{(byte) i});
+        }
+
+        // the burst goes out at once, the rest at 20 per second
+        assertEquals(2, connection.sent.size());
+        assertEquals(4, scheduler.getQueuedCount());
+
+        for (int i = 0; i < 6; i++) {
+            assertEquals(i, connection.poll()[0]);
+        }
+
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(elapsedMillis >= 180, elapsedMillis + " ms");
+
+        assertEquals(0, scheduler.getQueuedCount());
+        assertEquals(6, scheduler.getSentCount(SendPriority.LOW));
+        assertTrue(scheduler.getMaxQueueDelayMillis(SendPriority.LOW) >= 180);
+        assertTrue(scheduler.getAverageQueueDelayMillis(SendPriority.LOW) > 0);
+    }
+
+    @Test
+    public void higherPriorityGoesFirst() throws InterruptedException {
+        SendRateLimits limits = SendRateLimits.builder()
+                .limitAll(50, 1)
+                .build();
+        SendScheduler scheduler = new SendScheduler(limits, taskScheduler);
+
+        scheduler.send(connection, EMsg.ClientPICSProductInfoRequest, null, new byte[]{1});
+        scheduler.send(connection, EMsg.ClientPICSProductInfoRequest, null, new byte[]{2});
+        scheduler.send(connection, EMsg.ClientGetAppOwnershipTicket, null, new byte[]{3});
+        scheduler.send(connection, EMsg.ClientGetAppOwnershipTicket, null, new byte[]{4});
+
+        // the limit for all messages doesn't hold back heartbeats
+        scheduler.send(connection, EMsg.ClientHeartBeat, null, new byte[]{5});
+
+        assertEquals(1, connection.poll()[0]);
+        assertEquals(5, connection.poll()[0]);
+        assertEquals(3, connection.poll()[0]);
+        assertEquals(4, connection.poll()[0]);
+        assertEquals(2, connection.poll()[0]);
+    }
+
+    @Test
+    public void limitedMessagesDontHoldBackOthers() throws InterruptedException {
+        SendRateLimits limits = SendRateLimits.builder()
+                .limit(EMsg.ClientPICSProductInfoRequest, 5, 1)
+                .limitService("Player", 5, 1)
+                .build();
+        SendScheduler scheduler = new SendScheduler(limits, taskScheduler);
+
+        scheduler.send(connection, EMsg.ClientPICSProductInfoRequest, null, new byte[]{1});
+        scheduler.send(connection, EMsg.ClientPICSProductInfoRequest, null, new byte[]{2});
+        scheduler.send(connection, EMsg.ServiceMethodCallFromClient, "Player.GetGameBadgeLevels#1", new byte[]{3});
+        scheduler.send(connection, EMsg.ServiceMethodCallFromClient, "Player.GetNickname#1", new byte[]{4});
+        scheduler.send(connection, EMsg.ServiceMethodCallFromClient, "Econ.GetInventoryItemsWithDescriptions#1",
+                new byte[]{5});
+        scheduler.send(connection, EMsg.ClientRequestFriendData, null, new byte[]{6});
+
+        assertEquals(1, connection.sent.poll()[0]);
+        assertEquals(3, connection.sent.poll()[0]);
+        assertEquals(5, connection.sent.poll()[0]);
+        assertEquals(6, connection.sent.poll()[0]);
+        assertEquals(2, scheduler.getQueuedCount());
+
+        // the messages which waited for the next permit of their limit
+        byte first = connection.poll()[0];
+        byte second = connection.poll()[0];
+        assertEquals(6, first + second);
+    }
+
+    @Test
+    public void clearDropsWaitingMessages() throws InterruptedException {
+        SendRateLimits limits = SendRateLimits.builder()
+                .limit(EMsg.ClientPICSProductInfoRequest, 20, 1)
+                .build();
+        SendScheduler scheduler = new SendScheduler(limits, taskScheduler);
+
+        scheduler.send(connection, EMsg.ClientPICSProductInfoRequest, null, new byte[]{1});
+        scheduler.send(connection, EMsg.ClientPICSProductInfoRequest, null, new byte[]{2});
+        scheduler.clear();
+
+        assertEquals(1, connection.poll()[0]);
+        assertEquals(0, scheduler.getQueuedCount());
+        assertNull(connection.sent.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void blockedConnectionDoesntHoldUpTheTaskScheduler() throws InterruptedException {
+        SendRateLimits limits = SendRateLimits.builder()
+                .limit(EMsg.ClientPICSProductInfoRequest, 20, 1)
+                .build();
+        SendScheduler scheduler = new SendScheduler(limits, taskScheduler);
+
+        CountDownLatch blocking = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        FakeConnection blocked = new FakeConnection() {
+            @Override
+            public void send(byte[] data) {
+                super.send(data);
+
+                if (data[0] == 2) {
+                    blocking.countDown();
+
+                    try {
+                        release.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        };
+
+        try {
+            scheduler.send(blocked, EMsg.ClientPICSProductInfoRequest, null, new byte[]{1});
+            scheduler.send(blocked, EMsg.ClientPICSProductInfoRequest, null, new byte[]{2});
+
+            assertEquals(1, blocked.poll()[0]);
+            assertEquals(2, blocked.poll()[0]);
+            assertTrue(blocking.await(5, TimeUnit.SECONDS));
+
+            // the message that waited is stuck in its connection, the scheduler's only thread still runs other tasks
+            CountDownLatch ran = new CountDownLatch(1);
+            taskScheduler.schedule(ran::countDown, 0);
+            assertTrue(ran.await(5, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void serviceOfTargetJobName() {
+        assertEquals("Player", SendScheduler.getService("Player.GetGameBadgeLevels#1"));
+        assertEquals("Player", SendScheduler.getService("Player"));
+        assertNull(SendScheduler.getService(null));
+    }
+
+    private static class FakeConnection extends Connection {
+
+        private final BlockingQueue<byte[]> sent = new LinkedBlockingQueue<>();
+
+        private byte[] poll() throws InterruptedException {
+            byte[] data = sent.poll(5, TimeUnit.SECONDS);
+            assertNotNull(data);
+            return data;
+        }
+
+        @Override
+        public void connect(InetSocketAddress endPoint, int timeout) {
+        }
+
+        @Override
+        public void disconnect(boolean userInitiated) {
+        }
+
+        @Override
+        public void send(byte[] data) {
+            sent.add(data);
+        }
+
+        @Override
+        public InetAddress getLocalIP() {
+            return null;
+        }
+
+        @Override
+        public InetSocketAddress getCurrentEndPoint() {
+            return null;
+        }
+
+        @Override
+        public ProtocolTypes getProtocolTypes() {
+            return ProtocolTypes.TCP;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package `in`.dragonbra.javasteam.steam.steamclient
+
+import `in`.dragonbra.javasteam.steam.steamclient.callbackmgr.CallbackMsg
+import `in`.dragonbra.javasteam.types.AsyncJobSingle
+import `in`.dragonbra.javasteam.types.JobID
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Tag
+import org.junit.jupiter.api.Test
+
+class AsyncJobManagerTest {
+
+    internal class Callback : CallbackMsg()
+
+    @Test
+    fun onlyExpiredJobsAreCancelled() {
+        val client = SteamClient()
+
+        val jobs = (1L..100_000L).map { AsyncJobSingle<Callback>(client, JobID(it)) }
+        val expired = jobs.filter { it.jobID.value % 100 == 0L }
+        expired.forEach { it.timeout = 0 }
+
+        client.jobManager.cancelTimedOutJobs()
+
+        Assertions.assertEquals(jobs.size - expired.size, client.jobManager.asyncJobs.size)
+        expired.forEach { Assertions.assertTrue(it.toFuture().isCancelled) }
+
+        // a second pass has nothing left to expire
+        client.jobManager.cancelTimedOutJobs()
+        Assertions.assertEquals(jobs.size - expired.size, client.jobManager.asyncJobs.size)
+    }
+
+    @Test
+    @Tag("benchmark")
+    fun expiringFewOfManyJobs() {
+        val client = SteamClient()
+
+        val jobs = (1L..100_000L).map { AsyncJobSingle<Callback>(client, JobID(it)) }
+        val expired = jobs.filter { it.jobID.value % 100 == 0L }
+        expired.forEach { it.timeout = 0 }
+
+        val start = System.nanoTime()
+        client.jobManager.cancelTimedOutJobs()
+        val elapsedMillis = (System.nanoTime() - start) / 1_000_000.0
+
+        // the passes that find nothing are the common case, they run once a second
+        val idleStart = System.nanoTime()
+        repeat(1000) { client.jobManager.cancelTimedOutJobs() }
+        val idleMicros = (System.nanoTime() - idleStart) / 1000.0 / 1000
+
+        println("Expired ${expired.size} of ${jobs.size} outstanding jobs in $elapsedMillis ms")
+        println("A pass without expired jobs took $idleMicros µs")
+
+        Assertions.assertEquals(jobs.size - expired.size, client.jobManager.asyncJobs.size)
+    }
+
+    @Test
+    fun heartbeatMovesDeadline() {
+        val client = SteamClient()
+
+        val asyncJob = AsyncJobSingle<Callback>(client, JobID(123)).apply {
+            timeout = 50
+        }
+
+        asyncJob.heartbeat()
+        Thread.sleep(100)
+
+        client.jobManager.cancelTimedOutJobs()
+
+        Assertions.assertTrue(client.jobManager.asyncJobs.containsKey(asyncJob.jobID))
+        Assertions.assertFalse(asyncJob.toFuture().isDone)
+    }
+
+    @Test
+    fun shorterTimeoutExpiresEarlier() {
+        val client = SteamClient()
+
+        val asyncJob = AsyncJobSingle<Callback>(client, JobID(123))
+        asyncJob.timeout = 10
+
+        Thread.sleep(50)
+        client.jobManager.cancelTimedOutJobs()
+
+        Assertions.assertFalse(client.jobManager.asyncJobs.containsKey(asyncJob.jobID))
+        Assertions.assertTrue(asyncJob.toFuture().isCancelled)
+    }
+
+    @Test
+    fun completedJobIsNotCancelledAtItsDeadline() {
+        val client = SteamClient()
+
+        val asyncJob = AsyncJobSingle<Callback>(client, JobID(123)).apply {
+            timeout = 10
+        }
+
+        client.postCallback(Callback().apply { jobID = JobID(123) })
+
+        Thread.sleep(50)
+        client.jobManager.cancelTimedOutJobs()
+
+        Assertions.assertTrue(asyncJob.toFuture().isDone)
+        Assertions.assertFalse(asyncJob.toFuture().isCancelled)
+    }
+}
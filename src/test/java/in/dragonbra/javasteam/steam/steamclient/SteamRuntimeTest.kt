@@ -0,0 +1,75 @@
+package `in`.dragonbra.javasteam.steam.steamclient
+
+import `in`.dragonbra.javasteam.steam.steamclient.callbackmgr.CallbackMsg
+import `in`.dragonbra.javasteam.steam.steamclient.configuration.SteamConfiguration
+import `in`.dragonbra.javasteam.types.AsyncJob
+import `in`.dragonbra.javasteam.types.AsyncJobSingle
+import `in`.dragonbra.javasteam.types.JobID
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+
+class SteamRuntimeTest {
+
+    private lateinit var runtime: SteamRuntime
+
+    @BeforeEach
+    fun setUp() {
+        runtime = SteamRuntime(ioThreads = 1, schedulerThreads = 2)
+    }
+
+    @AfterEach
+    fun tearDown() {
+        runtime.close()
+    }
+
+    @Test
+    fun threadCountDoesNotGrowWithClients() {
+        val configuration = SteamConfiguration.create { it.withRuntime(runtime) }
+
+        val samples = listOf(10, 100, 1000)
+        val threadsPerSample = mutableListOf<Int>()
+        val clients = mutableListOf<SteamClient>()
+
+        for (count in samples) {
+            while (clients.size < count) {
+                clients += SteamClient(configuration).apply {
+                    jobManager.setTimeoutsEnabled(true)
+                }
+            }
+
+            threadsPerSample += Thread.activeCount()
+        }
+
+        clients.forEach { it.jobManager.setTimeoutsEnabled(false) }
+
+        // 100x the clients must not mean more threads, timer threads would add one thread per client
+        Assertions.assertTrue(
+            threadsPerSample.last() - threadsPerSample.first() < 10,
+            "Thread count grew from ${threadsPerSample.first()} to ${threadsPerSample.last()}"
+        )
+    }
+
+    @Test
+    fun jobTimeoutsRunOnRuntime() {
+        val configuration = SteamConfiguration.create { it.withRuntime(runtime) }
+
+        val client = SteamClient(configuration).apply {
+            jobManager.setTimeoutsEnabled(true)
+        }
+
+        val job: AsyncJob = AsyncJobSingle<CallbackMsg>(client, JobID(123)).apply {
+            timeout = 100
+        }
+
+        Thread.sleep(2000)
+
+        Assertions.assertFalse(client.jobManager.asyncJobs.containsKey(job.jobID))
+    }
+
+    @Test
+    fun defaultConfigurationUsesDefaultRuntime() {
+        Assertions.assertSame(SteamRuntime.getDefault(), SteamConfiguration.createDefault().runtime)
+    }
+}
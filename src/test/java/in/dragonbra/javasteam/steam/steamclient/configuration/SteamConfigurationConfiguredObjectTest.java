@@ -5,6 +5,9 @@ import in.dragonbra.javasteam.enums.EUniverse;
 import in.dragonbra.javasteam.networking.steam3.ProtocolTypes;
 import in.dragonbra.javasteam.steam.discovery.IServerListProvider;
 import in.dragonbra.javasteam.steam.discovery.ServerRecord;
+import in.dragonbra.javasteam.steam.ratelimit.SendRateLimits;
+import in.dragonbra.javasteam.steam.steamclient.SteamRuntime;
+import in.dragonbra.javasteam.util.crypto.SymmetricCiphers;
 import okhttp3.OkHttpClient;
 import org.jetbrains.annotations.NotNull;
 import org.junit.jupiter.api.Assertions;
@@ -20,6 +23,10 @@ import java.util.concurrent.TimeUnit;
  */
 public class SteamConfigurationConfiguredObjectTest {
 
+    private static final SteamRuntime runtime = new SteamRuntime(1, 1);
+
+    private static final SendRateLimits sendRateLimits = SendRateLimits.builder().limitAll(10, 5).build();
+
     private final SteamConfiguration configuration = SteamConfiguration.create(builder ->
             builder.withDirectoryFetch(false)
                     .withCellID(123)
@@ -27,6 +34,11 @@ public class SteamConfigurationConfiguredObjectTest {
                     .withDefaultPersonaStateFlags(EClientPersonaStateFlag.SourceID)
                     .withHttpClient(new OkHttpClient.Builder().connectTimeout(1, TimeUnit.MINUTES).build())
                     .withProtocolTypes(EnumSet.of(ProtocolTypes.WEB_SOCKET, ProtocolTypes.UDP))
+                    .withNonBlockingTcp(true)
+                    .withNonBlockingUdp(true)
+                    .withRuntime(runtime)
+                    .withSendRateLimits(sendRateLimits)
+                    .withCipherProvider(SymmetricCiphers.Provider.SECURITY_PROVIDER)
                     .withServerListProvider(new CustomServerListProvider())
                     .withUniverse(EUniverse.Internal)
                     .withWebAPIBaseAddress("https://foo.bar.com/api/")
@@ -78,6 +90,31 @@ public class SteamConfigurationConfiguredObjectTest {
         Assertions.assertEquals(EnumSet.of(ProtocolTypes.WEB_SOCKET, ProtocolTypes.UDP), configuration.getProtocolTypes());
     }
 
+    @Test
+    public void NonBlockingTcpIsConfigured() {
+        Assertions.assertTrue(configuration.isNonBlockingTcp());
+    }
+
+    @Test
+    public void NonBlockingUdpIsConfigured() {
+        Assertions.assertTrue(configuration.isNonBlockingUdp());
+    }
+
+    @Test
+    public void SendRateLimitsAreConfigured() {
+        Assertions.assertSame(sendRateLimits, configuration.getSendRateLimits());
+    }
+
+    @Test
+    public void CipherProviderIsConfigured() {
+        Assertions.assertEquals(SymmetricCiphers.Provider.SECURITY_PROVIDER, configuration.getCipherProvider());
+    }
+
+    @Test
+    public void RuntimeIsConfigured() {
+        Assertions.assertSame(runtime, configuration.getRuntime());
+    }
+
     @Test
     public void UniverseIsConfigured() {
         Assertions.assertEquals(EUniverse.Internal, configuration.getUniverse());
@@ -4,6 +4,8 @@ import in.dragonbra.javasteam.enums.EClientPersonaStateFlag;
 import in.dragonbra.javasteam.enums.EUniverse;
 import in.dragonbra.javasteam.networking.steam3.ProtocolTypes;
 import in.dragonbra.javasteam.steam.discovery.MemoryServerListProvider;
+import in.dragonbra.javasteam.steam.steamclient.SteamRuntime;
+import in.dragonbra.javasteam.util.crypto.SymmetricCiphers;
 import okhttp3.OkHttpClient;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
@@ -70,6 +72,36 @@ public class SteamConfigurationDefaultTest {
         Assertions.assertEquals(EnumSet.of(ProtocolTypes.TCP, ProtocolTypes.WEB_SOCKET), configuration.getProtocolTypes());
     }
 
+    @Test
+    public void blockingTcpByDefault() {
+        Assertions.assertFalse(configuration.isNonBlockingTcp());
+    }
+
+    @Test
+    public void blockingUdpByDefault() {
+        Assertions.assertFalse(configuration.isNonBlockingUdp());
+    }
+
+    @Test
+    public void defaultRuntime() {
+        Assertions.assertSame(SteamRuntime.getDefault(), configuration.getRuntime());
+    }
+
+    @Test
+    public void webSocketClientOfTheRuntime() {
+        Assertions.assertSame(SteamRuntime.getDefault().getWebSocketClient(), configuration.getWebSocketClient());
+    }
+
+    @Test
+    public void noSendRateLimits() {
+        Assertions.assertNull(configuration.getSendRateLimits());
+    }
+
+    @Test
+    public void defaultCipherProvider() {
+        Assertions.assertEquals(SymmetricCiphers.Provider.DEFAULT, configuration.getCipherProvider());
+    }
+
     @Test
     public void publicUniverse() {
         Assertions.assertEquals(EUniverse.Public, configuration.getUniverse());
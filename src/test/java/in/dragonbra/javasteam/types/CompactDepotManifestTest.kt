@@ -0,0 +1,266 @@
+package `in`.dragonbra.javasteam.types
+
+import com.google.protobuf.ByteString
+import `in`.dragonbra.javasteam.enums.EDepotFileFlag
+import `in`.dragonbra.javasteam.protobufs.steamclient.ContentManifest.ContentManifestMetadata
+import `in`.dragonbra.javasteam.protobufs.steamclient.ContentManifest.ContentManifestPayload
+import `in`.dragonbra.javasteam.util.crypto.CryptoHelper
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Tag
+import org.junit.jupiter.api.Test
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.util.Base64
+
+class CompactDepotManifestTest {
+
+    companion object {
+        private fun createManifest(fileCount: Int, chunksPerFile: Int): DepotManifest =
+            DepotManifest.deserialize(createManifestData(fileCount, chunksPerFile, null))
+
+        /**
+         * @param filenameKey the key to encrypt the file names with, or null to leave them unencrypted.
+         */
+        private fun createManifestData(fileCount: Int, chunksPerFile: Int, filenameKey: ByteArray?): ByteArray {
+            val payload = ContentManifestPayload.newBuilder()
+
+            for (i in 0 until fileCount) {
+                val name = "content\\dir${i % 100}\\file$i.bin"
+
+                val mapping = ContentManifestPayload.FileMapping.newBuilder().apply {
+                    filename = if (filenameKey == null) {
+                        name
+                    } else {
+                        val encrypted = CryptoHelper.symmetricEncrypt(name.toByteArray(Charsets.UTF_8), filenameKey)
+                        Base64.getEncoder().encodeToString(encrypted)
+                    }
+                    size = chunksPerFile * 1024L * 1024L
+                    flags = if (i % 3 == 0) EDepotFileFlag.Executable.code() else 0
+                    shaFilename = ByteString.copyFrom(ByteArray(20) { (i + it).toByte() })
+                    shaContent = ByteString.copyFrom(ByteArray(20) { (i * it).toByte() })
+                    if (i % 1000 == 0) {
+                        linktarget = "target$i"
+                    }
+                }
+
+                for (c in 0 until chunksPerFile) {
+                    mapping.addChunks(
+                        ContentManifestPayload.FileMapping.ChunkData.newBuilder().apply {
+                            sha = ByteString.copyFrom(ByteArray(20) { (i xor (c * 31 + it)).toByte() })
+                            crc = i * 31 + c
+                            offset = c * 1024L * 1024L
+                            cbOriginal = 1024 * 1024
+                            cbCompressed = 512 * 1024 + c
+                        }
+                    )
+                }
+
+                payload.addMappings(mapping)
+            }
+
+            val metadata = ContentManifestMetadata.newBuilder().apply {
+                depotId = 731
+                gidManifest = 1234567890L
+                creationTime = 1700000000
+                cbDiskOriginal = fileCount * chunksPerFile * 1024L * 1024L
+                cbDiskCompressed = fileCount * chunksPerFile * 512L * 1024L
+                filenamesEncrypted = filenameKey != null
+            }
+
+            val payloadData = payload.build().toByteArray()
+            val metadataData = metadata.build().toByteArray()
+
+            val data = ByteBuffer.allocate(payloadData.size + metadataData.size + 28).order(ByteOrder.LITTLE_ENDIAN)
+            data.putInt(DepotManifest.PROTOBUF_PAYLOAD_MAGIC).putInt(payloadData.size).put(payloadData)
+            data.putInt(DepotManifest.PROTOBUF_METADATA_MAGIC).putInt(metadataData.size).put(metadataData)
+            data.putInt(DepotManifest.PROTOBUF_SIGNATURE_MAGIC).putInt(0)
+            data.putInt(DepotManifest.PROTOBUF_ENDOFMANIFEST_MAGIC)
+
+            return data.array()
+        }
+
+        private fun assertSameFiles(manifest: DepotManifest, compact: CompactDepotManifest) {
+            Assertions.assertEquals(manifest.files.size, compact.files.size)
+
+            manifest.files.zip(compact.files).forEach { (expected, actual) ->
+                Assertions.assertEquals(expected.fileName, actual.fileName)
+                Assertions.assertArrayEquals(expected.fileNameHash, actual.fileNameHash)
+                Assertions.assertArrayEquals(expected.fileHash, actual.fileHash)
+                Assertions.assertEquals(expected.linkTarget, actual.linkTarget)
+                Assertions.assertEquals(expected.flags, actual.flags)
+                Assertions.assertEquals(expected.totalSize, actual.totalSize)
+                Assertions.assertEquals(expected.chunks.size, actual.chunks.size)
+
+                expected.chunks.zip(actual.chunks).forEach { (expectedChunk, actualChunk) ->
+                    Assertions.assertArrayEquals(expectedChunk.chunkID, actualChunk.chunkID)
+                    Assertions.assertEquals(expectedChunk.checksum, actualChunk.checksum)
+                    Assertions.assertEquals(expectedChunk.offset, actualChunk.offset)
+                    Assertions.assertEquals(expectedChunk.compressedLength, actualChunk.compressedLength)
+                    Assertions.assertEquals(expectedChunk.uncompressedLength, actualChunk.uncompressedLength)
+                }
+            }
+        }
+
+        private fun usedMemory(): Long {
+            val runtime = Runtime.getRuntime()
+            repeat(3) {
+                System.gc()
+                Thread.sleep(50)
+            }
+            return runtime.totalMemory() - runtime.freeMemory()
+        }
+    }
+
+    @Test
+    fun viewsMatchManifest() {
+        val manifest = createManifest(200, 3)
+        val compact = CompactDepotManifest.from(manifest)
+
+        Assertions.assertEquals(manifest.depotID, compact.depotID)
+        Assertions.assertEquals(manifest.manifestGID, compact.manifestGID)
+        Assertions.assertEquals(manifest.creationTime, compact.creationTime)
+        Assertions.assertEquals(manifest.totalUncompressedSize, compact.totalUncompressedSize)
+        Assertions.assertEquals(200, compact.fileCount)
+        Assertions.assertEquals(600, compact.chunkCount)
+        assertSameFiles(manifest, compact)
+
+        Assertions.assertArrayEquals(manifest.toByteArray(), compact.toByteArray())
+    }
+
+    @Test
+    fun viewsAreReadOnly() {
+        val compact = CompactDepotManifest.from(createManifest(2, 2))
+
+        // hashes are copies, changing them doesn't change the manifest
+        compact.files[1].chunks[1].chunkID[0] = 0x55
+        Assertions.assertNotEquals(0x55.toByte(), compact.files[1].chunks[1].chunkID[0])
+        compact.files[1].fileHash[0] = 0x55
+        Assertions.assertNotEquals(0x55.toByte(), compact.files[1].fileHash[0])
+
+        Assertions.assertThrows(UnsupportedOperationException::class.java) { compact.files[1].chunks.add(ChunkData()) }
+        Assertions.assertThrows(UnsupportedOperationException::class.java) { compact.files[1].chunks.removeAt(0) }
+
+        Assertions.assertThrows(IndexOutOfBoundsException::class.java) { compact.files[2] }
+        Assertions.assertThrows(IndexOutOfBoundsException::class.java) { compact.files[0].chunks[2] }
+    }
+
+    @Test
+    fun deserializesIntoArrays() {
+        val data = createManifestData(300, 4, null)
+        val manifest = DepotManifest.deserialize(data)
+        val compact = CompactDepotManifest.deserialize(data)
+
+        Assertions.assertEquals(manifest.depotID, compact.depotID)
+        Assertions.assertEquals(manifest.manifestGID, compact.manifestGID)
+        Assertions.assertEquals(manifest.creationTime, compact.creationTime)
+        Assertions.assertEquals(manifest.totalCompressedSize, compact.totalCompressedSize)
+        Assertions.assertEquals(manifest.encryptedCRC, compact.encryptedCRC)
+        Assertions.assertFalse(compact.filenamesEncrypted)
+        Assertions.assertEquals(1200, compact.chunkCount)
+        assertSameFiles(manifest, compact)
+
+        Assertions.assertArrayEquals(manifest.toByteArray(), compact.toByteArray())
+    }
+
+    @Test
+    fun rejectsIncompleteManifest() {
+        val data = createManifestData(1, 1, null)
+
+        // the end of manifest marker right after the payload
+        val payloadLength = ByteBuffer.wrap(data, 4, 4).order(ByteOrder.LITTLE_ENDIAN).int
+        val truncated = data.copyOf(payloadLength + 12)
+        ByteBuffer.wrap(truncated).order(ByteOrder.LITTLE_ENDIAN)
+            .putInt(payloadLength + 8, DepotManifest.PROTOBUF_ENDOFMANIFEST_MAGIC)
+
+        Assertions.assertThrows(NoSuchElementException::class.java) { CompactDepotManifest.deserialize(truncated) }
+    }
+
+    @Test
+    fun viewsCopyIntoFileData() {
+        val manifest = createManifest(3, 2)
+        val fileData = FileData(CompactDepotManifest.from(manifest).files[2])
+
+        Assertions.assertEquals(manifest.files[2].fileName, fileData.fileName)
+        Assertions.assertEquals(manifest.files[2].flags, fileData.flags)
+        Assertions.assertArrayEquals(manifest.files[2].chunks[1].chunkID, fileData.chunks[1].chunkID)
+        Assertions.assertEquals(manifest.files[2].chunks[1].offset, fileData.chunks[1].offset)
+
+        // the copy has its own chunk list
+        fileData.chunks.removeAt(0)
+        Assertions.assertEquals(1, fileData.chunks.size)
+    }
+
+    @Test
+    fun decryptsFilenames() {
+        val key = CryptoHelper.generateRandomBlock(32)
+        val data = createManifestData(50, 2, key)
+
+        val manifest = DepotManifest.deserialize(data)
+        val compact = CompactDepotManifest.deserialize(data)
+        Assertions.assertTrue(compact.filenamesEncrypted)
+
+        // a wrong key leaves the names as they are
+        val encryptedName = compact.files[0].fileName
+        Assertions.assertFalse(compact.decryptFilenames(CryptoHelper.generateRandomBlock(32)))
+        Assertions.assertTrue(compact.filenamesEncrypted)
+        Assertions.assertEquals(encryptedName, compact.files[0].fileName)
+
+        val earlierFile = compact.files[0]
+        val earlierChunkID = earlierFile.chunks[1].chunkID
+
+        Assertions.assertTrue(manifest.decryptFilenames(key))
+        Assertions.assertTrue(compact.decryptFilenames(key))
+        Assertions.assertFalse(compact.filenamesEncrypted)
+
+        // files read before the reorder keep their own chunks
+        Assertions.assertArrayEquals(earlierChunkID, earlierFile.chunks[1].chunkID)
+
+        // the files are sorted by their decrypted names, with their hashes and chunks
+        manifest.files.zip(compact.files).forEach { (expected, actual) ->
+            Assertions.assertEquals(expected.fileName, actual.fileName)
+            Assertions.assertArrayEquals(expected.fileHash, actual.fileHash)
+            Assertions.assertEquals(expected.chunks.size, actual.chunks.size)
+
+            expected.chunks.zip(actual.chunks).forEach { (expectedChunk, actualChunk) ->
+                Assertions.assertArrayEquals(expectedChunk.chunkID, actualChunk.chunkID)
+                Assertions.assertEquals(expectedChunk.checksum, actualChunk.checksum)
+            }
+        }
+
+        Assertions.assertArrayEquals(manifest.toByteArray(), compact.toByteArray())
+    }
+
+    @Test
+    @Tag("benchmark")
+    fun footprint() {
+        // 500k chunks
+        val fileCount = 50_000
+        val chunksPerFile = 10
+
+        val data = createManifestData(fileCount, chunksPerFile, null)
+
+        val baseline = usedMemory()
+        var manifest: DepotManifest? = DepotManifest.deserialize(data)
+        val manifestSize = usedMemory() - baseline
+
+        @Suppress("UNUSED_VALUE")
+        manifest = null
+        usedMemory()
+
+        // parsed straight into the arrays, without a DepotManifest in between
+        val compact = CompactDepotManifest.deserialize(data)
+        val compactSize = usedMemory() - baseline
+
+        println(
+            "%d files, %d chunks: DepotManifest %.1f MiB, CompactDepotManifest %.1f MiB".format(
+                compact.fileCount,
+                compact.chunkCount,
+                manifestSize / 1048576.0,
+                compactSize / 1048576.0
+            )
+        )
+
+        Assertions.assertEquals(fileCount * chunksPerFile, compact.chunkCount)
+        Assertions.assertTrue(compactSize < manifestSize * 3 / 4, "$compactSize bytes vs $manifestSize bytes")
+    }
+}
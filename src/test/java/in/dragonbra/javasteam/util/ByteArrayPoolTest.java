@@ -0,0 +1,67 @@
+package in.dragonbra.javasteam.util;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class ByteArrayPoolTest {
+
+    @Test
+    public void rentRoundsUpToSizeClass() {
+        ByteArrayPool pool = new ByteArrayPool(1 << 20, 4, 1 << 22);
+
+        Assertions.assertEquals(4096, pool.rent(0).length);
+        Assertions.assertEquals(4096, pool.rent(4096).length);
+        Assertions.assertEquals(8192, pool.rent(4097).length);
+        Assertions.assertEquals(1 << 20, pool.rent((1 << 20) - 1).length);
+    }
+
+    @Test
+    public void releasedArrayIsReused() {
+        ByteArrayPool pool = new ByteArrayPool(1 << 20, 4, 1 << 22);
+
+        byte[] array = pool.rent(100_000);
+        pool.release(array);
+
+        Assertions.assertSame(array, pool.rent(70_000));
+        Assertions.assertNotSame(array, pool.rent(70_000));
+    }
+
+    @Test
+    public void foreignArraysAreIgnored() {
+        ByteArrayPool pool = new ByteArrayPool(1 << 20, 4, 1 << 22);
+
+        byte[] odd = new byte[5000];
+        pool.release(odd);
+        pool.release(null);
+
+        Assertions.assertNotSame(odd, pool.rent(5000));
+    }
+
+    @Test
+    public void largeArraysAreNotPooled() {
+        ByteArrayPool pool = new ByteArrayPool(1 << 16, 4, 1 << 22);
+
+        byte[] array = pool.rent((1 << 16) + 1);
+        Assertions.assertEquals((1 << 16) + 1, array.length);
+
+        pool.release(array);
+        Assertions.assertNotSame(array, pool.rent((1 << 16) + 1));
+    }
+
+    @Test
+    public void bucketsAreBounded() {
+        // two 1 MiB arrays fit in the byte limit
+        ByteArrayPool pool = new ByteArrayPool(1 << 20, 4, 1 << 21);
+
+        byte[] first = pool.rent(1 << 20);
+        byte[] second = pool.rent(1 << 20);
+        byte[] third = pool.rent(1 << 20);
+        pool.release(first);
+        pool.release(second);
+        pool.release(third);
+
+        Assertions.assertSame(second, pool.rent(1 << 20));
+        Assertions.assertSame(first, pool.rent(1 << 20));
+        Assertions.assertNotSame(third, pool.rent(1 << 20));
+    }
+}
@@ -0,0 +1,94 @@
+package in.dragonbra.javasteam.util;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+public class GzipDecompressorTest {
+
+    private static byte[] createData(int length) {
+        byte[] data = new byte[length];
+        Random random = new Random(42);
+        for (int i = 0; i < length; i++) {
+            // compressible, but not trivially
+            data[i] = (byte) (random.nextInt(16) + 'a');
+        }
+        return data;
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(baos)) {
+            gzip.write(data);
+        }
+        return baos.toByteArray();
+    }
+
+    @Test
+    public void decompressReusesInflater() throws IOException {
+        GzipDecompressor decompressor = new GzipDecompressor();
+
+        for (int length : new int[]{0, 1, 1000, 256 * 1024}) {
+            byte[] data = createData(length);
+            byte[] output = new byte[length + 16];
+
+            int result = decompressor.decompress(ByteBuffer.wrap(gzip(data)), output);
+
+            Assertions.assertEquals(length, result);
+            Assertions.assertArrayEquals(data, Arrays.copyOf(output, result));
+        }
+    }
+
+    @Test
+    public void decompressAdvancesInput() throws IOException {
+        byte[] data = createData(100);
+        byte[] compressed = gzip(data);
+
+        ByteBuffer input = ByteBuffer.allocate(compressed.length + 4);
+        input.put(compressed).flip();
+
+        new GzipDecompressor().decompress(input, new byte[100]);
+
+        Assertions.assertEquals(compressed.length, input.position());
+    }
+
+    @Test
+    public void outputTooSmall() throws IOException {
+        byte[] compressed = gzip(createData(1000));
+
+        Assertions.assertThrows(ZipException.class,
+                () -> new GzipDecompressor().decompress(ByteBuffer.wrap(compressed), new byte[999]));
+    }
+
+    @Test
+    public void truncatedInput() throws IOException {
+        byte[] compressed = gzip(createData(1000));
+        byte[] truncated = Arrays.copyOf(compressed, compressed.length - 4);
+
+        Assertions.assertThrows(EOFException.class,
+                () -> new GzipDecompressor().decompress(ByteBuffer.wrap(truncated), new byte[1000]));
+    }
+
+    @Test
+    public void checksumMismatch() throws IOException {
+        byte[] compressed = gzip(createData(1000));
+        compressed[compressed.length - 8] ^= 0x01;
+
+        Assertions.assertThrows(ZipException.class,
+                () -> new GzipDecompressor().decompress(ByteBuffer.wrap(compressed), new byte[1000]));
+    }
+
+    @Test
+    public void notGzip() {
+        Assertions.assertThrows(ZipException.class,
+                () -> new GzipDecompressor().decompress(ByteBuffer.wrap(new byte[32]), new byte[32]));
+    }
+}
@@ -3,6 +3,9 @@ package in.dragonbra.javasteam.util;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.util.Arrays;
+import java.util.Random;
+
 /**
  * @author lngtr
  * @since 2019-01-15
@@ -18,4 +21,30 @@ public class UtilsTest {
         long result = Utils.crc32("test_string");
         Assertions.assertEquals(0x0967B587, result);
     }
+
+    @Test
+    public void adlerHashMatchesPerByteReduction() {
+        Random random = new Random(42);
+
+        for (int length : new int[]{0, 1, 3799, 3800, 3801, 65536, 1 << 20}) {
+            byte[] data = new byte[length + 7];
+            random.nextBytes(data);
+
+            // all 0xFF is the worst case for overflowing the sums
+            byte[] ones = new byte[length];
+            Arrays.fill(ones, (byte) 0xFF);
+
+            Assertions.assertEquals(referenceAdler(data, 7, length), Utils.adlerHash(data, 7, length));
+            Assertions.assertEquals(referenceAdler(ones, 0, length), Utils.adlerHash(ones));
+        }
+    }
+
+    private static int referenceAdler(byte[] input, int offset, int length) {
+        int a = 0, b = 0;
+        for (int i = offset; i < offset + length; i++) {
+            a = (a + (input[i] & 0xFF)) % 65521;
+            b = (b + a) % 65521;
+        }
+        return a | (b << 16);
+    }
 }
@@ -0,0 +1,115 @@
+package in.dragonbra.javasteam.util.crypto;
+
+import in.dragonbra.javasteam.TestBase;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+public class SessionCipherTest extends TestBase {
+
+    private static final byte[] KEY = CryptoHelper.generateRandomBlock(32);
+
+    private static final byte[] HMAC_SECRET = Arrays.copyOf(KEY, 16);
+
+    private static final int[] SIZES = {0, 1, 15, 16, 17, 64, 1024, 64 * 1024};
+
+    @Test
+    public void compatibleWithCryptoHelper() throws CryptoException {
+        SessionCipher cipher = new SessionCipher(KEY, null);
+
+        for (int size : SIZES) {
+            byte[] plaintext = CryptoHelper.generateRandomBlock(size);
+
+            byte[] encrypted = cipher.encrypt(plaintext);
+            Assertions.assertEquals(SessionCipher.getEncryptedSize(size), encrypted.length);
+            Assertions.assertArrayEquals(plaintext, CryptoHelper.symmetricDecrypt(encrypted, KEY));
+
+            Assertions.assertArrayEquals(plaintext, cipher.decrypt(CryptoHelper.symmetricEncrypt(plaintext, KEY)));
+        }
+    }
+
+    @Test
+    public void compatibleWithCryptoHelperHmac() throws CryptoException {
+        SessionCipher cipher = new SessionCipher(KEY, HMAC_SECRET);
+
+        for (int size : SIZES) {
+            byte[] plaintext = CryptoHelper.generateRandomBlock(size);
+
+            byte[] encrypted = cipher.encrypt(plaintext);
+            Assertions.assertArrayEquals(plaintext, CryptoHelper.symmetricDecryptHMACIV(encrypted, KEY, HMAC_SECRET));
+
+            byte[] legacy = CryptoHelper.symmetricEncryptWithHMACIV(plaintext, KEY, HMAC_SECRET);
+            Assertions.assertArrayEquals(plaintext, cipher.decrypt(legacy));
+        }
+    }
+
+    @Test
+    public void callerSuppliedBuffers() throws CryptoException {
+        SessionCipher cipher = new SessionCipher(KEY, HMAC_SECRET);
+        byte[] plaintext = CryptoHelper.generateRandomBlock(100);
+
+        byte[] encrypted = new byte[8 + SessionCipher.getEncryptedSize(plaintext.length)];
+        int encryptedLength = cipher.encrypt(plaintext, 0, plaintext.length, encrypted, 8);
+        Assertions.assertEquals(SessionCipher.getEncryptedSize(plaintext.length), encryptedLength);
+
+        byte[] decrypted = new byte[4 + SessionCipher.getMaxDecryptedSize(encryptedLength)];
+        int decryptedLength = cipher.decrypt(encrypted, 8, encryptedLength, decrypted, 4);
+
+        Assertions.assertEquals(plaintext.length, decryptedLength);
+        Assertions.assertArrayEquals(plaintext, Arrays.copyOfRange(decrypted, 4, 4 + decryptedLength));
+    }
+
+    @Test
+    public void tamperedHmacIsRejected() throws CryptoException {
+        SessionCipher cipher = new SessionCipher(KEY, HMAC_SECRET);
+
+        byte[] encrypted = cipher.encrypt(CryptoHelper.generateRandomBlock(100));
+        encrypted[40] ^= 0x01;
+
+        Assertions.assertThrows(CryptoException.class, () -> cipher.decrypt(encrypted));
+    }
+
+    @Test
+    public void tooShortIsRejected() throws CryptoException {
+        SessionCipher cipher = new SessionCipher(KEY, null);
+
+        Assertions.assertThrows(CryptoException.class, () -> cipher.decrypt(new byte[16]));
+    }
+
+    @Test
+    @Tag("benchmark")
+    public void packetsPerSecond() throws CryptoException {
+        SessionCipher cipher = new SessionCipher(KEY, HMAC_SECRET);
+
+        for (int size : new int[]{64, 1024, 64 * 1024}) {
+            byte[] plaintext = CryptoHelper.generateRandomBlock(size);
+            byte[] encrypted = new byte[SessionCipher.getEncryptedSize(size)];
+            byte[] decrypted = new byte[SessionCipher.getMaxDecryptedSize(encrypted.length)];
+            int iterations = Math.max(50, 2_000_000 / (size + 256));
+
+            // warm up both paths
+            for (int i = 0; i < iterations; i++) {
+                CryptoHelper.symmetricDecryptHMACIV(CryptoHelper.symmetricEncryptWithHMACIV(plaintext, KEY, HMAC_SECRET), KEY, HMAC_SECRET);
+                cipher.decrypt(encrypted, 0, cipher.encrypt(plaintext, 0, size, encrypted, 0), decrypted, 0);
+            }
+
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                CryptoHelper.symmetricDecryptHMACIV(CryptoHelper.symmetricEncryptWithHMACIV(plaintext, KEY, HMAC_SECRET), KEY, HMAC_SECRET);
+            }
+            double helperSeconds = (System.nanoTime() - start) / 1e9;
+
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                int length = cipher.encrypt(plaintext, 0, size, encrypted, 0);
+                cipher.decrypt(encrypted, 0, length, decrypted, 0);
+            }
+            double sessionSeconds = (System.nanoTime() - start) / 1e9;
+
+            System.out.printf("%d byte packets: CryptoHelper %.0f/s, SessionCipher %.0f/s%n",
+                    size, iterations / helperSeconds, iterations / sessionSeconds);
+        }
+    }
+}
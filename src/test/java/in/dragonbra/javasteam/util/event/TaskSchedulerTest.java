@@ -0,0 +1,121 @@
+package in.dragonbra.javasteam.util.event;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TaskSchedulerTest {
+
+    private TaskScheduler scheduler;
+
+    @BeforeEach
+    public void setUp() {
+        scheduler = new TaskScheduler(1, "TaskSchedulerTest");
+    }
+
+    @AfterEach
+    public void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void scheduleRunsOnce() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+
+        TaskScheduler.Handle handle = scheduler.schedule(latch::countDown, 50);
+        Assertions.assertEquals(1, scheduler.getScheduledTaskCount());
+
+        Assertions.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        Thread.sleep(50);
+
+        Assertions.assertTrue(handle.isDone());
+        Assertions.assertEquals(0, scheduler.getScheduledTaskCount());
+        Assertions.assertEquals(1, scheduler.getExecutedTaskCount());
+    }
+
+    @Test
+    public void cancelledTaskDoesNotRun() throws InterruptedException {
+        AtomicInteger runs = new AtomicInteger();
+
+        TaskScheduler.Handle handle = scheduler.schedule(runs::incrementAndGet, 100);
+        handle.cancel();
+
+        Thread.sleep(300);
+
+        Assertions.assertTrue(handle.isCancelled());
+        Assertions.assertEquals(0, runs.get());
+        Assertions.assertEquals(0, scheduler.getScheduledTaskCount());
+    }
+
+    @Test
+    public void fixedRateRunsUntilCancelled() throws InterruptedException {
+        AtomicInteger runs = new AtomicInteger();
+        CountDownLatch latch = new CountDownLatch(3);
+
+        TaskScheduler.Handle handle = scheduler.scheduleAtFixedRate(() -> {
+            runs.incrementAndGet();
+            latch.countDown();
+        }, 0, 20);
+
+        Assertions.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        handle.cancel();
+
+        int runsAfterCancel = runs.get();
+        Thread.sleep(100);
+
+        Assertions.assertEquals(runsAfterCancel, runs.get());
+        Assertions.assertEquals(0, scheduler.getScheduledTaskCount());
+    }
+
+    @Test
+    public void fixedRateSurvivesExceptions() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(2);
+
+        TaskScheduler.Handle handle = scheduler.scheduleAtFixedRate(() -> {
+            latch.countDown();
+            throw new IllegalStateException("test");
+        }, 0, 20);
+
+        Assertions.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        handle.cancel();
+    }
+
+    @Test
+    public void lagIsMeasured() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(2);
+
+        // the first task blocks the only thread, so the second one starts late
+        scheduler.schedule(() -> {
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException ignored) {
+            }
+            latch.countDown();
+        }, 0);
+        scheduler.schedule(latch::countDown, 10);
+
+        Assertions.assertTrue(latch.await(5, TimeUnit.SECONDS));
+
+        Assertions.assertTrue(scheduler.getMaxLagMillis() >= 100.0, "lag was " + scheduler.getMaxLagMillis());
+
+        scheduler.resetMetrics();
+        Assertions.assertEquals(0.0, scheduler.getMaxLagMillis());
+        Assertions.assertEquals(0L, scheduler.getExecutedTaskCount());
+    }
+
+    @Test
+    public void delayCompletesFuture() throws Exception {
+        CompletableFuture<Void> future = scheduler.delay(20);
+        future.get(5, TimeUnit.SECONDS);
+
+        CompletableFuture<Void> cancelled = scheduler.delay(10_000);
+        cancelled.cancel(false);
+        Assertions.assertEquals(0, scheduler.getScheduledTaskCount());
+    }
+}